@@ -1,21 +1,131 @@
 package org.cli;
 
+import org.cli.daemon.DaemonClient;
+import org.cli.daemon.DaemonServer;
 import org.cli.exceptions.HandleChangePortException;
 import org.cli.exceptions.ParamLengthException;
 import org.cli.exceptions.handleForceUserLoadAndConnectException;
+import org.cli.prometheus.MetricsServer;
+import org.cli.sql.postgresql.StreamingTableRenderer;
+import org.cli.utils.DaemonSettings;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class Main {
+    /** The command line could not be used: an unknown option, or a command file that cannot be read. */
+    public static final int USAGE_ERROR = 2;
+
+    private static final String USAGE = "Usage: java -jar LunaCLI.jar [-c <command>]... | [-f <file>|-] [--format table|csv|tsv|json] [--stop-on-error] [--metrics]"
+            + " | daemon [socket:<path>] | send <command>";
+
+    /**
+     * Starts the prompt, or with {@code daemon [socket:<path>]} the daemon, or with {@code send <command>} sends a
+     * command to a running daemon. The client is dispatched first, before anything else is loaded.
+     * <p>
+     * With {@code -c <command>} (repeatable) or {@code -f <file>} ({@code -} for standard input) the commands run
+     * without a prompt, see {@link Start#batchStart(BufferedReader, PrintStream, boolean)}, and the process exits with 0 if they
+     * all succeeded, 1 if one failed, or {@link #USAGE_ERROR}. The metrics server only starts there with
+     * {@code --metrics}. {@code --format} sets the format rows are printed in, for the prompt as well.
+     * </p>
+     */
     public static void main(String[] args) throws SQLException {
-        new Thread(() -> {
+        if (args.length > 0 && args[0].equals("send")) {
+            DaemonClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("daemon")) {
+            startMetrics();
+            String socket = DaemonSettings.socketPath;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("socket:")) {socket = args[i].substring("socket:".length());}
+            }
             try {
-                org.cli.prometheus.MetricsServer.main(new String[]{});
+                DaemonServer.run(Path.of(socket));
             } catch (IOException e) {
-                e.printStackTrace();
+                System.out.println(INVALID_MESSAGE + "Daemon not started on " + socket + ": " + e.getMessage());
+            }
+            return;
+        }
+
+        StringBuilder commands = new StringBuilder();
+        String file = null;
+        boolean batch = false;
+        boolean stopOnError = false;
+        boolean metrics = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-c":
+                        commands.append(value(args, ++i)).append('\n');
+                        batch = true;
+                        break;
+                    case "-f":
+                        file = value(args, ++i);
+                        batch = true;
+                        break;
+                    case "--format":
+                        StreamingTableRenderer.setFormat(StreamingTableRenderer.parseFormat(value(args, ++i)));
+                        break;
+                    case "--stop-on-error":
+                        stopOnError = true;
+                        break;
+                    case "--metrics":
+                        metrics = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                }
             }
-        }).start();
-        Start.commandStart();
+            if (file != null && commands.length() > 0) {throw new IllegalArgumentException("-c and -f cannot be combined.");}
+        } catch (IllegalArgumentException e) {
+            System.err.println(INVALID_MESSAGE + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(USAGE_ERROR);
+        }
+
+        if (!batch) {
+            startMetrics();
+            Start.commandStart();
+            return;
+        }
+        if (metrics) {startMetrics();}
+        PrintStream output = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false);
+        int status;
+        try (BufferedReader input = file == null ? new BufferedReader(new StringReader(commands.toString()))
+                : file.equals("-") ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 64 * 1024)
+                : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+            status = Start.batchStart(input, output, stopOnError);
+        } catch (IOException e) {
+            System.err.println(INVALID_MESSAGE + "Cannot read commands from " + file + ": " + e.getMessage());
+            status = USAGE_ERROR;
+        }
+        System.exit(status);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {throw new IllegalArgumentException(args[index - 1] + " needs a value.");}
+        return args[index];
+    }
+
+    private static void startMetrics() {
+        try {
+            MetricsServer.start();
+        } catch (IOException e) {
+            System.out.println(INVALID_MESSAGE + "Metrics endpoint not started on " + MetricsServer.getUrl() + ": " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,25 @@
 package org.cli;
 
 
+import org.cli.conn.postgresql.SessionKeepalive;
 import org.cli.exceptions.HandleChangePortException;
 import org.cli.exceptions.ParamLengthException;
+import org.cli.entities.HistoryEntry;
 import org.cli.exceptions.handleForceUserLoadAndConnectException;
 import org.cli.manager.CommandHistory;
+import org.cli.manager.CommandOutcome;
 import org.cli.manager.CommandPackage;
+import org.cli.prometheus.MetricsServer;
+import org.cli.scheduler.JobScheduler;
+import org.cli.sql.postgresql.StreamingTableRenderer;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.sql.SQLException;
 import java.util.Scanner;
 
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.utils.Colors.*;
 
 public class Start {
@@ -26,10 +36,13 @@ public class Start {
      * The following operations occur during the execution:
      * <ul>
      *     <li>Prints the "Luna CLI" header and the ":qa! - EXIT" command for quitting the CLI.</li>
+     *     <li>Reloads the command history saved in {@code history.jsonl} and the scheduled jobs saved in {@code jobs.json}.</li>
      *     <li>Waits for user input, which is then trimmed and processed.</li>
+     *     <li>Before a command runs, a session connection that was idle for a while is validated and, if it died,
+     *         replaced (see {@link SessionKeepalive}).</li>
      *     <li>If the user types ":qa!", the loop breaks and the program terminates.</li>
      *     <li>For any other input, the command is passed to the {@link CommandPackage#command(String)} method
-     *         for further processing.</li>
+     *         for further processing, then recorded in the history with its duration, rows and status.</li>
      * </ul>
      * </p>
      *
@@ -42,21 +55,110 @@ public class Start {
 
         Scanner scanner = new Scanner(System.in);
 
-        System.out.println(GREEN+"Stats for nerds!: http://localhost:9091/metrics"+RESET);
+        System.out.println(GREEN+"Stats for nerds!: " + MetricsServer.getUrl() +RESET);
         System.out.println(RED + ":qa! - EXIT" + RESET);
         System.out.println("---------------------");
+        CommandHistory.load();
+        int jobs = JobScheduler.start();
+        if (jobs > 0) {
+            System.out.println("Loaded " + jobs + " scheduled jobs, they run once you connect.");
+        }
         while (true) {
             System.out.print("luna> ");
             String input = scanner.nextLine().trim();
 
             if (input.equalsIgnoreCase(":qa!")) {
+                CommandHistory.flush();
                 break;
             }
-            CommandPackage.command(input);
-            CommandHistory.addCommand(input);
-
+            if (input.isEmpty()) {
+                continue;
+            }
+            runCommand(input);
         }
         System.out.println("---------------------");
         scanner.close();
     }
+    /**
+     * Runs commands without a prompt, for scripts and shell pipelines ({@code -c} and {@code -f}).
+     * <p>
+     * Each line is run as soon as it is read, so a producer can stream commands in and a long file is never held
+     * in memory. Blank lines and lines starting with {@code #} are skipped, and {@code :qa!} stops reading. No
+     * banner or prompt is printed and no scheduled jobs are started; commands are recorded in the history as at
+     * the prompt.
+     * </p>
+     * <p>
+     * In a machine-readable format (see {@link StreamingTableRenderer#setFormat}) only rows are written to
+     * {@code output}, and the messages of the commands go to standard error. The output is flushed whenever no
+     * further input is ready, so a producer that waits for an answer gets it, while a file or a fast pipe is
+     * written in large blocks. Reading stops once the output can no longer be written, for example after
+     * {@code | head}.
+     * </p>
+     *
+     * @param input       The commands, one per line.
+     * @param output      Where the output goes, typically a buffered standard output.
+     * @param stopOnError True to stop at the first failing command.
+     * @return 0 if every command succeeded and its output was written, 1 otherwise.
+     * @throws IOException If the commands cannot be read.
+     */
+    public static int batchStart(BufferedReader input, PrintStream output, boolean stopOnError) throws IOException {
+        PrintStream originalOut = System.out;
+        if (StreamingTableRenderer.getFormat() == StreamingTableRenderer.Format.TABLE) {
+            System.setOut(output);
+        } else {
+            StreamingTableRenderer.setOutput(output);
+            System.setOut(System.err);
+        }
+        CommandHistory.load();
+        int status = 0;
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                String command = line.trim();
+                if (command.isEmpty() || command.startsWith("#")) {continue;}
+                if (command.equalsIgnoreCase(":qa!")) {break;}
+
+                boolean succeeded;
+                try {
+                    succeeded = runCommand(command);
+                } catch (Exception e) {
+                    System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+                    succeeded = false;
+                }
+                if (!succeeded) {status = 1;}
+                if (!input.ready()) {output.flush();}
+                if (output.checkError() || (!succeeded && stopOnError)) {break;}
+            }
+        } finally {
+            output.flush();
+            CommandHistory.flush();
+            StreamingTableRenderer.setOutput(null);
+            System.setOut(originalOut);
+        }
+        return output.checkError() ? 1 : status;
+    }
+    /**
+     * Runs one command as typed at the prompt: the session connection is checked first, and the command is
+     * recorded in the history with its duration, rows and status.
+     *
+     * @param input The trimmed command.
+     * @return True if the command completed and did not report a failure.
+     * @throws SQLException If a database-related error occurs during command processing.
+     */
+    public static boolean runCommand(String input) throws SQLException {
+        CommandOutcome outcome = CommandOutcome.begin();
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            SessionKeepalive.beforeCommand(input);
+            CommandPackage.command(input);
+            completed = true;
+        } finally {
+            SessionKeepalive.afterCommand();
+            CommandOutcome.end();
+            CommandHistory.addCommand(input, (System.nanoTime() - start) / 1_000_000, outcome.getRows(),
+                    completed && !outcome.isFailed() ? HistoryEntry.Status.OK : HistoryEntry.Status.FAILED);
+        }
+        return !outcome.isFailed();
+    }
 }
@@ -1,10 +1,17 @@
 package org.cli.conn.postgresql;
 
 import org.cli.entities.Info;
+import org.cli.entities.SaveEntity;
+import org.cli.manager.CommandOutcome;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.TransactionState;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
@@ -14,7 +21,20 @@ import static org.cli.entities.Info.getBaseUrlForPostgresql;
 public class ConnectToPostgresql {
 
     static Info info = new Info();
-    public static Connection connection = null;
+    public static volatile Connection connection = null;
+    public static ConnectionPoolPostgresql pool = null;
+    private static final ThreadLocal<Connection> leasedConnection = new ThreadLocal<>();
+    private static final int MAX_POOLS = 4;
+    /** Pools of the databases and users connected to this session, most recently used last. */
+    private static final Map<String, ConnectionPoolPostgresql> pools = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * A unit of work that runs against whatever connection {@link #currentConnection()} returns.
+     */
+    @FunctionalInterface
+    public interface LeasedTask {
+        void run() throws Exception;
+    }
 
     /**
      * Checks if there is an active database connection.
@@ -78,6 +98,7 @@ public class ConnectToPostgresql {
                 BASE_URL: %s
                 Connection Status: %s
                 %n""" ,info.getDatabaseName(), info.getPORT(), getBaseUrlForPostgresql(), (connection != null && !connection.isClosed() ? "Connected" : "Not Connected"));
+        ReplicaRouter.displayReplicas();
     }
     /**
      * Establishes a connection to the specified PostgreSQL database using the provided credentials.
@@ -87,6 +108,12 @@ public class ConnectToPostgresql {
      * connection is already established. Upon successful connection, a confirmation message with the database product name
      * is printed. If the connection fails, an error message is displayed with the exception details.
      * </p>
+     * <p>
+     * A {@link ConnectionPoolPostgresql} is created for the database and the session connection is leased from it,
+     * so scheduled and parallel work can borrow further connections without opening a fresh backend per command.
+     * The pools of the last {@value #MAX_POOLS} databases and users stay open, so switching back to one of them,
+     * for example with {@code clone}, reuses its warm connections instead of logging in again.
+     * </p>
      *
      * @apiNote If you have a connection issue, check this: <a href="https://github.com/Doguhannilt/LunaCLI-Postgresql/issues/1">Link</a>
      *
@@ -95,18 +122,51 @@ public class ConnectToPostgresql {
      * @param database The name of the database to connect to.
      */
     public static void connectToDatabase(String username, String password, String database) {
-        String urlForConnection = getBaseUrlForPostgresql() + database;
+        if (connect(getBaseUrlForPostgresql() + database, username, password, database)) {
+            ReplicaRouter.clear();
+        }
+    }
+    /**
+     * Establishes a connection to the primary of a saved connection profile.
+     * <p>
+     * Works like {@link #connectToDatabase(String, String, String)}, but connects to the host and port of the
+     * profile when it names them, and routes read-only commands to the replicas of the profile through
+     * {@link ReplicaRouter}.
+     * </p>
+     *
+     * @param profile The profile to connect with.
+     * @return True if the connection was established.
+     */
+    public static boolean connectToProfile(SaveEntity profile) {
+        String url = Info.getUrlForPostgresql(profile.getHost(), profile.getPort()) + profile.getDatabase();
+        if (!connect(url, profile.getUsername(), profile.getPassword(), profile.getDatabase())) {
+            return false;
+        }
+        ReplicaRouter.configure(profile);
+        return true;
+    }
 
+    private static boolean connect(String urlForConnection, String username, String password, String database) {
         try {
             if (connection != null && !connection.isClosed()) {
+                CommandOutcome.failed();
                 System.out.println(INVALID_MESSAGE +  "Already connected to: " + database);
-                return;
+                return false;
             }
-            connection = DriverManager.getConnection(urlForConnection, username, password);
+            pool = poolFor(urlForConnection, username, password);
+            connection = pool.borrow();
             System.out.println(VALID_MESSAGE + "Connected to database: " + connection.getMetaData().getDatabaseProductName());
+            SessionKeepalive.start();
+            return true;
         }
         catch (SQLException e) {
+            if (pool != null) {
+                discardPool(pool);
+                pool = null;
+            }
+            CommandOutcome.failed();
             System.out.println(INVALID_MESSAGE + "Connection Error: " + e.getMessage());
+            return false;
         }
     }
     /**
@@ -114,6 +174,7 @@ public class ConnectToPostgresql {
      * <p>
      * This method checks whether a connection is currently open. If it is, the connection is closed, and a success message
      * is printed. If the connection is not open or an error occurs while closing, an error message is displayed.
+     * Every pool kept open for switching between databases is shut down as well, and so are the pools of replicas.
      * </p>
      *
      * @throws SQLException if an error occurs while closing the connection.
@@ -121,10 +182,135 @@ public class ConnectToPostgresql {
     public static void closeConnection() {
         try {
             if (connection != null && !connection.isClosed()) {
+                try {SnippetStatementCache.evict(connection);} catch (RuntimeException ignored) {}
                 connection.close();
                 System.out.println(VALID_MESSAGE + "Database connection closed.");
             }
         }
         catch (SQLException e) { System.out.println(INVALID_MESSAGE + "Error closing connection: " + e.getMessage());}
+        finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+            synchronized (pools) {
+                for (ConnectionPoolPostgresql open : new ArrayList<>(pools.values())) {open.shutdown();}
+                pools.clear();
+            }
+            ReplicaRouter.clear();
+            SessionKeepalive.stop();
+        }
+    }
+    /**
+     * Returns the open pool for the given database and user, or creates one. A pool opened with another password
+     * or before the pool settings were changed is shut down and replaced. When more than {@value #MAX_POOLS} pools
+     * are open, the least recently used one other than the current pool is shut down.
+     */
+    private static ConnectionPoolPostgresql poolFor(String url, String username, String password) {
+        String key = url + "\u0000" + username;
+        synchronized (pools) {
+            ConnectionPoolPostgresql existing = pools.get(key);
+            if (existing != null && !existing.isClosed() && existing.hasPassword(password) && existing.hasCurrentSettings()) {
+                return existing;
+            }
+            if (existing != null) {
+                pools.remove(key);
+                existing.shutdown();
+            }
+            ConnectionPoolPostgresql created = new ConnectionPoolPostgresql(url, username, password);
+            pools.put(key, created);
+            Iterator<ConnectionPoolPostgresql> iterator = pools.values().iterator();
+            while (pools.size() > MAX_POOLS && iterator.hasNext()) {
+                ConnectionPoolPostgresql eldest = iterator.next();
+                if (eldest != pool && eldest != created) {
+                    iterator.remove();
+                    eldest.shutdown();
+                }
+            }
+            return created;
+        }
+    }
+
+    private static void discardPool(ConnectionPoolPostgresql discarded) {
+        synchronized (pools) {
+            pools.values().remove(discarded);
+        }
+        discarded.shutdown();
+    }
+    /**
+     * Returns the connection that database work on the calling thread should use.
+     * <p>
+     * Threads running inside {@link #runOnLease(LeasedTask)} get their own connection leased from the pool;
+     * every other thread (the interactive prompt) uses the session {@link #connection}.
+     * </p>
+     *
+     * @return The connection bound to the calling thread, or the session connection.
+     */
+    public static Connection currentConnection() {
+        Connection leased = leasedConnection.get();
+        return leased != null ? leased : connection;
+    }
+    /**
+     * @return The connection leased by the calling thread through {@link #runOnLease(LeasedTask)}, or null.
+     */
+    public static Connection leasedConnection() {
+        return leasedConnection.get();
+    }
+    /**
+     * Runs the given task on a connection leased from the pool instead of the session connection.
+     * <p>
+     * While the task runs, {@link #currentConnection()} on this thread returns the leased connection, so
+     * background work (scheduled jobs, parallel queries) never shares the socket or the transaction the user
+     * is typing into. The connection goes back to the pool when the task finishes. Nested calls reuse the
+     * lease that is already bound. Without a pool (for example when a test assigned {@link #connection}
+     * directly) the task runs on the session connection.
+     * </p>
+     *
+     * @param task The work to run.
+     * @throws Exception If no connection could be leased or the task fails.
+     */
+    public static void runOnLease(LeasedTask task) throws Exception {
+        if (leasedConnection.get() != null || pool == null) {
+            task.run();
+            return;
+        }
+        try (Connection leased = pool.borrow()) {
+            leasedConnection.set(leased);
+            try {
+                task.run();
+            } finally {
+                leasedConnection.remove();
+            }
+        }
+    }
+    /**
+     * @return True if the connection is in transaction mode or has a transaction open, or if that cannot be told.
+     */
+    static boolean inTransaction(Connection connection) {
+        try {
+            return connection != null && (!connection.getAutoCommit()
+                    || connection.unwrap(BaseConnection.class).getTransactionState() != TransactionState.IDLE);
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+    /** Binds a connection that {@link #currentConnection()} returns on this thread until {@link #unbind()}. */
+    static void bind(Connection leased) {
+        leasedConnection.set(leased);
+    }
+
+    static void unbind() {
+        leasedConnection.remove();
+    }
+    /**
+     * Displays the connection pool statistics (size, utilization and borrow wait times).
+     */
+    public static void displayPoolStats() {
+        if (pool == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "No connection pool. Connect first.");
+            return;
+        }
+        pool.displayStats();
     }
 }
@@ -0,0 +1,491 @@
+package org.cli.conn.postgresql;
+
+import org.cli.prometheus.ConnectionMetrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPoolPostgresql {
+
+    private static int defaultMinSize = 1;
+    private static int defaultMaxSize = 8;
+    private static long defaultIdleTimeoutSeconds = 300;
+    private static long defaultBorrowTimeoutSeconds = 30;
+
+    /** Connections used more recently than this are handed out without a validation round trip. */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long EVICTION_INTERVAL_SECONDS = 30;
+    /** Matches the driver's default {@code preparedStatementCacheQueries}. */
+    private static final int STATEMENT_CACHE_SIZE = 256;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    /**
+     * Creates a bounded pool of PostgreSQL connections for the given URL and credentials.
+     * <p>
+     * No connection is opened here; the first {@link #borrow()} opens the first backend so that
+     * authentication errors surface to the caller exactly as {@link DriverManager#getConnection} reports them.
+     * A daemon thread evicts connections that stayed idle longer than the idle timeout (never shrinking
+     * below the minimum size) and tops the pool back up to the minimum.
+     * </p>
+     *
+     * @param url      The JDBC URL including the database name.
+     * @param username The username to authenticate with.
+     * @param password The password to authenticate with.
+     */
+    public ConnectionPoolPostgresql(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = defaultMinSize;
+        this.maxSize = defaultMaxSize;
+        this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(defaultIdleTimeoutSeconds);
+        this.borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(defaultBorrowTimeoutSeconds);
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "luna-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Changes the settings used by pools created from now on.
+     * <p>
+     * The active pool keeps its settings; reconnect (or {@code clone}) to replace it with one that uses them.
+     * </p>
+     *
+     * @param minSize              The number of connections kept open even when idle.
+     * @param maxSize              The maximum number of connections the pool opens.
+     * @param idleTimeoutSeconds   How long a connection above the minimum may stay idle before it is closed.
+     * @param borrowTimeoutSeconds How long {@link #borrow()} waits for a free connection before failing.
+     */
+    public static void configure(int minSize, int maxSize, long idleTimeoutSeconds, long borrowTimeoutSeconds) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize || idleTimeoutSeconds < 1 || borrowTimeoutSeconds < 1) {
+            throw new IllegalArgumentException("Pool settings must satisfy 0 <= min <= max, max >= 1, idle >= 1, timeout >= 1.");
+        }
+        defaultMinSize = minSize;
+        defaultMaxSize = maxSize;
+        defaultIdleTimeoutSeconds = idleTimeoutSeconds;
+        defaultBorrowTimeoutSeconds = borrowTimeoutSeconds;
+    }
+
+    public static int getDefaultMinSize() {
+        return defaultMinSize;
+    }
+
+    public static int getDefaultMaxSize() {
+        return defaultMaxSize;
+    }
+
+    public static long getDefaultIdleTimeoutSeconds() {
+        return defaultIdleTimeoutSeconds;
+    }
+
+    public static long getDefaultBorrowTimeoutSeconds() {
+        return defaultBorrowTimeoutSeconds;
+    }
+
+    /**
+     * Leases a connection from the pool.
+     * <p>
+     * Waits up to the borrow timeout for a free slot. An idle connection is reused when available and is
+     * validated first unless it was returned moments ago; otherwise a new physical connection is opened.
+     * The returned connection goes back to the pool when {@link Connection#close()} is called on it, with
+     * any open transaction rolled back and auto-commit restored.
+     * </p>
+     *
+     * @return A leased connection.
+     * @throws SQLException If the pool is closed, the wait times out, or a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {throw new SQLException("Pool Error: Connection pool is closed.");}
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                ConnectionMetrics.borrowTimeout();
+                throw new SQLException("Pool Error: Timed out after " + borrowTimeoutMillis + " ms waiting for a connection ("
+                        + maxSize + " in use).");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Pool Error: Interrupted while waiting for a connection.", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled;
+            boolean replacing = false;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.lease();
+                }
+                destroy(pooled);
+                replacing = true;
+            }
+            if (replacing) {ConnectionMetrics.reconnect();}
+            return open().lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a leased connection that is known to be broken. Its physical connection is closed, so it is
+     * destroyed instead of being handed out again. Connections not leased from this pool are simply closed.
+     *
+     * @param leased The broken connection.
+     */
+    public void discard(Connection leased) {
+        if (Proxy.isProxyClass(leased.getClass()) && Proxy.getInvocationHandler(leased) instanceof LeaseHandler handler) {
+            try {
+                handler.pooled.physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        try {
+            leased.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the evictor. Connections that are still leased are closed
+     * when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return True if the pool was created with the settings currently given by {@link #configure}.
+     */
+    public boolean hasCurrentSettings() {
+        return minSize == defaultMinSize && maxSize == defaultMaxSize
+                && idleTimeoutMillis == TimeUnit.SECONDS.toMillis(defaultIdleTimeoutSeconds)
+                && borrowTimeoutMillis == TimeUnit.SECONDS.toMillis(defaultBorrowTimeoutSeconds);
+    }
+
+    /**
+     * @param password A password, or null.
+     * @return True if the pool authenticates with this password.
+     */
+    public boolean hasPassword(String password) {
+        return Objects.equals(this.password, password);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return Math.max(0, maxSize - permits.availablePermits());
+    }
+
+    public int getPendingBorrowers() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return The share of the maximum pool size currently leased, between 0 and 1.
+     */
+    public double getUtilization() {
+        return (double) getActiveConnections() / maxSize;
+    }
+
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrows.get();
+        return count == 0 ? 0 : waitNanosTotal.get() / 1_000_000.0 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return waitNanosMax.get() / 1_000_000.0;
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.get();
+    }
+
+    /**
+     * Prints the pool configuration together with its utilization and wait-time statistics.
+     */
+    public void displayStats() {
+        System.out.printf("""
+                Connection Pool:
+                ---------------------
+                URL: %s
+                SIZE: min %d / max %d
+                ACTIVE: %d  IDLE: %d  PENDING: %d
+                UTILIZATION: %.1f%%
+                BORROWS: %d  TIMEOUTS: %d
+                WAIT: avg %.2f ms / max %.2f ms
+                CREATED: %d  DESTROYED: %d  VALIDATION FAILURES: %d
+                %n""", url, minSize, maxSize, getActiveConnections(), getIdleConnections(), getPendingBorrowers(),
+                getUtilization() * 100, getBorrowCount(), getTimeoutCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+                getCreatedCount(), getDestroyedCount(), getValidationFailureCount());
+    }
+
+    private PooledConnection open() throws SQLException {
+        long start = System.nanoTime();
+        Properties properties = new Properties();
+        properties.setProperty("user", username);
+        // Without a password the driver falls back to .pgpass or trust authentication.
+        if (password != null) {properties.setProperty("password", password);}
+        // Lets the operating system notice a dead peer on connections that sit idle in the pool.
+        properties.setProperty("tcpKeepAlive", "true");
+        Connection physical = DriverManager.getConnection(url, properties);
+        ConnectionMetrics.connectionCreated(System.nanoTime() - start);
+        total.incrementAndGet();
+        created.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            if (pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return true;
+            }
+        } catch (SQLException ignored) {
+        }
+        validationFailures.incrementAndGet();
+        ConnectionMetrics.validationFailure();
+        return false;
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        destroyed.incrementAndGet();
+        ConnectionMetrics.connectionDestroyed();
+        try {SnippetStatementCache.evict(pooled.physical);} catch (RuntimeException ignored) {}
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void recordWait(long nanos) {
+        ConnectionMetrics.borrowWait(nanos);
+        borrows.incrementAndGet();
+        waitNanosTotal.addAndGet(nanos);
+        waitNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Closes connections idle longer than the idle timeout, down to the minimum size, and opens connections back
+     * up to the minimum. The evictor runs this every {@value #EVICTION_INTERVAL_SECONDS} seconds.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = iterator.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        // Connections idle since the last run are validated, so one the server closed meanwhile is replaced now
+        // rather than when a borrower needs it. lastUsed is left alone: validating is not using.
+        for (PooledConnection pooled : idle.toArray(new PooledConnection[0])) {
+            if (now - pooled.lastUsed < TimeUnit.SECONDS.toMillis(EVICTION_INTERVAL_SECONDS) || !idle.remove(pooled)) {continue;}
+            if (!closed && isUsable(pooled)) {
+                idle.offerLast(pooled);
+            } else {
+                destroy(pooled);
+            }
+        }
+        while (!closed && total.get() > 0 && total.get() < minSize && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool. Each lease hands out a fresh proxy whose {@code close()}
+     * returns the physical connection instead of closing it, so a stale proxy cannot touch it afterwards.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastUsed = System.currentTimeMillis();
+        /** The SQL of statements prepared on this connection, to tell first preparations from driver cache hits. */
+        private final Map<String, Boolean> preparedSql = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > STATEMENT_CACHE_SIZE;
+            }
+        });
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this));
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private volatile boolean returned = false;
+
+        private LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            release(pooled);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Leased" + pooled.physical;
+                case "createStatement":
+                    Object statement = delegate(method, args);
+                    ConnectionMetrics.statement("simple");
+                    return statement;
+                case "prepareStatement":
+                    Object prepared = delegate(method, args);
+                    ConnectionMetrics.statement(pooled.preparedSql.put((String) args[0], Boolean.TRUE) == null ? "prepared" : "reused");
+                    return prepared;
+                case "prepareCall":
+                    Object callable = delegate(method, args);
+                    ConnectionMetrics.statement("callable");
+                    return callable;
+                default:
+                    return delegate(method, args);
+            }
+        }
+
+        private Object delegate(Method method, Object[] args) throws Throwable {
+            if (returned) {throw new SQLException("Pool Error: Connection has already been returned to the pool.");}
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package org.cli.conn.postgresql;
+
+import org.cli.entities.Info;
+import org.cli.entities.SaveEntity;
+import org.cli.prometheus.ConnectionMetrics;
+import org.cli.utils.KeepaliveSettings;
+import org.cli.utils.ReplicaSettings;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * <h1>Read-replica routing</h1>
+ * <p>
+ * A connection profile can name replicas next to its primary, for example
+ * {@code entityc ... host:db1 port:5432 replicas:db2:5432,db3:5432 routing:least-lag maxLag:5}. When the session
+ * was opened from such a profile with {@code clone}, read-only work ({@code select-from}, {@code stream-from},
+ * {@code out} and snippets that only read) runs on a connection leased from a replica, and everything else stays
+ * on the session connection to the primary. Replicas are taken in turn ({@value #ROUND_ROBIN}, the default) or
+ * by the smallest replication lag ({@value #LEAST_LAG}).
+ * </p>
+ * <p>
+ * A replica further behind than the lag ceiling is skipped, and one that cannot be reached is left out for
+ * {@link ReplicaSettings#retryAfterMillis}; when no replica qualifies, the work runs on the primary. The lag is
+ * measured on the connection about to be used, at most once per {@link ReplicaSettings#lagCacheMillis} per
+ * replica. While a transaction is open on the session, all work stays on the primary so it sees its own writes.
+ * Replica connections are opened read-only, so a statement that turns out to write (for example a function with
+ * side effects) is refused by the replica and run again on the primary; a replica that drops the connection is left
+ * out and the work moves on to the next one.
+ * </p>
+ */
+public class ReplicaRouter {
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String LEAST_LAG = "least-lag";
+
+    /** Replay lag in seconds, zero when everything received has been replayed or the server is not a standby. */
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+    private static final String READ_ONLY_VIOLATION = "25006";
+    private static final Pattern READ_ONLY_START = Pattern.compile("^(select-from|stream-from|select|with|values|table|show|explain)\\b.*");
+    private static final Pattern WRITES = Pattern.compile(
+            ".*\\b(insert|update|delete|merge|into|nextval|setval|analy[sz]e|for\\s+(no\\s+key\\s+)?update|for\\s+(key\\s+)?share)\\b.*");
+
+    /** What is known about one replica server, shared by the session and fan-outs. */
+    private static final class Server {
+        private volatile double lagSeconds = -1;
+        private volatile long lagCheckedAt;
+        private volatile long downUntil;
+    }
+
+    /**
+     * Work that reads through {@link ConnectToPostgresql#currentConnection()}.
+     */
+    @FunctionalInterface
+    public interface ReadTask {
+        void run() throws SQLException;
+    }
+
+    private static final Map<String, Server> servers = new ConcurrentHashMap<>();
+    private static final AtomicInteger cursor = new AtomicInteger();
+    /** Pools of the session's replicas by address; guarded by the class. */
+    private static final Map<String, ConnectionPoolPostgresql> pools = new LinkedHashMap<>();
+    private static volatile SaveEntity profile;
+
+    /**
+     * Starts routing the session's reads to the replicas of a profile, replacing the replicas of the previous one.
+     *
+     * @param connected The profile the session connection was opened from.
+     */
+    public static synchronized void configure(SaveEntity connected) {
+        clear();
+        if (!connected.getReplicas().isEmpty()) {
+            profile = connected;
+        }
+    }
+
+    /**
+     * Stops routing and closes the pools of the session's replicas.
+     */
+    public static synchronized void clear() {
+        profile = null;
+        for (ConnectionPoolPostgresql pool : pools.values()) {pool.shutdown();}
+        pools.clear();
+    }
+
+    /**
+     * @return Whether the session has replicas to route reads to.
+     */
+    public static boolean isConfigured() {
+        return profile != null;
+    }
+
+    /**
+     * Tells whether a command or statement only reads: a {@code select-from} or {@code stream-from}, or SQL
+     * starting with {@code SELECT}, {@code WITH}, {@code VALUES}, {@code TABLE}, {@code SHOW} or {@code EXPLAIN}
+     * that does not mention a writing keyword such as {@code INSERT}, {@code INTO} or {@code FOR UPDATE}.
+     *
+     * @param sql The command or SQL.
+     * @return True if it can run on a replica.
+     */
+    public static boolean isReadOnly(String sql) {
+        String normalized = sql.trim().toLowerCase().replaceAll("\\s+", " ");
+        if (normalized.startsWith("select-from") || normalized.startsWith("stream-from")) {return true;}
+        return READ_ONLY_START.matcher(normalized).matches() && !WRITES.matcher(normalized).matches();
+    }
+
+    /**
+     * Runs read-only work on a replica of the session, or on the primary when there is none to use.
+     * <p>
+     * While the task runs, {@link ConnectToPostgresql#currentConnection()} on this thread returns the replica
+     * connection. Work that already runs on a leased connection (scheduled jobs, parallel queries) keeps it.
+     * </p>
+     *
+     * @param task The work, which must only read.
+     * @throws SQLException If the task fails.
+     */
+    public static void runReadOnly(ReadTask task) throws SQLException {
+        SaveEntity current = profile;
+        if (ConnectToPostgresql.leasedConnection() != null) {
+            task.run();
+            return;
+        }
+        if (current == null) {
+            runOnSession(task);
+            return;
+        }
+        if (!ConnectToPostgresql.inTransaction(ConnectToPostgresql.connection)) {
+            for (String address : candidates(current, true)) {
+                Connection replica = borrow(current, address);
+                if (replica == null) {continue;}
+                try (replica) {
+                    ConnectToPostgresql.bind(replica);
+                    task.run();
+                    ConnectionMetrics.routedRead("replica");
+                    return;
+                } catch (SQLException | RuntimeException e) {
+                    if (isConnectionFailure(e)) {
+                        markDown(servers.get(address));
+                        continue;
+                    }
+                    if (!isReadOnlyViolation(e)) {throw e;}
+                    break;
+                } finally {
+                    ConnectToPostgresql.unbind();
+                }
+            }
+        }
+        ConnectionMetrics.routedRead("primary");
+        runOnSession(task);
+    }
+
+    /**
+     * Runs read-only work on the session connection. When the connection breaks under it outside a transaction,
+     * the session reconnects through {@link SessionKeepalive} and the work runs again, up to
+     * {@link KeepaliveSettings#readRetries} times; reading twice is harmless.
+     */
+    private static void runOnSession(ReadTask task) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                task.run();
+                return;
+            } catch (SQLException e) {
+                if (attempt >= KeepaliveSettings.readRetries || !isTransient(e)
+                        || !SessionKeepalive.recover(KeepaliveSettings.foregroundAttempts)) {throw e;}
+                ConnectionMetrics.statementRetry();
+            }
+        }
+    }
+
+    /**
+     * Opens a read-only connection to a replica of a profile that is within the lag ceiling, for work that does
+     * not use the session, such as a fan-out.
+     *
+     * @param target     The profile.
+     * @param properties The connection properties (user, password, timeouts).
+     * @return The connection, or null when the profile has no replica that can be used.
+     */
+    public static Connection openReplica(SaveEntity target, Properties properties) {
+        for (String address : candidates(target, false)) {
+            Server server = servers.computeIfAbsent(address, key -> new Server());
+            Connection connection = null;
+            try {
+                connection = DriverManager.getConnection(url(address, target), properties);
+                if (withinLag(address, server, connection, maxLag(target))) {
+                    ConnectionMetrics.routedRead("replica");
+                    return connection;
+                }
+                connection.close();
+            } catch (SQLException e) {
+                markDown(server);
+                if (connection != null) {try {connection.close();} catch (SQLException ignored) {}}
+            }
+        }
+        ConnectionMetrics.routedRead("primary");
+        return null;
+    }
+
+    /**
+     * Prints the replicas of the session with their last measured lag.
+     */
+    public static void displayReplicas() {
+        SaveEntity current = profile;
+        if (current == null) {return;}
+        System.out.printf("Routing: %s, max lag %d s%n", routing(current), maxLag(current));
+        long now = System.currentTimeMillis();
+        for (String replica : current.getReplicas()) {
+            String address = address(replica, current);
+            Server server = servers.get(address);
+            String state = server == null || server.lagSeconds < 0 ? "not used yet"
+                    : server.downUntil > now ? "unreachable"
+                    : String.format("lag %.2f s", server.lagSeconds);
+            System.out.printf("  Replica %s: %s%n", address, state);
+        }
+    }
+
+    private static List<String> candidates(SaveEntity target, boolean measure) {
+        List<String> addresses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String replica : target.getReplicas()) {
+            String address = address(replica, target);
+            Server server = servers.get(address);
+            if (server == null || server.downUntil <= now) {addresses.add(address);}
+        }
+        if (addresses.isEmpty()) {return addresses;}
+        if (LEAST_LAG.equals(routing(target))) {
+            if (measure) {
+                for (String address : new ArrayList<>(addresses)) {
+                    Server server = servers.get(address);
+                    if (server == null || now - server.lagCheckedAt > ReplicaSettings.lagCacheMillis) {
+                        Connection connection = borrow(target, address);
+                        if (connection == null) {addresses.remove(address);}
+                        else {try {connection.close();} catch (SQLException ignored) {}}
+                    }
+                }
+            }
+            addresses.sort(Comparator.comparingDouble(address -> {
+                Server server = servers.get(address);
+                return server == null ? -1 : server.lagSeconds;
+            }));
+        } else {
+            Collections.rotate(addresses, -Math.floorMod(cursor.getAndIncrement(), addresses.size()));
+        }
+        return addresses;
+    }
+
+    private static Connection borrow(SaveEntity target, String address) {
+        Server server = servers.computeIfAbsent(address, key -> new Server());
+        Connection connection = null;
+        try {
+            connection = pool(target, address).borrow();
+            if (withinLag(address, server, connection, maxLag(target))) {return connection;}
+            connection.close();
+        } catch (SQLException e) {
+            markDown(server);
+            if (connection != null) {try {connection.close();} catch (SQLException ignored) {}}
+        }
+        return null;
+    }
+
+    private static synchronized ConnectionPoolPostgresql pool(SaveEntity target, String address) throws SQLException {
+        if (target != profile) {throw new SQLException("Routing changed.");}
+        ConnectionPoolPostgresql pool = pools.get(address);
+        if (pool == null || pool.isClosed()) {
+            pool = new ConnectionPoolPostgresql(url(address, target), target.getUsername(), target.getPassword());
+            pools.put(address, pool);
+        }
+        return pool;
+    }
+
+    private static boolean withinLag(String address, Server server, Connection connection, int maxLag) throws SQLException {
+        if (System.currentTimeMillis() - server.lagCheckedAt > ReplicaSettings.lagCacheMillis) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                server.lagSeconds = rs.getDouble(1);
+                server.lagCheckedAt = System.currentTimeMillis();
+                server.downUntil = 0;
+                ConnectionMetrics.replicaLag(address, server.lagSeconds);
+            }
+        }
+        return server.lagSeconds <= maxLag;
+    }
+
+    private static void markDown(Server server) {
+        server.downUntil = System.currentTimeMillis() + ReplicaSettings.retryAfterMillis;
+        ConnectionMetrics.replicaUnreachable();
+    }
+
+    private static boolean isReadOnlyViolation(Throwable e) {
+        String state = sqlState(e);
+        return READ_ONLY_VIOLATION.equals(state);
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        String state = sqlState(e);
+        return state != null && state.startsWith("08");
+    }
+
+    /** A broken connection, or a backend the server terminated (admin shutdown, crash shutdown, cannot connect now). */
+    private static boolean isTransient(Throwable e) {
+        String state = sqlState(e);
+        return state != null && (state.startsWith("08") || state.startsWith("57P0"));
+    }
+
+    private static String sqlState(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null) {return ((SQLException) cause).getSQLState();}
+        }
+        return null;
+    }
+
+    private static String routing(SaveEntity target) {
+        return target.getRouting() == null ? ROUND_ROBIN : target.getRouting();
+    }
+
+    private static int maxLag(SaveEntity target) {
+        return target.getMaxLag() == null ? ReplicaSettings.maxLagSeconds : target.getMaxLag();
+    }
+
+    /** A replica as {@code host:port}, with the port of the profile when the replica names none. */
+    private static String address(String replica, SaveEntity target) {
+        int colon = replica.lastIndexOf(':');
+        if (colon > 0 && replica.substring(colon + 1).chars().allMatch(Character::isDigit)) {return replica;}
+        String primary = Info.getUrlForPostgresql(null, target.getPort());
+        String port = primary.substring(primary.lastIndexOf(':') + 1, primary.length() - 1);
+        return replica + ":" + port;
+    }
+
+    private static String url(String address, SaveEntity target) {
+        int colon = address.lastIndexOf(':');
+        return Info.getUrlForPostgresql(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)))
+                + target.getDatabase() + "?readOnly=true&readOnlyMode=always&connectTimeout=" + ReplicaSettings.connectTimeoutSeconds;
+    }
+}
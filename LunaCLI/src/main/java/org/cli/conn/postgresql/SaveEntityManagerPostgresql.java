@@ -1,27 +1,39 @@
 package org.cli.conn.postgresql;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.cli.entities.SaveEntity;
+import org.cli.manager.CommandOutcome;
 import org.cli.utils.ConnectionPath;
+import org.cli.utils.JsonFileStore;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.cli.conn.postgresql.ConnectToPostgresql.*;
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class SaveEntityManagerPostgresql {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String ID_PREFIX = "Person";
+
+    private static volatile Map<String, SaveEntity> personsById = Map.of();
+    private static volatile Map<String, List<SaveEntity>> personsByTag = Map.of();
+    private static int nextId = 1;
+    private static String indexedPath;
+
+    private static final JsonFileStore<SaveEntity> store = new JsonFileStore<>(() -> ConnectionPath.FILE_PATH,
+            new TypeReference<List<SaveEntity>>() {}, SaveEntityManagerPostgresql::index);
 
     /**
      * Saves a {@link SaveEntity} (Person) to the connections list and assigns a unique ID to the entity.
      * <p>
-     * This method generates a new ID for the person being saved, based on the size of the existing connections list.
-     * It then sets the username, password, and database properties from the provided {@link SaveEntity} object and
-     * saves it to the list of connections. The list of connections is then persisted by calling {@link #saveConnections(List)}.
+     * This method generates a new ID for the person being saved, one above the highest ID ever seen, so IDs are never
+     * reused after a person is removed from the file. It then copies the username, password, database, tags and replica properties
+     * from the provided {@link SaveEntity} object and saves the copy to the list of connections. The list of connections
+     * is then persisted by calling {@link #saveConnections(List)}.
      * </p>
      * <p>
      * If the save operation is successful, a confirmation message is printed with the saved person's ID.
@@ -29,25 +41,27 @@ public class SaveEntityManagerPostgresql {
      *
      * @param saveEntity The {@link SaveEntity} object to save, which contains the person's details such as username, password, and database.
      */
-    public static void savePerson(SaveEntity saveEntity) {
+    public static synchronized void savePerson(SaveEntity saveEntity) {
 
         List<SaveEntity>  connections = loadConnections();
 
-        int newId = connections.size() + 1;
-        saveEntity.setId("Person" + newId);
+        saveEntity.setId(ID_PREFIX + nextId);
 
-        saveEntity.setUsername(saveEntity.getUsername());
-        saveEntity.setPassword(saveEntity.getPassword());
-        saveEntity.setDatabase(saveEntity.getDatabase());
-
-        connections.add(saveEntity);
+        SaveEntity copy = new SaveEntity(saveEntity.getId(), saveEntity.getUsername(), saveEntity.getPassword(), saveEntity.getDatabase());
+        copy.setTags(new ArrayList<>(saveEntity.getTags()));
+        copy.setHost(saveEntity.getHost());
+        copy.setPort(saveEntity.getPort());
+        copy.setReplicas(new ArrayList<>(saveEntity.getReplicas()));
+        copy.setRouting(saveEntity.getRouting());
+        copy.setMaxLag(saveEntity.getMaxLag());
+        connections.add(copy);
         saveConnections(connections);
         System.out.println("User saved: " + saveEntity.getId());
     }
     /**
      * Loads the list of connections from the file specified by the {@link ConnectionPath#FILE_PATH}.
      * <p>
-     * This method reads the JSON file that contains the saved connections and deserializes it into a list of {@link SaveEntity}.
+     * The connections are kept in memory and the JSON file is parsed again only when it changed on disk.
      * If the file does not exist, it returns an empty list. If an error occurs during file reading or deserialization,
      * an empty list is returned as a fallback.
      * </p>
@@ -55,33 +69,24 @@ public class SaveEntityManagerPostgresql {
      * @return A list of {@link SaveEntity} representing all saved connections, or an empty list if an error occurs or the file doesn't exist.
      */
     public static List<SaveEntity> loadConnections() {
-        File file = new File(ConnectionPath.FILE_PATH);
-        if (!file.exists()) {
-            return new ArrayList<>();
-        }
-
-        try {
-            return objectMapper.readValue(file, new TypeReference<List<SaveEntity>>() {});
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
-        }
+        return new ArrayList<>(store.items());
     }
     /**
      * Saves the list of connections to the file specified by the {@link ConnectionPath#FILE_PATH}.
      * <p>
      * This method serializes the provided list of {@link SaveEntity} objects and writes them to a JSON file. The data is written
-     * with the default pretty printer to ensure a readable format. If an error occurs during the file writing process, the error is
-     * printed to the console.
+     * with the default pretty printer to ensure a readable format, to a temporary file that then replaces the old one, so the
+     * file is never left half written. If an error occurs during the file writing process, the error is printed to the console.
      * </p>
      *
      * @param connections A list of {@link SaveEntity} representing the connections to be saved.
      */
     private static void saveConnections(List<SaveEntity> connections) {
         try {
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(ConnectionPath.FILE_PATH), connections);
+            store.write(connections);
         } catch (IOException e) {
-            e.printStackTrace();
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Could not save " + ConnectionPath.FILE_PATH + ": " + e.getMessage());
         }
     }
     /**
@@ -110,28 +115,29 @@ public class SaveEntityManagerPostgresql {
     /**
      * Retrieves a person (SaveEntity) by their unique ID.
      * <p>
-     * This method loads the list of all saved persons from the JSON file, iterates through them, and returns the person
-     * that matches the given ID. If the person is not found or if an error occurs during file reading, the method returns null.
+     * Persons are looked up in an index built when the file is loaded, so no file is read unless it changed on disk.
+     * If the person is not found, the method returns null.
      * </p>
      *
      * @param id The unique ID of the person to retrieve.
      * @return The {@link SaveEntity} representing the person with the specified ID, or null if the person is not found.
      */
     public static SaveEntity getPerson(String id) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            List<SaveEntity> users = mapper.readValue(new File("connections.json"), mapper.getTypeFactory().constructCollectionType(List.class, SaveEntity.class));
-
-            for (SaveEntity user : users) {
-                System.out.println("Checking user: " + user.getId());
-                if (user.getId().equals(id)) {
-                    return user;
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Error reading JSON file: " + e.getMessage());
-        }
-        return null;
+        store.refresh();
+        return id == null ? null : personsById.get(id);
+    }
+    /**
+     * Retrieves the persons (SaveEntity) carrying a tag, in file order.
+     * <p>
+     * Tags are given when a person is saved, for example {@code tags:prod,eu}, and are matched ignoring case.
+     * </p>
+     *
+     * @param tag The tag to look for.
+     * @return The persons with the tag, or an empty list if there are none.
+     */
+    public static List<SaveEntity> getPersonsByTag(String tag) {
+        store.refresh();
+        return tag == null ? List.of() : personsByTag.getOrDefault(tag.toLowerCase(), List.of());
     }
     /**
      * Clones a user by establishing a connection to their respective database.
@@ -139,6 +145,9 @@ public class SaveEntityManagerPostgresql {
      * This method retrieves a person (user) using their ID by calling {@link #getPerson(String)}. Once the user is found,
      * it attempts to connect to the specified database using the stored username, password, and database information from
      * the {@link SaveEntity}. If the connection is successful, a confirmation message is printed. Otherwise, the error message is shown.
+     * The profile comes from memory and, when the session used it recently, its pool is still open, so switching costs
+     * no file access and no new login. When the profile names replicas, read-only commands of the session are routed
+     * to them, see {@link ReplicaRouter}.
      * </p>
      *
      * @param personId The unique ID of the person to clone.
@@ -146,10 +155,41 @@ public class SaveEntityManagerPostgresql {
     public static void cloneUser(String personId) {
         try{
             SaveEntity person = getPerson(personId);
-            connectToDatabase(person.getUsername(), person.getPassword(), person.getDatabase());
-            System.out.println("Successfully connected: " + personId);
+            if (person == null) {
+                CommandOutcome.failed();
+                System.out.println(INVALID_MESSAGE + "User not found: " + personId);
+                return;
+            }
+            if (connectToProfile(person)) {
+                System.out.println("Successfully connected: " + personId);
+            }
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
     }
+
+    private static void index(List<SaveEntity> persons) {
+        Map<String, SaveEntity> byId = new HashMap<>();
+        Map<String, List<SaveEntity>> byTag = new HashMap<>();
+        int highest = 0;
+        for (SaveEntity person : persons) {
+            if (person.getId() == null) {continue;}
+            byId.put(person.getId(), person);
+            for (String tag : person.getTags()) {
+                byTag.computeIfAbsent(tag.toLowerCase(), key -> new ArrayList<>()).add(person);
+            }
+            if (person.getId().startsWith(ID_PREFIX)) {
+                try {
+                    highest = Math.max(highest, Integer.parseInt(person.getId().substring(ID_PREFIX.length())));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        personsById = byId;
+        personsByTag = byTag;
+        if (!ConnectionPath.FILE_PATH.equals(indexedPath)) {
+            indexedPath = ConnectionPath.FILE_PATH;
+            nextId = 1;
+        }
+        nextId = Math.max(nextId, highest + 1);
+    }
 }
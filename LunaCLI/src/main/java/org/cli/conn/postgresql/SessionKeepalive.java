@@ -0,0 +1,257 @@
+package org.cli.conn.postgresql;
+
+import org.cli.prometheus.ConnectionMetrics;
+import org.cli.utils.KeepaliveSettings;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
+
+/**
+ * <h1>Session keepalive and reconnect</h1>
+ * <p>
+ * The session connection can die while the prompt is idle: the server restarts, an administrator terminates the
+ * backend, or a firewall drops the socket. The connection does not notice until it is used, so the next command
+ * would fail and the user would have to connect again. Instead, a daemon thread validates the idle session
+ * connection every {@link KeepaliveSettings#intervalSeconds} with an empty query, and a command typed after more
+ * than {@link KeepaliveSettings#validateAfterIdleMillis} of silence validates it first.
+ * </p>
+ * <p>
+ * A dead session outside a transaction is replaced by a new connection from the session pool. Attempts are spaced
+ * with exponential backoff and jitter, so many clients coming back after a restart do not all retry at once. A
+ * waiting command makes {@link KeepaliveSettings#foregroundAttempts} attempts; in the background they go on, quietly,
+ * until one succeeds. Settings changed with {@code SET} are not carried over to the new connection.
+ * </p>
+ * <p>
+ * A session that dies inside a transaction is not replaced silently: the server has already rolled the
+ * transaction back, and statements typed afterwards must not commit on their own. luna reports it, and
+ * {@code luna rollback} reconnects, still in transaction mode.
+ * </p>
+ */
+public class SessionKeepalive {
+    private static final Object lock = new Object();
+    private static final AtomicLong reconnects = new AtomicLong();
+
+    private static ScheduledExecutorService scheduler;
+    private static volatile long lastChecked = System.currentTimeMillis();
+    private static volatile boolean busy;
+    /** When the session was found dead, or 0 while it is alive. */
+    private static volatile long lostAt;
+    private static volatile boolean lostInTransaction;
+    /** Whether a transaction was open after the last command; a dead connection can no longer tell. */
+    private static volatile boolean inTransaction;
+    private static volatile int backgroundAttempt;
+    private static volatile boolean retrying;
+
+    /**
+     * Starts watching a new session connection.
+     */
+    static void start() {
+        synchronized (lock) {
+            lastChecked = System.currentTimeMillis();
+            lostAt = 0;
+            lostInTransaction = false;
+            inTransaction = false;
+            backgroundAttempt = 0;
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "luna-keepalive");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                scheduler.scheduleWithFixedDelay(SessionKeepalive::check, KeepaliveSettings.intervalSeconds,
+                        KeepaliveSettings.intervalSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Forgets the session, for example after it was closed on purpose.
+     */
+    static void stop() {
+        synchronized (lock) {
+            lostAt = 0;
+            lostInTransaction = false;
+        }
+    }
+
+    /**
+     * Prepares the session connection for a command typed at the prompt: validates it when it was idle for a
+     * while and reconnects it when it died. Must be followed by {@link #afterCommand()}.
+     *
+     * @param command The command about to run.
+     */
+    public static void beforeCommand(String command) {
+        synchronized (lock) {
+            busy = true;
+            Connection session = ConnectToPostgresql.connection;
+            if (session == null || replacesSession(command)) {return;}
+            if (lostInTransaction) {
+                if (isRollback(command)) {
+                    reconnect(KeepaliveSettings.foregroundAttempts, true, false);
+                } else {
+                    System.out.println(INVALID_MESSAGE + "The connection was lost inside a transaction, which the server rolled back. Run luna rollback to reconnect.");
+                }
+                return;
+            }
+            if (lostAt == 0 && System.currentTimeMillis() - lastChecked < KeepaliveSettings.validateAfterIdleMillis) {return;}
+            if (lostAt == 0 && isAlive(session)) {return;}
+            recover(KeepaliveSettings.foregroundAttempts);
+        }
+    }
+
+    /**
+     * Marks the end of a command started with {@link #beforeCommand(String)}.
+     */
+    public static void afterCommand() {
+        Connection session = ConnectToPostgresql.connection;
+        try {
+            if (session != null && !session.isClosed()) {inTransaction = ConnectToPostgresql.inTransaction(session);}
+        } catch (SQLException ignored) {}
+        lastChecked = System.currentTimeMillis();
+        busy = false;
+    }
+
+    /**
+     * Replaces a broken session connection, unless a transaction was open on it.
+     *
+     * @param attempts The number of connection attempts.
+     * @return True if the session has a working connection again.
+     */
+    public static boolean recover(int attempts) {
+        synchronized (lock) {
+            Connection session = ConnectToPostgresql.connection;
+            if (session == null) {return false;}
+            if (lostAt == 0 && markLost(session)) {
+                System.out.println(INVALID_MESSAGE + "The connection was lost inside a transaction, which the server rolled back. Run luna rollback to reconnect.");
+            }
+            if (lostInTransaction) {return false;}
+            return reconnect(attempts, false, false);
+        }
+    }
+
+    /**
+     * @return The number of times a broken session connection was replaced.
+     */
+    public static long getReconnects() {
+        return reconnects.get();
+    }
+
+    private static boolean reconnect(int attempts, boolean transactionMode, boolean quiet) {
+        ConnectionPoolPostgresql pool = ConnectToPostgresql.pool;
+        Connection broken = ConnectToPostgresql.connection;
+        if (pool == null || pool.isClosed() || broken == null) {return false;}
+
+        try {SnippetStatementCache.evict(broken);} catch (RuntimeException ignored) {}
+        pool.discard(broken);
+        SQLException failure = null;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0 && !sleep(backoff(attempt))) {break;}
+            try {
+                Connection fresh = pool.borrow();
+                if (transactionMode) {fresh.setAutoCommit(false);}
+                ConnectToPostgresql.connection = fresh;
+                long downtime = System.currentTimeMillis() - lostAt;
+                reconnects.incrementAndGet();
+                ConnectionMetrics.sessionReconnect(true, downtime);
+                lostAt = 0;
+                lostInTransaction = false;
+                inTransaction = transactionMode;
+                backgroundAttempt = 0;
+                lastChecked = System.currentTimeMillis();
+                if (!quiet) {System.out.println(VALID_MESSAGE + "Reconnected after the connection was lost (" + downtime + " ms).");}
+                return true;
+            } catch (SQLException e) {
+                failure = e;
+                ConnectionMetrics.sessionReconnect(false, 0);
+            }
+        }
+        if (!quiet) {System.out.println(INVALID_MESSAGE + "Could not reconnect: " + (failure == null ? "interrupted" : failure.getMessage()));}
+        return false;
+    }
+
+    /** Background check, every interval: validates the session connection when it was idle that long. */
+    private static void check() {
+        synchronized (lock) {
+            Connection session = ConnectToPostgresql.connection;
+            if (session == null || busy || lostAt != 0) {return;}
+            if (System.currentTimeMillis() - lastChecked < TimeUnit.SECONDS.toMillis(KeepaliveSettings.intervalSeconds)) {return;}
+            if (isAlive(session) || markLost(session)) {return;}
+            scheduleRetry();
+        }
+    }
+
+    /** Tries to reconnect a lost session in the background, with growing pauses, until it works or a command does it. */
+    private static void retry() {
+        synchronized (lock) {
+            retrying = false;
+            if (ConnectToPostgresql.connection == null || lostAt == 0 || lostInTransaction) {return;}
+            if (busy || !reconnect(1, false, true)) {scheduleRetry();}
+        }
+    }
+
+    /**
+     * Records that the session connection died, and whether a transaction was open on it. The driver refuses to
+     * answer once it noticed the connection is closed; then the state after the last command is used.
+     *
+     * @return True if a transaction was open.
+     */
+    private static boolean markLost(Connection session) {
+        lostAt = System.currentTimeMillis();
+        boolean open = inTransaction;
+        try {
+            if (!session.isClosed()) {open = ConnectToPostgresql.inTransaction(session);}
+        } catch (SQLException ignored) {}
+        lostInTransaction = open;
+        return open;
+    }
+
+    private static void scheduleRetry() {
+        if (retrying) {return;}
+        retrying = true;
+        scheduler.schedule(SessionKeepalive::retry, backoff(++backgroundAttempt), TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isAlive(Connection session) {
+        boolean alive;
+        try {
+            alive = session.isValid(KeepaliveSettings.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            alive = false;
+        }
+        lastChecked = System.currentTimeMillis();
+        ConnectionMetrics.keepalive(alive);
+        return alive;
+    }
+
+    /** Exponential backoff with jitter: a random wait between half and all of {@code base * 2^attempt}, capped. */
+    static long backoff(int attempt) {
+        long ceiling = Math.min(KeepaliveSettings.backoffMaxMillis, KeepaliveSettings.backoffBaseMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean isRollback(String command) {
+        return command.trim().toLowerCase().matches("luna\\s+rollback\\b.*");
+    }
+
+    private static boolean replacesSession(String command) {
+        return command.trim().toLowerCase().matches("luna\\s+(connect|clone)\\b.*");
+    }
+}
@@ -1,28 +1,43 @@
 package org.cli.conn.postgresql;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.cli.entities.SnippetEntity;
+import org.cli.exceptions.ConnectionNullException;
+import org.cli.manager.CommandOutcome;
+import org.cli.prometheus.QueryMetrics;
+import org.cli.utils.JsonFileStore;
 import org.cli.utils.SnippetPath;
 
-import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.sql.postgresql.ExecutePostgresql.command;
+import static org.cli.sql.postgresql.ExecutePostgresql.printResult;
 
 public class SnippetManagerPostgresql {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static volatile Map<Integer, SnippetEntity> snippetsById = Map.of();
+    private static volatile Map<String, SnippetEntity> snippetsByName = Map.of();
+    private static int nextId = 1;
+    private static String indexedPath;
+
+    private static final JsonFileStore<SnippetEntity> store = new JsonFileStore<>(() -> SnippetPath.FILE_PATH,
+            new TypeReference<List<SnippetEntity>>() {}, SnippetManagerPostgresql::index);
 
     /**
      * Saves a new snippet with the provided key and value.
      *
      * <p>This method creates a new snippet entity with the specified key and value,
-     * assigns a new ID to the snippet based on the existing number of snippets,
-     * and stores it in the list of snippets. The updated list of snippets is then
-     * saved to a file.</p>
+     * assigns it the next free ID, one above the highest ID ever seen, so IDs are never
+     * reused after a snippet is removed from the file, and saves the updated list of
+     * snippets to the file.</p>
      *
      * @param key The unique key for the snippet.
      * @param value The value associated with the snippet.
@@ -32,13 +47,31 @@ public class SnippetManagerPostgresql {
      * luna snippetc name:MyWoahSnippet command:luna select-from users
      * </pre>
      */
-    public static void saveSnippet(String key,String value) {
+    public static synchronized void saveSnippet(String key,String value) {
+        saveSnippet(key, value, List.of());
+    }
+    /**
+     * Saves a new snippet that takes parameters.
+     *
+     * <p>The value is plain SQL in which {@code :name} stands for a parameter; each parameter is declared
+     * as {@code name:type}, with type one of int, bigint, numeric, text, boolean, date, timestamp or uuid.</p>
+     *
+     * @param key    The unique key for the snippet.
+     * @param value  The SQL of the snippet.
+     * @param params The declared parameters.
+     *
+     * <h3>Example Usage:</h3>
+     * <pre>
+     * luna snippetc name:userById params:user_id:int command:SELECT * FROM users WHERE id = :user_id
+     * </pre>
+     */
+    public static synchronized void saveSnippet(String key, String value, List<String> params) {
+        SnippetStatementCache.validate(params);
         SnippetEntity snippetEntity = new SnippetEntity();
+        snippetEntity.setParams(new ArrayList<>(params));
         List<SnippetEntity>  connections = loadConnections();
 
-
-        int newId = connections.size() + 1;
-        snippetEntity.setId(newId);
+        snippetEntity.setId(nextId);
         snippetEntity.setKey(key);
         snippetEntity.setValue(value);
         connections.add(snippetEntity);
@@ -49,7 +82,8 @@ public class SnippetManagerPostgresql {
      * Retrieves and returns a list of all saved snippets.
      *
      * <p>This method loads all the snippets from the file, converts them to a list,
-     * and returns the list as a string representation.</p>
+     * and returns the list as a string representation. It also prints how often parameterized
+     * snippets found their prepared statement in the cache.</p>
      *
      * @return A string representation of all saved snippets.
      *
@@ -61,13 +95,16 @@ public class SnippetManagerPostgresql {
     public static String getAllSnippets() {
         List<SnippetEntity> connections = loadConnections();
         System.out.println(connections);
+        System.out.println("Prepared snippet statements: " + SnippetStatementCache.getHits() + " cache hits, "
+                + SnippetStatementCache.getMisses() + " misses.");
         return connections.toString();
     }
     /**
      * Saves a list of snippets to the file.
      *
      * <p>This method takes a list of snippet entities and writes it to the file,
-     * preserving the structure of the snippets. The snippets are saved in a pretty-printed JSON format.</p>
+     * preserving the structure of the snippets. The snippets are saved in a pretty-printed JSON format,
+     * through a temporary file renamed over the old one.</p>
      *
      * @param snippetEntities The list of snippet entities to save.
      *
@@ -78,17 +115,17 @@ public class SnippetManagerPostgresql {
      */
     private static void saveConnections(List<SnippetEntity> snippetEntities) {
         try {
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(SnippetPath.FILE_PATH), snippetEntities);
+            store.write(snippetEntities);
         } catch (IOException e) {
-            e.printStackTrace();
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Could not save " + SnippetPath.FILE_PATH + ": " + e.getMessage());
         }
     }
     /**
      * Retrieves a specific snippet by its ID.
      *
-     * <p>This method loads all snippets from the file and iterates through the list to find
-     * the snippet with the specified ID. If the snippet is found, it is returned;
-     * otherwise, null is returned.</p>
+     * <p>Snippets are looked up in an index built when the file is loaded, so the lookup does not
+     * depend on the number of snippets. The file is read again only if it changed.</p>
      *
      * @param id The ID of the snippet to retrieve.
      * @return The snippet entity corresponding to the provided ID, or null if not found.
@@ -100,21 +137,27 @@ public class SnippetManagerPostgresql {
      * </pre>
      */
     public static SnippetEntity getSnippet(String id) {
+        store.refresh();
         try {
-            ObjectMapper mapper = new ObjectMapper();
-
-            List<SnippetEntity> snippets = mapper.readValue(new File("snippets.json"), mapper.getTypeFactory().constructCollectionType(List.class, SnippetEntity.class));
-
-            for (SnippetEntity snippetEntity : snippets) {
-                System.out.println("Checking snippet: " + snippetEntity.getId());
-                if (snippetEntity.getId() == Integer.parseInt(id)) {
-                    return snippetEntity;
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Error reading JSON file: " + e.getMessage());
+            return snippetsById.get(Integer.parseInt(id.trim()));
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return null;
+    }
+    /**
+     * Retrieves a snippet by its name. When several snippets share a name, the one with the highest ID is returned.
+     *
+     * @param name The name given with {@code name:} when the snippet was created.
+     * @return The snippet entity, or null if not found.
+     *
+     * <h3>Example Usage:</h3>
+     * <pre>
+     * luna snippetg name:MyWoahSnippet
+     * </pre>
+     */
+    public static SnippetEntity getSnippetByName(String name) {
+        store.refresh();
+        return snippetsByName.get(name);
     }
     /**
      * Executes the snippet with the given ID.
@@ -130,20 +173,84 @@ public class SnippetManagerPostgresql {
      * </pre>
      */
     public static void executeSnippet(String id) {
-        try{
-            SnippetEntity person = getSnippet(id);
-            command(person.getValue());
+        executeSnippet(id, Map.of());
+    }
+    /**
+     * Executes the snippet with the given ID and parameter values.
+     *
+     * <p>A snippet that declares parameters runs through a prepared statement cached on the connection,
+     * see {@link SnippetStatementCache}; the values are bound, never pasted into the SQL. A snippet that only
+     * reads runs on a replica when the session has one, see {@link ReplicaRouter}.</p>
+     *
+     * @param id        The ID of the snippet to execute.
+     * @param arguments The parameter values by name.
+     *
+     * <h3>Example Usage:</h3>
+     * <pre>
+     * luna snippetg id:3 user_id=42
+     * </pre>
+     */
+    public static void executeSnippet(String id, Map<String, String> arguments) {
+        execute(getSnippet(id), id, arguments);
+    }
+    /**
+     * Executes the snippet with the given name and parameter values.
+     *
+     * @param name      The name of the snippet to execute.
+     * @param arguments The parameter values by name.
+     */
+    public static void executeSnippetByName(String name, Map<String, String> arguments) {
+        execute(getSnippetByName(name), name, arguments);
+    }
+
+    @SuppressWarnings("try")
+    private static void execute(SnippetEntity snippet, String id, Map<String, String> arguments) {
+        if (snippet == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "No snippet found: " + id);
+            return;
+        }
+        if (snippet.getParams().isEmpty() && !arguments.isEmpty()) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Snippet " + id + " takes no parameters.");
+            return;
+        }
+        try (QueryMetrics.Timer timer = QueryMetrics.time("snippet")) {
+            ReplicaRouter.ReadTask run = () -> {
+                if (snippet.getParams().isEmpty()) {
+                    command(snippet.getValue());
+                } else {
+                    executePrepared(snippet, arguments);
+                }
+            };
+            if (ReplicaRouter.isReadOnly(snippet.getValue())) {ReplicaRouter.runReadOnly(run);}
+            else {run.run();}
             System.out.println("Successfully connected: " + id);
         } catch (Exception e) {
+            CommandOutcome.failed();
             System.out.println(e.getMessage());
         }
     }
+
+    private static void executePrepared(SnippetEntity snippet, Map<String, String> arguments) throws SQLException {
+        Connection connection = ConnectToPostgresql.currentConnection();
+        if (connection == null) {throw new IllegalStateException(new ConnectionNullException().getMessage());}
+        try {
+            PreparedStatement statement = SnippetStatementCache.prepare(connection, snippet, arguments);
+            printResult(statement, statement.execute());
+        } catch (SQLException e) {
+            QueryMetrics.error(e);
+            if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {SnippetStatementCache.evict(connection);}
+            throw new IllegalStateException(INVALID_MESSAGE + "SQL Execution Error: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(INVALID_MESSAGE + e.getMessage(), e);
+        }
+    }
     /**
      * Loads all snippets from the file.
      *
-     * <p>This method attempts to read the JSON file containing the snippets and deserializes
-     * it into a list of snippet entities. If the file does not exist or an error occurs
-     * during reading, an empty list is returned.</p>
+     * <p>The snippets are kept in memory and the JSON file is parsed again only when it changed.
+     * If the file does not exist or cannot be parsed, an empty list is returned.</p>
      *
      * @return A list of all saved snippets.
      *
@@ -156,16 +263,24 @@ public class SnippetManagerPostgresql {
      * </pre>
      */
     public static List<SnippetEntity> loadConnections() {
-        File file = new File(SnippetPath.FILE_PATH);
-        if (!file.exists()) {
-            return new ArrayList<>();
-        }
+        return new ArrayList<>(store.items());
+    }
 
-        try {
-            return objectMapper.readValue(file, new TypeReference<List<SnippetEntity>>() {});
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+    private static void index(List<SnippetEntity> snippets) {
+        Map<Integer, SnippetEntity> byId = new HashMap<>();
+        Map<String, SnippetEntity> byName = new HashMap<>();
+        int highest = 0;
+        for (SnippetEntity snippet : snippets) {
+            byId.put(snippet.getId(), snippet);
+            if (snippet.getKey() != null) {byName.merge(snippet.getKey(), snippet, (a, b) -> a.getId() > b.getId() ? a : b);}
+            highest = Math.max(highest, snippet.getId());
+        }
+        snippetsById = byId;
+        snippetsByName = byName;
+        if (!SnippetPath.FILE_PATH.equals(indexedPath)) {
+            indexedPath = SnippetPath.FILE_PATH;
+            nextId = 1;
         }
+        nextId = Math.max(nextId, highest + 1);
     }
 }
@@ -0,0 +1,268 @@
+package org.cli.conn.postgresql;
+
+import org.cli.entities.SnippetEntity;
+import org.cli.prometheus.ConnectionMetrics;
+import org.postgresql.PGConnection;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Prepared statements for parameterized snippets</h1>
+ * <p>
+ * A snippet that declares parameters is plain SQL with {@code :name} placeholders. It is turned into a
+ * {@link PreparedStatement} once per physical connection and the statement is kept, so every later run only binds
+ * the values. After the driver's prepare threshold (five executions by default) pgjdbc switches the statement to a
+ * named server-side statement, and from then on the server skips parsing and planning it.
+ * </p>
+ * <p>
+ * Statements are cached per physical connection, so leases of the same pooled connection share them, and at most
+ * {@value #STATEMENTS_PER_CONNECTION} are kept per connection; the least recently used one is closed first. The
+ * statements hold their connection, so the entry of a connection is dropped explicitly through
+ * {@link #evict(Connection)} when the pool destroys it or the session connection is closed.
+ * </p>
+ */
+public class SnippetStatementCache {
+    private static final int STATEMENTS_PER_CONNECTION = 64;
+    private static final Set<String> TYPES = Set.of("int", "integer", "bigint", "long", "numeric", "decimal",
+            "text", "string", "bool", "boolean", "date", "timestamp", "uuid");
+
+    private static final Map<PGConnection, Map<String, PreparedStatement>> cache = new IdentityHashMap<>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * SQL with its {@code :name} placeholders replaced by {@code ?}, and the name bound to each position.
+     */
+    public static final class ParsedSql {
+        private final String sql;
+        private final List<String> names;
+
+        private ParsedSql(String sql, List<String> names) {
+            this.sql = sql;
+            this.names = names;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<String> getNames() {
+            return names;
+        }
+    }
+
+    /**
+     * Checks the declared parameters of a snippet.
+     *
+     * @param params The parameters as {@code name:type}.
+     * @throws IllegalArgumentException If a parameter has no name or an unsupported type.
+     */
+    public static void validate(List<String> params) {
+        for (String param : params) {
+            int colon = param.indexOf(':');
+            if (colon <= 0 || !TYPES.contains(param.substring(colon + 1).toLowerCase())) {
+                throw new IllegalArgumentException("Invalid parameter " + param + ". Use name:type with a type out of " + TYPES + ".");
+            }
+        }
+    }
+
+    /**
+     * Replaces {@code :name} placeholders by {@code ?}. Placeholders inside quotes and {@code ::type} casts are
+     * left alone.
+     *
+     * @param sql The snippet SQL.
+     * @return The SQL for {@link Connection#prepareStatement(String)} and the parameter name of each position.
+     */
+    public static ParsedSql parse(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        List<String> names = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? sql.length() : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < sql.length() && sql.charAt(i + 1) == ':') {
+                out.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < sql.length() && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {end++;}
+                names.add(sql.substring(i + 1, end));
+                out.append('?');
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return new ParsedSql(out.toString(), names);
+    }
+
+    /**
+     * Returns the prepared statement of a snippet on the given connection, with the arguments bound.
+     *
+     * @param connection The connection to run on.
+     * @param snippet    The snippet, with declared parameters.
+     * @param arguments  The values by parameter name, as typed by the user.
+     * @return The statement, ready to execute. It belongs to the cache and must not be closed.
+     * @throws SQLException If the statement cannot be prepared or a value is rejected.
+     * @throws IllegalArgumentException If an argument is missing, unknown or not of the declared type.
+     */
+    public static PreparedStatement prepare(Connection connection, SnippetEntity snippet, Map<String, String> arguments) throws SQLException {
+        Map<String, String> types = new LinkedHashMap<>();
+        for (String param : snippet.getParams()) {
+            int colon = param.indexOf(':');
+            types.put(param.substring(0, colon), param.substring(colon + 1).toLowerCase());
+        }
+        for (String name : arguments.keySet()) {
+            if (!types.containsKey(name)) {throw new IllegalArgumentException("Unknown parameter " + name + ", the snippet takes " + snippet.getParams() + ".");}
+        }
+        for (String name : types.keySet()) {
+            if (!arguments.containsKey(name)) {throw new IllegalArgumentException("Missing parameter " + name + " (" + types.get(name) + ").");}
+        }
+
+        ParsedSql parsed = parse(snippet.getValue());
+        PreparedStatement statement = statement(connection, parsed.getSql());
+        try {
+            statement.clearParameters();
+            for (int i = 0; i < parsed.getNames().size(); i++) {
+                String name = parsed.getNames().get(i);
+                String type = types.get(name);
+                if (type == null) {throw new IllegalArgumentException("Placeholder :" + name + " is not a declared parameter.");}
+                bind(statement, i + 1, type, arguments.get(name));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+        }
+        return statement;
+    }
+
+    /**
+     * Closes and forgets the cached statements of a connection, for example after it failed.
+     *
+     * @param connection The connection.
+     */
+    public static void evict(Connection connection) {
+        Map<String, PreparedStatement> statements;
+        synchronized (cache) {
+            statements = cache.remove(physical(connection));
+        }
+        if (statements == null) {return;}
+        synchronized (statements) {
+            for (PreparedStatement statement : statements.values()) {
+                try {statement.close();} catch (SQLException ignored) {}
+            }
+            statements.clear();
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of physical connections that have cached statements.
+     */
+    public static int getCachedConnections() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static PreparedStatement statement(Connection connection, String sql) throws SQLException {
+        Map<String, PreparedStatement> statements;
+        synchronized (cache) {
+            statements = cache.computeIfAbsent(physical(connection), key -> Collections.synchronizedMap(
+                    new LinkedHashMap<>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                            if (size() <= STATEMENTS_PER_CONNECTION) {return false;}
+                            try {eldest.getValue().close();} catch (SQLException ignored) {}
+                            return true;
+                        }
+                    }));
+        }
+        synchronized (statements) {
+            PreparedStatement statement = statements.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                hits.incrementAndGet();
+                ConnectionMetrics.snippetStatement(true);
+                return statement;
+            }
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            misses.incrementAndGet();
+            ConnectionMetrics.snippetStatement(false);
+            return statement;
+        }
+    }
+
+    private static PGConnection physical(Connection connection) {
+        try {
+            return connection.unwrap(PGConnection.class);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Not a PostgreSQL connection: " + e.getMessage());
+        }
+    }
+
+    private static void bind(PreparedStatement statement, int index, String type, String value) throws SQLException {
+        if (value.equalsIgnoreCase("null")) {
+            statement.setNull(index, Types.OTHER);
+            return;
+        }
+        switch (type) {
+            case "int":
+            case "integer":
+                statement.setInt(index, Integer.parseInt(value));
+                break;
+            case "bigint":
+            case "long":
+                statement.setLong(index, Long.parseLong(value));
+                break;
+            case "numeric":
+            case "decimal":
+                statement.setBigDecimal(index, new BigDecimal(value));
+                break;
+            case "bool":
+            case "boolean":
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                    throw new IllegalArgumentException("Invalid boolean: " + value);
+                }
+                statement.setBoolean(index, Boolean.parseBoolean(value));
+                break;
+            case "date":
+                statement.setDate(index, Date.valueOf(value));
+                break;
+            case "timestamp":
+                statement.setTimestamp(index, Timestamp.valueOf(value.replace('T', ' ')));
+                break;
+            case "uuid":
+                statement.setObject(index, UUID.fromString(value));
+                break;
+            default:
+                statement.setString(index, value);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.cli.daemon;
+
+import org.cli.utils.ChannelStreams;
+import org.cli.utils.DaemonSettings;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * The thin client of {@link DaemonServer}: sends one command and copies what it prints to standard output and
+ * standard error as it arrives. It only uses JDK classes, so it starts in a fraction of the time the full CLI
+ * needs, and exits with the status of the command.
+ *
+ * <h2>Example Command Line Input:</h2>
+ * <pre>
+ * {@code
+ * java -jar LunaCLI.jar send luna select-from users
+ * java -cp LunaCLI.jar -Dluna.daemon.socket=/run/luna.sock org.cli.daemon.DaemonClient luna select-from users
+ * }
+ * </pre>
+ */
+public class DaemonClient {
+    /** The daemon is not running. */
+    public static final int NOT_RUNNING = 2;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java -jar LunaCLI.jar send <command>");
+            System.exit(NOT_RUNNING);
+        }
+        Path socket = Path.of(DaemonSettings.socketPath);
+        try {
+            int status = send(socket, String.join(" ", args), System.out, System.err);
+            System.out.flush();
+            System.exit(status);
+        } catch (IOException e) {
+            System.err.println("LunaCLI daemon is not running on " + socket + " (start it with java -jar LunaCLI.jar daemon): " + e.getMessage());
+            System.exit(NOT_RUNNING);
+        }
+    }
+
+    /**
+     * Sends a command to the daemon and copies its output as it streams back.
+     *
+     * @param socket  The socket of the daemon.
+     * @param command The command, as typed at the prompt.
+     * @param out     Where the standard output of the command goes.
+     * @param err     Where the standard error of the command goes.
+     * @return The exit status of the command: 0 if it succeeded, 1 if it failed.
+     * @throws IOException If the daemon cannot be reached or closed the connection before the status.
+     */
+    public static int send(Path socket, String command, OutputStream out, OutputStream err) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+            DataOutputStream request = new DataOutputStream(ChannelStreams.output(channel));
+            request.writeInt(bytes.length);
+            request.write(bytes);
+            request.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(ChannelStreams.input(channel), 16 * 1024));
+            byte[] buffer = new byte[16 * 1024];
+            for (;;) {
+                int type = in.read();
+                if (type < 0) {throw new EOFException("The daemon closed the connection.");}
+                int length = in.readInt();
+                if (type == DaemonServer.EXIT) {return in.readInt();}
+                OutputStream target = type == DaemonServer.STDERR ? err : out;
+                while (length > 0) {
+                    int read = in.read(buffer, 0, Math.min(buffer.length, length));
+                    if (read < 0) {throw new EOFException("The daemon closed the connection.");}
+                    target.write(buffer, 0, read);
+                    length -= read;
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                    err.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.cli.daemon;
+
+import org.cli.Start;
+import org.cli.manager.CommandHistory;
+import org.cli.scheduler.JobScheduler;
+import org.cli.utils.ChannelStreams;
+import org.cli.utils.OutputCapture;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
+
+/**
+ * <h1>Daemon mode</h1>
+ * <p>
+ * Starting the JVM, loading Jackson, Prometheus and the JDBC driver, logging in to the database and warming up
+ * the JIT take far longer than a one-line query. A script that calls LunaCLI hundreds of times pays that every
+ * time. The daemon pays it once: it keeps the session (connection, pool, history, scheduled jobs) of a prompt
+ * alive and runs the commands that {@link DaemonClient} sends over a Unix domain socket.
+ * </p>
+ * <p>
+ * Commands run one at a time, in arrival order, because they share the session connection and its transaction,
+ * exactly as if they were typed at one prompt. While a command runs, what it prints is streamed back to the
+ * client that sent it, standard output and standard error apart, followed by its status. The socket is only
+ * accessible to its owner, since whoever can connect acts with the daemon's database session.
+ * </p>
+ * <p>
+ * Protocol: the client sends the command as a 4-byte length and UTF-8 bytes. The daemon answers with frames of a
+ * type byte, a 4-byte length and the payload: {@code O} standard output, {@code E} standard error, and finally
+ * {@code X} with the 4-byte exit status (0 succeeded, 1 failed).
+ * </p>
+ */
+public class DaemonServer {
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'E';
+    static final byte EXIT = 'X';
+    private static final int MAX_COMMAND_BYTES = 1 << 20;
+
+    private static final ReentrantLock commandLock = new ReentrantLock(true);
+    private static ServerSocketChannel listener;
+    private static Path socketPath;
+    private static volatile boolean stopping = false;
+
+    /**
+     * Starts listening on the given socket and serves commands until a client sends {@code :qa!}.
+     *
+     * @param path The socket path.
+     * @throws IOException If the socket cannot be created, for example because another daemon uses it.
+     */
+    public static void run(Path path) throws IOException {
+        start(path);
+        System.out.println(VALID_MESSAGE + "LunaCLI daemon listening on " + path + ". Send commands with: java -jar LunaCLI.jar send <command>");
+        CommandHistory.load();
+        int jobs = JobScheduler.start();
+        if (jobs > 0) {
+            System.out.println("Loaded " + jobs + " scheduled jobs, they run once a client connects the session.");
+        }
+        serve();
+    }
+
+    /**
+     * Creates the socket. A socket file left behind by a daemon that died is replaced; one that a running daemon
+     * answers on is not.
+     *
+     * @param path The socket path.
+     * @throws IOException If the socket is in use or cannot be created.
+     */
+    public static synchronized void start(Path path) throws IOException {
+        if (listener != null) {throw new IOException("The daemon is already listening on " + socketPath + ".");}
+        if (Files.exists(path)) {
+            if (isListening(path)) {throw new IOException("Another LunaCLI daemon is listening on " + path + ".");}
+            Files.delete(path);
+        }
+        ServerSocketChannel created = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            created.bind(UnixDomainSocketAddress.of(path));
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+        } catch (IOException e) {
+            created.close();
+            throw e;
+        }
+        listener = created;
+        socketPath = path;
+        stopping = false;
+    }
+
+    /**
+     * Accepts clients until the daemon is stopped. Each client gets its own thread, which waits for its turn to
+     * run the command.
+     */
+    public static void serve() {
+        ServerSocketChannel accepting = listener;
+        while (!stopping && accepting != null && accepting.isOpen()) {
+            try {
+                SocketChannel client = accepting.accept();
+                Thread thread = new Thread(() -> handle(client), "luna-daemon-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!accepting.isOpen()) {break;}
+            }
+        }
+    }
+
+    /**
+     * Closes the socket and removes its file. Commands already running finish.
+     */
+    public static synchronized void stop() {
+        stopping = true;
+        if (listener == null) {return;}
+        try {
+            listener.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException ignored) {
+        }
+        listener = null;
+    }
+
+    private static boolean isListening(Path path) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(path)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(ChannelStreams.input(client));
+            int length = in.readInt();
+            if (length < 0 || length > MAX_COMMAND_BYTES) {return;}
+            byte[] command = new byte[length];
+            in.readFully(command);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(ChannelStreams.output(client), 16 * 1024));
+            int status = execute(new String(command, StandardCharsets.UTF_8).trim(), out);
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(4);
+                out.writeInt(status);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Runs a command with what it prints on this thread sent to the client. The global streams are not swapped,
+     * so scheduled jobs and other threads keep printing where they did.
+     *
+     * @return The exit status.
+     */
+    private static int execute(String command, DataOutputStream client) {
+        int[] status = new int[1];
+        commandLock.lock();
+        try {
+            // Both write frames into the one buffered client stream, so their order is kept.
+            OutputCapture.redirect(new FrameOutputStream(client, STDOUT), new FrameOutputStream(client, STDERR), () -> {
+                try {
+                    if (command.isEmpty()) {return;}
+                    if (command.equalsIgnoreCase(":qa!")) {
+                        CommandHistory.flush();
+                        System.out.println(VALID_MESSAGE + "Daemon stopped.");
+                        stop();
+                        return;
+                    }
+                    status[0] = Start.runCommand(command) ? 0 : 1;
+                } catch (Exception e) {
+                    System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());
+                    status[0] = 1;
+                }
+            });
+        } finally {
+            commandLock.unlock();
+        }
+        return status[0];
+    }
+
+    /** Wraps every write in a frame of the given type. */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream client;
+        private final byte type;
+
+        private FrameOutputStream(DataOutputStream client, byte type) {
+            this.client = client;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[]{(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {return;}
+            synchronized (client) {
+                client.writeByte(type);
+                client.writeInt(length);
+                client.write(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (client) {
+                client.flush();
+            }
+        }
+    }
+}
@@ -3,7 +3,7 @@ package org.cli.entities;
 public class ConnectionEntity {
 
     private String username;
-    private static String password;
+    private String password;
     private String database;
 
     public String getUsername() {
@@ -14,7 +14,7 @@ public class ConnectionEntity {
         this.username = username;
     }
 
-    public static String getPassword() {
+    public String getPassword() {
         return password;
     }
 
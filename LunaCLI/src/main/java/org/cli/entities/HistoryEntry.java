@@ -0,0 +1,85 @@
+package org.cli.entities;
+
+public class HistoryEntry {
+
+    public enum Status { OK, FAILED }
+
+    private long id;
+    private long timestamp;
+    private String command;
+    private long durationMs;
+    private long rows;
+    private Status status;
+
+    public HistoryEntry() {
+    }
+
+    public HistoryEntry(long id, long timestamp, String command, long durationMs, long rows, Status status) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.command = command;
+        this.durationMs = durationMs;
+        this.rows = rows;
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryEntry{" +
+                "id=" + id +
+                ", timestamp=" + timestamp +
+                ", command='" + command + '\'' +
+                ", durationMs=" + durationMs +
+                ", rows=" + rows +
+                ", status=" + status +
+                '}';
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
@@ -22,7 +22,15 @@ public class Info {
         this.databaseName = databaseName;
     }
 
+    public static int getDefaultPort() {
+        return info.getPORT();
+    }
+
     public static String getBaseUrlForPostgresql() {
-        return "jdbc:" + info.getDatabaseName() + "://localhost:" + info.getPORT() + "/";
+        return getUrlForPostgresql(null, null);
+    }
+
+    public static String getUrlForPostgresql(String host, Integer port) {
+        return "jdbc:" + info.getDatabaseName() + "://" + (host == null ? "localhost" : host) + ":" + (port == null ? info.getPORT() : port) + "/";
     }
 }
@@ -0,0 +1,138 @@
+package org.cli.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JobEntity {
+
+    public enum Type { ONCE, RATE, CRON }
+
+    public enum Overlap { SKIP, QUEUE, CANCEL }
+
+    public enum Status { ACTIVE, PAUSED, CANCELLED, DONE }
+
+    private int id;
+    private String command;
+    private Type type;
+    private long intervalMs;
+    private String cron;
+    private Overlap overlap = Overlap.SKIP;
+    private Status status = Status.ACTIVE;
+    private long createdAt;
+    private long nextRunAt;
+    private long runCount;
+    private long failureCount;
+    private List<JobRunEntity> history = new ArrayList<>();
+
+    @Override
+    public String toString() {
+        return "JobEntity{" +
+                "id=" + id +
+                ", command='" + command + '\'' +
+                ", type=" + type +
+                ", intervalMs=" + intervalMs +
+                ", cron='" + cron + '\'' +
+                ", overlap=" + overlap +
+                ", status=" + status +
+                ", nextRunAt=" + nextRunAt +
+                ", runCount=" + runCount +
+                ", failureCount=" + failureCount +
+                '}';
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public void setIntervalMs(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    public Overlap getOverlap() {
+        return overlap;
+    }
+
+    public void setOverlap(Overlap overlap) {
+        this.overlap = overlap;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public long getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public void setNextRunAt(long nextRunAt) {
+        this.nextRunAt = nextRunAt;
+    }
+
+    public long getRunCount() {
+        return runCount;
+    }
+
+    public void setRunCount(long runCount) {
+        this.runCount = runCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(long failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public List<JobRunEntity> getHistory() {
+        return history;
+    }
+
+    public void setHistory(List<JobRunEntity> history) {
+        this.history = history;
+    }
+}
@@ -0,0 +1,74 @@
+package org.cli.entities;
+
+public class JobRunEntity {
+
+    public enum Status { OK, FAILED, SKIPPED, CANCELLED }
+
+    private long startedAt;
+    private long durationMs;
+    private long lagMs;
+    private Status status;
+    private String message;
+
+    public JobRunEntity() {
+    }
+
+    public JobRunEntity(long startedAt, long durationMs, long lagMs, Status status, String message) {
+        this.startedAt = startedAt;
+        this.durationMs = durationMs;
+        this.lagMs = lagMs;
+        this.status = status;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "JobRunEntity{" +
+                "startedAt=" + startedAt +
+                ", durationMs=" + durationMs +
+                ", lagMs=" + lagMs +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                '}';
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public long getLagMs() {
+        return lagMs;
+    }
+
+    public void setLagMs(long lagMs) {
+        this.lagMs = lagMs;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
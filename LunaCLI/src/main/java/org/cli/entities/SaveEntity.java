@@ -1,11 +1,28 @@
 package org.cli.entities;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class SaveEntity {
 
     private String id;
     private String username;
     private String password;
     private String database;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> tags = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String host;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer port;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> replicas = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String routing;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer maxLag;
 
     public SaveEntity() {
     }
@@ -24,6 +41,12 @@ public class SaveEntity {
                 ", username='" + username + '\'' +
                 ", password='" + password + '\'' +
                 ", database='" + database + '\'' +
+                (tags.isEmpty() ? "" : ", tags=" + tags) +
+                (host == null ? "" : ", host='" + host + '\'') +
+                (port == null ? "" : ", port=" + port) +
+                (replicas.isEmpty() ? "" : ", replicas=" + replicas) +
+                (routing == null ? "" : ", routing='" + routing + '\'') +
+                (maxLag == null ? "" : ", maxLag=" + maxLag) +
                 '}';
     }
 
@@ -58,4 +81,52 @@ public class SaveEntity {
     public void setDatabase(String database) {
         this.database = database;
     }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags == null ? new ArrayList<>() : tags;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    public void setPort(Integer port) {
+        this.port = port;
+    }
+
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<String> replicas) {
+        this.replicas = replicas == null ? new ArrayList<>() : replicas;
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    public void setRouting(String routing) {
+        this.routing = routing;
+    }
+
+    public Integer getMaxLag() {
+        return maxLag;
+    }
+
+    public void setMaxLag(Integer maxLag) {
+        this.maxLag = maxLag;
+    }
 }
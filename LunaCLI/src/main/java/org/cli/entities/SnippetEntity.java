@@ -1,12 +1,21 @@
 package org.cli.entities;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class SnippetEntity {
     private  String key;
     private  String value;
     private int id;
+    /** Declared parameters as {@code name:type}, bound by name to {@code :name} placeholders in the value. */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> params = new ArrayList<>();
     @Override
     public String toString() {
-        return "SnippetEntity{id=" + id + ", key='" + key + "', value='" + value + "'}";
+        return "SnippetEntity{id=" + id + ", key='" + key + "', value='" + value + "'"
+                + (params.isEmpty() ? "" : ", params=" + params) + "}";
     }
     public int getId() {
         return id;
@@ -31,4 +40,12 @@ public class SnippetEntity {
     public void setValue(String value) {
         this.value = value;
     }
+
+    public List<String> getParams() {
+        return params;
+    }
+
+    public void setParams(List<String> params) {
+        this.params = params == null ? new ArrayList<>() : params;
+    }
 }
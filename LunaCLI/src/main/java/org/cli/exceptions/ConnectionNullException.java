@@ -3,6 +3,8 @@ package org.cli.exceptions;
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class ConnectionNullException extends Exception{
+    private static final long serialVersionUID = 1L;
+
     public ConnectionNullException() {
         super(INVALID_MESSAGE + "No active database connection. Please connect first.");
     }
@@ -3,6 +3,8 @@ package org.cli.exceptions;
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class HandleChangePortException extends Exception{
+    private static final long serialVersionUID = 1L;
+
     public HandleChangePortException() {
         super(INVALID_MESSAGE + "Invalid Port Number");
     }
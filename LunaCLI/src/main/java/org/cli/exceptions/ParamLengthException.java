@@ -3,6 +3,8 @@ package org.cli.exceptions;
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class ParamLengthException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public ParamLengthException() {
         super(INVALID_MESSAGE + "Parameters are not valid -> 'luna help'");
     }
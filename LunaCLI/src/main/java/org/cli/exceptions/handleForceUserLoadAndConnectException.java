@@ -3,6 +3,8 @@ package org.cli.exceptions;
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class handleForceUserLoadAndConnectException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public handleForceUserLoadAndConnectException(String error) {
         super(INVALID_MESSAGE + "Connection Issue ->" + error);
     }
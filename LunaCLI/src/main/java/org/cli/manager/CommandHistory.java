@@ -1,11 +1,48 @@
 package org.cli.manager;
 
-import java.io.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.cli.entities.HistoryEntry;
+import org.cli.utils.HistoryPath;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 
 public class CommandHistory {
-    private static final List<String> history = new ArrayList<>();
+    private static final int DEFAULT_CAPACITY = 1000;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final Pattern PASSWORD = Pattern.compile("(?i)(password:)\\S+");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicLong totalCommands = new AtomicLong();
+    private static final Queue<HistoryEntry> pending = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean writerStarted = new AtomicBoolean();
+    private static final Object fileLock = new Object();
+    private static volatile AtomicReferenceArray<HistoryEntry> ring = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+    private static BufferedWriter writer;
+    private static String writerPath;
+
     /**
      * Adds a new command to the command history list.
      * <p>
@@ -17,27 +54,208 @@ public class CommandHistory {
      * @param command The command to be added to the history list.
      *               This should be a non-null string representing the entered command.
      */
-    public static void addCommand(String command) {history.add(command);}
+    public static void addCommand(String command) {addCommand(command, 0, 0, HistoryEntry.Status.OK);}
+    /**
+     * Adds a command together with how it went.
+     * <p>
+     * The history keeps the latest entries in a fixed-size ring, so it uses constant memory however long the
+     * session runs; older entries are overwritten. Adding never blocks on a lock or on the disk: the entry is
+     * queued and a background thread appends it to the history file about once a second, rotating the file
+     * once it grows past {@link HistoryPath#maxFileBytes}. Passwords given as {@code password:} are masked.
+     * </p>
+     *
+     * @param command    The command as it was entered.
+     * @param durationMs How long it took.
+     * @param rows       The rows it returned or affected.
+     * @param status     Whether it succeeded.
+     * @return The new entry, with its id.
+     */
+    public static HistoryEntry addCommand(String command, long durationMs, long rows, HistoryEntry.Status status) {
+        long id = sequence.incrementAndGet();
+        HistoryEntry entry = new HistoryEntry(id, System.currentTimeMillis(), PASSWORD.matcher(command).replaceAll("$1****"),
+                durationMs, rows, status);
+        AtomicReferenceArray<HistoryEntry> entries = ring;
+        entries.set(slot(id, entries), entry);
+        totalCommands.incrementAndGet();
+        HistoryIndex.record(entry);
+        pending.add(entry);
+        startWriter();
+        return entry;
+    }
     /**
      * Displays the list of all commands stored in the history.
      * <p>
      * This method iterates through the command history and prints each command
-     * along with its position in the list. It is useful for viewing the sequence
-     * of commands that have been entered so far.
+     * along with its id, when it ran, how long it took, the rows it returned and
+     * whether it failed.
      * </p>
      *
      * <p>
      * The commands are printed in the following format:
-     * <code>index. command</code>
+     * <code>id. command  (time, duration, rows, status)</code>
      * </p>
      */
     public static void showHistory() {
-        for (int i = 0; i < history.size(); i++) {System.out.println((i + 1) + ". " + history.get(i));}
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (HistoryEntry entry : getEntries()) {
+            System.out.printf("%d. %s  (%s, %d ms, %d rows, %s)%n", entry.getId(), entry.getCommand(),
+                    format.format(new Date(entry.getTimestamp())), entry.getDurationMs(), entry.getRows(), entry.getStatus());
+        }
+    }
+    /**
+     * Returns the entries currently in the history, oldest first. Safe to call from any thread while commands
+     * are being added; an entry overwritten during the call is left out.
+     *
+     * @return A snapshot of the history.
+     */
+    public static List<HistoryEntry> getEntries() {
+        AtomicReferenceArray<HistoryEntry> entries = ring;
+        long last = sequence.get();
+        long first = Math.max(1, last - entries.length() + 1);
+        List<HistoryEntry> snapshot = new ArrayList<>();
+        for (long id = first; id <= last; id++) {
+            HistoryEntry entry = entries.get(slot(id, entries));
+            if (entry != null && entry.getId() == id) {
+                snapshot.add(entry);
+            }
+        }
+        return snapshot;
+    }
+    /**
+     * @param id The entry id shown by {@code history}.
+     * @return The entry, or null if it is no longer in the history.
+     */
+    public static HistoryEntry getEntry(long id) {
+        AtomicReferenceArray<HistoryEntry> entries = ring;
+        HistoryEntry entry = id < 1 ? null : entries.get(slot(id, entries));
+        return entry != null && entry.getId() == id ? entry : null;
     }
     /**
      * Get history size
      * */
     public static int getHistorySize() {
-        return history.size();
+        long last = sequence.get();
+        return (int) Math.min(last, ring.length());
+    }
+    /**
+     * Get the number of commands entered since the start, including the ones no longer in the history
+     * */
+    public static long getTotalCommands() {
+        return totalCommands.get();
+    }
+    /**
+     * Loads the most recent entries of the history file, including its rotated part, so ids and history
+     * continue across restarts.
+     *
+     * @return The number of entries loaded.
+     */
+    public static int load() {
+        return load(DEFAULT_CAPACITY);
+    }
+    /**
+     * Replaces the history with the latest {@code capacity} entries of the history file and rebuilds the
+     * fingerprint index from them.
+     *
+     * @param capacity The number of entries kept in memory.
+     * @return The number of entries loaded.
+     */
+    public static int load(int capacity) {
+        flush();
+        synchronized (fileLock) {
+            try {
+                if (writer != null) {closeWriter();}
+            } catch (IOException ignored) {}
+        }
+        ArrayDeque<HistoryEntry> latest = new ArrayDeque<>(capacity);
+        for (Path file : List.of(rotatedPath(), Path.of(HistoryPath.filePath))) {
+            if (!Files.exists(file)) {continue;}
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) {continue;}
+                    try {
+                        latest.addLast(objectMapper.readValue(line, HistoryEntry.class));
+                    } catch (IOException ignored) {
+                        // A line cut short by a crash; skip it.
+                        continue;
+                    }
+                    if (latest.size() > capacity) {latest.removeFirst();}
+                }
+            } catch (IOException e) {
+                System.out.println(INVALID_MESSAGE + "Could not read " + file + ": " + e.getMessage());
+            }
+        }
+
+        AtomicReferenceArray<HistoryEntry> entries = new AtomicReferenceArray<>(capacity);
+        long last = 0;
+        HistoryIndex.clear();
+        for (HistoryEntry entry : latest) {
+            entries.set(slot(entry.getId(), entries), entry);
+            HistoryIndex.record(entry);
+            last = Math.max(last, entry.getId());
+        }
+        ring = entries;
+        sequence.set(last);
+        return latest.size();
+    }
+    /**
+     * Writes every queued entry to the history file now. Called on exit; otherwise the background thread does it.
+     */
+    public static void flush() {
+        synchronized (fileLock) {
+            HistoryEntry entry;
+            try {
+                while ((entry = pending.poll()) != null) {
+                    if (writer != null && !HistoryPath.filePath.equals(writerPath)) {closeWriter();}
+                    if (writer == null) {
+                        writer = Files.newBufferedWriter(Path.of(HistoryPath.filePath), StandardCharsets.UTF_8,
+                                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                        writerPath = HistoryPath.filePath;
+                    }
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.newLine();
+                }
+                if (writer != null) {
+                    writer.flush();
+                    rotateIfNeeded();
+                }
+            } catch (IOException e) {
+                pending.clear();
+                System.out.println(INVALID_MESSAGE + "Could not write " + HistoryPath.filePath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void rotateIfNeeded() throws IOException {
+        Path file = Path.of(writerPath);
+        if (Files.size(file) <= HistoryPath.maxFileBytes) {return;}
+        closeWriter();
+        Files.move(file, Path.of(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void closeWriter() throws IOException {
+        writer.close();
+        writer = null;
+        writerPath = null;
+    }
+
+    private static Path rotatedPath() {
+        return Path.of(HistoryPath.filePath + ".1");
+    }
+
+    private static void startWriter() {
+        if (!writerStarted.compareAndSet(false, true)) {return;}
+        Thread thread = new Thread(() -> {
+            while (true) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS));
+                if (!pending.isEmpty()) {flush();}
+            }
+        }, "luna-history-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(CommandHistory::flush));
+    }
+
+    private static int slot(long id, AtomicReferenceArray<HistoryEntry> entries) {
+        return (int) Math.floorMod(id, (long) entries.length());
     }
 }
@@ -0,0 +1,54 @@
+package org.cli.manager;
+
+public class CommandOutcome {
+
+    private static final ThreadLocal<CommandOutcome> current = new ThreadLocal<>();
+
+    private long rows;
+    private boolean failed;
+
+    /**
+     * Starts collecting the outcome of a command on the calling thread. The code that runs the command reports
+     * rows and failures through the static methods, without having to return them through every layer.
+     *
+     * @return The outcome, filled in until {@link #end()}.
+     */
+    public static CommandOutcome begin() {
+        CommandOutcome outcome = new CommandOutcome();
+        current.set(outcome);
+        return outcome;
+    }
+
+    /**
+     * Stops collecting on the calling thread.
+     */
+    public static void end() {
+        current.remove();
+    }
+
+    /**
+     * Adds rows returned or affected by the command running on the calling thread, if any.
+     *
+     * @param count The number of rows.
+     */
+    public static void rows(long count) {
+        CommandOutcome outcome = current.get();
+        if (outcome != null) {outcome.rows += count;}
+    }
+
+    /**
+     * Marks the command running on the calling thread as failed, if any.
+     */
+    public static void failed() {
+        CommandOutcome outcome = current.get();
+        if (outcome != null) {outcome.failed = true;}
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+}
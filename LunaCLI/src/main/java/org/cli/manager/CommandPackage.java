@@ -26,7 +26,7 @@ public class CommandPackage {
     public static void command(String command) throws SQLException {
         String[] parts = command.split(" ");
 
-        if (parts.length < 2) { System.out.println(INVALID_MESSAGE + "Invalid Command");}
+        if (parts.length < 2) { CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "Invalid Command");}
 
         String mainCommand = parts[0].toLowerCase();
         String subCommand = parts[1].toLowerCase();
@@ -36,6 +36,7 @@ public class CommandPackage {
                 handleLunaCommand(subCommand, parts);
                 break;
             default:
+                CommandOutcome.failed();
                 System.out.println(INVALID_MESSAGE + "Invalid Command");
         }
     }
@@ -76,10 +77,29 @@ public class CommandPackage {
             case "info":
                 ConnectToPostgresql.displayInfo();
                 break;
+            // Connection pool stats and settings
+            case "pool":
+                handlePoolCommand(parts);
+                break;
+            // Connection multiplexing proxy for other clients
+            case "proxy":
+                handleProxyCommand(parts);
+                break;
             // Scheduling a given command by user
             case "schedule":
                 handleSchedulerAndSchedule(parts);
                 break;
+            case "jobs":
+                handleJobsCommand(parts);
+                break;
+            // Search, rank and replay past commands
+            case "history":
+                handleHistoryCommand(parts);
+                break;
+            // Streaming renderer settings
+            case "stream":
+                handleStreamSettings(parts);
+                break;
             // Export
             case "out":
                 handleExportToCsv(parts);
@@ -92,6 +112,10 @@ public class CommandPackage {
             case "multiple":
                 handleMultipleQueries(parts);
                 break;
+            // Run a query on several saved users
+            case "fanout":
+                handleFanoutCommand(parts);
+                break;
             // Create a snippet
             case "snippetc":
                 handleSaveSnippetQuery(parts);
@@ -109,6 +133,7 @@ public class CommandPackage {
                     String sqlCommand = String.join(" ", parts).substring(5);
                     ExecutePostgresql.command(sqlCommand);
                 } else {
+                    CommandOutcome.failed();
                     System.out.println(INVALID_MESSAGE + "Unknown Command");
                 }
         }
@@ -0,0 +1,246 @@
+package org.cli.manager;
+
+import org.cli.entities.HistoryEntry;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+public class HistoryIndex {
+    private static final int MAX_FINGERPRINTS = 5000;
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int RECENT_IDS = 5;
+
+    private static final Pattern PARAM = Pattern.compile("(?<=^|\\s)([a-z_]+):(?!:)\\S+");
+    private static final Pattern OPERATOR = Pattern.compile("\\s*([=<>!]+)\\s*");
+    private static final Pattern COMMA = Pattern.compile("\\s*,\\s*");
+    private static final Pattern PARENTHESES = Pattern.compile("\\(\\s+|\\s+\\)");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    private static final Map<String, Stats> index = new ConcurrentHashMap<>();
+
+    /**
+     * Aggregated runs of one fingerprint. The p95 is taken over the latest {@value #LATENCY_SAMPLES} runs.
+     */
+    public static final class Stats {
+        private final String fingerprint;
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private final long[] recentIds = new long[RECENT_IDS];
+        private long calls;
+        private long failures;
+        private long totalMs;
+        private long lastId;
+        private long lastRun;
+
+        private Stats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private synchronized void record(HistoryEntry entry) {
+            latencies[(int) (calls % LATENCY_SAMPLES)] = entry.getDurationMs();
+            recentIds[(int) (calls % RECENT_IDS)] = entry.getId();
+            calls++;
+            totalMs += entry.getDurationMs();
+            if (entry.getStatus() == HistoryEntry.Status.FAILED) {failures++;}
+            if (entry.getId() >= lastId) {
+                lastId = entry.getId();
+                lastRun = entry.getTimestamp();
+            }
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        public synchronized long getTotalMs() {
+            return totalMs;
+        }
+
+        public synchronized double getMeanMs() {
+            return calls == 0 ? 0 : (double) totalMs / calls;
+        }
+
+        public synchronized long getP95Ms() {
+            int count = (int) Math.min(calls, LATENCY_SAMPLES);
+            if (count == 0) {return 0;}
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(0.95 * count) - 1];
+        }
+
+        public synchronized long getLastId() {
+            return lastId;
+        }
+
+        public synchronized long getLastRun() {
+            return lastRun;
+        }
+
+        /**
+         * @return The ids of the latest runs, newest first.
+         */
+        public synchronized List<Long> getRecentIds() {
+            List<Long> ids = new ArrayList<>();
+            for (long i = calls - 1; i >= Math.max(0, calls - RECENT_IDS); i--) {
+                ids.add(recentIds[(int) (i % RECENT_IDS)]);
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Returns the fingerprint of a command: string and number literals become {@code ?}, lists of them become
+     * {@code (?, ...)}, {@code param:value} tokens become {@code param:?}, and case and spacing are normalized,
+     * so {@code SELECT * FROM users WHERE id = 5} and {@code select * from users where id=7} count as one query.
+     *
+     * @param command The command as entered.
+     * @return The fingerprint.
+     */
+    public static String fingerprint(String command) {
+        StringBuilder out = new StringBuilder(command.length());
+        int i = 0;
+        int length = command.length();
+        while (i < length) {
+            char c = command.charAt(i);
+            if (c == '\'') {
+                i++;
+                while (i < length) {
+                    if (command.charAt(i) == '\'') {
+                        if (i + 1 < length && command.charAt(i + 1) == '\'') {i += 2; continue;}
+                        break;
+                    }
+                    i++;
+                }
+                out.append('?');
+                i++;
+            } else if (c == '"') {
+                int end = command.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                out.append(command, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(out)) {
+                while (i < length && (Character.isDigit(command.charAt(i)) || command.charAt(i) == '.')) {i++;}
+                out.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(command.charAt(i))) {i++;}
+                if (out.length() > 0 && i < length) {out.append(' ');}
+            } else {
+                out.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        String fingerprint = PARAM.matcher(out).replaceAll("$1:?");
+        fingerprint = OPERATOR.matcher(fingerprint).replaceAll(" $1 ");
+        fingerprint = COMMA.matcher(fingerprint).replaceAll(", ");
+        fingerprint = PARENTHESES.matcher(fingerprint).replaceAll(match -> match.group().trim());
+        return IN_LIST.matcher(fingerprint).replaceAll("(?, ...)");
+    }
+
+    /**
+     * Adds a run to the statistics of its fingerprint. {@code history} commands themselves are not indexed.
+     *
+     * @param entry The history entry.
+     */
+    public static void record(HistoryEntry entry) {
+        String fingerprint = fingerprint(entry.getCommand());
+        if (fingerprint.startsWith("luna history")) {return;}
+        if (index.size() >= MAX_FINGERPRINTS && !index.containsKey(fingerprint)) {evictOldest();}
+        index.computeIfAbsent(fingerprint, Stats::new).record(entry);
+    }
+
+    /**
+     * Forgets every fingerprint.
+     */
+    public static void clear() {
+        index.clear();
+    }
+
+    /**
+     * @param text The text to look for, in any case.
+     * @return The fingerprints containing the text, most recently run first.
+     */
+    public static List<Stats> search(String text) {
+        String needle = fingerprint(text);
+        List<Stats> matches = new ArrayList<>();
+        for (Stats stats : index.values()) {
+            if (stats.getFingerprint().contains(needle)) {matches.add(stats);}
+        }
+        matches.sort(Comparator.comparingLong(Stats::getLastId).reversed());
+        return matches;
+    }
+
+    /**
+     * @param order {@code total}, {@code mean}, {@code p95} or {@code calls}.
+     * @param limit The number of fingerprints to return.
+     * @return The most expensive fingerprints by the given order.
+     */
+    public static List<Stats> top(String order, int limit) {
+        Comparator<Stats> comparator;
+        switch (order) {
+            case "total":
+                comparator = Comparator.comparingLong(Stats::getTotalMs);
+                break;
+            case "mean":
+                comparator = Comparator.comparingDouble(Stats::getMeanMs);
+                break;
+            case "p95":
+                comparator = Comparator.comparingLong(Stats::getP95Ms);
+                break;
+            case "calls":
+                comparator = Comparator.comparingLong(Stats::getCalls);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown order: " + order + ". Use total, mean, p95 or calls.");
+        }
+        List<Stats> sorted = new ArrayList<>(index.values());
+        sorted.sort(comparator.reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Prints fingerprint statistics as a table.
+     *
+     * @param rows The statistics to print.
+     */
+    public static void display(List<Stats> rows) {
+        if (rows.isEmpty()) {
+            System.out.println("No matching commands in the history.");
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        System.out.printf("%6s %6s %10s %9s %8s %-19s %-16s %s%n", "CALLS", "FAILED", "TOTAL MS", "MEAN MS", "P95 MS", "LAST RUN", "IDS", "FINGERPRINT");
+        for (Stats stats : rows) {
+            String ids = stats.getRecentIds().toString().replace(" ", "");
+            System.out.printf(Locale.ROOT, "%6d %6d %10d %9.1f %8d %-19s %-16s %s%n", stats.getCalls(), stats.getFailures(),
+                    stats.getTotalMs(), stats.getMeanMs(), stats.getP95Ms(), format.format(new Date(stats.getLastRun())),
+                    ids, stats.getFingerprint());
+        }
+    }
+
+    private static boolean isIdentifierPart(StringBuilder out) {
+        if (out.length() == 0) {return false;}
+        char previous = out.charAt(out.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_' || previous == '$' || previous == '.';
+    }
+
+    private static void evictOldest() {
+        index.values().stream()
+                .min(Comparator.comparingLong(Stats::getLastId))
+                .ifPresent(oldest -> index.remove(oldest.getFingerprint()));
+    }
+}
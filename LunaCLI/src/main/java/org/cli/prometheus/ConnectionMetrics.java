@@ -0,0 +1,183 @@
+package org.cli.prometheus;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.Histogram;
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConnectionMetrics {
+
+    private static final Histogram borrowWait = Histogram.build()
+            .name("luna_pool_borrow_wait_seconds")
+            .help("Time spent waiting for a free connection slot in the pool")
+            .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 30)
+            .register();
+
+    private static final Histogram connectionCreate = Histogram.build()
+            .name("luna_pool_connection_create_seconds")
+            .help("Time taken to open and authenticate a new physical connection")
+            .buckets(0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+            .register();
+
+    private static final Counter poolEvents = Counter.build()
+            .name("luna_pool_events_total")
+            .help("Pool events: created, destroyed, timeout, validation_failure, reconnect")
+            .labelNames("event")
+            .register();
+
+    private static final Counter statements = Counter.build()
+            .name("luna_jdbc_statements_total")
+            .help("Statements created on pooled connections: simple, prepared (first use of the SQL on the connection), reused (served by the driver's statement cache) or callable")
+            .labelNames("type")
+            .register();
+
+    private static final Counter snippetStatements = Counter.build()
+            .name("luna_snippet_statement_cache_total")
+            .help("Executions of parameterized snippets by whether their prepared statement was cached on the connection (hit) or had to be prepared (miss)")
+            .labelNames("result")
+            .register();
+
+    private static final Counter routedReads = Counter.build()
+            .name("luna_routed_reads_total")
+            .help("Read-only commands of sessions with replicas, by where they ran: replica or primary")
+            .labelNames("target")
+            .register();
+
+    private static final Counter replicaUnreachable = Counter.build()
+            .name("luna_replica_unreachable_total")
+            .help("Times a replica could not be reached and was left out for a while")
+            .register();
+
+    private static final Gauge replicaLag = Gauge.build()
+            .name("luna_replica_lag_seconds")
+            .help("Last measured replication lag of each replica")
+            .labelNames("replica")
+            .register();
+
+    private static final Counter sessionReconnects = Counter.build()
+            .name("luna_session_reconnects_total")
+            .help("Attempts to replace a session connection that died, by result: success or failure")
+            .labelNames("result")
+            .register();
+
+    private static final Histogram sessionDowntime = Histogram.build()
+            .name("luna_session_downtime_seconds")
+            .help("Time from finding the session connection dead to replacing it")
+            .buckets(0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300)
+            .register();
+
+    private static final Counter keepaliveChecks = Counter.build()
+            .name("luna_keepalive_checks_total")
+            .help("Validations of the session connection, by result: alive or dead")
+            .labelNames("result")
+            .register();
+
+    private static final Counter statementRetries = Counter.build()
+            .name("luna_statement_retries_total")
+            .help("Read-only statements run again after their connection broke")
+            .register();
+
+    /**
+     * Publishes the current state of the session's connection pool when Prometheus scrapes.
+     */
+    static class PoolCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples> samples = new ArrayList<>();
+            ConnectionPoolPostgresql pool = ConnectToPostgresql.pool;
+            if (pool == null || pool.isClosed()) {
+                return samples;
+            }
+            samples.add(new GaugeMetricFamily("luna_pool_connections_active", "Connections currently leased", pool.getActiveConnections()));
+            samples.add(new GaugeMetricFamily("luna_pool_connections_idle", "Open connections waiting in the pool", pool.getIdleConnections()));
+            samples.add(new GaugeMetricFamily("luna_pool_connections_total", "Open physical connections", pool.getTotalConnections()));
+            samples.add(new GaugeMetricFamily("luna_pool_connections_max", "Maximum size of the pool", pool.getMaxSize()));
+            samples.add(new GaugeMetricFamily("luna_pool_pending_borrowers", "Threads waiting for a connection", pool.getPendingBorrowers()));
+            samples.add(new GaugeMetricFamily("luna_pool_utilization_ratio", "Share of the maximum pool size in use", pool.getUtilization()));
+            return samples;
+        }
+    }
+
+    public static void borrowWait(long nanos) {
+        borrowWait.observe(nanos / 1_000_000_000.0);
+    }
+
+    public static void connectionCreated(long nanos) {
+        connectionCreate.observe(nanos / 1_000_000_000.0);
+        poolEvents.labels("created").inc();
+    }
+
+    public static void connectionDestroyed() {
+        poolEvents.labels("destroyed").inc();
+    }
+
+    public static void borrowTimeout() {
+        poolEvents.labels("timeout").inc();
+    }
+
+    public static void validationFailure() {
+        poolEvents.labels("validation_failure").inc();
+    }
+
+    /**
+     * Counts a connection opened to replace one that was found broken.
+     */
+    public static void reconnect() {
+        poolEvents.labels("reconnect").inc();
+    }
+
+    /**
+     * @param type {@code simple}, {@code prepared}, {@code reused} or {@code callable}.
+     */
+    public static void statement(String type) {
+        statements.labels(type).inc();
+    }
+
+    /**
+     * @param hit Whether a parameterized snippet reused the prepared statement cached on its connection.
+     */
+    public static void snippetStatement(boolean hit) {
+        snippetStatements.labels(hit ? "hit" : "miss").inc();
+    }
+
+    /**
+     * @param target {@code replica} or {@code primary}.
+     */
+    public static void routedRead(String target) {
+        routedReads.labels(target).inc();
+    }
+
+    public static void replicaUnreachable() {
+        replicaUnreachable.inc();
+    }
+
+    public static void replicaLag(String replica, double seconds) {
+        replicaLag.labels(replica).set(seconds);
+    }
+
+    /**
+     * @param success        Whether the broken session connection was replaced.
+     * @param downtimeMillis How long the session was without a working connection, when it succeeded.
+     */
+    public static void sessionReconnect(boolean success, long downtimeMillis) {
+        sessionReconnects.labels(success ? "success" : "failure").inc();
+        if (success) {
+            sessionDowntime.observe(downtimeMillis / 1000.0);
+            reconnect();
+        }
+    }
+
+    public static void keepalive(boolean alive) {
+        keepaliveChecks.labels(alive ? "alive" : "dead").inc();
+    }
+
+    public static void statementRetry() {
+        statementRetries.inc();
+    }
+}
@@ -1,78 +1,117 @@
 package org.cli.prometheus;
 
-import io.prometheus.client.Counter;
-import io.prometheus.client.Gauge;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
 import io.prometheus.client.exporter.HTTPServer;
+import io.prometheus.client.hotspot.DefaultExports;
+import org.cli.utils.MetricsConfig;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.sun.management.OperatingSystemMXBean;
 
 import static org.cli.manager.CommandHistory.getHistorySize;
+import static org.cli.manager.CommandHistory.getTotalCommands;
 
 public class MetricsServer {
 
-    private static final Counter requestCounter = Counter.build()
-            .name("total_requests")
-            .help("Number of requests")
-            .register();
-
-    private static final Gauge historySizeGauge = Gauge.build()
-            .name("cli_command_history_size")
-            .help("CLI Command counter")
-            .register();
-
-    private static final Gauge memoryUsageGauge = Gauge.build()
-            .name("system_memory_usage_mb")
-            .help("System memory usage in MB")
-            .register();
-
-    private static final Gauge cpuUsageGauge = Gauge.build()
-            .name("system_cpu_usage")
-            .help("CPU usage percentage")
-            .register();
-
-    private static final Gauge loadAverageGauge = Gauge.build()
-            .name("system_load_average")
-            .help("System load average")
-            .register();
+    private static final int HTTP_THREADS = 2;
+    private static final int HTTP_QUEUE = 16;
 
     private static final OperatingSystemMXBean osBean =
             (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
 
-    public static void main(String[] args) throws IOException {
-        HTTPServer server = new HTTPServer(9091);
-        
-        new Thread(() -> {
-            while (true) {
-                updateMetrics();
-                try {
-                    Thread.sleep(10000);
-                } catch (InterruptedException ignored) {}
+    private static HTTPServer server;
+    private static boolean registered = false;
+
+    /**
+     * Reads the CLI and system metrics when Prometheus scrapes, so the values are never stale and nothing runs
+     * while nobody is scraping.
+     */
+    static class CliCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples> samples = new ArrayList<>();
+            samples.add(new CounterMetricFamily("total_requests", "Number of commands entered", getTotalCommands()));
+            samples.add(new GaugeMetricFamily("cli_command_history_size", "Commands kept in the history", getHistorySize()));
+
+            double totalMemory = osBean.getTotalMemorySize() / (1024.0 * 1024.0);
+            double freeMemory = osBean.getFreeMemorySize() / (1024.0 * 1024.0);
+            samples.add(new GaugeMetricFamily("system_memory_usage_mb", "System memory usage in MB", totalMemory - freeMemory));
+
+            double cpuLoad = osBean.getCpuLoad() * 100;
+            if (cpuLoad >= 0) {
+                samples.add(new GaugeMetricFamily("system_cpu_usage", "CPU usage percentage", cpuLoad));
+            }
+            double systemLoad = osBean.getSystemLoadAverage();
+            if (systemLoad >= 0) {
+                samples.add(new GaugeMetricFamily("system_load_average", "System load average", systemLoad));
             }
-        }).start();
+            return samples;
+        }
     }
 
-    private static void updateMetrics() {
-        int historySize = getHistorySize();
-        requestCounter.inc();
-        historySizeGauge.set(historySize);
-
-
-        double totalMemory = osBean.getTotalPhysicalMemorySize() / (1024.0 * 1024.0);
-        double freeMemory = osBean.getFreePhysicalMemorySize() / (1024.0 * 1024.0);
-        double usedMemory = totalMemory - freeMemory;
-        memoryUsageGauge.set(usedMemory);
-
-        double cpuLoad = osBean.getSystemCpuLoad() * 100;
-        if (cpuLoad >= 0) {
-            cpuUsageGauge.set(cpuLoad);
+    /**
+     * Starts the metrics endpoint on {@link MetricsConfig#host} and {@link MetricsConfig#port}.
+     * <p>
+     * Besides the CLI and connection pool metrics, the standard JVM collectors are registered: GC pauses,
+     * memory pools and allocation, buffer pools, threads and class loading. Scrapes are served by at most two
+     * daemon threads with a short queue; a burst of scrapes beyond that is answered on the accepting thread
+     * instead of starting new threads. Calling it again does nothing. The collectors are registered once the
+     * address is bound, so a failed start can be retried, for example on another port.
+     * </p>
+     *
+     * @throws IOException If the address cannot be bound, for example because the port is in use.
+     */
+    public static synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, HTTP_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(HTTP_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "luna-metrics-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            server = new HTTPServer.Builder()
+                    .withHostname(MetricsConfig.host)
+                    .withPort(MetricsConfig.port)
+                    .withExecutorService(executor)
+                    .withDaemonThreads(true)
+                    .build();
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        if (!registered) {
+            new CliCollector().register();
+            new ConnectionMetrics.PoolCollector().register();
+            new ProxyMetrics.ProxyCollector().register();
+            DefaultExports.initialize();
+            registered = true;
         }
+    }
 
+    /**
+     * @return The address the metrics are served on, for display.
+     */
+    public static String getUrl() {
+        String host = "0.0.0.0".equals(MetricsConfig.host) ? "localhost" : MetricsConfig.host;
+        return "http://" + host + ":" + MetricsConfig.port + "/metrics";
+    }
 
-        double systemLoad = osBean.getSystemLoadAverage();
-        if (systemLoad >= 0) {
-            loadAverageGauge.set(systemLoad);
-        }
+    public static void main(String[] args) throws IOException {
+        start();
     }
 }
@@ -0,0 +1,62 @@
+package org.cli.prometheus;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.Histogram;
+import org.cli.proxy.ProxyServer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProxyMetrics {
+
+    private static final Histogram queueWait = Histogram.build()
+            .name("luna_proxy_queue_wait_seconds")
+            .help("Time proxy clients waited for a server connection")
+            .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 30)
+            .register();
+
+    private static final Counter queueTimeouts = Counter.build()
+            .name("luna_proxy_queue_timeouts_total")
+            .help("Proxy clients disconnected because no server connection became free in time")
+            .register();
+
+    private static final Counter reprepared = Counter.build()
+            .name("luna_proxy_statements_reprepared_total")
+            .help("Named prepared statements parsed again because the client got a server connection that had not seen them")
+            .register();
+
+    /**
+     * Publishes the clients and server connections of the running proxy when Prometheus scrapes.
+     */
+    static class ProxyCollector extends Collector {
+        @Override
+        public List<MetricFamilySamples> collect() {
+            List<MetricFamilySamples> samples = new ArrayList<>();
+            ProxyServer proxy = ProxyServer.current();
+            if (proxy == null) {
+                return samples;
+            }
+            samples.add(new GaugeMetricFamily("luna_proxy_clients", "Clients connected to the proxy", proxy.getClientCount()));
+            samples.add(new GaugeMetricFamily("luna_proxy_clients_waiting", "Proxy clients waiting for a server connection", proxy.getWaitingClients()));
+            samples.add(new GaugeMetricFamily("luna_proxy_server_connections_active", "Server connections lent to a client", proxy.getActiveServerConnections()));
+            samples.add(new GaugeMetricFamily("luna_proxy_server_connections_idle", "Open server connections not lent to anyone", proxy.getIdleServerConnections()));
+            samples.add(new CounterMetricFamily("luna_proxy_transactions", "Transactions the proxy ran for its clients", proxy.getTransactions()));
+            return samples;
+        }
+    }
+
+    public static void queueWait(long nanos) {
+        queueWait.observe(nanos / 1_000_000_000.0);
+    }
+
+    public static void queueTimeout() {
+        queueTimeouts.inc();
+    }
+
+    public static void statementReprepared() {
+        reprepared.inc();
+    }
+}
@@ -0,0 +1,166 @@
+package org.cli.prometheus;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import org.cli.manager.CommandOutcome;
+
+import java.sql.SQLException;
+
+public class QueryMetrics {
+
+    private static final Histogram commandDuration = Histogram.build()
+            .name("luna_command_duration_seconds")
+            .help("Time taken by commands and SQL statements, by command type")
+            .labelNames("command")
+            .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300)
+            .register();
+
+    private static final Counter rowsReturned = Counter.build()
+            .name("luna_rows_returned_total")
+            .help("Rows read from the database and printed or exported, by command type")
+            .labelNames("command")
+            .register();
+
+    private static final Counter bytesExported = Counter.build()
+            .name("luna_bytes_exported_total")
+            .help("Bytes written to export files, by command type")
+            .labelNames("command")
+            .register();
+
+    private static final Counter errors = Counter.build()
+            .name("luna_command_errors_total")
+            .help("Failed commands and SQL statements, by command type and SQLState")
+            .labelNames("command", "sqlstate")
+            .register();
+
+    private static final ThreadLocal<String> currentCommand = new ThreadLocal<>();
+    private static final Timer NESTED = new Timer(null, 0);
+
+    /**
+     * Measures one command from {@link QueryMetrics#time(String)} until it is closed.
+     * <p>
+     * Callers hold it as a try-with-resources resource named {@code timer} that the body never touches, and mark
+     * the method {@code @SuppressWarnings("try")}.
+     * </p>
+     */
+    public static final class Timer implements AutoCloseable {
+        private final String command;
+        private final long start;
+
+        private Timer(String command, long start) {
+            this.command = command;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            if (command != null) {
+                commandDuration.labels(command).observe((System.nanoTime() - start) / 1_000_000_000.0);
+                currentCommand.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts timing a command on the calling thread.
+     * <p>
+     * Only the outermost command of a thread is timed: when {@code insert-into} builds its SQL and runs it through
+     * {@code command}, or a snippet runs a {@code select-from}, the time and the rows are counted once, under the
+     * command that was typed. Inner calls get a timer that does nothing, so the cost of a nested call is one
+     * thread-local lookup.
+     * </p>
+     *
+     * @param command The command type used as label, such as {@code select-from}, {@code run} or {@code sql}.
+     * @return A timer to close when the command ends, typically in a try-with-resources block.
+     */
+    public static Timer time(String command) {
+        if (currentCommand.get() != null) {
+            return NESTED;
+        }
+        currentCommand.set(command);
+        return new Timer(command, System.nanoTime());
+    }
+
+    /**
+     * Counts rows returned by the command running on the calling thread.
+     *
+     * @param rows The number of rows.
+     */
+    public static void rows(long rows) {
+        rows(current(), rows);
+    }
+
+    /**
+     * Counts rows returned on behalf of a command, for worker threads that run part of a command started on
+     * another thread.
+     *
+     * @param command The command type.
+     * @param rows    The number of rows.
+     */
+    public static void rows(String command, long rows) {
+        if (rows > 0) {
+            rowsReturned.labels(command).inc(rows);
+            CommandOutcome.rows(rows);
+        }
+    }
+
+    /**
+     * Counts bytes exported by the command running on the calling thread.
+     *
+     * @param bytes The number of bytes written.
+     */
+    public static void bytes(long bytes) {
+        bytes(current(), bytes);
+    }
+
+    /**
+     * Counts bytes exported on behalf of a command.
+     *
+     * @param command The command type.
+     * @param bytes   The number of bytes written.
+     */
+    public static void bytes(String command, long bytes) {
+        if (bytes > 0) {
+            bytesExported.labels(command).inc(bytes);
+        }
+    }
+
+    /**
+     * Counts a failure of the command running on the calling thread, labeled with the SQLState of the error
+     * ({@code 42P01} for a missing table, {@code 23505} for a unique violation, ...).
+     *
+     * @param e The error.
+     */
+    public static void error(SQLException e) {
+        error(current(), e);
+    }
+
+    /**
+     * Counts a failure on behalf of a command.
+     *
+     * @param command The command type.
+     * @param e       The error.
+     */
+    public static void error(String command, SQLException e) {
+        String state = e.getSQLState();
+        errors.labels(command, state == null || state.isEmpty() ? "unknown" : state).inc();
+        CommandOutcome.failed();
+    }
+
+    /**
+     * Returns the label for a query given to {@code command}: its first word when it is a luna command such as
+     * {@code select-from}, and {@code sql} for plain SQL, so the number of label values stays small.
+     *
+     * @param query The query.
+     * @param isLunaCommand Whether the first word of the query is a luna command.
+     * @return The command type.
+     */
+    public static String commandType(String query, boolean isLunaCommand) {
+        return isLunaCommand ? query.trim().toLowerCase().split("\\s+", 2)[0] : "sql";
+    }
+
+    private static String current() {
+        String command = currentCommand.get();
+        return command != null ? command : "sql";
+    }
+}
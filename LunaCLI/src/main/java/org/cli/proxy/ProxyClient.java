@@ -0,0 +1,366 @@
+package org.cli.proxy;
+
+import org.cli.entities.SaveEntity;
+import org.cli.prometheus.ProxyMetrics;
+import org.cli.utils.ChannelStreams;
+import org.cli.utils.ProxySettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One client of the proxy.
+ * <p>
+ * The client thread reads what the client sends and forwards it; a second thread forwards what the server
+ * answers. A server connection is taken from the pool when the client sends something and given back at the
+ * first ReadyForQuery that reports no open transaction, once every Sync and query sent has been answered.
+ * </p>
+ * <p>
+ * Named prepared statements belong to a server connection, but the client may get a different one for each
+ * transaction. The proxy therefore gives every named statement a name of its own, keeps its Parse message, and
+ * sends that Parse again before the statement is used on a connection that has not seen it yet.
+ * </p>
+ */
+final class ProxyClient implements Runnable {
+    private final ProxyServer proxy;
+    private final ServerPool pool;
+    private final SaveEntity profile;
+    private final SocketChannel channel;
+    private final int id;
+    private final int secretKey;
+    private final DataInputStream in;
+    private final OutputStream out;
+
+    private final Object lock = new Object();
+    /** Guarded by {@link #lock}: the server connection lent to this client, or null. */
+    private ServerConnection server;
+    /** Guarded by {@link #lock}: Syncs, queries and function calls sent and not answered by ReadyForQuery yet. */
+    private int inFlight;
+    /** Guarded by {@link #lock}: extended-protocol messages were sent since the last Sync. */
+    private boolean openBatch;
+    private volatile boolean closed = false;
+
+    private final Map<String, Wire.Message> statements = new HashMap<>();
+    private int statementCounter;
+
+    ProxyClient(ProxyServer proxy, ServerPool pool, SaveEntity profile, SocketChannel channel, int id, int secretKey) {
+        this.proxy = proxy;
+        this.pool = pool;
+        this.profile = profile;
+        this.channel = channel;
+        this.id = id;
+        this.secretKey = secretKey;
+        this.in = new DataInputStream(new BufferedInputStream(ChannelStreams.input(channel), 16 * 1024));
+        this.out = new BufferedOutputStream(ChannelStreams.output(channel), 16 * 1024);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!startup()) {return;}
+            Thread relay = new Thread(this::relayServer, "luna-proxy-server-" + id);
+            relay.setDaemon(true);
+            relay.start();
+            relayClient();
+        } catch (IOException | RuntimeException ignored) {
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Cancels what the server connection lent to this client is running, if the key matches.
+     */
+    void cancel(int key) {
+        ServerConnection current;
+        synchronized (lock) {
+            current = server;
+        }
+        if (key == secretKey && current != null) {current.cancel();}
+    }
+
+    void close() {
+        if (closed) {return;}
+        closed = true;
+        ServerConnection bound;
+        synchronized (lock) {
+            bound = server;
+            server = null;
+            lock.notifyAll();
+        }
+        // Given back in the middle of something, so it is closed rather than lent to the next client.
+        if (bound != null) {pool.release(bound, false);}
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        proxy.removeClient(this);
+    }
+
+    /**
+     * Answers SSL and GSS requests with "not supported", passes cancel requests on, and logs the client in with
+     * the password of the profile the proxy serves.
+     *
+     * @return True if the client is logged in.
+     */
+    private boolean startup() throws IOException {
+        for (;;) {
+            int length = in.readInt();
+            if (length < 8 || length > 10_000) {return false;}
+            byte[] request = new byte[length - 4];
+            in.readFully(request);
+            int code = Wire.int32(request, 0);
+            switch (code) {
+                case Wire.SSL_REQUEST:
+                case Wire.GSS_REQUEST:
+                    out.write('N');
+                    out.flush();
+                    break;
+                case Wire.CANCEL_REQUEST:
+                    proxy.cancel(Wire.int32(request, 4), Wire.int32(request, 8));
+                    return false;
+                default:
+                    if (code >>> 16 != 3) {
+                        fatal("0A000", "unsupported frontend protocol " + (code >>> 16) + "." + (code & 0xFFFF));
+                        return false;
+                    }
+                    if ((code & 0xFFFF) != 0) {Wire.write(out, 'v', new Wire.Payload().int32(Wire.PROTOCOL_3).int32(0).bytes());}
+                    return login(startupParameters(request));
+            }
+        }
+    }
+
+    private boolean login(Map<String, String> parameters) throws IOException {
+        String user = parameters.getOrDefault("user", "");
+        String database = parameters.getOrDefault("database", user);
+        if (!profile.getUsername().equals(user) || !profile.getDatabase().equals(database)) {
+            fatal("28000", "this proxy serves user \"" + profile.getUsername() + "\" on database \"" + profile.getDatabase() + "\" only");
+            return false;
+        }
+        if (proxy.getClientCount() > ProxySettings.maxClients) {
+            fatal("53300", "sorry, too many clients already");
+            return false;
+        }
+        Wire.write(out, 'R', new Wire.Payload().int32(3).bytes());
+        out.flush();
+        Wire.Message password = Wire.read(in);
+        if (password == null || !password.is('p')) {return false;}
+        byte[] expected = profile.getPassword().getBytes(StandardCharsets.UTF_8);
+        byte[] given = password.payload.length == 0 ? new byte[0]
+                : Wire.cstring(password.payload, 0).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, given)) {
+            fatal("28P01", "password authentication failed for user \"" + user + "\"");
+            return false;
+        }
+
+        Wire.write(out, 'R', new Wire.Payload().int32(0).bytes());
+        for (Map.Entry<String, String> parameter : pool.getParameters().entrySet()) {
+            Wire.write(out, 'S', new Wire.Payload().cstring(parameter.getKey()).cstring(parameter.getValue()).bytes());
+        }
+        Wire.write(out, 'K', new Wire.Payload().int32(id).int32(secretKey).bytes());
+        Wire.write(out, 'Z', new byte[]{'I'});
+        out.flush();
+        return true;
+    }
+
+    /** Client to server: runs on the client thread until the client leaves. */
+    private void relayClient() throws IOException {
+        for (;;) {
+            Wire.Message message = Wire.read(in);
+            if (message == null || message.is('X')) {return;}
+
+            ServerConnection target;
+            List<Wire.Message> outgoing = null;
+            synchronized (lock) {
+                target = server;
+                if (target != null) {outgoing = send(message, target);}
+            }
+            if (target == null) {
+                // Only this thread lends a connection to the client, so nobody else can bind one meanwhile.
+                try {
+                    target = pool.acquire(TimeUnit.SECONDS.toMillis(ProxySettings.queueTimeoutSeconds));
+                } catch (TimeoutException e) {
+                    fatal("08P01", "query_wait_timeout: " + e.getMessage());
+                    return;
+                } catch (IOException e) {
+                    fatal("08006", "the proxy could not reach the server: " + e.getMessage());
+                    return;
+                }
+                synchronized (lock) {
+                    if (closed) {
+                        pool.release(target, true);
+                        return;
+                    }
+                    server = target;
+                    outgoing = send(message, target);
+                    lock.notifyAll();
+                }
+            }
+            // Written outside the lock: the counters above keep the connection lent until the answer arrives.
+            for (Wire.Message forwarded : outgoing) {
+                Wire.write(target.out, forwarded);
+            }
+            if (in.available() == 0) {target.out.flush();}
+        }
+    }
+
+    /**
+     * Prepares a client message for the server connection lent to the client and counts what it will be
+     * answered with. Called holding {@link #lock}.
+     */
+    private List<Wire.Message> send(Wire.Message message, ServerConnection target) {
+        List<Wire.Message> outgoing = translate(message, target);
+        if (message.is('S')) {
+            inFlight++;
+            openBatch = false;
+        } else if (message.is('Q') || message.is('F')) {
+            inFlight++;
+        } else if (message.is('P') || message.is('B') || message.is('D') || message.is('E') || message.is('C')) {
+            openBatch = true;
+        }
+        return outgoing;
+    }
+
+    /** Server to client: runs on its own thread, following whichever server connection is lent to the client. */
+    private void relayServer() {
+        ServerConnection source = null;
+        try {
+            for (;;) {
+                synchronized (lock) {
+                    while (server == null && !closed) {lock.wait();}
+                    if (closed) {return;}
+                    source = server;
+                }
+                boolean released = false;
+                while (!released) {
+                    Wire.Message message = Wire.read(source.in);
+                    if (message == null) {throw new IOException("The server closed the connection.");}
+                    boolean forward = true;
+                    if (message.is('1')) {
+                        synchronized (lock) {
+                            forward = !source.parseCompleted();
+                        }
+                    } else if (message.is('Z')) {
+                        synchronized (lock) {
+                            source.readyForQuery((char) message.payload[0]);
+                            inFlight = Math.max(0, inFlight - 1);
+                            if (inFlight == 0 && !openBatch && source.status == 'I') {
+                                server = null;
+                                released = true;
+                            }
+                        }
+                    }
+                    synchronized (out) {
+                        if (forward) {Wire.write(out, message);}
+                        if (released || source.in.available() == 0) {out.flush();}
+                    }
+                }
+                proxy.transactionCompleted();
+                pool.release(source, true);
+                source = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            boolean owned = false;
+            synchronized (lock) {
+                if (source != null && server == source) {
+                    server = null;
+                    owned = true;
+                }
+            }
+            if (owned) {pool.release(source, false);}
+            if (!closed) {
+                try {
+                    fatal("08006", "server connection lost: " + e.getMessage());
+                } catch (IOException ignored) {
+                }
+                close();
+            }
+        }
+    }
+
+    /**
+     * Gives named prepared statements proxy names and makes sure the statement a Bind, Describe or Close names
+     * exists on the given server connection.
+     */
+    private List<Wire.Message> translate(Wire.Message message, ServerConnection target) {
+        byte[] payload = message.payload;
+        switch (message.type) {
+            case 'P': {
+                String name = Wire.cstring(payload, 0);
+                if (name.isEmpty()) {
+                    target.expectParse(null, false);
+                    return List.of(message);
+                }
+                String proxyName = "luna_" + id + "_" + (++statementCounter);
+                Wire.Message parse = new Wire.Message('P', Wire.replaceCstring(payload, 0, proxyName));
+                statements.put(name, parse);
+                target.expectParse(proxyName, false);
+                return List.of(parse);
+            }
+            case 'B':
+                return statement(message, Wire.cstringEnd(payload, 0) + 1, target, false);
+            case 'D':
+            case 'C':
+                if (payload.length == 0 || payload[0] != 'S') {return List.of(message);}
+                return statement(message, 1, target, message.is('C'));
+            default:
+                return List.of(message);
+        }
+    }
+
+    private List<Wire.Message> statement(Wire.Message message, int offset, ServerConnection target, boolean closing) {
+        String name = Wire.cstring(message.payload, offset);
+        Wire.Message parse = name.isEmpty() ? null : closing ? statements.remove(name) : statements.get(name);
+        if (parse == null) {return List.of(message);}
+        String proxyName = Wire.cstring(parse.payload, 0);
+        List<Wire.Message> outgoing = new ArrayList<>(2);
+        if (closing) {
+            target.prepared.remove(proxyName);
+        } else if (!target.prepared.contains(proxyName)) {
+            outgoing.add(parse);
+            target.expectParse(proxyName, true);
+            ProxyMetrics.statementReprepared();
+        }
+        outgoing.add(new Wire.Message(message.type, Wire.replaceCstring(message.payload, offset, proxyName)));
+        return outgoing;
+    }
+
+    private void fatal(String sqlState, String text) throws IOException {
+        synchronized (out) {
+            Wire.write(out, 'E', Wire.error("FATAL", sqlState, text));
+            out.flush();
+        }
+    }
+
+    private static Map<String, String> startupParameters(byte[] request) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int position = 4;
+        while (position < request.length && request[position] != 0) {
+            String key = Wire.cstring(request, position);
+            position = Wire.cstringEnd(request, position) + 1;
+            String value = Wire.cstring(request, position);
+            position = Wire.cstringEnd(request, position) + 1;
+            parameters.put(key, value);
+        }
+        return parameters;
+    }
+}
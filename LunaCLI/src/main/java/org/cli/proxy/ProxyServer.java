@@ -0,0 +1,223 @@
+package org.cli.proxy;
+
+import org.cli.entities.Info;
+import org.cli.entities.SaveEntity;
+import org.cli.manager.CommandOutcome;
+import org.cli.utils.ProxySettings;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+
+/**
+ * <h1>Connection multiplexing proxy</h1>
+ * <p>
+ * Every LunaCLI instance and scheduled job holds its own backend, and together they can exhaust
+ * {@code max_connections}. The proxy listens on a local port (and optionally a Unix domain socket), speaks the
+ * PostgreSQL wire protocol, and lends each of its clients one of a few server connections for the length of a
+ * transaction: in autocommit mode a statement, otherwise everything up to COMMIT or ROLLBACK. Clients that find
+ * every server connection lent out wait in arrival order, for at most {@link ProxySettings#queueTimeoutSeconds}.
+ * </p>
+ * <p>
+ * The proxy serves a single saved profile: clients must log in with its user, database and password. As with
+ * any transaction-level pooler, state that outlives a transaction (SET, LISTEN, advisory locks, temporary tables,
+ * SQL-level PREPARE) is not carried from one transaction to the next. Named protocol-level prepared statements,
+ * which the JDBC driver uses after a few executions, do work.
+ * </p>
+ */
+public class ProxyServer {
+    private static ProxyServer running;
+
+    private final SaveEntity profile;
+    private final ServerPool pool;
+    private final int port;
+    private final Path socketPath;
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final Map<Integer, ProxyClient> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger clientIds = new AtomicInteger();
+    private final AtomicLong clientsTotal = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean closed = false;
+
+    private ProxyServer(SaveEntity profile, ServerPool pool, int port, Path socketPath) {
+        this.profile = profile;
+        this.pool = pool;
+        this.port = port;
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Starts the proxy for a profile. It listens on {@code 127.0.0.1} and, when a directory is given, on the
+     * socket {@code <directory>/.s.PGSQL.<port>}, where psql looks for it with {@code -h <directory>}.
+     *
+     * @param profile         The profile whose server, user, database and password the proxy uses.
+     * @param port            The local port to listen on.
+     * @param socketDirectory The directory for the Unix domain socket, or null for none.
+     * @param poolSize        The number of server connections.
+     * @throws IOException If the server cannot be reached, refuses the login, or the address is in use.
+     */
+    public static synchronized void start(SaveEntity profile, int port, String socketDirectory, int poolSize) throws IOException {
+        if (running != null) {throw new IOException("The proxy is already running on port " + running.port + ".");}
+        String host = profile.getHost() == null ? "localhost" : profile.getHost();
+        int serverPort = profile.getPort() == null ? Info.getDefaultPort() : profile.getPort();
+        ServerPool pool = new ServerPool(profile, host, serverPort, poolSize);
+        Path socketPath = socketDirectory == null ? null : Path.of(socketDirectory, ".s.PGSQL." + port);
+        ProxyServer proxy = new ProxyServer(profile, pool, port, socketPath);
+        try {
+            proxy.listen(ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+                proxy.listen(ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(socketPath)));
+            }
+        } catch (IOException | RuntimeException e) {
+            proxy.shutdown();
+            throw e;
+        }
+        running = proxy;
+    }
+
+    /**
+     * Stops the proxy: closes the listeners, disconnects every client and closes the server connections.
+     *
+     * @return False if no proxy was running.
+     */
+    public static synchronized boolean stop() {
+        if (running == null) {return false;}
+        running.shutdown();
+        running = null;
+        return true;
+    }
+
+    public static synchronized boolean isRunning() {
+        return running != null;
+    }
+
+    /**
+     * @return The running proxy, or null.
+     */
+    public static ProxyServer current() {
+        return running;
+    }
+
+    /**
+     * Prints where the proxy listens, its clients and server connections, and how long clients waited.
+     */
+    public static void displayStats() {
+        ProxyServer proxy = running;
+        if (proxy == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "The proxy is not running. Start it with luna proxy start user:<Id>.");
+            return;
+        }
+        ServerPool pool = proxy.pool;
+        System.out.printf("""
+                Proxy:
+                ---------------------
+                LISTEN: 127.0.0.1:%d%s
+                SERVES: %s@%s (profile %s)
+                CLIENTS: %d connected, %d waiting, %d since start
+                SERVER CONNECTIONS: %d active / %d idle / max %d
+                TRANSACTIONS: %d
+                WAIT: avg %.2f ms / max %.2f ms, %d timeouts
+                %n""", proxy.port, proxy.socketPath == null ? "" : " and " + proxy.socketPath,
+                proxy.profile.getUsername(), proxy.profile.getDatabase(), proxy.profile.getId(),
+                proxy.getClientCount(), pool.getWaitingClients(), proxy.clientsTotal.get(),
+                pool.getActiveConnections(), pool.getIdleConnections(), pool.getMaxSize(),
+                proxy.transactions.get(), pool.getAverageWaitMillis(), pool.getMaxWaitMillis(), pool.getTimeouts());
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public int getWaitingClients() {
+        return pool.getWaitingClients();
+    }
+
+    public int getActiveServerConnections() {
+        return pool.getActiveConnections();
+    }
+
+    public int getIdleServerConnections() {
+        return pool.getIdleConnections();
+    }
+
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    void transactionCompleted() {
+        transactions.incrementAndGet();
+    }
+
+    void removeClient(ProxyClient client) {
+        clients.remove(client.getId());
+    }
+
+    void cancel(int clientId, int key) {
+        ProxyClient client = clients.get(clientId);
+        if (client != null) {client.cancel(key);}
+    }
+
+    private void listen(ServerSocketChannel listener) {
+        listeners.add(listener);
+        Thread acceptor = new Thread(() -> accept(listener), "luna-proxy-accept-" + listeners.size());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept(ServerSocketChannel listener) {
+        while (!closed) {
+            try {
+                SocketChannel channel = listener.accept();
+                int id = clientIds.incrementAndGet();
+                ProxyClient client = new ProxyClient(this, pool, profile, channel, id, random.nextInt());
+                clients.put(id, client);
+                clientsTotal.incrementAndGet();
+                Thread thread = new Thread(client, "luna-proxy-client-" + id);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!listener.isOpen()) {return;}
+            }
+        }
+    }
+
+    private void shutdown() {
+        closed = true;
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (ProxyClient client : new ArrayList<>(clients.values())) {client.close();}
+        pool.shutdown();
+        if (socketPath != null) {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.cli.proxy;
+
+import org.cli.entities.SaveEntity;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A connection from the proxy to the PostgreSQL server, logged in as the user the proxy serves.
+ * <p>
+ * Besides the socket it remembers what the proxy needs to lend it to one client after another: the statements
+ * prepared on it under proxy names, and the Parse messages still waiting for their ParseComplete.
+ * </p>
+ */
+final class ServerConnection {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final SaveEntity target;
+    private final String host;
+    private final int port;
+    private final Socket socket;
+    final DataInputStream in;
+    final OutputStream out;
+    final Map<String, String> parameters = new LinkedHashMap<>();
+    private int processId;
+    private int secretKey;
+
+    /** Statements prepared on this connection, by proxy name. */
+    final Set<String> prepared = new HashSet<>();
+    /** Parse messages sent and not yet answered, in order; a null name stands for the unnamed statement. */
+    private final ArrayDeque<PendingParse> pendingParses = new ArrayDeque<>();
+    /** The transaction status of the last ReadyForQuery: I (idle), T (in a transaction) or E (failed transaction). */
+    volatile char status = 'I';
+
+    private static final class PendingParse {
+        private final String name;
+        private final boolean injected;
+
+        private PendingParse(String name, boolean injected) {
+            this.name = name;
+            this.injected = injected;
+        }
+    }
+
+    private ServerConnection(SaveEntity target, String host, int port, Socket socket) throws IOException {
+        this.target = target;
+        this.host = host;
+        this.port = port;
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+    }
+
+    /**
+     * Connects and logs in. Trust, password, MD5 and SCRAM-SHA-256 authentication are supported.
+     *
+     * @throws IOException If the server cannot be reached or refuses the login.
+     */
+    static ServerConnection open(SaveEntity target, String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            ServerConnection connection = new ServerConnection(target, host, port, socket);
+            connection.startup();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void startup() throws IOException {
+        // The parameters the JDBC driver insists on, so its clients accept the ParameterStatus the proxy relays.
+        Wire.writeUntyped(out, new Wire.Payload().int32(Wire.PROTOCOL_3)
+                .cstring("user").cstring(target.getUsername())
+                .cstring("database").cstring(target.getDatabase())
+                .cstring("client_encoding").cstring("UTF8")
+                .cstring("DateStyle").cstring("ISO")
+                .cstring("extra_float_digits").cstring("3")
+                .cstring("application_name").cstring("luna-proxy")
+                .put(0).bytes());
+        out.flush();
+
+        ScramState scram = null;
+        for (;;) {
+            Wire.Message message = Wire.read(in);
+            if (message == null) {throw new EOFException("The server closed the connection during login.");}
+            switch (message.type) {
+                case 'R':
+                    scram = authenticate(message.payload, scram);
+                    break;
+                case 'S':
+                    parameters.put(Wire.cstring(message.payload, 0),
+                            Wire.cstring(message.payload, Wire.cstringEnd(message.payload, 0) + 1));
+                    break;
+                case 'K':
+                    processId = Wire.int32(message.payload, 0);
+                    secretKey = Wire.int32(message.payload, 4);
+                    break;
+                case 'E':
+                    throw new IOException(Wire.errorMessage(message.payload));
+                case 'Z':
+                    return;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private ScramState authenticate(byte[] payload, ScramState scram) throws IOException {
+        int code = Wire.int32(payload, 0);
+        switch (code) {
+            case 0:
+                return scram;
+            case 3:
+                sendPassword(new Wire.Payload().cstring(target.getPassword()).bytes());
+                return scram;
+            case 5:
+                byte[] salt = new byte[4];
+                System.arraycopy(payload, 4, salt, 0, 4);
+                String inner = md5Hex((target.getPassword() + target.getUsername()).getBytes(StandardCharsets.UTF_8));
+                byte[] outer = concat(inner.getBytes(StandardCharsets.US_ASCII), salt);
+                sendPassword(new Wire.Payload().cstring("md5" + md5Hex(outer)).bytes());
+                return scram;
+            case 10:
+                if (!new String(payload, 4, payload.length - 4, StandardCharsets.UTF_8).contains("SCRAM-SHA-256\0")) {
+                    throw new IOException("The server offers no supported SASL mechanism.");
+                }
+                ScramState started = new ScramState();
+                byte[] first = ("n,," + started.clientFirstBare).getBytes(StandardCharsets.UTF_8);
+                sendPassword(new Wire.Payload().cstring("SCRAM-SHA-256").int32(first.length).raw(first).bytes());
+                return started;
+            case 11:
+                if (scram == null) {throw new IOException("Unexpected SASL challenge.");}
+                sendPassword(scram.clientFinal(new String(payload, 4, payload.length - 4, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+                return scram;
+            case 12:
+                if (scram == null || !scram.verify(new String(payload, 4, payload.length - 4, StandardCharsets.UTF_8))) {
+                    throw new IOException("The server signature did not match.");
+                }
+                return scram;
+            default:
+                throw new IOException("Unsupported authentication method " + code + ".");
+        }
+    }
+
+    private void sendPassword(byte[] payload) throws IOException {
+        Wire.write(out, 'p', payload);
+        out.flush();
+    }
+
+    /**
+     * SCRAM-SHA-256 without channel binding (RFC 5802, RFC 7677).
+     */
+    private final class ScramState {
+        private final String clientNonce;
+        private final String clientFirstBare;
+        private byte[] saltedPassword;
+        private String authMessage;
+
+        private ScramState() {
+            byte[] nonce = new byte[18];
+            random.nextBytes(nonce);
+            clientNonce = Base64.getEncoder().encodeToString(nonce);
+            // The server takes the user name from the startup message.
+            clientFirstBare = "n=,r=" + clientNonce;
+        }
+
+        private String clientFinal(String serverFirst) throws IOException {
+            Map<String, String> attributes = attributes(serverFirst);
+            String nonce = attributes.get("r");
+            if (nonce == null || !nonce.startsWith(clientNonce) || attributes.get("s") == null || attributes.get("i") == null) {
+                throw new IOException("Invalid SCRAM challenge.");
+            }
+            try {
+                PBEKeySpec spec = new PBEKeySpec(target.getPassword().toCharArray(), Base64.getDecoder().decode(attributes.get("s")),
+                        Integer.parseInt(attributes.get("i")), 256);
+                saltedPassword = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+                String withoutProof = "c=biws,r=" + nonce;
+                authMessage = clientFirstBare + "," + serverFirst + "," + withoutProof;
+                byte[] clientKey = hmac(saltedPassword, "Client Key");
+                byte[] storedKey = MessageDigest.getInstance("SHA-256").digest(clientKey);
+                byte[] signature = hmac(storedKey, authMessage);
+                for (int i = 0; i < clientKey.length; i++) {
+                    clientKey[i] ^= signature[i];
+                }
+                return withoutProof + ",p=" + Base64.getEncoder().encodeToString(clientKey);
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IOException("SCRAM Error: " + e.getMessage(), e);
+            }
+        }
+
+        private boolean verify(String serverFinal) throws IOException {
+            String expected = attributes(serverFinal).get("v");
+            if (expected == null || saltedPassword == null) {return false;}
+            try {
+                byte[] signature = hmac(hmac(saltedPassword, "Server Key"), authMessage);
+                return MessageDigest.isEqual(signature, Base64.getDecoder().decode(expected));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IOException("SCRAM Error: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Records a Parse sent to the server. {@code injected} marks a Parse the proxy added on its own, whose
+     * ParseComplete the client must not see.
+     */
+    void expectParse(String name, boolean injected) {
+        pendingParses.add(new PendingParse(name, injected));
+        if (name != null) {prepared.add(name);}
+    }
+
+    /**
+     * Matches a ParseComplete from the server with the oldest Parse.
+     *
+     * @return True if the Parse was injected by the proxy, so the ParseComplete must be dropped.
+     */
+    boolean parseCompleted() {
+        PendingParse parse = pendingParses.poll();
+        return parse != null && parse.injected;
+    }
+
+    /**
+     * At ReadyForQuery every Parse that is still unanswered was skipped after an error, so its statement does
+     * not exist on the server.
+     */
+    void readyForQuery(char transactionStatus) {
+        status = transactionStatus;
+        for (PendingParse parse : pendingParses) {
+            if (parse.name != null) {prepared.remove(parse.name);}
+        }
+        pendingParses.clear();
+    }
+
+    /**
+     * @return True if the server sent something while nobody was waiting for it, which on an idle connection
+     * means an error such as a terminated backend.
+     */
+    boolean hasUnexpectedData() {
+        try {
+            return socket.isClosed() || in.available() > 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Asks the server to cancel what this connection is running, over a separate connection.
+     */
+    void cancel() {
+        try (Socket cancel = new Socket()) {
+            cancel.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            OutputStream cancelOut = cancel.getOutputStream();
+            Wire.writeUntyped(cancelOut, new Wire.Payload().int32(Wire.CANCEL_REQUEST).int32(processId).int32(secretKey).bytes());
+            cancelOut.flush();
+        } catch (IOException ignored) {
+        }
+    }
+
+    void close() {
+        try {
+            if (!socket.isClosed()) {
+                Wire.write(out, 'X', new byte[0]);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Map<String, String> attributes(String message) {
+        Map<String, String> attributes = new HashMap<>();
+        for (String attribute : message.split(",")) {
+            if (attribute.length() > 1 && attribute.charAt(1) == '=') {attributes.put(attribute.substring(0, 1), attribute.substring(2));}
+        }
+        return attributes;
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String md5Hex(byte[] data) throws IOException {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("MD5 Error: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
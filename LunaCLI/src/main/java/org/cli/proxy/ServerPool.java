@@ -0,0 +1,175 @@
+package org.cli.proxy;
+
+import org.cli.entities.SaveEntity;
+import org.cli.prometheus.ProxyMetrics;
+import org.cli.utils.ProxySettings;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server connections the proxy lends to its clients, one transaction at a time.
+ * <p>
+ * Clients wait for a connection in arrival order (a fair semaphore), so a busy client that gives its connection
+ * back and asks again queues behind everyone already waiting instead of taking it straight back. The most
+ * recently returned connection is lent first, which leaves the others idle.
+ * </p>
+ */
+final class ServerPool {
+    private final SaveEntity target;
+    private final String host;
+    private final int port;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<ServerConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private volatile boolean closed = false;
+    private final Map<String, String> parameters;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Opens the first server connection right away, so a wrong password or an unreachable server fails the
+     * start of the proxy instead of its first client.
+     */
+    ServerPool(SaveEntity target, String host, int port, int maxSize) throws IOException {
+        this.target = target;
+        this.host = host;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+        ServerConnection first = open();
+        this.parameters = Map.copyOf(first.parameters);
+        idle.offerFirst(first);
+    }
+
+    /**
+     * Waits for a server connection.
+     *
+     * @param timeoutMillis How long to wait.
+     * @throws TimeoutException If none became free in time.
+     * @throws IOException      If the pool is closed or a new connection cannot be opened.
+     */
+    ServerConnection acquire(long timeoutMillis) throws IOException, TimeoutException {
+        if (closed) {throw new IOException("The proxy is shutting down.");}
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                ProxyMetrics.queueTimeout();
+                throw new TimeoutException("No server connection became free within " + timeoutMillis + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a server connection.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waited = System.nanoTime() - start;
+        acquisitions.incrementAndGet();
+        waitNanosTotal.addAndGet(waited);
+        waitNanosMax.accumulateAndGet(waited, Math::max);
+        ProxyMetrics.queueWait(waited);
+
+        try {
+            ServerConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (!connection.hasUnexpectedData()) {return connection;}
+                destroy(connection);
+            }
+            return open();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a server connection back from a client.
+     *
+     * @param reusable False if the connection may be in an unknown state, for example because its client
+     *                 disconnected in the middle of a transaction; it is closed instead.
+     */
+    void release(ServerConnection connection, boolean reusable) {
+        try {
+            if (closed || !reusable || connection.status != 'I' || connection.prepared.size() > ProxySettings.maxPreparedStatements) {
+                destroy(connection);
+            } else {
+                idle.offerFirst(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    void shutdown() {
+        closed = true;
+        ServerConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+
+    Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getTotalConnections() {
+        return total.get();
+    }
+
+    int getIdleConnections() {
+        return idle.size();
+    }
+
+    int getActiveConnections() {
+        return Math.max(0, maxSize - permits.availablePermits());
+    }
+
+    int getWaitingClients() {
+        return waiting.get();
+    }
+
+    long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    double getAverageWaitMillis() {
+        long count = acquisitions.get();
+        return count == 0 ? 0 : waitNanosTotal.get() / 1_000_000.0 / count;
+    }
+
+    double getMaxWaitMillis() {
+        return waitNanosMax.get() / 1_000_000.0;
+    }
+
+    long getTimeouts() {
+        return timeouts.get();
+    }
+
+    private ServerConnection open() throws IOException {
+        ServerConnection connection = ServerConnection.open(target, host, port);
+        total.incrementAndGet();
+        return connection;
+    }
+
+    private void destroy(ServerConnection connection) {
+        total.decrementAndGet();
+        connection.close();
+    }
+}
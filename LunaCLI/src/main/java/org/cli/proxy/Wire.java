@@ -0,0 +1,170 @@
+package org.cli.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages of the PostgreSQL frontend/backend protocol, version 3: a type byte, a length that counts itself,
+ * and the payload. Only what the proxy has to look into is decoded; everything else is passed on as bytes.
+ */
+final class Wire {
+    static final int PROTOCOL_3 = 196608;
+    static final int CANCEL_REQUEST = 80877102;
+    static final int SSL_REQUEST = 80877103;
+    static final int GSS_REQUEST = 80877104;
+    /** Larger messages are treated as a broken stream; the server itself caps most messages at 1 GB. */
+    private static final int MAX_LENGTH = 1 << 30;
+
+    private Wire() {
+    }
+
+    static final class Message {
+        final byte type;
+        final byte[] payload;
+
+        Message(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        Message(char type, byte[] payload) {
+            this((byte) type, payload);
+        }
+
+        boolean is(char candidate) {
+            return type == (byte) candidate;
+        }
+    }
+
+    /**
+     * @return The next message, or null if the peer closed the stream between messages.
+     */
+    static Message read(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {return null;}
+        int length = in.readInt();
+        if (length < 4 || length > MAX_LENGTH) {throw new IOException("Protocol Error: message length " + length);}
+        byte[] payload = new byte[length - 4];
+        in.readFully(payload);
+        return new Message((byte) type, payload);
+    }
+
+    static void write(OutputStream out, Message message) throws IOException {
+        write(out, message.type, message.payload);
+    }
+
+    static void write(OutputStream out, char type, byte[] payload) throws IOException {
+        write(out, (byte) type, payload);
+    }
+
+    private static void write(OutputStream out, byte type, byte[] payload) throws IOException {
+        int length = payload.length + 4;
+        out.write(type);
+        out.write(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        out.write(payload);
+    }
+
+    /** Writes a message without a type byte, as the startup and cancel requests are sent. */
+    static void writeUntyped(OutputStream out, byte[] payload) throws IOException {
+        int length = payload.length + 4;
+        out.write(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        out.write(payload);
+    }
+
+    /**
+     * An ErrorResponse. With severity {@code FATAL} the connection is closed afterwards.
+     */
+    static byte[] error(String severity, String sqlState, String message) {
+        return new Payload().put('S').cstring(severity).put('V').cstring(severity).put('C').cstring(sqlState)
+                .put('M').cstring(message).put(0).bytes();
+    }
+
+    /**
+     * @return The primary message of an ErrorResponse or NoticeResponse.
+     */
+    static String errorMessage(byte[] payload) {
+        int position = 0;
+        while (position < payload.length && payload[position] != 0) {
+            int end = cstringEnd(payload, position + 1);
+            if (payload[position] == 'M') {return new String(payload, position + 1, end - position - 1, StandardCharsets.UTF_8);}
+            position = end + 1;
+        }
+        return "unknown error";
+    }
+
+    /**
+     * @return The index of the terminating zero of the C string starting at {@code from}.
+     */
+    static int cstringEnd(byte[] payload, int from) {
+        for (int i = from; i < payload.length; i++) {
+            if (payload[i] == 0) {return i;}
+        }
+        throw new IllegalArgumentException("Protocol Error: unterminated string");
+    }
+
+    static String cstring(byte[] payload, int from) {
+        return new String(payload, from, cstringEnd(payload, from) - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The payload with the C string at {@code from} replaced by {@code replacement}.
+     */
+    static byte[] replaceCstring(byte[] payload, int from, String replacement) {
+        int end = cstringEnd(payload, from);
+        byte[] value = replacement.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[payload.length - (end - from) + value.length];
+        System.arraycopy(payload, 0, result, 0, from);
+        System.arraycopy(value, 0, result, from, value.length);
+        System.arraycopy(payload, end, result, from + value.length, payload.length - end);
+        return result;
+    }
+
+    static int int32(byte[] payload, int from) {
+        return ByteBuffer.wrap(payload, from, 4).getInt();
+    }
+
+    /**
+     * Builds message payloads.
+     */
+    static final class Payload {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Payload put(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Payload int16(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Payload int32(int value) {
+            bytes.write(value >>> 24);
+            bytes.write(value >>> 16);
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Payload cstring(String value) {
+            bytes.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            bytes.write(0);
+            return this;
+        }
+
+        Payload raw(byte[] value) {
+            bytes.writeBytes(value);
+            return this;
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.cli.scheduler;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class CronExpression {
+
+    private static final Map<String, String> MACROS = Map.of(
+            "@yearly", "0 0 1 1 *",
+            "@annually", "0 0 1 1 *",
+            "@monthly", "0 0 1 * *",
+            "@weekly", "0 0 * * 0",
+            "@daily", "0 0 * * *",
+            "@midnight", "0 0 * * *",
+            "@hourly", "0 * * * *");
+    private static final List<String> MONTH_NAMES = List.of("JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC");
+    private static final List<String> DAY_NAMES = List.of("SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT");
+    private static final int SEARCH_YEARS = 5;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean dayOfMonthRestricted;
+    private final boolean dayOfWeekRestricted;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, null, "minute");
+        this.hours = parseField(fields[1], 0, 23, null, "hour");
+        this.daysOfMonth = parseField(fields[2], 1, 31, null, "day of month");
+        this.months = parseField(fields[3], 1, 12, MONTH_NAMES, "month");
+        this.daysOfWeek = parseField(fields[4], 0, 7, DAY_NAMES, "day of week");
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+            daysOfWeek.clear(7);
+        }
+        this.dayOfMonthRestricted = !fields[2].startsWith("*");
+        this.dayOfWeekRestricted = !fields[4].startsWith("*");
+    }
+
+    /**
+     * Parses a standard five-field cron expression: {@code minute hour day-of-month month day-of-week}.
+     * <p>
+     * Each field accepts {@code *}, single values, ranges ({@code 1-5}), lists ({@code 1,15}) and steps
+     * ({@code *}{@code /15}, {@code 0-30/10}); months and days of week also accept names ({@code JAN},
+     * {@code MON}), and both 0 and 7 mean Sunday. The macros {@code @hourly}, {@code @daily}, {@code @weekly},
+     * {@code @monthly} and {@code @yearly} are accepted too. As in Vixie cron, when both the day of month and
+     * the day of week are restricted, a day matching either of them fires.
+     * </p>
+     *
+     * @param expression The cron expression.
+     * @return The parsed expression.
+     * @throws IllegalArgumentException If the expression is malformed or never fires.
+     */
+    public static CronExpression parse(String expression) {
+        String trimmed = expression.trim();
+        String[] fields = MACROS.getOrDefault(trimmed.toLowerCase(Locale.ROOT), trimmed).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("A cron expression needs 5 fields (minute hour day-of-month month day-of-week): " + expression);
+        }
+        CronExpression cron = new CronExpression(trimmed, fields);
+        cron.next(ZonedDateTime.now());
+        return cron;
+    }
+
+    /**
+     * Returns the first time after {@code after} at which the expression fires, at minute precision.
+     *
+     * @param after The time to search from (exclusive).
+     * @return The next firing time, in the zone of {@code after}.
+     * @throws IllegalArgumentException If the expression does not fire within the next five years (for example {@code 0 0 30 2 *}).
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = time.plusYears(SEARCH_YEARS);
+
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        throw new IllegalArgumentException("Cron expression never fires: " + expression);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (dayOfMonthRestricted && dayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    private static BitSet parseField(String field, int min, int max, List<String> names, String label) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), label);
+                range = part.substring(0, slash);
+                if (step < 1) {
+                    throw new IllegalArgumentException("Invalid step in " + label + " field: " + part);
+                }
+            }
+
+            int low;
+            int high;
+            if (range.equals("*")) {
+                low = min;
+                high = max;
+            } else if (range.indexOf('-') > 0) {
+                low = value(range.substring(0, range.indexOf('-')), names, label);
+                high = value(range.substring(range.indexOf('-') + 1), names, label);
+            } else {
+                low = value(range, names, label);
+                high = slash >= 0 ? max : low;
+            }
+
+            if (low < min || high > max || low > high) {
+                throw new IllegalArgumentException("Invalid " + label + " field: " + part + " (allowed " + min + "-" + max + ")");
+            }
+            for (int value = low; value <= high; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int value(String token, List<String> names, String label) {
+        if (names != null) {
+            int index = names.indexOf(token.toUpperCase(Locale.ROOT));
+            if (index >= 0) {
+                return names == MONTH_NAMES ? index + 1 : index;
+            }
+        }
+        return parseNumber(token, label);
+    }
+
+    private static int parseNumber(String token, String label) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + label + " value: " + token);
+        }
+    }
+}
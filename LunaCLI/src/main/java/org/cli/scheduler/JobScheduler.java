@@ -0,0 +1,686 @@
+package org.cli.scheduler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.prometheus.client.Gauge;
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.entities.JobEntity;
+import org.cli.entities.JobRunEntity;
+import org.cli.manager.CommandOutcome;
+import org.cli.sql.postgresql.ExecutePostgresql;
+import org.cli.utils.JobPath;
+import org.cli.utils.JsonFileStore;
+import org.cli.utils.OutputCapture;
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
+
+public class JobScheduler {
+
+    private static final int HISTORY_LIMIT = 20;
+    private static final long NOT_CONNECTED_RETRY_MS = 30_000;
+    private static final int MESSAGE_LENGTH = 200;
+    private static final int DEFAULT_WORKERS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    private static final Gauge queueDepthGauge = Gauge.build()
+            .name("luna_jobs_queue_depth")
+            .help("Scheduled job runs waiting for a free worker")
+            .register();
+
+    private static final Gauge runningGauge = Gauge.build()
+            .name("luna_jobs_running")
+            .help("Scheduled job runs in progress")
+            .register();
+
+    private static final Gauge lagGauge = Gauge.build()
+            .name("luna_jobs_lag_seconds")
+            .help("How late the most recent job run started compared to its schedule")
+            .register();
+
+    private static final Object lock = new Object();
+    private static final JsonFileStore<JobEntity> store = new JsonFileStore<>(() -> JobPath.filePath,
+            new TypeReference<List<JobEntity>>() {}, loaded -> {});
+    private static final Map<Integer, JobEntity> jobs = new TreeMap<>();
+    private static final Map<Integer, JobRuntime> runtimes = new HashMap<>();
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("luna-scheduler"));
+    private static final ThreadPoolExecutor workers = new ThreadPoolExecutor(DEFAULT_WORKERS, DEFAULT_WORKERS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), daemonThreads("luna-job"));
+    private static int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private static boolean started = false;
+
+    /**
+     * The in-memory state of a job: its pending timer and the run in progress.
+     */
+    private static final class JobRuntime {
+        ScheduledFuture<?> timer;
+        Execution active;
+        int queued;
+    }
+
+    /**
+     * One run of a job.
+     */
+    private static final class Execution {
+        final long scheduledAt;
+        volatile Connection connection;
+        volatile boolean cancelled;
+
+        Execution(long scheduledAt) {
+            this.scheduledAt = scheduledAt;
+        }
+    }
+
+    /**
+     * Loads the job store and schedules every active job. Called once at startup; later calls do nothing.
+     * <p>
+     * One-off jobs whose time passed while the CLI was not running fire right away. Recurring jobs do not
+     * catch up on missed runs: a fixed-rate job continues on its original grid and a cron job fires at its
+     * next matching minute.
+     * </p>
+     *
+     * @return The number of active jobs that were scheduled.
+     */
+    public static int start() {
+        synchronized (lock) {
+            if (started) {
+                return 0;
+            }
+            started = true;
+
+            int active = 0;
+            long now = System.currentTimeMillis();
+            for (JobEntity job : loadJobs()) {
+                jobs.put(job.getId(), job);
+                if (job.getStatus() == JobEntity.Status.ACTIVE) {
+                    job.setNextRunAt(resumeTime(job, now));
+                    arm(job);
+                    active++;
+                }
+            }
+            saveJobs();
+            return active;
+        }
+    }
+
+    /**
+     * Schedules a command to run once after a delay.
+     *
+     * @param command The command or SQL statement, see {@link ExecutePostgresql#executeCommandOrSql(String)}.
+     * @param delay   The delay before the run.
+     * @param unit    The unit of the delay.
+     * @return The new job.
+     */
+    public static JobEntity scheduleOnce(String command, long delay, TimeUnit unit) {
+        JobEntity job = newJob(command, JobEntity.Type.ONCE, JobEntity.Overlap.SKIP);
+        job.setNextRunAt(job.getCreatedAt() + unit.toMillis(delay));
+        return add(job);
+    }
+
+    /**
+     * Schedules a command to run repeatedly at a fixed rate. Runs are due every {@code interval} from now on,
+     * regardless of how long each run takes; the overlap policy decides what happens when a run is due while
+     * the previous one is still going.
+     *
+     * @param command  The command or SQL statement.
+     * @param interval The time between two runs.
+     * @param unit     The unit of the interval.
+     * @param overlap  What to do when a run is due while the previous one is still running.
+     * @return The new job.
+     */
+    public static JobEntity scheduleAtFixedRate(String command, long interval, TimeUnit unit, JobEntity.Overlap overlap) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+        JobEntity job = newJob(command, JobEntity.Type.RATE, overlap);
+        job.setIntervalMs(unit.toMillis(interval));
+        job.setNextRunAt(job.getCreatedAt() + job.getIntervalMs());
+        return add(job);
+    }
+
+    /**
+     * Schedules a command to run whenever a cron expression matches, see {@link CronExpression}.
+     *
+     * @param command The command or SQL statement.
+     * @param cron    A five-field cron expression or a macro such as {@code @hourly}.
+     * @param overlap What to do when a run is due while the previous one is still running.
+     * @return The new job.
+     * @throws IllegalArgumentException If the cron expression is invalid.
+     */
+    public static JobEntity scheduleCron(String command, String cron, JobEntity.Overlap overlap) {
+        CronExpression expression = CronExpression.parse(cron);
+        JobEntity job = newJob(command, JobEntity.Type.CRON, overlap);
+        job.setCron(expression.toString());
+        job.setNextRunAt(expression.next(ZonedDateTime.now()).toInstant().toEpochMilli());
+        return add(job);
+    }
+
+    /**
+     * Stops scheduling a job until it is resumed. A run in progress is not interrupted.
+     *
+     * @param id The job id.
+     * @return True if the job was active.
+     */
+    public static boolean pause(int id) {
+        synchronized (lock) {
+            JobEntity job = jobs.get(id);
+            if (job == null || job.getStatus() != JobEntity.Status.ACTIVE) {
+                return false;
+            }
+            disarm(id);
+            job.setStatus(JobEntity.Status.PAUSED);
+            job.setNextRunAt(0);
+            saveJobs();
+            return true;
+        }
+    }
+
+    /**
+     * Resumes a paused job; its next run is computed from now.
+     *
+     * @param id The job id.
+     * @return True if the job was paused.
+     */
+    public static boolean resume(int id) {
+        synchronized (lock) {
+            JobEntity job = jobs.get(id);
+            if (job == null || job.getStatus() != JobEntity.Status.PAUSED) {
+                return false;
+            }
+            job.setStatus(JobEntity.Status.ACTIVE);
+            job.setNextRunAt(resumeTime(job, System.currentTimeMillis()));
+            arm(job);
+            saveJobs();
+            return true;
+        }
+    }
+
+    /**
+     * Cancels a job for good. A run in progress is cancelled on the server as well; the job and its history
+     * stay in the store.
+     *
+     * @param id The job id.
+     * @return True if the job was active or paused.
+     */
+    public static boolean cancel(int id) {
+        synchronized (lock) {
+            JobEntity job = jobs.get(id);
+            if (job == null || job.getStatus() == JobEntity.Status.CANCELLED || job.getStatus() == JobEntity.Status.DONE) {
+                return false;
+            }
+            disarm(id);
+            JobRuntime runtime = runtimes.get(id);
+            if (runtime != null) {
+                runtime.queued = 0;
+                cancelRun(runtime.active);
+            }
+            job.setStatus(JobEntity.Status.CANCELLED);
+            job.setNextRunAt(0);
+            saveJobs();
+            return true;
+        }
+    }
+
+    /**
+     * Sets how many jobs may run at the same time and how many due runs may wait for a free worker.
+     * <p>
+     * Every running job holds its own connection leased from the pool, so the number of workers should stay
+     * below the pool's maximum size; otherwise workers wait for a lease and the interactive session may have
+     * to wait too. When all workers are busy, due runs wait in the queue and their lag behind schedule grows.
+     * Once the queue is full, further runs are skipped and recorded as such instead of piling up.
+     * </p>
+     *
+     * @param workerCount   The maximum number of jobs running concurrently.
+     * @param queueCapacity The maximum number of runs waiting for a worker.
+     */
+    public static void configure(int workerCount, int queueCapacity) {
+        if (workerCount < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Workers must be at least 1 and the queue capacity cannot be negative.");
+        }
+        synchronized (lock) {
+            if (workerCount > workers.getMaximumPoolSize()) {
+                workers.setMaximumPoolSize(workerCount);
+                workers.setCorePoolSize(workerCount);
+            } else {
+                workers.setCorePoolSize(workerCount);
+                workers.setMaximumPoolSize(workerCount);
+            }
+            JobScheduler.queueCapacity = queueCapacity;
+        }
+        if (ConnectToPostgresql.pool != null && workerCount >= ConnectToPostgresql.pool.getMaxSize()) {
+            // Only a warning: the settings were applied.
+            System.out.println(INVALID_MESSAGE + "The pool holds at most " + ConnectToPostgresql.pool.getMaxSize()
+                    + " connections, jobs will wait for leases. Raise it with luna pool max:<n>.");
+        }
+    }
+
+    /**
+     * @return The maximum number of jobs running concurrently.
+     */
+    public static int getWorkerCount() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /**
+     * @return The maximum number of runs waiting for a worker.
+     */
+    public static int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Prints the worker pool settings and its current load.
+     */
+    public static void displayWorkers() {
+        System.out.println("Job workers: " + workers.getActiveCount() + " busy of " + workers.getMaximumPoolSize()
+                + ", " + workers.getQueue().size() + " runs queued (capacity " + queueCapacity + ").");
+    }
+
+    /**
+     * @param id The job id.
+     * @return The job, or null if there is none with this id.
+     */
+    public static JobEntity getJob(int id) {
+        synchronized (lock) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * @return All jobs, including paused, cancelled and finished ones, ordered by id.
+     */
+    public static List<JobEntity> getJobs() {
+        synchronized (lock) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * Prints every job with its schedule, state, next run and run counts.
+     */
+    public static void displayJobs() {
+        List<JobEntity> all = getJobs();
+        if (all.isEmpty()) {
+            System.out.println("No scheduled jobs.");
+            return;
+        }
+        System.out.printf("%-4s %-26s %-7s %-9s %-19s %-6s %-6s %s%n", "ID", "SCHEDULE", "OVERLAP", "STATUS", "NEXT RUN", "RUNS", "FAILED", "COMMAND");
+        for (JobEntity job : all) {
+            System.out.printf("%-4d %-26s %-7s %-9s %-19s %-6d %-6d %s%n", job.getId(), describeSchedule(job),
+                    job.getOverlap(), job.getStatus(), formatTime(job.getNextRunAt()), job.getRunCount(),
+                    job.getFailureCount(), job.getCommand());
+        }
+    }
+
+    /**
+     * Prints the most recent runs of a job with their start time, duration, lag behind schedule and outcome.
+     *
+     * @param id The job id.
+     */
+    public static void displayHistory(int id) {
+        JobEntity job = getJob(id);
+        if (job == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "No job with id " + id + ".");
+            return;
+        }
+        System.out.println("Job " + id + ": " + job.getCommand() + " (" + describeSchedule(job) + ")");
+        List<JobRunEntity> history;
+        synchronized (lock) {
+            history = new ArrayList<>(job.getHistory());
+        }
+        if (history.isEmpty()) {
+            System.out.println("No runs yet.");
+            return;
+        }
+        System.out.printf("%-19s %10s %8s %-9s %s%n", "STARTED", "DURATION", "LAG", "STATUS", "MESSAGE");
+        for (JobRunEntity run : history) {
+            System.out.printf("%-19s %8d ms %5d ms %-9s %s%n", formatTime(run.getStartedAt()), run.getDurationMs(),
+                    run.getLagMs(), run.getStatus(), run.getMessage() == null ? "" : run.getMessage());
+        }
+    }
+
+    private static JobEntity newJob(String command, JobEntity.Type type, JobEntity.Overlap overlap) {
+        if (command == null || command.isBlank()) {
+            throw new IllegalArgumentException("The command of a job cannot be empty.");
+        }
+        JobEntity job = new JobEntity();
+        job.setCommand(command.trim());
+        job.setType(type);
+        job.setOverlap(overlap);
+        job.setCreatedAt(System.currentTimeMillis());
+        return job;
+    }
+
+    private static JobEntity add(JobEntity job) {
+        synchronized (lock) {
+            start();
+            job.setId(jobs.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1);
+            jobs.put(job.getId(), job);
+            arm(job);
+            saveJobs();
+            System.out.println(VALID_MESSAGE + "Job " + job.getId() + " scheduled (" + describeSchedule(job) + "), next run " + formatTime(job.getNextRunAt()));
+            return job;
+        }
+    }
+
+    /** Arms the timer of an active job for its {@code nextRunAt}. Must hold the lock. */
+    private static void arm(JobEntity job) {
+        JobRuntime runtime = runtimes.computeIfAbsent(job.getId(), id -> new JobRuntime());
+        if (runtime.timer != null) {
+            runtime.timer.cancel(false);
+        }
+        long delay = Math.max(0, job.getNextRunAt() - System.currentTimeMillis());
+        int id = job.getId();
+        runtime.timer = timer.schedule(() -> fire(id), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void disarm(int id) {
+        JobRuntime runtime = runtimes.get(id);
+        if (runtime != null && runtime.timer != null) {
+            runtime.timer.cancel(false);
+            runtime.timer = null;
+        }
+    }
+
+    private static void fire(int id) {
+        synchronized (lock) {
+            JobEntity job = jobs.get(id);
+            if (job == null || job.getStatus() != JobEntity.Status.ACTIVE) {
+                return;
+            }
+            JobRuntime runtime = runtimes.get(id);
+            long scheduledAt = job.getNextRunAt();
+            long now = System.currentTimeMillis();
+            runtime.timer = null;
+
+            if (!ConnectToPostgresql.isConnected() || ConnectToPostgresql.pool == null) {
+                record(job, new JobRunEntity(now, 0, now - scheduledAt, JobRunEntity.Status.SKIPPED, "Not connected to a database."));
+                job.setNextRunAt(job.getType() == JobEntity.Type.ONCE ? now + NOT_CONNECTED_RETRY_MS : nextTime(job, scheduledAt, now));
+                arm(job);
+                saveJobs();
+                return;
+            }
+
+            if (job.getType() != JobEntity.Type.ONCE) {
+                job.setNextRunAt(nextTime(job, scheduledAt, now));
+                arm(job);
+            }
+
+            if (runtime.active == null) {
+                launch(job, runtime, scheduledAt);
+            } else if (job.getOverlap() == JobEntity.Overlap.QUEUE) {
+                runtime.queued++;
+            } else if (job.getOverlap() == JobEntity.Overlap.CANCEL) {
+                cancelRun(runtime.active);
+                launch(job, runtime, scheduledAt);
+            } else {
+                record(job, new JobRunEntity(now, 0, now - scheduledAt, JobRunEntity.Status.SKIPPED, "Previous run still in progress."));
+            }
+            saveJobs();
+        }
+    }
+
+    /**
+     * Hands a run to the worker pool, or records it as skipped when the queue of waiting runs is full. Must hold
+     * the lock.
+     */
+    private static void launch(JobEntity job, JobRuntime runtime, long scheduledAt) {
+        if (workers.getQueue().size() >= queueCapacity && workers.getActiveCount() >= workers.getMaximumPoolSize()) {
+            long now = System.currentTimeMillis();
+            record(job, new JobRunEntity(now, 0, now - scheduledAt, JobRunEntity.Status.SKIPPED, "Job queue is full (" + queueCapacity + " runs waiting)."));
+            return;
+        }
+        Execution execution = new Execution(scheduledAt);
+        runtime.active = execution;
+        workers.execute(() -> execute(job, runtime, execution));
+        updateGauges();
+    }
+
+    /**
+     * Runs a job on its own pooled connection, never on the session connection, inside its own transaction: the
+     * run is committed when it succeeds and rolled back when it fails or is cancelled. Statements that cannot
+     * run in a transaction block, such as {@code VACUUM}, run in autocommit.
+     */
+    private static void execute(JobEntity job, JobRuntime runtime, Execution execution) {
+        long startedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        String[] error = new String[1];
+        String[] output = {""};
+        boolean[] failed = new boolean[1];
+        lagGauge.set((startedAt - execution.scheduledAt) / 1000.0);
+        runningGauge.inc();
+        updateGauges();
+
+        try {
+            ConnectToPostgresql.runOnLease(() -> {
+                Connection lease = ConnectToPostgresql.currentConnection();
+                execution.connection = lease;
+                boolean transactional = lease.getAutoCommit() && !ExecutePostgresql.requiresAutocommit(job.getCommand());
+                boolean succeeded = false;
+                if (transactional) {
+                    lease.setAutoCommit(false);
+                }
+                try {
+                    output[0] = OutputCapture.capture(() -> {
+                        CommandOutcome outcome = CommandOutcome.begin();
+                        try {
+                            if (!execution.cancelled) {
+                                ExecutePostgresql.executeCommandOrSql(job.getCommand());
+                            }
+                        } catch (Exception e) {
+                            error[0] = firstLine(e);
+                        } finally {
+                            CommandOutcome.end();
+                        }
+                        failed[0] = outcome.isFailed();
+                    });
+                    succeeded = error[0] == null && !execution.cancelled && !failed[0];
+                } finally {
+                    execution.connection = null;
+                    if (transactional && succeeded) {
+                        lease.commit();
+                    } else if (transactional) {
+                        lease.rollback();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            if (error[0] == null) {
+                error[0] = firstLine(e);
+            }
+        } finally {
+            runningGauge.dec();
+        }
+
+        long duration = (System.nanoTime() - start) / 1_000_000;
+        JobRunEntity.Status status;
+        String message;
+        if (execution.cancelled) {
+            status = JobRunEntity.Status.CANCELLED;
+            message = "Cancelled.";
+        } else if (error[0] != null || failed[0]) {
+            status = JobRunEntity.Status.FAILED;
+            message = error[0] != null ? error[0] : lineContaining(output[0], INVALID_MESSAGE);
+            if (message == null) {
+                message = lastLine(output[0]);
+            }
+        } else {
+            status = JobRunEntity.Status.OK;
+            message = lastLine(output[0]);
+        }
+
+        synchronized (lock) {
+            record(job, new JobRunEntity(startedAt, duration, startedAt - execution.scheduledAt, status, message));
+            if (status == JobRunEntity.Status.FAILED) {
+                System.out.println(INVALID_MESSAGE + "Job " + job.getId() + " failed: " + message);
+            }
+            if (runtime.active == execution) {
+                runtime.active = null;
+                if (runtime.queued > 0 && job.getStatus() == JobEntity.Status.ACTIVE) {
+                    runtime.queued--;
+                    launch(job, runtime, System.currentTimeMillis());
+                }
+            }
+            updateGauges();
+            if (job.getType() == JobEntity.Type.ONCE && job.getStatus() == JobEntity.Status.ACTIVE) {
+                job.setStatus(JobEntity.Status.DONE);
+                job.setNextRunAt(0);
+            }
+            saveJobs();
+        }
+    }
+
+    private static void updateGauges() {
+        queueDepthGauge.set(workers.getQueue().size());
+    }
+
+    private static String firstLine(Exception e) {
+        return e.getMessage() == null ? e.toString() : e.getMessage().split("\\R")[0];
+    }
+
+    private static void cancelRun(Execution execution) {
+        if (execution == null) {
+            return;
+        }
+        execution.cancelled = true;
+        Connection connection = execution.connection;
+        if (connection != null) {
+            try {
+                connection.unwrap(PGConnection.class).cancelQuery();
+            } catch (SQLException e) {
+                System.out.println(INVALID_MESSAGE + "Could not cancel the running job: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Appends a run to the job's history, keeping the most recent ones. Must hold the lock. */
+    private static void record(JobEntity job, JobRunEntity run) {
+        if (run.getMessage() != null && run.getMessage().length() > MESSAGE_LENGTH) {
+            run.setMessage(run.getMessage().substring(0, MESSAGE_LENGTH - 3) + "...");
+        }
+        List<JobRunEntity> history = job.getHistory();
+        history.add(run);
+        while (history.size() > HISTORY_LIMIT) {
+            history.remove(0);
+        }
+        if (run.getStatus() == JobRunEntity.Status.OK || run.getStatus() == JobRunEntity.Status.FAILED) {
+            job.setRunCount(job.getRunCount() + 1);
+        }
+        if (run.getStatus() == JobRunEntity.Status.FAILED) {
+            job.setFailureCount(job.getFailureCount() + 1);
+        }
+    }
+
+    /**
+     * Returns the next due time of a recurring job after a run that was due at {@code scheduledAt}. Missed runs
+     * are skipped rather than fired in a burst.
+     */
+    private static long nextTime(JobEntity job, long scheduledAt, long now) {
+        if (job.getType() == JobEntity.Type.CRON) {
+            return CronExpression.parse(job.getCron()).next(ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault()))
+                    .toInstant().toEpochMilli();
+        }
+        long interval = job.getIntervalMs();
+        long next = scheduledAt + interval;
+        if (next <= now) {
+            next += ((now - next) / interval + 1) * interval;
+        }
+        return next;
+    }
+
+    private static long resumeTime(JobEntity job, long now) {
+        switch (job.getType()) {
+            case ONCE:
+                return Math.max(job.getNextRunAt(), now);
+            case RATE:
+                return job.getNextRunAt() > now ? job.getNextRunAt() : nextTime(job, job.getNextRunAt() > 0 ? job.getNextRunAt() : now, now);
+            default:
+                return nextTime(job, now, now);
+        }
+    }
+
+    private static String describeSchedule(JobEntity job) {
+        switch (job.getType()) {
+            case ONCE:
+                return "once";
+            case RATE:
+                return "every " + formatInterval(job.getIntervalMs());
+            default:
+                return "cron " + job.getCron();
+        }
+    }
+
+    private static String formatInterval(long millis) {
+        if (millis % 3_600_000 == 0) {return millis / 3_600_000 + "h";}
+        if (millis % 60_000 == 0) {return millis / 60_000 + "m";}
+        if (millis % 1000 == 0) {return millis / 1000 + "s";}
+        return millis + "ms";
+    }
+
+    private static String formatTime(long millis) {
+        return millis <= 0 ? "-" : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(millis));
+    }
+
+    private static String lineContaining(String output, String marker) {
+        for (String line : output.split("\\R")) {
+            if (line.contains(marker)) {
+                return stripColors(line.substring(line.indexOf(marker) + marker.length()));
+            }
+        }
+        return null;
+    }
+
+    private static String lastLine(String output) {
+        String[] lines = output.strip().split("\\R");
+        return lines.length == 0 || lines[lines.length - 1].isBlank() ? null : stripColors(lines[lines.length - 1]);
+    }
+
+    private static String stripColors(String text) {
+        return text.replaceAll("\u001B\\[[0-9;]*m", "").trim();
+    }
+
+    private static List<JobEntity> loadJobs() {
+        return store.items();
+    }
+
+    /** Writes every job to the store. Must hold the lock. */
+    private static void saveJobs() {
+        try {
+            store.write(new ArrayList<>(jobs.values()));
+        } catch (IOException e) {
+            System.out.println(INVALID_MESSAGE + "Could not write " + JobPath.filePath + ": " + e.getMessage());
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,9 +1,14 @@
 package org.cli.sql.postgresql;
 
 import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ReplicaRouter;
 import org.cli.exceptions.ConnectionNullException;
+import org.cli.manager.CommandOutcome;
+import org.cli.manager.CommandPackage;
+import org.cli.prometheus.QueryMetrics;
 
 import java.sql.*;
+import java.util.Set;
 
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
@@ -11,6 +16,103 @@ import static org.cli.manager.CommandHistory.showHistory;
 
 public class ExecutePostgresql extends QueriesPostgresql {
 
+    private static final Set<String> LUNA_COMMANDS = Set.of(
+            "begin-transaction", "call-procedure", "call-function", "create-table", "drop-table", "create-schema",
+            "insert-into", "select-from", "stream-from", "delete-from", "backup-database", "restore-database",
+            "history", "help");
+
+    /**
+     * Returns whether a query starts with one of the commands handled by {@link #command(String)} rather than
+     * being plain SQL. {@code commit}, {@code rollback} and {@code update} are valid SQL and are not counted.
+     *
+     * @param sqlQuery The query.
+     * @return True if the first word of the query is a command such as {@code select-from}.
+     */
+    public static boolean isLunaCommand(String sqlQuery) {
+        return LUNA_COMMANDS.contains(sqlQuery.trim().toLowerCase().split("\\s+", 2)[0]);
+    }
+
+    /**
+     * Tells whether a statement cannot run inside a transaction block, such as {@code VACUUM},
+     * {@code CREATE DATABASE} or {@code CREATE INDEX CONCURRENTLY}.
+     *
+     * @param sqlQuery The query.
+     * @return True if the statement has to run in autocommit mode.
+     */
+    public static boolean requiresAutocommit(String sqlQuery) {
+        String normalized = sqlQuery.trim().toLowerCase().replaceAll("\\s+", " ");
+        return normalized.startsWith("vacuum")
+                || normalized.matches("^(create|drop) (database|tablespace)\\b.*")
+                || normalized.startsWith("alter system")
+                || normalized.matches("^(create|drop|reindex)\\b.*\\bconcurrently\\b.*")
+                || normalized.matches("^call\\b.*");
+    }
+
+    /**
+     * Executes a command or a plain SQL statement and prints its result.
+     * <p>
+     * A query starting with {@code luna} is dispatched like a command typed at the prompt, a query starting with
+     * a command such as {@code select-from} goes through {@link #command(String)}, and anything else is executed
+     * as plain SQL: its result set, or its update count, is printed and errors are thrown instead of swallowed.
+     * </p>
+     *
+     * @param query The command or SQL statement.
+     * @throws SQLException If the plain SQL statement fails.
+     */
+    @SuppressWarnings("try")
+    public static void executeCommandOrSql(String query) throws SQLException {
+        if (query.trim().toLowerCase().startsWith("luna ")) {
+            CommandPackage.command(query.trim());
+            return;
+        }
+        if (isLunaCommand(query)) {
+            command(query);
+            return;
+        }
+        try (QueryMetrics.Timer timer = QueryMetrics.time("sql");
+             Statement statement = ConnectToPostgresql.currentConnection().createStatement()) {
+            printResult(statement, statement.execute(query));
+        } catch (SQLException e) {
+            QueryMetrics.error("sql", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Prints the current result of a statement: the rows of a result set, or the update count.
+     *
+     * @param statement    The statement that was executed.
+     * @param hasResultSet True if the current result is a result set.
+     * @throws SQLException If the result cannot be read.
+     */
+    public static void printResult(Statement statement, boolean hasResultSet) throws SQLException {
+        if (!hasResultSet) {
+            int count = statement.getUpdateCount();
+            if (count > 0) {CommandOutcome.rows(count);}
+            System.out.println(count > 0 ? count + (count == 1 ? " row affected." : " rows affected.") : "Done.");
+            return;
+        }
+        try (ResultSet rs = statement.getResultSet()) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            String[] headers = new String[metaData.getColumnCount()];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = metaData.getColumnName(i + 1);
+            }
+            StreamingTableRenderer renderer = new StreamingTableRenderer(headers);
+            long rows = 0;
+            while (rs.next()) {
+                String[] row = new String[headers.length];
+                for (int i = 0; i < headers.length; i++) {
+                    row[i] = rs.getString(i + 1);
+                }
+                renderer.addRow(row);
+                rows++;
+            }
+            renderer.finish();
+            QueryMetrics.rows(rows);
+        }
+    }
+
     /**
      * Executes the given SQL query and processes it based on the command type.
      * <p>
@@ -27,12 +129,14 @@ public class ExecutePostgresql extends QueriesPostgresql {
      *
      * @param sqlQuery The SQL query to execute.
      */
+    @SuppressWarnings("try")
     public static void command(String sqlQuery) {
-        try { if (ConnectToPostgresql.connection == null) { throw new ConnectionNullException(); }}
+        try { if (ConnectToPostgresql.currentConnection() == null) { throw new ConnectionNullException(); }}
         catch (ConnectionNullException e) { System.out.println(e.getMessage());}
 
-
-        try (Statement statement = ConnectToPostgresql.connection.createStatement()) {
+        Connection leased = ConnectToPostgresql.leasedConnection();
+        try (QueryMetrics.Timer timer = QueryMetrics.time(QueryMetrics.commandType(sqlQuery, isLunaCommand(sqlQuery)));
+             Statement statement = leased != null ? leased.createStatement() : ConnectToPostgresql.connection.createStatement()) {
             String trimmedQuery = sqlQuery.trim().toLowerCase();
             String[] parts = trimmedQuery.split(" ", 3);
             String commandType = parts[0];
@@ -67,10 +171,19 @@ public class ExecutePostgresql extends QueriesPostgresql {
                     break;
                 case "select-from":
                     if (parts.length < 2) {
+                        CommandOutcome.failed();
                         System.out.println(INVALID_MESSAGE + "Syntax Error: select-from requires a table name.");
                         return;
                     }
-                    selectFrom(parts[1], parts.length > 2 ? parts[2] : "");
+                    ReplicaRouter.runReadOnly(() -> selectFrom(parts[1], parts.length > 2 ? parts[2] : ""));
+                    break;
+                case "stream-from":
+                    if (parts.length < 2) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "Syntax Error: stream-from requires a table name.");
+                        return;
+                    }
+                    ReplicaRouter.runReadOnly(() -> streamFrom(parts[1], parts.length > 2 ? parts[2] : ""));
                     break;
                 case "update":
                     update(parts[1], parts[2], parts.length > 3 ? parts[3] : "");
@@ -94,11 +207,14 @@ public class ExecutePostgresql extends QueriesPostgresql {
                     try {
                         statement.execute(sqlQuery);
                     } catch (SQLException e) {
+                        QueryMetrics.error(e);
                         e.getMessage();
                         break;
                     }
             }
         } catch (SQLException e) {
+            QueryMetrics.error(QueryMetrics.commandType(sqlQuery, isLunaCommand(sqlQuery)), e);
+            CommandOutcome.failed();
             System.out.println(INVALID_MESSAGE + e.getMessage());
         }
     }
@@ -0,0 +1,297 @@
+package org.cli.sql.postgresql;
+
+import org.cli.conn.postgresql.ReplicaRouter;
+import org.cli.entities.SaveEntity;
+import org.cli.prometheus.QueryMetrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.cli.entities.Info.getUrlForPostgresql;
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.utils.Colors.GREEN;
+import static org.cli.utils.Colors.RESET;
+import static org.cli.utils.Colors.YELLOW;
+
+public class FanoutQueryPostgresql {
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final String SOURCE_COLUMN = "source";
+
+    /**
+     * How the query went on one target.
+     */
+    public static final class TargetResult {
+        public enum Status { OK, FAILED, TIMEOUT }
+
+        private final String source;
+        private final Status status;
+        private final long rows;
+        private final long millis;
+        private final String message;
+
+        private TargetResult(String source, Status status, long rows, long millis, String message) {
+            this.source = source;
+            this.status = status;
+            this.rows = rows;
+            this.millis = millis;
+            this.message = message;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /** Something a target reports to the thread that prints: its columns, a row, or that it finished. */
+    private static final class Event {
+        final String source;
+        final String[] columns;
+        final String[] row;
+        final TargetResult result;
+
+        private Event(String source, String[] columns, String[] row, TargetResult result) {
+            this.source = source;
+            this.columns = columns;
+            this.row = row;
+            this.result = result;
+        }
+    }
+
+    /**
+     * <h2>Fan-out Query</h2>
+     * Runs one SQL statement against several saved connection profiles at once and prints the rows of all of
+     * them as one table, with a {@code source} column naming the profile each row came from.
+     * <p>
+     * At most {@code concurrency} targets run at the same time, each on its own short-lived connection, so the
+     * session connection and its pool are not involved. Read-only SQL goes to a replica of a target when it has
+     * one within its lag ceiling, see {@link ReplicaRouter}. Each target gets {@code timeoutSeconds} from the moment it
+     * starts connecting; a target that takes longer has its query cancelled and is reported as timed out. Rows are
+     * printed as they arrive, in whatever order the targets deliver them, through a bounded queue, so memory stays
+     * constant however many rows the targets return. The first target to return columns defines the table; a
+     * target returning different columns is reported as failed. A summary line per target follows the table.
+     * </p>
+     *
+     * @param targets        The profiles to query.
+     * @param sql            The statement, run as-is on every target.
+     * @param concurrency    The number of targets queried at the same time.
+     * @param timeoutSeconds The time each target may take.
+     * @return The outcome per target, in the order of {@code targets}.
+     */
+    public static List<TargetResult> fanout(List<SaveEntity> targets, String sql, int concurrency, int timeoutSeconds) {
+        if (concurrency < 1 || timeoutSeconds < 1) {
+            throw new IllegalArgumentException("concurrency and timeout must be positive.");
+        }
+        BlockingQueue<Event> events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(concurrency, targets.size()), runnable -> {
+            Thread thread = new Thread(runnable, "luna-fanout-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "luna-fanout-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<String, TargetResult> results = new LinkedHashMap<>();
+        int pending = 0;
+        for (SaveEntity target : targets) {
+            if (target.getUsername() == null || target.getUsername().isBlank()) {
+                results.put(target.getId(), new TargetResult(target.getId(), TargetResult.Status.FAILED, 0, 0, "The profile has no username."));
+                continue;
+            }
+            results.put(target.getId(), null);
+            workers.execute(() -> query(target, sql, timeoutSeconds, watchdog, events));
+            pending++;
+        }
+
+        StreamingTableRenderer renderer = null;
+        String[] headers = null;
+        Set<String> mismatched = new HashSet<>();
+        long rows = 0;
+        try {
+            while (pending > 0) {
+                Event event = events.take();
+                if (event.result != null) {
+                    TargetResult result = event.result;
+                    if (mismatched.contains(event.source)) {
+                        result = new TargetResult(event.source, TargetResult.Status.FAILED, 0, result.getMillis(),
+                                "Columns differ from the first target: " + String.join(", ", Arrays.copyOfRange(headers, 1, headers.length)));
+                    }
+                    results.put(event.source, result);
+                    pending--;
+                } else if (event.columns != null) {
+                    if (headers == null) {
+                        headers = new String[event.columns.length + 1];
+                        headers[0] = SOURCE_COLUMN;
+                        System.arraycopy(event.columns, 0, headers, 1, event.columns.length);
+                        renderer = new StreamingTableRenderer(headers);
+                    } else if (!Arrays.equals(event.columns, Arrays.copyOfRange(headers, 1, headers.length))) {
+                        mismatched.add(event.source);
+                    }
+                } else if (!mismatched.contains(event.source)) {
+                    String[] row = new String[event.row.length + 1];
+                    row[0] = event.source;
+                    System.arraycopy(event.row, 0, row, 1, event.row.length);
+                    renderer.addRow(row);
+                    rows++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        if (renderer != null) {renderer.finish();}
+        QueryMetrics.rows(rows);
+        List<TargetResult> outcomes = new ArrayList<>();
+        for (Map.Entry<String, TargetResult> entry : results.entrySet()) {
+            TargetResult result = entry.getValue() != null ? entry.getValue()
+                    : new TargetResult(entry.getKey(), TargetResult.Status.FAILED, 0, 0, "Interrupted.");
+            outcomes.add(result);
+            report(result);
+        }
+        return outcomes;
+    }
+
+    private static void query(SaveEntity target, String sql, int timeoutSeconds, ScheduledExecutorService watchdog, BlockingQueue<Event> events) {
+        String source = target.getId();
+        long start = System.nanoTime();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        TargetResult result;
+        try (Connection connection = open(target, sql, properties(target, timeoutSeconds));
+             Statement statement = connection.createStatement()) {
+            long remaining = TimeUnit.SECONDS.toNanos(timeoutSeconds) - (System.nanoTime() - start);
+            if (remaining <= 0) {
+                timedOut.set(true);
+                throw new SQLException("Timed out while connecting.");
+            }
+            ScheduledFuture<?> cancel = watchdog.schedule(() -> {
+                timedOut.set(true);
+                try {statement.cancel();} catch (SQLException ignored) {}
+            }, remaining, TimeUnit.NANOSECONDS);
+            try {
+                connection.setAutoCommit(false);
+                statement.setFetchSize(StreamingTableRenderer.getFetchSize());
+                long rows = 0;
+                if (statement.execute(sql)) {
+                    try (ResultSet rs = statement.getResultSet()) {
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        String[] columns = new String[metaData.getColumnCount()];
+                        for (int i = 0; i < columns.length; i++) {
+                            columns[i] = metaData.getColumnName(i + 1);
+                        }
+                        events.put(new Event(source, columns, null, null));
+                        while (rs.next()) {
+                            String[] row = new String[columns.length];
+                            for (int i = 0; i < columns.length; i++) {
+                                row[i] = rs.getString(i + 1);
+                            }
+                            events.put(new Event(source, null, row, null));
+                            rows++;
+                        }
+                    }
+                } else {
+                    rows = Math.max(0, statement.getUpdateCount());
+                }
+                connection.commit();
+                result = new TargetResult(source, TargetResult.Status.OK, rows, millisSince(start), null);
+            } finally {
+                cancel.cancel(false);
+            }
+        } catch (SQLException e) {
+            QueryMetrics.error("fanout", e);
+            result = timedOut.get()
+                    ? new TargetResult(source, TargetResult.Status.TIMEOUT, 0, millisSince(start), "Timed out after " + timeoutSeconds + " s.")
+                    : new TargetResult(source, TargetResult.Status.FAILED, 0, millisSince(start), e.getMessage().split("\\R")[0]);
+        } catch (RuntimeException e) {
+            // Anything else must still end the target, or the caller waits for it forever.
+            result = new TargetResult(source, TargetResult.Status.FAILED, 0, millisSince(start), String.valueOf(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            events.put(new Event(source, null, null, result));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Properties properties(SaveEntity target, int timeoutSeconds) {
+        Properties properties = new Properties();
+        properties.setProperty("user", target.getUsername());
+        properties.setProperty("password", target.getPassword() == null ? "" : target.getPassword());
+        properties.setProperty("connectTimeout", String.valueOf(timeoutSeconds));
+        properties.setProperty("loginTimeout", String.valueOf(timeoutSeconds));
+        properties.setProperty("ApplicationName", "luna-fanout");
+        return properties;
+    }
+
+    /** A replica of the target for read-only SQL when it has one within its lag ceiling, else its primary. */
+    private static Connection open(SaveEntity target, String sql, Properties properties) throws SQLException {
+        if (!target.getReplicas().isEmpty() && ReplicaRouter.isReadOnly(sql)) {
+            Connection replica = ReplicaRouter.openReplica(target, properties);
+            if (replica != null) {return replica;}
+        }
+        return DriverManager.getConnection(getUrlForPostgresql(target.getHost(), target.getPort()) + target.getDatabase(), properties);
+    }
+
+    private static void report(TargetResult result) {
+        switch (result.getStatus()) {
+            case OK:
+                System.out.printf("%s%s%s %6d ms  %d rows%n", GREEN, result.getSource(), RESET, result.getMillis(), result.getRows());
+                break;
+            case TIMEOUT:
+                System.out.printf("%s%s timed out%s after %d ms%n", YELLOW, result.getSource(), RESET, result.getMillis());
+                break;
+            default:
+                System.out.printf("%s%s failed after %d ms: %s%n", INVALID_MESSAGE, result.getSource(), result.getMillis(), result.getMessage());
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
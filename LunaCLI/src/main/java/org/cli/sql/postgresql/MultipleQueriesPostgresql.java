@@ -0,0 +1,205 @@
+package org.cli.sql.postgresql;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.manager.CommandOutcome;
+import org.cli.prometheus.QueryMetrics;
+import org.cli.utils.OutputCapture;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.utils.Colors.GREEN;
+import static org.cli.utils.Colors.RESET;
+
+public class MultipleQueriesPostgresql {
+    private static final Pattern TRANSACTION_CONTROL = Pattern.compile(
+            "(?is)^\\s*(begin|start\\s+transaction|commit|end|rollback|abort|savepoint|release|prepare\\s+transaction)\\b.*");
+
+    /**
+     * Extracts the queries of {@code luna multiple}, each written between parentheses.
+     * <p>
+     * Parentheses inside a query ({@code count(*)}, sub-queries) are balanced, and parentheses inside quoted
+     * strings or identifiers are ignored, so {@code (SELECT count(*) FROM users WHERE name <> ')')} is one query.
+     * Text outside the groups (the command itself and its options) is not returned.
+     * </p>
+     *
+     * @param input The whole command line.
+     * @return The trimmed, non-empty queries in the order they were written.
+     */
+    public static List<String> extractQueries(String input) {
+        List<String> queries = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        char quote = 0;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {quote = 0;}
+            } else if (depth > 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == '(') {
+                if (depth++ == 0) {start = i + 1;}
+            } else if (c == ')' && depth > 0 && --depth == 0) {
+                String query = input.substring(start, i).trim();
+                if (!query.isEmpty()) {queries.add(query);}
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * <h2>Execute Queries in Parallel</h2>
+     * Runs the queries of {@code luna multiple} concurrently, each on its own connection leased from the pool,
+     * with at most {@code parallelism} of them running at a time.
+     * <p>
+     * Every query runs like in sequential mode (see {@link ExecutePostgresql#executeCommandOrSql(String)}). The output of every query is
+     * captured and printed as one block in the order the queries were given, as soon as that query and all the
+     * ones before it are done, followed by its latency. The total wall-clock time is printed at the end, so for
+     * independent aggregate queries it is close to the slowest query rather than the sum of all of them.
+     * </p>
+     * <p>
+     * Each query runs in autocommit on its own connection, so queries cannot share a transaction or temporary
+     * tables; use {@link #executePipelined(List)} for that.
+     * </p>
+     *
+     * <h3>Example:</h3>
+     * <pre>
+     * luna multiple parallel:4 (SELECT count(*) FROM users) (SELECT max(age) FROM users) (luna select-from orders)
+     * </pre>
+     *
+     * @param queries     The queries to run.
+     * @param parallelism The maximum number of queries running at the same time.
+     */
+    public static void executeParallel(List<String> queries, int parallelism) {
+        int workers = Math.max(1, Math.min(parallelism, queries.size()));
+        if (ConnectToPostgresql.pool == null) {
+            System.out.println(INVALID_MESSAGE + "Parallel execution needs a pooled connection, running the queries one by one.");
+            workers = 1;
+        } else if (workers > ConnectToPostgresql.pool.getMaxSize() - 1) {
+            // The session connection already holds one lease.
+            workers = Math.max(1, ConnectToPostgresql.pool.getMaxSize() - 1);
+            System.out.println("Pool max size is " + ConnectToPostgresql.pool.getMaxSize() + ", running with " + workers + " connections.");
+        }
+
+        long start = System.nanoTime();
+        long queryMillis = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            List<long[]> latencies = new ArrayList<>();
+            boolean[] failed = new boolean[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                String query = queries.get(i);
+                int index = i;
+                long[] latency = new long[1];
+                latencies.add(latency);
+                results.add(executor.submit(() -> OutputCapture.capture(() -> {
+                    long queryStart = System.nanoTime();
+                    CommandOutcome outcome = CommandOutcome.begin();
+                    try {
+                        ConnectToPostgresql.runOnLease(() -> ExecutePostgresql.executeCommandOrSql(query));
+                    } catch (Exception e) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + e.getMessage());
+                    } finally {
+                        CommandOutcome.end();
+                    }
+                    failed[index] = outcome.isFailed();
+                    latency[0] = (System.nanoTime() - queryStart) / 1_000_000;
+                })));
+            }
+
+            for (int i = 0; i < queries.size(); i++) {
+                String output = results.get(i).get();
+                System.out.println("Executing SQL: " + queries.get(i));
+                System.out.print(output);
+                if (failed[i]) {CommandOutcome.failed();}
+                System.out.println(GREEN + "Query " + (i + 1) + " finished in " + latencies.get(i)[0] + " ms" + RESET);
+                queryMillis += latencies.get(i)[0];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("Ran %d queries on %d connections in %d ms (%d ms of query time).%n",
+                queries.size(), workers, (System.nanoTime() - start) / 1_000_000, queryMillis);
+    }
+
+    /**
+     * <h2>Execute Queries in One Round Trip</h2>
+     * Sends all queries of {@code luna multiple} to the server as one multi-statement request on the session
+     * connection and then walks every returned result set and update count in order.
+     * <p>
+     * The driver sends the statements back to back followed by a single sync message, so the whole group costs
+     * about one network round trip instead of one per query; over a link with 50 ms of latency, twenty
+     * statements take about 50 ms instead of a second. Because everything runs on the session connection,
+     * the queries share its transaction and temporary tables.
+     * </p>
+     * <p>
+     * Only plain SQL can be pipelined; luna commands are rejected before anything is sent. Unless a transaction
+     * was opened with {@code begin-transaction} or the group contains its own transaction control, the group runs
+     * as one implicit transaction: if any statement fails, none of the group's changes are kept and only the
+     * error is printed.
+     * </p>
+     *
+     * <h3>Example:</h3>
+     * <pre>
+     * luna multiple mode:pipeline (CREATE TEMP TABLE t AS SELECT * FROM users) (UPDATE t SET age = age + 1) (SELECT avg(age) FROM t)
+     * </pre>
+     *
+     * @param queries The queries to run, in order.
+     */
+    @SuppressWarnings("try")
+    public static void executePipelined(List<String> queries) {
+        for (String query : queries) {
+            if (query.trim().toLowerCase().startsWith("luna ") || ExecutePostgresql.isLunaCommand(query)) {
+                CommandOutcome.failed();
+                System.out.println(INVALID_MESSAGE + "Pipeline mode only accepts plain SQL, not: " + query);
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        Connection connection = ConnectToPostgresql.currentConnection();
+        boolean implicitTransaction = false;
+        try (QueryMetrics.Timer timer = QueryMetrics.time("multiple");
+             Statement statement = connection.createStatement()) {
+            implicitTransaction = connection.getAutoCommit() && queries.stream().noneMatch(query -> TRANSACTION_CONTROL.matcher(query).matches());
+            boolean hasResultSet = statement.execute(String.join(";\n", queries));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            int index = 0;
+            while (hasResultSet || statement.getUpdateCount() != -1) {
+                System.out.println("Executing SQL: " + (index < queries.size() ? queries.get(index) : "(result " + (index + 1) + ")"));
+                ExecutePostgresql.printResult(statement, hasResultSet);
+                hasResultSet = statement.getMoreResults();
+                index++;
+            }
+            System.out.println(GREEN + "Ran " + index + " statements in one round trip in " + millis + " ms." + RESET);
+        } catch (SQLException e) {
+            QueryMetrics.error("multiple", e);
+            // Only a group that ran as its own implicit transaction is undone as a whole.
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + (implicitTransaction
+                    ? "Pipeline failed, no statement of the group took effect: "
+                    : "Pipeline failed, statements before the failing one may have taken effect or be part of the open transaction: ")
+                    + e.getMessage());
+        }
+    }
+}
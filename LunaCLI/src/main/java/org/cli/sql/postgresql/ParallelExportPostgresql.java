@@ -0,0 +1,279 @@
+package org.cli.sql.postgresql;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.manager.CommandOutcome;
+import org.cli.prometheus.QueryMetrics;
+import org.postgresql.PGConnection;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.utils.Colors.GREEN;
+import static org.cli.utils.Colors.RESET;
+
+public class ParallelExportPostgresql {
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    /** Transaction-scoped, so pooled connections go back with their session defaults untouched. */
+    private static final String SNAPSHOT_TRANSACTION = "SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY";
+
+    /**
+     * Exports a whole table to CSV using several connections at once.
+     * <p>
+     * A coordinator connection opens a {@code REPEATABLE READ} transaction, publishes its snapshot with
+     * {@code pg_export_snapshot()} and splits the table into {@code chunks} ranges: by the integer column
+     * {@code keyColumn} when one is given, otherwise by heap page ({@code ctid}) ranges. Every chunk is then
+     * streamed with {@code COPY ... TO STDOUT} on its own pooled connection that imported the same snapshot via
+     * {@code SET TRANSACTION SNAPSHOT}, so all parts see exactly the same data. The coordinator keeps its
+     * transaction open until the last chunk is done.
+     * </p>
+     * <p>
+     * With {@code merge} the parts are concatenated in range order into {@code filePath} (ordered by the key
+     * when splitting by key) and removed; otherwise they are left as {@code <name>-part-001.csv} and so on,
+     * each with its own header.
+     * </p>
+     * <p>
+     * A pool of fewer than three connections has no room for a worker next to the session and the coordinator,
+     * so the table is then exported in one {@code COPY} on the session connection, into {@code filePath}.
+     * </p>
+     *
+     * @param tableName The table to export.
+     * @param keyColumn An integer column (usually the primary key) to split on, or null to split by ctid.
+     * @param chunks    The number of chunks (and concurrent connections).
+     * @param filePath  The path of the merged file, also used to name the part files.
+     * @param merge     True to merge the parts into one file.
+     */
+    @SuppressWarnings("try")
+    public static void exportTable(String tableName, String keyColumn, int chunks, String filePath, boolean merge) {
+        ConnectionPoolPostgresql pool = ConnectToPostgresql.pool;
+        if (pool == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Parallel export needs a pooled connection. Connect first.");
+            return;
+        }
+        if (pool.getMaxSize() < 3) {
+            // The session and the coordinator hold one lease each, a worker would wait for the borrow timeout.
+            System.out.println("Pool max size is " + pool.getMaxSize() + ", exporting on the session connection instead.");
+            String query = "SELECT * FROM " + tableName + (keyColumn == null ? "" : " ORDER BY " + keyColumn);
+            try {
+                QueriesPostgresql.exportToCsvWithCopy(query, filePath);
+            } catch (RuntimeException e) {
+                CommandOutcome.failed();
+                System.out.println(INVALID_MESSAGE + "Export failed: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+            return;
+        }
+        // The session connection and the coordinator already hold one lease each.
+        int workers = Math.max(1, Math.min(chunks, pool.getMaxSize() - 2));
+        if (workers < chunks) {
+            System.out.println("Pool max size is " + pool.getMaxSize() + ", exporting with " + workers + " connections.");
+        }
+
+        long start = System.nanoTime();
+        List<Path> parts = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        boolean completed = false;
+
+        try (QueryMetrics.Timer timer = QueryMetrics.time("out");
+             Connection coordinator = pool.borrow()) {
+            coordinator.setAutoCommit(false);
+
+            String snapshot;
+            try (Statement statement = coordinator.createStatement()) {
+                statement.execute(SNAPSHOT_TRANSACTION);
+                try (ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+                    rs.next();
+                    snapshot = rs.getString(1);
+                }
+            }
+
+            List<String> predicates = keyColumn == null
+                    ? pageRanges(coordinator, tableName, workers)
+                    : keyRanges(coordinator, tableName, keyColumn, workers);
+
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < predicates.size(); i++) {
+                Path part = partPath(filePath, i + 1, merge);
+                parts.add(part);
+                String query = "SELECT * FROM " + tableName + " WHERE " + predicates.get(i)
+                        + (keyColumn == null ? "" : " ORDER BY " + keyColumn);
+                boolean header = !merge || i == 0;
+                results.add(executor.submit(() -> copyChunk(pool, snapshot, query, part, header)));
+            }
+
+            long rows = 0;
+            for (int i = 0; i < results.size(); i++) {
+                long partRows = results.get(i).get();
+                rows += partRows;
+                System.out.println("Part " + (i + 1) + "/" + results.size() + ": " + partRows + " rows");
+            }
+            coordinator.commit();
+
+            if (merge) {
+                mergeParts(parts, Path.of(filePath));
+                QueryMetrics.bytes(Files.size(Path.of(filePath)));
+            } else {
+                for (Path part : parts) {
+                    QueryMetrics.bytes(Files.size(part));
+                }
+            }
+            QueryMetrics.rows(rows);
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.println(GREEN + "Data successfully exported to " + (merge ? filePath : parts.size() + " part files next to " + filePath)
+                    + RESET + String.format(" (%d rows, %d connections, %.2f s, %.0f rows/s)", rows, workers, seconds, rows / Math.max(seconds, 0.001)));
+            completed = true;
+        } catch (ExecutionException e) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Parallel export failed: " + e.getCause().getMessage());
+        } catch (SQLException | IOException e) {
+            if (e instanceof SQLException) {QueryMetrics.error("out", (SQLException) e);}
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Parallel export failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                // Workers still copying would recreate the part files after they are deleted.
+                awaitWorkers(executor);
+                deleteQuietly(parts);
+            }
+        }
+    }
+
+    private static void awaitWorkers(ExecutorService executor) {
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long copyChunk(ConnectionPoolPostgresql pool, String snapshot, String query, Path part, boolean header) throws SQLException, IOException {
+        try (Connection connection = pool.borrow()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(SNAPSHOT_TRANSACTION);
+                statement.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+            }
+
+            try (FileChannel channel = FileChannel.open(part,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), COPY_BUFFER_SIZE)) {
+                long rows = connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyOut("COPY (" + query + ") TO STDOUT WITH (FORMAT csv" + (header ? ", HEADER" : "") + ")", out);
+                connection.commit();
+                return rows;
+            }
+        }
+    }
+
+    private static List<String> keyRanges(Connection connection, String tableName, String keyColumn, int chunks) throws SQLException {
+        long min;
+        long max;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT min(" + keyColumn + ")::bigint, max(" + keyColumn + ")::bigint FROM " + tableName)) {
+            rs.next();
+            min = rs.getLong(1);
+            if (rs.wasNull()) {
+                return List.of("false");
+            }
+            max = rs.getLong(2);
+        }
+
+        // A bigint key may span more than Long.MAX_VALUE, so the bounds are computed without overflow.
+        BigInteger span = BigInteger.valueOf(max).subtract(BigInteger.valueOf(min)).add(BigInteger.ONE);
+        int count = span.min(BigInteger.valueOf(Math.max(1, chunks))).intValue();
+        List<String> predicates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long lower = bound(min, span, i, count);
+            long upper = bound(min, span, i + 1, count);
+            predicates.add(i == count - 1
+                    ? keyColumn + " >= " + lower
+                    : keyColumn + " >= " + lower + " AND " + keyColumn + " < " + upper);
+        }
+        return predicates;
+    }
+
+    private static long bound(long min, BigInteger span, int index, int count) {
+        return BigInteger.valueOf(min).add(span.multiply(BigInteger.valueOf(index)).divide(BigInteger.valueOf(count))).longValue();
+    }
+
+    private static List<String> pageRanges(Connection connection, String tableName, int chunks) throws SQLException {
+        long pages;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_relation_size('" + tableName.replace("'", "''")
+                     + "'::regclass) / current_setting('block_size')::bigint")) {
+            rs.next();
+            pages = rs.getLong(1);
+        }
+
+        int count = (int) Math.max(1, Math.min(chunks, pages));
+        List<String> predicates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long lower = pages * i / count;
+            long upper = pages * (i + 1) / count;
+            predicates.add(i == count - 1
+                    ? "ctid >= '(" + lower + ",0)'::tid"
+                    : "ctid >= '(" + lower + ",0)'::tid AND ctid < '(" + upper + ",0)'::tid");
+        }
+        return predicates;
+    }
+
+    private static Path partPath(String filePath, int index, boolean merge) {
+        String suffix = String.format("-part-%03d", index);
+        if (merge) {
+            return Path.of(filePath + suffix);
+        }
+        int dot = filePath.lastIndexOf('.');
+        return dot > filePath.lastIndexOf('/') && dot > 0
+                ? Path.of(filePath.substring(0, dot) + suffix + filePath.substring(dot))
+                : Path.of(filePath + suffix);
+    }
+
+    private static void mergeParts(List<Path> parts, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+                Files.delete(part);
+            }
+        }
+    }
+
+    private static void deleteQuietly(List<Path> parts) {
+        for (Path part : parts) {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.cli.sql.postgresql;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.manager.CommandOutcome;
+import org.cli.prometheus.QueryMetrics;
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+import static org.cli.utils.Colors.GREEN;
+import static org.cli.utils.Colors.RESET;
+import static org.cli.utils.Colors.YELLOW;
+
+public class ParallelScriptPostgresql {
+
+    private static final int PREVIEW_LENGTH = 80;
+
+    /**
+     * The result of one statement of the script.
+     */
+    private static final class Outcome {
+        final int number;
+        final String sql;
+        final long millis;
+        final String detail;
+        final boolean succeeded;
+        /** For a skipped statement, the failed statement it (indirectly) depends on; otherwise 0. */
+        final int blockedBy;
+
+        Outcome(int number, String sql, long millis, String detail, boolean succeeded, int blockedBy) {
+            this.number = number;
+            this.sql = sql;
+            this.millis = millis;
+            this.detail = detail;
+            this.succeeded = succeeded;
+            this.blockedBy = blockedBy;
+        }
+
+        boolean failed() {
+            return !succeeded && blockedBy == 0;
+        }
+
+        int rootFailure() {
+            return blockedBy == 0 ? number : blockedBy;
+        }
+    }
+
+    /**
+     * <h2>Execute SQL File in Parallel</h2>
+     * Runs the statements of a SQL file on up to {@code parallelism} pooled connections at once.
+     * <p>
+     * Every statement is analysed with {@link SqlDependencyGraph}: it waits for the earlier statements that wrote
+     * a table it touches, and a writing statement also waits for the earlier statements that read that table.
+     * Everything else starts as soon as a connection is free, so independent {@code CREATE INDEX},
+     * {@code ANALYZE} and per-table {@code INSERT ... SELECT} statements overlap. A {@code -- luna:barrier}
+     * comment line makes everything after it wait for everything before it; statements whose tables cannot be
+     * determined ({@code SET}, {@code DO}, function definitions, ...) and {@code COPY ... FROM stdin} sections
+     * behave as barriers and run alone.
+     * </p>
+     * <p>
+     * Unlike {@link QueriesPostgresql#executeSqlFile(String)} each statement commits on its own, because the
+     * statements run on different connections. Session settings ({@code SET}, temporary tables) therefore do
+     * not carry over from one statement to the next. A failed statement is reported with its error; the
+     * statements that depend on it, and everything after the next barrier, are skipped. Result sets are counted,
+     * not printed. Each statement is reported with its duration as it finishes, followed by a summary.
+     * </p>
+     *
+     * <h3>Example:</h3>
+     * <pre>
+     * luna run filepath:indexes.sql parallel:4
+     * </pre>
+     *
+     * @param pathFile    The file path of the SQL script to be executed.
+     * @param parallelism The maximum number of statements running at the same time.
+     * @throws SQLException If the database connection is not available.
+     */
+    public static void executeSqlFile(String pathFile, int parallelism) throws SQLException {
+        if (ConnectToPostgresql.currentConnection() == null || ConnectToPostgresql.currentConnection().isClosed()) {throw new SQLException("Database connection is not available.");}
+        ConnectionPoolPostgresql pool = ConnectToPostgresql.pool;
+        if (pool == null) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Parallel execution needs a pooled connection. Connect first.");
+            return;
+        }
+        // The session connection already holds one lease.
+        int workers = Math.max(1, Math.min(parallelism, pool.getMaxSize() - 1));
+        if (workers < parallelism) {
+            System.out.println("Pool max size is " + pool.getMaxSize() + ", running with " + workers + " connections.");
+        }
+
+        long start = System.nanoTime();
+        QueryMetrics.Timer timer = QueryMetrics.time("run");
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        SqlDependencyGraph graph = new SqlDependencyGraph();
+        Map<Integer, CompletableFuture<Outcome>> sinceBarrier = new HashMap<>();
+        List<CompletableFuture<Outcome>> all = new ArrayList<>();
+        int blockedBy = 0;
+
+        try (SqlScriptReader reader = new SqlScriptReader(Path.of(pathFile))) {
+            reader.reportBarriers(true);
+            String sql;
+            int number = 0;
+
+            while ((sql = reader.nextStatement()) != null) {
+                if (sql.equals(SqlScriptReader.BARRIER)) {
+                    blockedBy = firstFailure(sinceBarrier.values(), blockedBy);
+                    sinceBarrier.clear();
+                    graph.reset();
+                    continue;
+                }
+
+                number++;
+                SqlDependencyGraph.Access access = SqlDependencyGraph.analyze(sql);
+                if (access.isBarrier() || reader.isCopyFromStdin()) {
+                    blockedBy = firstFailure(sinceBarrier.values(), blockedBy);
+                    sinceBarrier.clear();
+                    graph.reset();
+                    Outcome outcome = report(blockedBy != 0
+                            ? skipped(number, sql, blockedBy)
+                            : run(pool, number, sql, reader));
+                    if (!outcome.succeeded) {blockedBy = outcome.rootFailure();}
+                    all.add(CompletableFuture.completedFuture(outcome));
+                    continue;
+                }
+                if (blockedBy != 0) {
+                    all.add(CompletableFuture.completedFuture(report(skipped(number, sql, blockedBy))));
+                    continue;
+                }
+
+                List<CompletableFuture<Outcome>> dependencies = new ArrayList<>();
+                for (int dependency : graph.add(number, access)) {
+                    dependencies.add(sinceBarrier.get(dependency));
+                }
+                int statementNumber = number;
+                String statementSql = sql;
+                CompletableFuture<Outcome> future = CompletableFuture
+                        .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                        .thenApplyAsync(ignored -> {
+                            for (CompletableFuture<Outcome> dependency : dependencies) {
+                                Outcome done = dependency.join();
+                                if (!done.succeeded) {
+                                    return report(skipped(statementNumber, statementSql, done.rootFailure()));
+                                }
+                            }
+                            return report(run(pool, statementNumber, statementSql, null));
+                        }, executor);
+                sinceBarrier.put(number, future);
+                all.add(future);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading SQL file: " + e.getMessage());
+        } finally {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+            executor.shutdown();
+            timer.close();
+        }
+
+        printSummary(all, workers, (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    private static Outcome run(ConnectionPoolPostgresql pool, int number, String sql, SqlScriptReader reader) {
+        long start = System.nanoTime();
+        try (Connection connection = pool.borrow();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            String detail;
+            if (reader != null && reader.isCopyFromStdin()) {
+                long rows = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, reader.copyData());
+                detail = rows + " rows copied";
+            } else if (statement.execute(sql)) {
+                long rows = 0;
+                try (ResultSet rs = statement.getResultSet()) {
+                    while (rs.next()) {rows++;}
+                }
+                QueryMetrics.rows("run", rows);
+                detail = rows + (rows == 1 ? " row" : " rows");
+            } else {
+                int count = statement.getUpdateCount();
+                detail = count > 0 ? count + " rows affected" : "done";
+            }
+            return new Outcome(number, sql, elapsedMillis(start), detail, true, 0);
+        } catch (SQLException e) {
+            QueryMetrics.error("run", e);
+            return new Outcome(number, sql, elapsedMillis(start), e.getMessage(), false, 0);
+        } catch (IOException | RuntimeException e) {
+            return new Outcome(number, sql, elapsedMillis(start), e.getMessage(), false, 0);
+        }
+    }
+
+    private static Outcome skipped(int number, String sql, int failedStatement) {
+        return new Outcome(number, sql, 0, "depends on failed statement #" + failedStatement, false, failedStatement);
+    }
+
+    /**
+     * Waits for the given statements and returns the first failure among them, or {@code current} if there is
+     * already one or none of them failed.
+     */
+    private static int firstFailure(Collection<CompletableFuture<Outcome>> statements, int current) {
+        int failure = current;
+        for (CompletableFuture<Outcome> statement : statements) {
+            Outcome outcome = statement.join();
+            if (!outcome.succeeded && (failure == 0 || outcome.rootFailure() < failure)) {
+                failure = outcome.rootFailure();
+            }
+        }
+        return failure;
+    }
+
+    private static synchronized Outcome report(Outcome outcome) {
+        String preview = preview(outcome.sql);
+        if (outcome.succeeded) {
+            System.out.printf("%s#%d%s %6d ms  %s (%s)%n", GREEN, outcome.number, RESET, outcome.millis, preview, outcome.detail);
+        } else if (outcome.failed()) {
+            System.out.printf("%s#%d failed after %d ms: %s%n    %s%n", INVALID_MESSAGE, outcome.number, outcome.millis, outcome.detail, preview);
+        } else {
+            System.out.printf("%s#%d skipped%s, %s: %s%n", YELLOW, outcome.number, RESET, outcome.detail, preview);
+        }
+        return outcome;
+    }
+
+    private static void printSummary(List<CompletableFuture<Outcome>> all, int workers, double seconds) {
+        int succeeded = 0;
+        int skipped = 0;
+        long statementMillis = 0;
+        List<Integer> failed = new ArrayList<>();
+        for (CompletableFuture<Outcome> future : all) {
+            Outcome outcome = future.join();
+            statementMillis += outcome.millis;
+            if (outcome.succeeded) {
+                succeeded++;
+            } else if (outcome.failed()) {
+                failed.add(outcome.number);
+            } else {
+                skipped++;
+            }
+        }
+
+        System.out.printf("Ran %d statements on %d connections in %.2f s: %d succeeded, %d failed, %d skipped (%.2f s of statement time, %.1fx parallel).%n",
+                all.size(), workers, seconds, succeeded, failed.size(), skipped,
+                statementMillis / 1000.0, statementMillis / 1000.0 / Math.max(seconds, 0.001));
+        if (failed.isEmpty()) {
+            System.out.println(GREEN + "SQL file executed successfully." + RESET);
+        } else {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "Failed statements: " + failed.stream().map(n -> "#" + n).toList());
+        }
+    }
+
+    private static String preview(String sql) {
+        String line = sql.replaceAll("\\s+", " ").trim();
+        return line.length() <= PREVIEW_LENGTH ? line : line.substring(0, PREVIEW_LENGTH - 3) + "...";
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -2,23 +2,37 @@ package org.cli.sql.postgresql;
 
 
 import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.conn.postgresql.ReplicaRouter;
+import org.cli.entities.HistoryEntry;
+import org.cli.entities.JobEntity;
 import org.cli.entities.SaveEntity;
 import org.cli.conn.postgresql.SaveEntityManagerPostgresql;
 import org.cli.exceptions.HandleChangePortException;
 import org.cli.exceptions.ParamLengthException;
 import org.cli.exceptions.handleForceUserLoadAndConnectException;
+import org.cli.manager.CommandHistory;
+import org.cli.manager.CommandOutcome;
+import org.cli.manager.CommandPackage;
+import org.cli.manager.HistoryIndex;
+import org.cli.prometheus.QueryMetrics;
+import org.cli.proxy.ProxyServer;
+import org.cli.scheduler.JobScheduler;
+import org.cli.utils.ProxySettings;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.cli.conn.postgresql.SnippetManagerPostgresql.executeSnippet;
+import static org.cli.conn.postgresql.SnippetManagerPostgresql.executeSnippetByName;
 import static org.cli.conn.postgresql.SnippetManagerPostgresql.saveSnippet;
 import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.exceptions.CustomMessages.VALID_MESSAGE;
@@ -51,10 +65,10 @@ public class ProcessCommandQueriesPostgresql {
 
             if (connectionEntity.getUsername() != null && connectionEntity.getPassword() != null && connectionEntity.getDatabase() != null) {
                 if ("postgresql".equals(dbType)) {ConnectToPostgresql.connectToDatabase(connectionEntity.getUsername(), connectionEntity.getPassword(), connectionEntity.getDatabase());}
-                else { System.out.println(INVALID_MESSAGE + "Unsupported Database: " + dbType);}
-            } else {System.out.println(INVALID_MESSAGE + "Connection Failed");}
-        } catch (ParamLengthException e) {System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
-        } catch (Exception e) {System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+                else { CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "Unsupported Database: " + dbType);}
+            } else {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "Connection Failed");}
+        } catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
     /**
      * Handles saving an entity to the database.
@@ -68,6 +82,12 @@ public class ProcessCommandQueriesPostgresql {
             }
 
             LinkedList<String> saveParams = extractParameters(parts, 2);
+            saveEntity.setTags(null);
+            saveEntity.setHost(null);
+            saveEntity.setPort(null);
+            saveEntity.setReplicas(null);
+            saveEntity.setRouting(null);
+            saveEntity.setMaxLag(null);
 
             for (String param : saveParams) {
                 if (param.startsWith("username:")) {
@@ -76,17 +96,38 @@ public class ProcessCommandQueriesPostgresql {
                     saveEntity.setPassword(param.substring("password:".length()));
                 } else if (param.startsWith("database:")) {
                     saveEntity.setDatabase(param.substring("database:".length()));
+                } else if (param.startsWith("tags:")) {
+                    saveEntity.setTags(new ArrayList<>(Arrays.asList(param.substring("tags:".length()).split(","))));
+                } else if (param.startsWith("host:")) {
+                    saveEntity.setHost(param.substring("host:".length()));
+                } else if (param.startsWith("port:")) {
+                    saveEntity.setPort(Integer.parseInt(param.substring("port:".length())));
+                } else if (param.startsWith("replicas:")) {
+                    saveEntity.setReplicas(new ArrayList<>(Arrays.asList(param.substring("replicas:".length()).split(","))));
+                } else if (param.startsWith("routing:")) {
+                    String routing = param.substring("routing:".length()).toLowerCase();
+                    if (!ReplicaRouter.ROUND_ROBIN.equals(routing) && !ReplicaRouter.LEAST_LAG.equals(routing)) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "routing: must be " + ReplicaRouter.ROUND_ROBIN + " or " + ReplicaRouter.LEAST_LAG + ".");
+                        return;
+                    }
+                    saveEntity.setRouting(routing);
+                } else if (param.startsWith("maxLag:")) {
+                    saveEntity.setMaxLag(Integer.parseInt(param.substring("maxLag:".length())));
                 }
             }
 
             if (connectionEntity.getUsername() != null && connectionEntity.getDatabase() != null) {
                 SaveEntityManagerPostgresql.savePerson(saveEntity);
             } else {
+                CommandOutcome.failed();
                 System.out.println(INVALID_MESSAGE + "Invalid save parameters.");
             }
         } catch (ParamLengthException e) {
+            CommandOutcome.failed();
             System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
         } catch (Exception e) {
+            CommandOutcome.failed();
             System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());
         }
     }
@@ -103,8 +144,8 @@ public class ProcessCommandQueriesPostgresql {
             } else {
                 throw new ParamLengthException();
             }
-        } catch (ParamLengthException e) {System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
-        } catch (Exception e) {System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+        } catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
     /**
      * Handles retrieving a specific user from the database.
@@ -131,11 +172,11 @@ public class ProcessCommandQueriesPostgresql {
             if (connectionEntity.getUsername() != null && connectionEntity.getDatabase() != null) {
                 SaveEntity user = SaveEntityManagerPostgresql.getPerson(entity.getId());
                 if (user != null) {System.out.println(VALID_MESSAGE + "User found: " + user);}
-                else {System.out.println(INVALID_MESSAGE + "User not found.");}
+                else {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "User not found.");}
             }
-            else {System.out.println(INVALID_MESSAGE + "Invalid user retrieval parameters.");}
-        } catch (ParamLengthException e) {System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
-        } catch (Exception e) {System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+            else {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "Invalid user retrieval parameters.");}
+        } catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
     /**
      * Handles changing the database port.
@@ -151,8 +192,162 @@ public class ProcessCommandQueriesPostgresql {
 
             ConnectToPostgresql.changePort(newPort);
 
-        } catch (ParamLengthException | HandleChangePortException e) { System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
-        } catch (Exception e) { System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+        } catch (ParamLengthException | HandleChangePortException e) { CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) { CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+    }
+    /**
+     * Handles the connection pool command.
+     * <p>
+     * Without parameters the statistics of the active pool are displayed. With parameters the settings used
+     * by the next pool are changed; they apply after reconnecting. Settings left out keep their current value.
+     * </p>
+     *
+     * <h2>Example Command Line Input:</h2>
+     * <pre>
+     * {@code
+     * luna pool
+     * luna pool min:2 max:16 idle:300 timeout:30
+     * }
+     * </pre>
+     *
+     * @param parts The split command array.
+     */
+    public static void handlePoolCommand(String[] parts) {
+        try {
+            if (parts.length == 2) {
+                ConnectToPostgresql.displayPoolStats();
+                return;
+            }
+
+            int min = ConnectionPoolPostgresql.getDefaultMinSize();
+            int max = ConnectionPoolPostgresql.getDefaultMaxSize();
+            long idle = ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds();
+            long timeout = ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds();
+
+            for (String param : extractParameters(parts, 2)) {
+                if (param.startsWith("min:")) {min = Integer.parseInt(param.substring("min:".length()));}
+                else if (param.startsWith("max:")) {max = Integer.parseInt(param.substring("max:".length()));}
+                else if (param.startsWith("idle:")) {idle = Long.parseLong(param.substring("idle:".length()));}
+                else if (param.startsWith("timeout:")) {timeout = Long.parseLong(param.substring("timeout:".length()));}
+                else {throw new ParamLengthException();}
+            }
+
+            ConnectionPoolPostgresql.configure(min, max, idle, timeout);
+            System.out.println(VALID_MESSAGE + "Pool settings saved (min " + min + ", max " + max + ", idle " + idle
+                    + "s, timeout " + timeout + "s). Reconnect to apply them.");
+        } catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+    }
+    /**
+     * Starts, stops or displays the connection multiplexing proxy.
+     * <p>
+     * The proxy serves the saved user given with {@code user:}: other LunaCLI instances and tools connect to the
+     * local port (or to the Unix domain socket in {@code socket:}) with its username, database and password, and
+     * share {@code pool:} server connections, one transaction at a time.
+     * </p>
+     *
+     * <h2>Example Command Line Input:</h2>
+     * <pre>
+     * {@code
+     * luna proxy start user:Person1 listen:6432 socket:/tmp pool:4 queueTimeout:30 maxClients:100
+     * luna proxy
+     * luna proxy stop
+     * }
+     * </pre>
+     *
+     * @param parts The split command array.
+     */
+    public static void handleProxyCommand(String[] parts) {
+        try {
+            if (parts.length == 2) {
+                ProxyServer.displayStats();
+                return;
+            }
+            switch (parts[2].toLowerCase()) {
+                case "stop":
+                    if (ProxyServer.stop()) {
+                        System.out.println(VALID_MESSAGE + "Proxy stopped.");
+                    } else {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "The proxy is not running.");
+                    }
+                    break;
+                case "start":
+                    SaveEntity profile = null;
+                    int listen = ProxySettings.port;
+                    String socket = null;
+                    int poolSize = ProxySettings.poolSize;
+                    for (String param : extractParameters(parts, 3)) {
+                        if (param.startsWith("user:")) {
+                            profile = SaveEntityManagerPostgresql.getPerson(param.substring("user:".length()));
+                            if (profile == null) {
+                                CommandOutcome.failed();
+                                System.out.println(INVALID_MESSAGE + "User not found: " + param.substring("user:".length()));
+                                return;
+                            }
+                        }
+                        else if (param.startsWith("listen:")) {listen = Integer.parseInt(param.substring("listen:".length()));}
+                        else if (param.startsWith("socket:")) {socket = param.substring("socket:".length());}
+                        else if (param.startsWith("pool:")) {poolSize = Integer.parseInt(param.substring("pool:".length()));}
+                        else if (param.startsWith("queueTimeout:")) {ProxySettings.queueTimeoutSeconds = Integer.parseInt(param.substring("queueTimeout:".length()));}
+                        else if (param.startsWith("maxClients:")) {ProxySettings.maxClients = Integer.parseInt(param.substring("maxClients:".length()));}
+                        else {throw new ParamLengthException();}
+                    }
+                    if (profile == null || poolSize < 1 || listen < 1 || ProxySettings.queueTimeoutSeconds < 1) {throw new ParamLengthException();}
+
+                    ProxyServer.start(profile, listen, socket, poolSize);
+                    System.out.println(VALID_MESSAGE + "Proxy listening on 127.0.0.1:" + listen + (socket == null ? "" : " and in " + socket)
+                            + " for " + profile.getUsername() + "@" + profile.getDatabase() + " with " + poolSize + " server connections.");
+                    break;
+                default:
+                    throw new ParamLengthException();
+            }
+        } catch (ParamLengthException e) {
+            CommandOutcome.failed();
+            System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+            System.out.println("Usage: luna proxy start user:<Id> [listen:<port>] [socket:<directory>] [pool:<n>] [queueTimeout:<seconds>] [maxClients:<n>] | luna proxy | luna proxy stop");
+        } catch (NumberFormatException e) {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "listen:, pool:, queueTimeout: and maxClients: must be numbers.");
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Proxy Error: " + e.getMessage());}
+    }
+    /**
+     * Handles the settings of the streaming table renderer used by {@code stream-from}, and the output format of
+     * every result set. Settings left out keep their current value.
+     *
+     * <h2>Example Command Line Input:</h2>
+     * <pre>
+     * {@code
+     * luna stream sample:200 fetch:5000 width:30 overflow:wrap
+     * luna stream format:csv
+     * }
+     * </pre>
+     *
+     * @param parts The split command array.
+     */
+    public static void handleStreamSettings(String[] parts) {
+        try {
+            if (parts.length < 3) {throw new ParamLengthException();}
+
+            int sample = StreamingTableRenderer.getSampleSize();
+            int fetch = StreamingTableRenderer.getFetchSize();
+            int width = StreamingTableRenderer.getMaxColumnWidth();
+            boolean wrap = StreamingTableRenderer.isWrap();
+            StreamingTableRenderer.Format format = StreamingTableRenderer.getFormat();
+
+            for (String param : extractParameters(parts, 2)) {
+                if (param.startsWith("sample:")) {sample = Integer.parseInt(param.substring("sample:".length()));}
+                else if (param.startsWith("fetch:")) {fetch = Integer.parseInt(param.substring("fetch:".length()));}
+                else if (param.startsWith("width:")) {width = Integer.parseInt(param.substring("width:".length()));}
+                else if (param.startsWith("overflow:")) {wrap = "wrap".equalsIgnoreCase(param.substring("overflow:".length()));}
+                else if (param.startsWith("format:")) {format = StreamingTableRenderer.parseFormat(param.substring("format:".length()));}
+                else {throw new ParamLengthException();}
+            }
+
+            StreamingTableRenderer.configure(sample, fetch, width, wrap);
+            StreamingTableRenderer.setFormat(format);
+            System.out.println(VALID_MESSAGE + "Stream settings saved (sample " + sample + ", fetch " + fetch + ", width " + width
+                    + ", overflow " + (wrap ? "wrap" : "truncate") + ", format " + format.name().toLowerCase() + ").");
+        } catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
     /**
      * Extracts parameters from a command starting at a given index.
@@ -169,6 +364,7 @@ public class ProcessCommandQueriesPostgresql {
             }
             return params;
         } catch (Exception e) {
+            CommandOutcome.failed();
             System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());
             return new LinkedList<>();
         }
@@ -196,12 +392,17 @@ public class ProcessCommandQueriesPostgresql {
             }
 
             if (connectionEntity.getUsername() != null && connectionEntity.getDatabase() != null) {
-                ConnectToPostgresql.connection.close();
+                if (SaveEntityManagerPostgresql.getPerson(entity.getId()) == null) {
+                    CommandOutcome.failed();
+                    System.out.println(INVALID_MESSAGE + "User not found: " + entity.getId());
+                    return;
+                }
+                if (ConnectToPostgresql.connection != null) {ConnectToPostgresql.connection.close();}
                 SaveEntityManagerPostgresql.cloneUser(entity.getId());
             }
             else {throw new handleForceUserLoadAndConnectException(connectionEntity.getDatabase());}
-        } catch (ParamLengthException | handleForceUserLoadAndConnectException | SQLException e) {System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
-        } catch (Exception e) { System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+        } catch (ParamLengthException | handleForceUserLoadAndConnectException | SQLException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+        } catch (Exception e) { CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
     /**
      * <h1>Schedule Your Command</h1>
@@ -221,6 +422,9 @@ public class ProcessCommandQueriesPostgresql {
      *   <li><b>{@code command:}</b> - Specifies the start of the command. In this example, the part {@code insert-into users name:John age:25 city:NewYork} will be treated as the command.</li>
      *   <li><b>{@code delay:}</b> - Specifies the delay before the command is executed. In this example, the delay is {@code 10} units.</li>
      *   <li><b>{@code unit:}</b> - Specifies the unit of the delay. In this example, the unit is {@code 1}.</li>
+     *   <li><b>{@code every:}</b> - Instead of {@code delay:}, runs the command repeatedly every given number of units.</li>
+     *   <li><b>{@code cron:}</b> - Instead of {@code delay:}, runs the command whenever a cron expression such as {@code cron:0 3 * * *} or {@code cron:@hourly} matches.</li>
+     *   <li><b>{@code overlap:}</b> - Optional for {@code every:} and {@code cron:}. What happens when a run is due while the previous one is still running: {@code skip} (default), {@code queue} or {@code cancel}.</li>
      * </ol>
      *
      * <h2>How It Works:</h2>
@@ -256,34 +460,203 @@ public class ProcessCommandQueriesPostgresql {
 
             StringBuilder commandBuilder = new StringBuilder();
             int delay = 0;
+            int every = 0;
             int unit = 0;
+            String cron = null;
+            JobEntity.Overlap overlap = JobEntity.Overlap.SKIP;
             boolean isCommand = false;
 
-            for (String param : parts) {
+            for (int i = 0; i < parts.length; i++) {
+                String param = parts[i];
                 if (param.startsWith("command:")) {
                     isCommand = true;
                     commandBuilder.append(param.substring(8)).append(" ");
                 } else if (param.startsWith("delay:")) {
                     delay = Integer.parseInt(param.substring(6));
                     isCommand = false;
+                } else if (param.startsWith("every:")) {
+                    every = Integer.parseInt(param.substring(6));
+                    isCommand = false;
                 } else if (param.startsWith("unit:")) {
                     unit = Integer.parseInt(param.substring(5));
                     isCommand = false;
+                } else if (param.startsWith("cron:")) {
+                    // A cron expression spans five tokens unless it is a macro such as @daily.
+                    StringBuilder cronBuilder = new StringBuilder(param.substring(5));
+                    if (!param.startsWith("cron:@")) {
+                        for (int field = 1; field < 5 && i + 1 < parts.length; field++) {
+                            cronBuilder.append(" ").append(parts[++i]);
+                        }
+                    }
+                    cron = cronBuilder.toString();
+                    isCommand = false;
+                } else if (param.startsWith("overlap:")) {
+                    overlap = JobEntity.Overlap.valueOf(param.substring(8).toUpperCase());
+                    isCommand = false;
                 } else if (isCommand) {
                     commandBuilder.append(param).append(" ");
                 }
             }
 
             String command = commandBuilder.toString().trim();
+            int schedules = (delay != 0 ? 1 : 0) + (every != 0 ? 1 : 0) + (cron != null ? 1 : 0);
 
-            if (command.isEmpty() || delay == 0 || unit == 0) {throw new ParamLengthException();}
+            if (command.isEmpty() || schedules != 1 || (cron == null && unit == 0)) {throw new ParamLengthException();}
 
-            scheduleWithCommand(command, delay, unit);
+            if (cron != null) {
+                scheduleCronWithCommand(command, cron, overlap);
+            } else if (every != 0) {
+                scheduleAtRateWithCommand(command, every, unit, overlap);
+            } else {
+                scheduleWithCommand(command, delay, unit);
+            }
         }
 
         catch (ParamLengthException e) {throw new RuntimeException(e);}
-        catch (Exception e) {System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+        catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+    }
+
+    /**
+     * <h1>Manage Scheduled Jobs</h1>
+     * <p>
+     * This method lists the jobs created with {@code luna schedule} and pauses, resumes or cancels them.
+     * </p>
+     *
+     * <h2>Example Command Line Input:</h2>
+     * <pre>
+     * {@code
+     * luna jobs
+     * luna jobs pause id:2
+     * luna jobs history id:2
+     * luna jobs workers:4 queue:50
+     * }
+     * </pre>
+     *
+     * <h2>Explanations:</h2>
+     * <ol>
+     *   <li><b>{@code list}</b> - The default. Shows every job with its schedule, status, next run and run counts.</li>
+     *   <li><b>{@code pause}</b> / <b>{@code resume}</b> - Stops and restarts the schedule of a job. A paused job keeps its history.</li>
+     *   <li><b>{@code cancel}</b> - Cancels a job for good, including a run that is in progress.</li>
+     *   <li><b>{@code history}</b> - Shows the latest runs of a job with their duration, lag behind schedule and outcome.</li>
+     *   <li><b>{@code workers:}</b> / <b>{@code queue:}</b> - Sets how many jobs may run at the same time, each on its own pooled connection, and how many due runs may wait for a free worker.</li>
+     * </ol>
+     */
+    public static void handleJobsCommand(String[] parts) {
+        try {
+            String action = parts.length > 2 ? parts[2].toLowerCase() : "list";
+            if (action.startsWith("workers:") || action.startsWith("queue:")) {
+                int workers = -1;
+                int queue = -1;
+                for (String param : parts) {
+                    if (param.startsWith("workers:")) {workers = Integer.parseInt(param.substring(8));}
+                    else if (param.startsWith("queue:")) {queue = Integer.parseInt(param.substring(6));}
+                }
+                JobScheduler.configure(workers < 0 ? JobScheduler.getWorkerCount() : workers, queue < 0 ? JobScheduler.getQueueCapacity() : queue);
+                JobScheduler.displayWorkers();
+                return;
+            }
+            if (action.equals("list")) {
+                JobScheduler.displayJobs();
+                JobScheduler.displayWorkers();
+                return;
+            }
+
+            int id = -1;
+            for (String param : parts) {
+                if (param.startsWith("id:")) {id = Integer.parseInt(param.substring(3));}
+            }
+            if (id < 0) {throw new ParamLengthException();}
+
+            boolean changed;
+            switch (action) {
+                case "pause":
+                    changed = JobScheduler.pause(id);
+                    break;
+                case "resume":
+                    changed = JobScheduler.resume(id);
+                    break;
+                case "cancel":
+                    changed = JobScheduler.cancel(id);
+                    break;
+                case "history":
+                    JobScheduler.displayHistory(id);
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unknown jobs action: " + action + ". Use list, pause, resume, cancel or history.");
+            }
+
+            JobEntity job = JobScheduler.getJob(id);
+            if (changed) {System.out.println(VALID_MESSAGE + "Job " + id + " is now " + job.getStatus() + ".");}
+            else if (job == null) {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "No job with id " + id + ".");}
+            else {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + "Job " + id + " is " + job.getStatus() + ", cannot " + action + " it.");}
+        }
+
+        catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Usage: luna jobs [list] | pause|resume|cancel|history id:<jobId> | workers:<n> queue:<n>");}
+        catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
     }
+
+    /**
+     * <h1>Search and Replay the History</h1>
+     * <p>
+     * Every command is indexed by its fingerprint, the command with its literals replaced by placeholders, so
+     * repeated queries are grouped however their values differ. For each fingerprint the index keeps the call
+     * count, total, mean and p95 latency and the last run, without scanning the history file.
+     * </p>
+     * <h2>Usage</h2>
+     * <p>
+     * {@code luna history} lists the history, {@code luna history search <text>} shows the fingerprints that
+     * contain the text, {@code luna history top [by:total|mean|p95|calls] [limit:<n>]} shows the most expensive
+     * ones, and {@code luna history replay id:<n>} runs an entry again.
+     * </p>
+     *
+     * @param parts The split command array.
+     */
+    public static void handleHistoryCommand(String[] parts) {
+        try {
+            String action = parts.length > 2 ? parts[2].toLowerCase() : "list";
+            switch (action) {
+                case "list":
+                    CommandHistory.showHistory();
+                    break;
+                case "search":
+                    if (parts.length < 4) {throw new ParamLengthException();}
+                    HistoryIndex.display(HistoryIndex.search(String.join(" ", List.of(parts).subList(3, parts.length))));
+                    break;
+                case "top":
+                    String order = "total";
+                    int limit = 10;
+                    for (String param : parts) {
+                        if (param.startsWith("by:")) {order = param.substring(3).toLowerCase();}
+                        else if (param.startsWith("limit:")) {limit = Integer.parseInt(param.substring(6));}
+                    }
+                    HistoryIndex.display(HistoryIndex.top(order, limit));
+                    break;
+                case "replay":
+                    long id = -1;
+                    for (String param : parts) {
+                        if (param.startsWith("id:")) {id = Long.parseLong(param.substring(3));}
+                    }
+                    if (id < 0) {throw new ParamLengthException();}
+                    HistoryEntry entry = CommandHistory.getEntry(id);
+                    if (entry == null) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "No history entry with id " + id + ".");
+                    } else if (entry.getCommand().contains("password:****")) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "Entry " + id + " has a masked password, enter it again.");
+                    } else {
+                        System.out.println(VALID_MESSAGE + "Replaying " + id + ": " + entry.getCommand());
+                        CommandPackage.command(entry.getCommand());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown history action: " + action + ". Use search, top or replay.");
+            }
+        }
+        catch (ParamLengthException e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Usage: luna history [search <text> | top [by:total|mean|p95|calls] [limit:<n>] | replay id:<n>]");}
+        catch (Exception e) {CommandOutcome.failed(); System.err.println(INVALID_MESSAGE + "Unexpected Error: " + e.getMessage());}
+    }
+
     /**
      * <h1>Export Your Data</h1>
      * <p>
@@ -301,8 +674,21 @@ public class ProcessCommandQueriesPostgresql {
      * <ol>
      *   <li><b>{@code command:}</b> - Specifies the start of the command. In this example, the part {@code select * from user} will be treated as the command.</li>
      *   <li><b>{@code export:}</b> - Specifies the location before the command is executed. In this example, the location that your '.csv' file saved is {@code C:\Users\(?)\fileName_data.csv}</li>
+     *   <li><b>{@code mode:}</b> - Optional. {@code mode:copy} streams the export through the COPY protocol, which is much faster for large results and quotes values correctly.</li>
      * </ol>
      *
+     * <h2>Parallel Table Export:</h2>
+     * <pre>
+     * {@code
+     * luna out table:orders export:orders.csv parallel:4 key:id merge:true
+     * }
+     * </pre>
+     * <p>
+     * {@code table:} with {@code parallel:} exports the whole table in that many chunks on separate connections that
+     * share one snapshot, see {@link ParallelExportPostgresql#exportTable(String, String, int, String, boolean)}.
+     * {@code key:} splits by an integer key instead of ctid pages; {@code merge:false} keeps one file per chunk.
+     * </p>
+     *
      *
      * <h2>Expected Output:</h2>
      * <pre>
@@ -316,6 +702,11 @@ public class ProcessCommandQueriesPostgresql {
             if (parts.length < 3) {throw new ParamLengthException();}
             StringBuilder commandBuilder = new StringBuilder();
             String export = null;
+            String mode = "jdbc";
+            String table = null;
+            String key = null;
+            int parallel = 0;
+            boolean merge = true;
             boolean isCommand = false;
 
 
@@ -329,9 +720,35 @@ public class ProcessCommandQueriesPostgresql {
                     export = param.substring(7);
                     isCommand = false;
                 }
+                else if (param.startsWith("mode:")) {
+                    mode = param.substring(5).toLowerCase();
+                    isCommand = false;
+                }
+                else if (param.startsWith("table:")) {
+                    table = param.substring(6);
+                    isCommand = false;
+                }
+                else if (param.startsWith("key:")) {
+                    key = param.substring(4);
+                    isCommand = false;
+                }
+                else if (param.startsWith("parallel:")) {
+                    parallel = Integer.parseInt(param.substring(9));
+                    isCommand = false;
+                }
+                else if (param.startsWith("merge:")) {
+                    merge = Boolean.parseBoolean(param.substring(6));
+                    isCommand = false;
+                }
                 else if (isCommand) { commandBuilder.append(param).append(" ");}
             }
 
+            if (table != null && parallel > 0) {
+                if (export == null || export.isEmpty()) {throw new ParamLengthException();}
+                ParallelExportPostgresql.exportTable(table, key, parallel, filePath + export, merge);
+                return;
+            }
+
             String getCommand = commandBuilder.toString().trim();
             if (getCommand.isEmpty() || export.isEmpty()) {throw new ParamLengthException();}
 
@@ -345,10 +762,17 @@ public class ProcessCommandQueriesPostgresql {
             * */
 
             String filePathGivenByUser = filePath + export;
-            exportToCSV(getCommand, filePathGivenByUser);
+            boolean copy = "copy".equals(mode);
+            ReplicaRouter.ReadTask exportTask = () -> {
+                if (copy) {exportToCsvWithCopy(getCommand, filePathGivenByUser);}
+                else {exportToCSV(getCommand, filePathGivenByUser);}
+            };
+            if (ReplicaRouter.isReadOnly(getCommand)) {ReplicaRouter.runReadOnly(exportTask);}
+            else {exportTask.run();}
         }
 
         catch (ParamLengthException e) {throw new RuntimeException(e);}
+        catch (SQLException e) {CommandOutcome.failed(); System.out.println(INVALID_MESSAGE + e.getMessage());}
     }
 
     /**
@@ -363,6 +787,11 @@ public class ProcessCommandQueriesPostgresql {
      * String[] parts = {"luna", "run", "filepath:/path/to/sqlfile.sql"};
      * handleExecuteSqlFile(parts);
      * </pre>
+     * <p>
+     * Add {@code batch:<size>} to send consecutive DML statements in JDBC batches of that size, or
+     * {@code parallel:<n>} to run independent statements on up to {@code n} pooled connections at once
+     * (see {@link ParallelScriptPostgresql#executeSqlFile(String, int)}). The two cannot be combined.
+     * </p>
      *
      * @param parts An array of command-line arguments where one of the elements should be in the format {@code filepath:<path-to-file>}.
      *
@@ -373,6 +802,8 @@ public class ProcessCommandQueriesPostgresql {
      */
     public static void handleExecuteSqlFile(String[] parts) {
         String filePathForExecute = null;
+        int batchSize = 0;
+        int parallelism = 0;
         try {
             if (parts.length < 3) {
                 throw new ParamLengthException();
@@ -381,6 +812,10 @@ public class ProcessCommandQueriesPostgresql {
             for (String param : parts) {
                 if (param.startsWith("filepath:")) {
                     filePathForExecute = param.substring("filepath:".length());
+                } else if (param.startsWith("batch:")) {
+                    batchSize = Integer.parseInt(param.substring("batch:".length()));
+                } else if (param.startsWith("parallel:")) {
+                    parallelism = Integer.parseInt(param.substring("parallel:".length()));
                 }
             }
 
@@ -395,10 +830,20 @@ public class ProcessCommandQueriesPostgresql {
                 throw new FileNotFoundException("Error: SQL file not found at path: " + filePathForExecute);
             }
 
-            executeSqlFile(filePathForExecute);
+            if (parallelism > 1 && batchSize > 0) {
+                throw new IllegalArgumentException("Error: 'batch:' and 'parallel:' cannot be combined.");
+            }
+
+            if (parallelism > 1) {
+                ParallelScriptPostgresql.executeSqlFile(filePathForExecute, parallelism);
+            } else {
+                executeSqlFile(filePathForExecute, batchSize);
+            }
         } catch (ParamLengthException | SQLException | FileNotFoundException e) {
+            CommandOutcome.failed();
             System.err.println("Error: " + e.getMessage());
         } catch (Exception e) {
+            CommandOutcome.failed();
             e.printStackTrace();
         }
     }
@@ -406,9 +851,17 @@ public class ProcessCommandQueriesPostgresql {
     /**
      * Handles multiple SQL queries by parsing a string array and extracting commands enclosed in parentheses.
      * <p>
-     * This method processes the provided string array, extracts queries surrounded by parentheses, and executes each query.
-     * It validates the length of the input array and performs regex matching to find and trim the queries. If valid queries
-     * are found, they are executed in sequence.
+     * This method processes the provided string array, extracts queries surrounded by parentheses (see
+     * {@link MultipleQueriesPostgresql#extractQueries(String)}), and executes each query. It validates the length
+     * of the input array. If valid queries are found, they are executed in sequence, see
+     * {@link ExecutePostgresql#executeCommandOrSql(String)}.
+     * </p>
+     * <p>
+     * With {@code parallel:<n>} written before the first query, the queries run concurrently on up to {@code n}
+     * pooled connections and their results are printed in order with their latencies, see
+     * {@link MultipleQueriesPostgresql#executeParallel(List, int)}. With {@code mode:pipeline} the queries are sent
+     * to the server in one round trip on the session connection, see
+     * {@link MultipleQueriesPostgresql#executePipelined(List)}.
      * </p>
      *
      * @param parts An array of strings containing the input data, where each string can contain a command and other arguments.
@@ -417,9 +870,6 @@ public class ProcessCommandQueriesPostgresql {
      * @throws ParamLengthException if the length of the input array is less than 2.
      * @throws RuntimeException if there is a problem during query execution.
      * @throws SQLException if an error occurs during the SQL query execution.
-     *
-     * @see Pattern
-     * @see Matcher
      */
     public static void handleMultipleQueries(String[] parts) {
         try {
@@ -427,34 +877,115 @@ public class ProcessCommandQueriesPostgresql {
                 throw new ParamLengthException();
             }
 
-            ArrayList<String> queryList = new ArrayList<>();
-
             String input = String.join(" ", parts);
+            List<String> queryList = MultipleQueriesPostgresql.extractQueries(input);
 
-
-            Pattern pattern = Pattern.compile("\\((.*?)\\)");
-            Matcher matcher = pattern.matcher(input);
-
-
-            while (matcher.find()) {
-                String query = matcher.group(1).trim();
-                if (!query.isEmpty()) {
-                    queryList.add(query);
+            int parallelism = 0;
+            boolean pipeline = false;
+            int firstGroup = input.indexOf('(');
+            for (String param : (firstGroup < 0 ? input : input.substring(0, firstGroup)).split("\\s+")) {
+                if (param.startsWith("parallel:")) {
+                    parallelism = Integer.parseInt(param.substring("parallel:".length()));
+                } else if (param.startsWith("mode:")) {
+                    pipeline = param.substring("mode:".length()).equalsIgnoreCase("pipeline");
                 }
             }
 
+            if (queryList.isEmpty()) {
+                return;
+            }
+            if (pipeline && parallelism > 1) {
+                CommandOutcome.failed();
+                System.out.println(INVALID_MESSAGE + "mode:pipeline and parallel: cannot be combined.");
+                return;
+            }
+            if (pipeline) {
+                MultipleQueriesPostgresql.executePipelined(queryList);
+                return;
+            }
+            if (parallelism > 1) {
+                MultipleQueriesPostgresql.executeParallel(queryList, parallelism);
+                return;
+            }
+            for (String query : queryList) {
+                System.out.println("Executing SQL: " + query);
+                ExecutePostgresql.executeCommandOrSql(query);
+            }
 
-            if (!queryList.isEmpty()) {
-                for (String query : queryList) {
-                    System.out.println("Executing SQL: " + query);
-                    command(query);
+        } catch (ParamLengthException | SQLException ex) {
+            throw new RuntimeException(ex);
+        } catch (NumberFormatException ex) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "parallel: must be a number.");
+        }
+    }
+    /**
+     * Handles running one query on several saved connection profiles at once.
+     * <p>
+     * Targets are chosen with {@code users:Person1,Person2}, {@code tag:<tag>} or both; a profile chosen twice
+     * runs once. {@code concurrency:} caps how many targets run at the same time (default 8) and {@code timeout:}
+     * is the time in seconds each target may take (default 30). Everything after these parameters is the SQL.
+     * </p>
+     * Example:
+     * <pre>
+     * luna fanout tag:prod concurrency:4 timeout:10 SELECT count(*) FROM users
+     * </pre>
+     *
+     * @param parts The split command array.
+     */
+    @SuppressWarnings("try")
+    public static void handleFanoutCommand(String[] parts) {
+        try {
+            Map<String, SaveEntity> targets = new LinkedHashMap<>();
+            int concurrency = 8;
+            int timeout = 30;
+            int index = 2;
+            for (; index < parts.length; index++) {
+                String param = parts[index];
+                if (param.startsWith("users:")) {
+                    for (String id : param.substring("users:".length()).split(",")) {
+                        if (id.isEmpty()) {continue;}
+                        SaveEntity person = SaveEntityManagerPostgresql.getPerson(id);
+                        if (person == null) {
+                            CommandOutcome.failed();
+                            System.out.println(INVALID_MESSAGE + "User not found: " + id);
+                            return;
+                        }
+                        targets.put(person.getId(), person);
+                    }
+                } else if (param.startsWith("tag:")) {
+                    String tag = param.substring("tag:".length());
+                    List<SaveEntity> tagged = SaveEntityManagerPostgresql.getPersonsByTag(tag);
+                    if (tagged.isEmpty()) {
+                        CommandOutcome.failed();
+                        System.out.println(INVALID_MESSAGE + "No user has the tag " + tag);
+                        return;
+                    }
+                    for (SaveEntity person : tagged) {targets.put(person.getId(), person);}
+                } else if (param.startsWith("concurrency:")) {
+                    concurrency = Integer.parseInt(param.substring("concurrency:".length()));
+                } else if (param.startsWith("timeout:")) {
+                    timeout = Integer.parseInt(param.substring("timeout:".length()));
+                } else {
+                    break;
                 }
             }
+            String sql = String.join(" ", Arrays.copyOfRange(parts, index, parts.length)).trim();
+            if (targets.isEmpty() || sql.isEmpty() || concurrency < 1 || timeout < 1) {throw new ParamLengthException();}
 
-        } catch (ParamLengthException ex) {
-            throw new RuntimeException(ex);
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
+            try (QueryMetrics.Timer timer = QueryMetrics.time("fanout")) {
+                List<FanoutQueryPostgresql.TargetResult> results = FanoutQueryPostgresql.fanout(new ArrayList<>(targets.values()), sql, concurrency, timeout);
+                long failed = results.stream().filter(result -> result.getStatus() != FanoutQueryPostgresql.TargetResult.Status.OK).count();
+                if (failed > 0) {CommandOutcome.failed();}
+                System.out.printf("%s%d of %d targets succeeded%n", failed == 0 ? VALID_MESSAGE : INVALID_MESSAGE, results.size() - failed, results.size());
+            }
+        } catch (ParamLengthException e) {
+            CommandOutcome.failed();
+            System.err.println(INVALID_MESSAGE + "Error: " + e.getMessage());
+            System.out.println("Usage: luna fanout users:<Id>,<Id> | tag:<tag> [concurrency:<n>] [timeout:<seconds>] <sql>");
+        } catch (NumberFormatException e) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + "concurrency: and timeout: must be numbers.");
         }
     }
     /**
@@ -489,6 +1020,7 @@ public class ProcessCommandQueriesPostgresql {
         String snippetName = "";
         String key = "";
         String value = "";
+        List<String> params = new LinkedList<>();
 
         try {
             System.out.println(parts[2]);
@@ -505,6 +1037,8 @@ public class ProcessCommandQueriesPostgresql {
                         commandSnippet = commandSnippet.trim();
                     } else if (parts[i].startsWith("name:")) {
                         snippetName = parts[i].substring("name:".length()).trim();
+                    } else if (parts[i].startsWith("params:")) {
+                        params.addAll(List.of(parts[i].substring("params:".length()).split(",")));
                     }
                 }
 
@@ -514,8 +1048,11 @@ public class ProcessCommandQueriesPostgresql {
                     key = entry.getKey();
                     value = entry.getValue();
                 }
-                saveSnippet(key, value);
+                saveSnippet(key, value, params);
             }
+        } catch (IllegalArgumentException e) {
+            CommandOutcome.failed();
+            System.out.println(INVALID_MESSAGE + e.getMessage());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -526,7 +1063,9 @@ public class ProcessCommandQueriesPostgresql {
      * method to execute the corresponding snippet.
      *
      * <p>This method extracts the parameters from the input, looks for the "id:" prefix,
-     * and uses the ID to identify the snippet to execute.</p>
+     * and uses the ID to identify the snippet to execute. A "name:" parameter selects the
+     * snippet by its name instead. Values for the parameters of the snippet are given as
+     * {@code name=value}.</p>
      *
      * @param parts An array of strings containing the command and parameters.
      *              The array must contain an "id:" parameter to specify the snippet to execute.
@@ -546,10 +1085,17 @@ public class ProcessCommandQueriesPostgresql {
      */
     public static void handleExecuteSnippetById(String[] parts) {
         LinkedList<String> saveParams = extractParameters(parts, 2);
+        Map<String, String> arguments = new HashMap<>();
+        for (String param : saveParams) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {arguments.put(param.substring(0, equals), param.substring(equals + 1));}
+        }
         for (String param : saveParams) {
             if (param.startsWith("id:")) {
                 String snippetId = param.substring("id:".length());
-         executeSnippet(snippetId);
+         executeSnippet(snippetId, arguments);
+            } else if (param.startsWith("name:")) {
+                executeSnippetByName(param.substring("name:".length()), arguments);
             }
         }
     }
@@ -2,24 +2,33 @@ package org.cli.sql.postgresql;
 import static org.cli.utils.Colors.*;
 
 import org.cli.conn.postgresql.ConnectToPostgresql;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
+import org.cli.entities.JobEntity;
+import org.cli.manager.CommandOutcome;
+import org.cli.prometheus.QueryMetrics;
+import org.cli.scheduler.JobScheduler;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
 import static org.cli.sql.postgresql.ExecutePostgresql.command;
 
 public class QueriesPostgresql {
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
 
 
     /**
@@ -35,10 +44,10 @@ public class QueriesPostgresql {
      * </p>
      */
     public static void beginTransaction() throws SQLException {
-        if (ConnectToPostgresql.connection == null || ConnectToPostgresql.connection.isClosed()) {
+        if (ConnectToPostgresql.currentConnection() == null || ConnectToPostgresql.currentConnection().isClosed()) {
             throw new SQLException("Transaction Error: Connection is null or closed.");
         }
-        ConnectToPostgresql.connection.setAutoCommit(false);
+        ConnectToPostgresql.currentConnection().setAutoCommit(false);
         System.out.println("Transaction started.");
     }
 
@@ -57,15 +66,15 @@ public class QueriesPostgresql {
      */
     public static void commitTransaction() throws SQLException {
 
-        if (ConnectToPostgresql.connection == null || ConnectToPostgresql.connection.isClosed()) {
+        if (ConnectToPostgresql.currentConnection() == null || ConnectToPostgresql.currentConnection().isClosed()) {
             throw new SQLException("Commit Error: Connection is null or closed.");
         }
 
-        if (ConnectToPostgresql.connection.getAutoCommit()) {
+        if (ConnectToPostgresql.currentConnection().getAutoCommit()) {
             throw new SQLException("Commit Error: No active transaction. Auto-commit mode is enabled.");
         }
 
-        ConnectToPostgresql.connection.commit();
+        ConnectToPostgresql.currentConnection().commit();
         System.out.println("Transaction committed successfully.");
     }
 
@@ -82,9 +91,10 @@ public class QueriesPostgresql {
      */
     public static void rollbackTransaction() {
         try {
-            ConnectToPostgresql.connection.rollback();
+            ConnectToPostgresql.currentConnection().rollback();
             System.out.println("Transaction rolled back successfully.");
         } catch (SQLException e) {
+            CommandOutcome.failed();
             System.out.println("Rollback Error: " + e.getMessage());
         }
     }
@@ -107,10 +117,11 @@ public class QueriesPostgresql {
      * </p>
      */
     public static void callProcedure(String procedureName) {
-        try (CallableStatement callableStatement = ConnectToPostgresql.connection.prepareCall("{call " + procedureName + "}")) {
+        try (CallableStatement callableStatement = ConnectToPostgresql.currentConnection().prepareCall("{call " + procedureName + "}")) {
             callableStatement.execute();
             System.out.println("Procedure '" + procedureName + "' executed successfully.");
         } catch (SQLException e) {
+            CommandOutcome.failed();
             System.out.println("Procedure Error: " + e.getMessage());
         }
     }
@@ -133,11 +144,12 @@ public class QueriesPostgresql {
      * </p>
      */
     public static void callFunction(String functionName) {
-        try (CallableStatement callableStatement = ConnectToPostgresql.connection.prepareCall("{? = call " + functionName + "}")) {
+        try (CallableStatement callableStatement = ConnectToPostgresql.currentConnection().prepareCall("{? = call " + functionName + "}")) {
             callableStatement.registerOutParameter(1, Types.OTHER);
             callableStatement.execute();
             System.out.println("Function '" + functionName + "' returned: " + callableStatement.getObject(1));
         } catch (SQLException e) {
+            CommandOutcome.failed();
             System.out.println("Function Error: " + e.getMessage());
         }
     }
@@ -244,13 +256,14 @@ public class QueriesPostgresql {
      * </ul>
      * <p>
      * <strong>Usage:</strong> This method is used to query data from a table, with optional
-     * filtering based on the condition.
+     * filtering based on the condition. With a machine-readable output format (see
+     * {@link StreamingTableRenderer#setFormat}) the rows are printed as they are read instead of as a table.
      * </p>
      */
     public static void selectFrom(String tableName, String condition) {
         String sql = "SELECT * FROM " + tableName + (condition.isEmpty() ? "" : " WHERE " + condition);
 
-        try (Statement statement = ConnectToPostgresql.connection.createStatement();
+        try (Statement statement = ConnectToPostgresql.currentConnection().createStatement();
              ResultSet resultSet = statement.executeQuery(sql)) {
 
             ResultSetMetaData metaData = resultSet.getMetaData();
@@ -266,6 +279,20 @@ public class QueriesPostgresql {
             }
             rows.add(headers);
 
+            if (StreamingTableRenderer.getFormat() != StreamingTableRenderer.Format.TABLE) {
+                // Other programs read the rows, so there is no width to compute and nothing to keep in memory.
+                StreamingTableRenderer renderer = new StreamingTableRenderer(headers);
+                while (resultSet.next()) {
+                    String[] row = new String[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = resultSet.getString(i + 1);
+                    }
+                    renderer.addRow(row);
+                }
+                QueryMetrics.rows(renderer.finish());
+                return;
+            }
+
             while (resultSet.next()) {
                 String[] row = new String[columnCount];
                 for (int i = 0; i < columnCount; i++) {
@@ -282,13 +309,81 @@ public class QueriesPostgresql {
             }
 
             printTable(rows, columnWidths);
+            QueryMetrics.rows(rows.size() - 1);
 
         } catch (SQLException e) {
+            QueryMetrics.error(e);
             System.out.println("SQL Execution Error: " + e.getMessage());
         }
     }
 
 
+    /**
+     * <h1>Stream Data from a Table</h1>
+     * <p>
+     * This method works like {@link #selectFrom(String, String)} but keeps memory constant on large tables.
+     * The query runs through a server-side cursor (auto-commit is switched off for the duration of the query
+     * and a fetch size is set), column widths are computed from the first rows only, and every row is printed
+     * as soon as it arrives instead of after the last one.
+     * </p>
+     * <p>
+     * <strong>Parameters:</strong>
+     * </p>
+     * <ul>
+     *     <li><strong>tableName</strong> - The name of the table to retrieve data from.</li>
+     *     <li><strong>condition</strong> - The optional condition to filter the results (e.g., "age > 30").</li>
+     * </ul>
+     * <p>
+     * <strong>Usage:</strong> {@code luna stream-from users age > 30}. The sample size, fetch size and maximum
+     * column width are set with {@code luna stream sample:<n> fetch:<n> width:<n> overflow:truncate|wrap}.
+     * </p>
+     */
+    public static void streamFrom(String tableName, String condition) {
+        String sql = "SELECT * FROM " + tableName + (condition.isEmpty() ? "" : " WHERE " + condition);
+        Connection connection = ConnectToPostgresql.currentConnection();
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) {connection.setAutoCommit(false);}
+
+            try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(StreamingTableRenderer.getFetchSize());
+
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+
+                    String[] headers = new String[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        headers[i] = metaData.getColumnName(i + 1);
+                    }
+
+                    StreamingTableRenderer renderer = new StreamingTableRenderer(headers);
+                    long rows = 0;
+                    while (resultSet.next()) {
+                        String[] row = new String[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = resultSet.getString(i + 1);
+                        }
+                        renderer.addRow(row);
+                        rows++;
+                    }
+                    renderer.finish();
+                    QueryMetrics.rows(rows);
+                }
+                if (autoCommit) {connection.commit();}
+            } catch (SQLException e) {
+                if (autoCommit) {connection.rollback();}
+                throw e;
+            } finally {
+                if (autoCommit) {connection.setAutoCommit(true);}
+            }
+        } catch (SQLException e) {
+            QueryMetrics.error(e);
+            System.out.println("SQL Execution Error: " + e.getMessage());
+        }
+    }
+
 
     /**
      * <h1>Updates the specified table with the given set clause and condition.</h1>
@@ -345,9 +440,11 @@ public class QueriesPostgresql {
             if (exitCode == 0) {
                 System.out.println("Command executed successfully.");
             } else {
+                CommandOutcome.failed();
                 System.out.println("Command failed with exit code: " + exitCode);
             }
         } catch (Exception e) {
+            CommandOutcome.failed();
             System.out.println("System Command Error: " + e.getMessage());
         }
     }
@@ -369,55 +466,101 @@ public class QueriesPostgresql {
         System.out.println("- create-schema <schema_name>: Create a new schema.");
         System.out.println("- insert-into <table_name> <values>: Insert data into a table.");
         System.out.println("- select-from <table_name> [condition]: Select data from a table.");
+        System.out.println("- stream-from <table_name> [condition]: Stream rows from a table with constant memory.");
+        System.out.println("- stream sample:<rows> fetch:<rows> width:<chars> overflow:truncate|wrap format:table|csv|tsv|json | Configure how rows are printed");
         System.out.println("- update <table_name> <set_clause> [condition]: Update data in a table.");
         System.out.println("- delete-from <table_name> [condition]: Delete data from a table.");
         System.out.println("- backup-database <file_path>: Backup the database.");
         System.out.println("- restore-database <file_path>: Restore the database.");
-		System.out.println("- history: Display all past commands");
+		System.out.println("- history: Display past commands with time, duration, rows and status");
+		System.out.println("- history search <text> | history top [by:total|mean|p95|calls] [limit:<n>] | Find repeated queries by fingerprint");
+		System.out.println("- history replay id:<n> | Run a past command again");
 		System.out.println("- schedule command:<query> delay:<delay> unit:<unit>");		
 		System.out.println("- export command:<query> filepath:<filepath>");
+		System.out.println("- out command:<query> export:<file> mode:copy | Export through COPY (fast, RFC 4180 quoting)");
+		System.out.println("- out table:<table> export:<file> parallel:<n> [key:<column>] [merge:false] | Parallel snapshot-consistent export");
 		System.out.println("- execute filepath:<sqlFile>");
+		System.out.println("- run filepath:<sqlFile> batch:<size> | Execute a SQL file with batched DML");
+		System.out.println("- run filepath:<sqlFile> parallel:<n> | Run independent statements concurrently (-- luna:barrier to sync)");
+		System.out.println("- multiple [parallel:<n>] (<query>) (<query>) ... | Run queries (plain SQL or luna commands), concurrently with parallel");
+		System.out.println("- multiple mode:pipeline (<sql>) (<sql>) ... | Send plain SQL queries in one round trip on the session connection");
+		System.out.println("- fanout users:<Id>,<Id> | tag:<tag> [concurrency:<n>] [timeout:<seconds>] <sql> | Run a query on several saved users");
         System.out.println(RED + "- help: Show this help message." + RESET);
         System.out.println("-----------------------------------------------------");
         System.out.println(GREEN + "ENTITY MANAGER" + RESET);
-        System.out.println("- entityc username:<username> password:<password> database:<database> | Save User");
+        System.out.println("- entityc username:<username> password:<password> database:<database> [tags:<tag>,<tag>] | Save User");
+        System.out.println("- entityc ... [host:<host>] [port:<port>] [replicas:<host>:<port>,...] [routing:round-robin|least-lag] [maxLag:<seconds>] | Route reads of a cloned user to replicas");
         System.out.println("- entityl users | Display all users");
         System.out.println("- entityg user:<EntityId> | Get user by Id");
         System.out.println("- clone user:<EntityId> | Connect a cloned user");
+        System.out.println(GREEN + "CONNECTION POOL" + RESET);
+        System.out.println("- pool | Display pool utilization and wait times");
+        System.out.println("- pool min:<n> max:<n> idle:<seconds> timeout:<seconds> | Configure the next pool");
+        System.out.println(GREEN + "PROXY" + RESET);
+        System.out.println("- proxy start user:<EntityId> [listen:<port>] [socket:<directory>] [pool:<n>] [queueTimeout:<seconds>] [maxClients:<n>] | Share a few server connections among many clients");
+        System.out.println("- proxy | proxy stop | Display proxy clients, server connections and queue wait, or stop it");
+        System.out.println(GREEN + "JOB SCHEDULER" + RESET);
+        System.out.println("- schedule command:<query> every:<n> unit:<1|2|3> [overlap:skip|queue|cancel] | Run a command at a fixed rate");
+        System.out.println("- schedule command:<query> cron:<m h dom mon dow> [overlap:skip|queue|cancel] | Run a command on a cron schedule");
+        System.out.println("- jobs [list] | pause|resume|cancel|history id:<jobId> | Manage scheduled jobs");
+        System.out.println("- jobs workers:<n> queue:<n> | Set concurrent job runs (one pooled connection each) and queued runs");
         System.out.println(GREEN + "SNIPPET MANAGER" + RESET);
         System.out.println("- snippetc name:<snippet> command:<snippet code> | Create a snippet");
+        System.out.println("- snippetc create name:<snippet> params:<name>:<type>,... command:<sql with :name> | Create a parameterized snippet");
         System.out.println("- snippetl | Display all users");
-        System.out.println("- snippetg id:<snippetId> | Use a snippet by id");
+        System.out.println("- snippetg id:<snippetId> | name:<snippet> [<param>=<value> ...] | Use a snippet by id or name");
     }
 
     /**
      * <h1>Schedules a command to be executed after a specified delay.</h1>
+     * <p>
+     * The command is stored as a one-off job of the {@link JobScheduler}, so it survives a restart of the CLI
+     * and its outcome can be seen with {@code luna jobs history id:<jobId>}. It runs on a connection leased
+     * from the pool, not on the session connection.
+     * </p>
      *
      * @param getCommand The command to execute.
      * @param delay The delay before execution (in the specified unit).
      * @param unit The unit of time for the delay (1 for seconds, 2 for minutes, 3 for hours).
      */
     public static void scheduleWithCommand(String getCommand, long delay, int unit) {
-        TimeUnit timeUnit;
+        JobScheduler.scheduleOnce(getCommand, delay, toTimeUnit(unit));
+    }
 
+    /**
+     * <h1>Schedules a command to be executed repeatedly at a fixed rate.</h1>
+     *
+     * @param getCommand The command to execute.
+     * @param every The time between two runs (in the specified unit).
+     * @param unit The unit of time (1 for seconds, 2 for minutes, 3 for hours).
+     * @param overlap What to do when a run is due while the previous one is still running.
+     */
+    public static void scheduleAtRateWithCommand(String getCommand, long every, int unit, JobEntity.Overlap overlap) {
+        JobScheduler.scheduleAtFixedRate(getCommand, every, toTimeUnit(unit), overlap);
+    }
+
+    /**
+     * <h1>Schedules a command to be executed whenever a cron expression matches.</h1>
+     *
+     * @param getCommand The command to execute.
+     * @param cron A five-field cron expression, or a macro such as {@code @daily}.
+     * @param overlap What to do when a run is due while the previous one is still running.
+     */
+    public static void scheduleCronWithCommand(String getCommand, String cron, JobEntity.Overlap overlap) {
+        JobScheduler.scheduleCron(getCommand, cron, overlap);
+    }
+
+    private static TimeUnit toTimeUnit(int unit) {
         switch (unit) {
             case 1:
-                timeUnit = TimeUnit.SECONDS;
-                break;
+                return TimeUnit.SECONDS;
             case 2:
-                timeUnit = TimeUnit.MINUTES;
-                break;
+                return TimeUnit.MINUTES;
             case 3:
-                timeUnit = TimeUnit.HOURS;
-                break;
+                return TimeUnit.HOURS;
             default:
                 throw new IllegalArgumentException("Invalid time unit. Use 1 (Seconds), 2 (Minutes), or 3 (Hours).");
         }
-
-        ScheduledFuture<?> schedule = scheduler.schedule(() -> {
-            System.out.println("Executing scheduled command: " + getCommand);
-            command(getCommand);
-        }, delay, timeUnit);
     }
 
     /**
@@ -468,9 +611,10 @@ public class QueriesPostgresql {
      *
      * @throws RuntimeException If an error occurs during database interaction or file writing.
      */
+    @SuppressWarnings("try")
     public static void exportToCSV(String getCommand, String filePath) {
-        try {
-            Statement stmt = ConnectToPostgresql.connection.createStatement();
+        try (QueryMetrics.Timer timer = QueryMetrics.time("out")) {
+            Statement stmt = ConnectToPostgresql.currentConnection().createStatement();
             ResultSet rs = stmt.executeQuery(getCommand);
 
             try (FileWriter writer = new FileWriter(filePath)) {
@@ -482,27 +626,70 @@ public class QueriesPostgresql {
                 }
                 writer.append("\n");
 
+                long rows = 0;
                 while (rs.next()) {
                     for (int i = 1; i <= columnCount; i++) {
                         writer.append(rs.getString(i)).append(",");
                     }
                     writer.append("\n");
+                    rows++;
                 }
+                QueryMetrics.rows(rows);
 
                 System.out.println(GREEN + "Data successfully exported to " + filePath + RESET);
         }
-            catch (SQLException e) {throw new RuntimeException(e);}
+            catch (SQLException e) {QueryMetrics.error("out", e); throw new RuntimeException(e);}
+            QueryMetrics.bytes(new File(filePath).length());
     }
-        catch (SQLException | IOException e) {throw new RuntimeException(e);}
+        catch (SQLException e) {QueryMetrics.error("out", e); throw new RuntimeException(e);}
+        catch (IOException e) {throw new RuntimeException(e);}
+    }
+
+    /**
+     * Exports the result of a query to a CSV file through the PostgreSQL COPY protocol.
+     * <p>
+     * Instead of decoding every cell through JDBC, this method runs
+     * {@code COPY (query) TO STDOUT WITH (FORMAT csv, HEADER)} with the driver's {@link CopyManager} and streams
+     * the bytes the server produces straight into a buffered file channel. The server does the CSV escaping,
+     * so commas, quotes and line breaks inside values are quoted correctly.
+     * </p>
+     *
+     * @param getCommand The SQL query whose result is exported. A trailing semicolon is ignored.
+     * @param filePath The path where the CSV file will be saved.
+     *
+     * @throws RuntimeException If an error occurs during database interaction or file writing.
+     */
+    @SuppressWarnings("try")
+    public static void exportToCsvWithCopy(String getCommand, String filePath) {
+        String query = getCommand.trim();
+        if (query.endsWith(";")) {query = query.substring(0, query.length() - 1);}
+
+        try (QueryMetrics.Timer timer = QueryMetrics.time("out");
+             FileChannel channel = FileChannel.open(Path.of(filePath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), COPY_BUFFER_SIZE)) {
+
+            CopyManager copyManager = ConnectToPostgresql.currentConnection().unwrap(PGConnection.class).getCopyAPI();
+            long rows = copyManager.copyOut("COPY (" + query + ") TO STDOUT WITH (FORMAT csv, HEADER)", out);
+            out.flush();
+            QueryMetrics.rows(rows);
+            QueryMetrics.bytes(channel.size());
+
+            System.out.println(GREEN + "Data successfully exported to " + filePath + RESET + " (" + rows + " rows)");
+        }
+        catch (SQLException e) {QueryMetrics.error("out", e); throw new RuntimeException(e);}
+        catch (IOException e) {throw new RuntimeException(e);}
     }
 	
     /**
      * <h2>Execute SQL File</h2>
-     * This method reads an SQL file line by line and executes the SQL statements on a PostgreSQL database.
+     * This method reads an SQL file statement by statement and executes the SQL statements on a PostgreSQL database.
      * It ensures that the database connection is active before execution and handles errors gracefully.
      *
      * <p><b>Usage:</b> Provide a valid file path containing SQL queries separated by semicolons (;).
-     * Each statement is executed individually.</p>
+     * Each statement is executed individually. The file is split by {@link SqlScriptReader}, which understands
+     * strings, dollar-quoted function bodies and comments, and streams {@code COPY ... FROM stdin} data sections
+     * to the server, so plain {@code pg_dump} scripts of any size run in constant memory.</p>
      *
      * <h3>Example:</h3>
      * <pre>
@@ -521,62 +708,103 @@ public class QueriesPostgresql {
      * <h3>Notes:</h3>
      * <ul>
      *     <li>Ensure that the database connection is properly established before calling this method.</li>
-     *     <li>Each SQL statement must end with a semicolon (;).</li>
-     *     <li>Empty lines in the file are ignored.</li>
+     *     <li>Each SQL statement must end with a semicolon (;); the last one may omit it.</li>
+     *     <li>Comments and psql meta-commands (lines starting with a backslash) are ignored.</li>
      * </ul>
      */
     public static void executeSqlFile(String pathFile) throws SQLException {
-        if (ConnectToPostgresql.connection == null || ConnectToPostgresql.connection.isClosed()) {throw new SQLException("Database connection is not available.");}
+        executeSqlFile(pathFile, 0);
+    }
 
-        ConnectToPostgresql.connection.setAutoCommit(false);
+    /**
+     * <h2>Execute SQL File in Batches</h2>
+     * Works like {@link #executeSqlFile(String)}, but when {@code batchSize} is greater than zero consecutive
+     * {@code INSERT}, {@code UPDATE} and {@code DELETE} statements are collected into JDBC batches of that size
+     * (with single-row inserts into the same table rewritten into multi-row inserts) and sent in one round trip
+     * each, see {@link SqlBatch}. Any other statement flushes the pending batch first and runs on its own, so
+     * statement order is preserved. The whole file is still committed at the end, or rolled back on the first
+     * error. A summary with the statement throughput is printed when the file completes.
+     *
+     * @param pathFile  The file path of the SQL script to be executed.
+     * @param batchSize The number of statements per batch, or 0 to execute statements one by one.
+     * @throws SQLException If there is a database connection issue or an error in SQL execution.
+     */
+    @SuppressWarnings("try")
+    public static void executeSqlFile(String pathFile, int batchSize) throws SQLException {
+        if (ConnectToPostgresql.currentConnection() == null || ConnectToPostgresql.currentConnection().isClosed()) {throw new SQLException("Database connection is not available.");}
 
-        try (Statement stmt = ConnectToPostgresql.connection.createStatement();
-             BufferedReader reader = new BufferedReader(new FileReader(pathFile))) {
+        ConnectToPostgresql.currentConnection().setAutoCommit(false);
+        long start = System.nanoTime();
 
-            String line;
-            StringBuilder sql = new StringBuilder();
+        try (QueryMetrics.Timer timer = QueryMetrics.time("run");
+             Statement stmt = ConnectToPostgresql.currentConnection().createStatement();
+             SqlScriptReader reader = new SqlScriptReader(Path.of(pathFile))) {
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    sql.append(line).append(" ");
+            SqlBatch batch = batchSize > 0 ? new SqlBatch(stmt, batchSize) : null;
+            String sql;
+
+            while ((sql = reader.nextStatement()) != null) {
+                if (batch != null && SqlBatch.isBatchable(sql)) {
+                    batch.add(sql);
+                    continue;
                 }
-                if (line.endsWith(";")) {
-                    System.out.println("Executing SQL: " + sql.toString());
-
-                    boolean hasResultSet = stmt.execute(sql.toString());
-
-                    if (hasResultSet) {
-                        try (ResultSet rs = stmt.getResultSet()) {
-                            ResultSetMetaData metaData = rs.getMetaData();
-                            int columnCount = metaData.getColumnCount();
-
-                            // Başlıkları yazdır
-                            for (int i = 1; i <= columnCount; i++) {
-                                System.out.print(metaData.getColumnName(i) + "\t");
-                            }
-                            System.out.println();
-
-                            // Verileri yazdır
-                            while (rs.next()) {
-                                for (int i = 1; i <= columnCount; i++) {
-                                    System.out.print(rs.getString(i) + "\t");
-                                }
-                                System.out.println();
-                            }
-                        }
-                    }
-                    sql.setLength(0);
+                if (batch != null) {batch.flush();}
+
+                System.out.println("Executing SQL: " + sql);
+                if (reader.isCopyFromStdin()) {
+                    long rows = ConnectToPostgresql.currentConnection().unwrap(PGConnection.class).getCopyAPI()
+                            .copyIn(sql, reader.copyData());
+                    System.out.println("Copied " + rows + " rows.");
+                } else {
+                    executeAndPrint(stmt, sql);
                 }
             }
+            if (batch != null) {batch.flush();}
 
-            ConnectToPostgresql.connection.commit();
+            ConnectToPostgresql.currentConnection().commit();
             System.out.println("SQL file executed successfully.");
+
+            if (batch != null) {
+                double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+                System.out.printf("Batched %d statements (%d inserts rewritten) in %d round trips, %d rows affected, %.2f s, %.0f statements/s%n",
+                        batch.getStatementCount(), batch.getRewrittenInsertCount(), batch.getRoundTrips(), batch.getAffectedRows(),
+                        seconds, batch.getStatementCount() / Math.max(seconds, 0.001));
+            }
         } catch (IOException e) {
+            CommandOutcome.failed();
             System.err.println("Error reading SQL file: " + e.getMessage());
         } catch (SQLException e) {
+            QueryMetrics.error("run", e);
             System.err.println("SQL execution error: " + e.getMessage());
-            ConnectToPostgresql.connection.rollback();
+            ConnectToPostgresql.currentConnection().rollback();
+        }
+    }
+
+    private static void executeAndPrint(Statement stmt, String sql) throws SQLException {
+        boolean hasResultSet = stmt.execute(sql);
+
+        if (hasResultSet) {
+            try (ResultSet rs = stmt.getResultSet()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+
+                // Başlıkları yazdır
+                for (int i = 1; i <= columnCount; i++) {
+                    System.out.print(metaData.getColumnName(i) + "\t");
+                }
+                System.out.println();
+
+                // Verileri yazdır
+                long rows = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        System.out.print(rs.getString(i) + "\t");
+                    }
+                    System.out.println();
+                    rows++;
+                }
+                QueryMetrics.rows(rows);
+            }
         }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+package org.cli.sql.postgresql;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SqlBatch {
+
+    private static final Pattern DML = Pattern.compile("^\\s*(insert|update|delete)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RETURNING = Pattern.compile("\\breturning\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SINGLE_INSERT = Pattern.compile(
+            "^\\s*(insert\\s+into\\s+[^\\s(]+(?:\\s*\\([^)]*\\))?)\\s+values\\s*(\\(.*\\))\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern UNSAFE_TAIL = Pattern.compile("\\b(on\\s+conflict|returning)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Statement statement;
+    private final int batchSize;
+
+    private String insertPrefix = null;
+    private final StringBuilder insertValues = new StringBuilder();
+    private int insertRows = 0;
+    private int pending = 0;
+
+    private long statements = 0;
+    private long rewrittenInserts = 0;
+    private long roundTrips = 0;
+    private long affectedRows = 0;
+
+    /**
+     * Groups DML statements into JDBC batches on the given statement.
+     * <p>
+     * Consecutive single-table {@code INSERT ... VALUES (...)} statements that target the same table and columns
+     * are rewritten into one multi-row {@code INSERT}, and every batch is sent with {@link Statement#executeBatch()}
+     * once {@code batchSize} statements have been collected, so a file of 100k inserts costs a few hundred round
+     * trips instead of 100k.
+     * </p>
+     *
+     * @param statement The statement batches are added to.
+     * @param batchSize The number of statements sent per round trip.
+     */
+    public SqlBatch(Statement statement, int batchSize) {
+        this.statement = statement;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns whether a statement can be batched: {@code INSERT}, {@code UPDATE} or {@code DELETE}
+     * without a {@code RETURNING} clause.
+     *
+     * @param sql The SQL statement.
+     * @return True if the statement produces no result set and can be batched.
+     */
+    public static boolean isBatchable(String sql) {
+        return DML.matcher(sql).find() && !RETURNING.matcher(sql).find();
+    }
+
+    /**
+     * Splits a single {@code INSERT INTO table [(columns)] VALUES (...)} statement into its prefix and its
+     * values list.
+     *
+     * @param sql The SQL statement.
+     * @return The prefix (up to the table and column list) and the values tuples, or null if the statement
+     * cannot be merged with others (for example because of {@code ON CONFLICT} or {@code RETURNING}).
+     */
+    public static String[] splitInsert(String sql) {
+        Matcher matcher = SINGLE_INSERT.matcher(sql);
+        if (!matcher.matches() || UNSAFE_TAIL.matcher(matcher.group(2)).find()) {
+            return null;
+        }
+        return new String[]{matcher.group(1).replaceAll("\\s+", " "), matcher.group(2).trim()};
+    }
+
+    /**
+     * Adds a batchable statement, flushing when the batch is full.
+     *
+     * @param sql The SQL statement; must satisfy {@link #isBatchable(String)}.
+     * @throws SQLException If a flush fails.
+     */
+    public void add(String sql) throws SQLException {
+        statements++;
+        String[] insert = splitInsert(sql);
+
+        if (insert != null && insert[0].equalsIgnoreCase(insertPrefix)) {
+            insertValues.append(", ").append(insert[1]);
+            insertRows++;
+            rewrittenInserts++;
+        } else {
+            closeInsert();
+            if (insert != null) {
+                insertPrefix = insert[0];
+                insertValues.append(insert[1]);
+                insertRows = 1;
+            } else {
+                statement.addBatch(stripSemicolon(sql));
+                pending++;
+            }
+        }
+
+        if (pending + insertRows >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends everything collected so far in one round trip.
+     *
+     * @throws SQLException If a statement in the batch fails; the first server error is reported.
+     */
+    public void flush() throws SQLException {
+        closeInsert();
+        if (pending == 0) {
+            return;
+        }
+        try {
+            for (int count : statement.executeBatch()) {
+                if (count > 0) {affectedRows += count;}
+            }
+            roundTrips++;
+        } catch (BatchUpdateException e) {
+            throw e.getNextException() != null ? e.getNextException() : e;
+        } finally {
+            statement.clearBatch();
+            pending = 0;
+        }
+    }
+
+    public long getStatementCount() {
+        return statements;
+    }
+
+    public long getRewrittenInsertCount() {
+        return rewrittenInserts;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getAffectedRows() {
+        return affectedRows;
+    }
+
+    private void closeInsert() throws SQLException {
+        if (insertPrefix == null) {
+            return;
+        }
+        statement.addBatch(insertPrefix + " VALUES " + insertValues);
+        pending++;
+        insertPrefix = null;
+        insertValues.setLength(0);
+        insertRows = 0;
+    }
+
+    private static String stripSemicolon(String sql) {
+        String trimmed = sql.trim();
+        return trimmed.endsWith(";") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,277 @@
+package org.cli.sql.postgresql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SqlDependencyGraph {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern DOLLAR_QUOTE = Pattern.compile("\\$(?:[A-Za-z_][A-Za-z0-9_]*)?\\$");
+    private static final Pattern TOKEN = Pattern.compile("\"(?:[^\"]|\"\")+\"|[A-Za-z_][A-Za-z0-9_$]*|\\.|,|\\(|\\)|\\S");
+    private static final Set<String> ALWAYS_BARRIER = Set.of(
+            "set", "reset", "begin", "start", "commit", "end", "rollback", "savepoint", "release", "lock",
+            "do", "call", "grant", "revoke", "listen", "notify", "discard", "prepare", "execute", "deallocate");
+    private static final Set<String> WRITE_VERBS = Set.of(
+            "truncate", "copy", "analyze", "analyse", "vacuum", "cluster", "refresh", "reindex");
+    private static final Set<String> READ_KEYWORDS = Set.of("from", "join", "using");
+    private static final Set<String> NOISE = Set.of(
+            "only", "lateral", "table", "if", "not", "exists", "concurrently", "verbose", "full", "freeze",
+            "materialized", "view", "temp", "temporary", "unlogged", "global", "local", "unique", "index", "or", "replace",
+            "recursive");
+    private static final Set<String> NOT_TABLES = Set.of("stdin", "stdout");
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of(
+            "where", "join", "inner", "left", "right", "full", "cross", "natural", "on", "using", "group", "order",
+            "having", "limit", "offset", "window", "union", "intersect", "except", "returning", "for", "set",
+            "values", "select", "as", "with", "tablesample", "fetch", "into", "do");
+
+    private final Map<String, Integer> lastWriter = new HashMap<>();
+    private final Map<String, List<Integer>> readersSinceWrite = new HashMap<>();
+
+    /**
+     * The tables a single statement reads and writes, as found by {@link #analyze(String)}.
+     */
+    public static final class Access {
+        private final Set<String> reads = new TreeSet<>();
+        private final Set<String> writes = new TreeSet<>();
+        private boolean barrier;
+
+        public Set<String> getReads() {
+            return reads;
+        }
+
+        public Set<String> getWrites() {
+            return writes;
+        }
+
+        /**
+         * @return True if the statement's effects cannot be pinned to tables, so it has to run alone.
+         */
+        public boolean isBarrier() {
+            return barrier;
+        }
+    }
+
+    /**
+     * Finds the tables a statement touches.
+     * <p>
+     * Tables named after {@code INSERT INTO}, {@code UPDATE}, {@code DELETE FROM}, {@code MERGE INTO},
+     * {@code TRUNCATE}, {@code COPY}, {@code ANALYZE}, {@code VACUUM}, {@code CLUSTER}, {@code REFRESH MATERIALIZED VIEW},
+     * {@code REINDEX TABLE} and {@code CREATE/ALTER/DROP TABLE|VIEW} are writes; tables after {@code FROM},
+     * {@code JOIN}, {@code USING}, {@code REFERENCES} and the table of {@code CREATE INDEX ... ON} are reads, so
+     * several indexes on one table can be built at the same time. Names are lower-cased unless quoted and the
+     * {@code public.} schema is dropped.
+     * </p>
+     * <p>
+     * Session and transaction statements ({@code SET}, {@code BEGIN}, {@code LOCK}, {@code DO}, ...), statements
+     * containing dollar-quoted bodies (functions can touch anything) and statements without any recognisable
+     * table are barriers.
+     * </p>
+     *
+     * @param sql The SQL statement.
+     * @return The statement's reads, writes and barrier flag.
+     */
+    public static Access analyze(String sql) {
+        Access access = new Access();
+        if (DOLLAR_QUOTE.matcher(sql).find()) {
+            access.barrier = true;
+            return access;
+        }
+
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(STRING_LITERAL.matcher(sql).replaceAll("''"));
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        if (tokens.isEmpty() || ALWAYS_BARRIER.contains(keyword(tokens, 0))) {
+            access.barrier = true;
+            return access;
+        }
+
+        String verb = keyword(tokens, 0);
+        if (WRITE_VERBS.contains(verb)) {
+            int i = skipNoise(tokens, 1);
+            if (verb.equals("vacuum") || verb.equals("analyze") || verb.equals("analyse")) {
+                i = skipParenthesised(tokens, i);
+                i = skipNoise(tokens, i);
+            }
+            readNameList(tokens, i, access.writes, false);
+        } else if ((verb.equals("create") || verb.equals("alter") || verb.equals("drop")) && tableOrView(tokens)) {
+            readNameList(tokens, skipNoise(tokens, 1), access.writes, false);
+        }
+
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            String word = keyword(tokens, i);
+            String previous = i > 0 ? keyword(tokens, i - 1) : "";
+            if ((word.equals("into") && (previous.equals("insert") || previous.equals("merge")))
+                    || (word.equals("from") && previous.equals("delete"))) {
+                addName(tokens, skipNoise(tokens, i + 1), access.writes, false);
+            } else if (word.equals("update") && !Set.of("for", "on", "do", "key").contains(previous)) {
+                addName(tokens, skipNoise(tokens, i + 1), access.writes, false);
+            } else if (word.equals("references")) {
+                addName(tokens, skipNoise(tokens, i + 1), access.reads, false);
+            } else if (READ_KEYWORDS.contains(word)) {
+                readNameList(tokens, skipNoise(tokens, i + 1), access.reads, true);
+            } else if (word.equals("on") && indexOrTrigger(tokens, i)) {
+                addName(tokens, skipNoise(tokens, i + 1), access.reads, false);
+            }
+        }
+
+        access.reads.removeAll(access.writes);
+        access.barrier = access.reads.isEmpty() && access.writes.isEmpty();
+        return access;
+    }
+
+    /**
+     * Adds the next statement of a script and returns the earlier statements it has to wait for.
+     * <p>
+     * A statement depends on the last statement that wrote any table it touches, and a writing statement also
+     * depends on every statement that read the table since that write. Statements that only read a table (for
+     * example several {@code CREATE INDEX} on it) do not depend on each other.
+     * </p>
+     *
+     * @param index  The statement's position in the script.
+     * @param access The statement's tables, from {@link #analyze(String)}; must not be a barrier.
+     * @return The positions of the statements it depends on, in ascending order.
+     */
+    public Set<Integer> add(int index, Access access) {
+        Set<Integer> dependencies = new TreeSet<>();
+        for (String table : access.reads) {
+            Integer writer = lastWriter.get(table);
+            if (writer != null) {dependencies.add(writer);}
+            readersSinceWrite.computeIfAbsent(table, key -> new ArrayList<>()).add(index);
+        }
+        for (String table : access.writes) {
+            Integer writer = lastWriter.get(table);
+            if (writer != null) {dependencies.add(writer);}
+            List<Integer> readers = readersSinceWrite.remove(table);
+            if (readers != null) {dependencies.addAll(readers);}
+            lastWriter.put(table, index);
+        }
+        dependencies.remove(index);
+        return dependencies;
+    }
+
+    /**
+     * Forgets every statement added so far; used once a barrier has waited for all of them.
+     */
+    public void reset() {
+        lastWriter.clear();
+        readersSinceWrite.clear();
+    }
+
+    private static String keyword(List<String> tokens, int index) {
+        return index < tokens.size() ? tokens.get(index).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static int skipNoise(List<String> tokens, int index) {
+        while (index < tokens.size() && NOISE.contains(keyword(tokens, index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipParenthesised(List<String> tokens, int index) {
+        if (!keyword(tokens, index).equals("(")) {
+            return index;
+        }
+        int depth = 0;
+        do {
+            String token = tokens.get(index++);
+            if (token.equals("(")) {depth++;}
+            if (token.equals(")")) {depth--;}
+        } while (depth > 0 && index < tokens.size());
+        return index;
+    }
+
+    private static boolean tableOrView(List<String> tokens) {
+        for (int i = 1; i < Math.min(tokens.size(), 5); i++) {
+            String word = keyword(tokens, i);
+            if (word.equals("table") || word.equals("view")) {
+                return true;
+            }
+            if (!NOISE.contains(word) && !word.equals("or") && !word.equals("replace") && !word.equals("recursive")) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean indexOrTrigger(List<String> tokens, int onIndex) {
+        String verb = keyword(tokens, 0);
+        if (!verb.equals("create")) {
+            return false;
+        }
+        for (int i = 1; i < onIndex; i++) {
+            String word = keyword(tokens, i);
+            if (word.equals("index") || word.equals("trigger") || word.equals("rule") || word.equals("policy")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads {@code name [alias] [, name [alias]] ...} starting at {@code index}.
+     */
+    private static void readNameList(List<String> tokens, int index, Set<String> into, boolean functionsAllowed) {
+        while (true) {
+            int next = addName(tokens, index, into, functionsAllowed);
+            if (next == index) {
+                return;
+            }
+            index = next;
+            if (keyword(tokens, index).equals("as")) {index++;}
+            if (index < tokens.size() && isIdentifier(tokens.get(index)) && !CLAUSE_KEYWORDS.contains(keyword(tokens, index))) {
+                index++;
+            }
+            if (!keyword(tokens, index).equals(",")) {
+                return;
+            }
+            index = skipNoise(tokens, index + 1);
+        }
+    }
+
+    /**
+     * Reads a possibly schema-qualified name at {@code index}. Where a function may stand in for a table
+     * ({@code FROM generate_series(...)}), a name followed by a parenthesis is not taken as a table.
+     *
+     * @return The index after the name, or {@code index} if there is no name there.
+     */
+    private static int addName(List<String> tokens, int index, Set<String> into, boolean functionsAllowed) {
+        if (index >= tokens.size() || !isIdentifier(tokens.get(index)) || CLAUSE_KEYWORDS.contains(keyword(tokens, index))) {
+            return index;
+        }
+        StringBuilder name = new StringBuilder(normalize(tokens.get(index++)));
+        while (keyword(tokens, index).equals(".") && index + 1 < tokens.size() && isIdentifier(tokens.get(index + 1))) {
+            name.append('.').append(normalize(tokens.get(index + 1)));
+            index += 2;
+        }
+        if (functionsAllowed && keyword(tokens, index).equals("(")) {
+            return index;
+        }
+        String table = name.toString();
+        if (NOT_TABLES.contains(table)) {
+            return index;
+        }
+        into.add(table.startsWith("public.") ? table.substring("public.".length()) : table);
+        return index;
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+        return first == '"' || first == '_' || Character.isLetter(first);
+    }
+
+    private static String normalize(String identifier) {
+        return identifier.startsWith("\"")
+                ? identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"")
+                : identifier.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,370 @@
+package org.cli.sql.postgresql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+public class SqlScriptReader implements Closeable {
+
+    private static final long WINDOW_SIZE = 64L << 20;
+    private static final int CHAR_CHUNK = 1 << 16;
+    /** Returned by {@link #nextStatement()} for a {@code -- luna:barrier} line when barriers are reported. */
+    public static final String BARRIER = "-- luna:barrier";
+    private static final Pattern COPY_FROM_STDIN = Pattern.compile("^copy\\s.*\\sfrom\\s+stdin\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private boolean decoderFlushed = false;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_CHUNK);
+
+    private boolean reportBarriers = false;
+    private boolean copyPending = false;
+    private CopyDataReader copyData;
+
+    /**
+     * Opens a SQL script for statement-by-statement reading.
+     * <p>
+     * The file is memory-mapped in 64 MB windows and decoded as UTF-8 into a small character buffer, so memory
+     * use does not depend on the size of the script. Statements are split on semicolons that are outside of
+     * single-quoted strings (including {@code E''} strings with backslash escapes), quoted identifiers,
+     * dollar-quoted bodies ({@code $$ ... $$} and {@code $tag$ ... $tag$}), line comments and nested block
+     * comments. Comments are dropped from the statement text. psql meta-commands (lines starting with a
+     * backslash) are skipped.
+     * </p>
+     * <p>
+     * A {@code COPY ... FROM stdin} statement is returned like any other; its inline data (up to the {@code \.}
+     * line) is then available through {@link #copyData()} and is skipped if the caller does not read it.
+     * </p>
+     *
+     * @param path The script to read.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SqlScriptReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        chars.flip();
+    }
+
+    /**
+     * Reads the next statement.
+     *
+     * @return The statement text without the terminating semicolon, or null at the end of the script.
+     * @throws IOException If the file cannot be read.
+     */
+    public String nextStatement() throws IOException {
+        if (copyPending) {
+            Reader pending = copyData();
+            char[] skip = new char[8192];
+            while (pending.read(skip) >= 0) {
+                // discard the unread COPY data
+            }
+        }
+
+        StringBuilder sql = new StringBuilder();
+        int c;
+        while ((c = read()) >= 0) {
+            char ch = (char) c;
+
+            if (ch == '\\' && sql.toString().isBlank()) {
+                skipLine();
+                sql.setLength(0);
+            } else if (ch == '-' && peek() == '-') {
+                String comment = readLine();
+                if (reportBarriers && sql.toString().isBlank() && comment.substring(1).trim().equalsIgnoreCase("luna:barrier")) {
+                    return BARRIER;
+                }
+                sql.append('\n');
+            } else if (ch == '/' && peek() == '*') {
+                read();
+                skipBlockComment();
+                sql.append(' ');
+            } else if (ch == '\'') {
+                boolean escapes = isEscapeStringPrefix(sql);
+                sql.append(ch);
+                readQuoted(sql, '\'', escapes);
+            } else if (ch == '"') {
+                sql.append(ch);
+                readQuoted(sql, '"', false);
+            } else if (ch == '$' && !endsWithIdentifierChar(sql)) {
+                sql.append(ch);
+                readDollarQuoted(sql);
+            } else if (ch == ';') {
+                String statement = sql.toString().trim();
+                if (statement.isEmpty()) {
+                    sql.setLength(0);
+                    continue;
+                }
+                if (COPY_FROM_STDIN.matcher(statement).matches()) {
+                    skipLine();
+                    copyPending = true;
+                    copyData = null;
+                }
+                return statement;
+            } else {
+                sql.append(ch);
+            }
+        }
+
+        String rest = sql.toString().trim();
+        return rest.isEmpty() ? null : rest;
+    }
+
+    /**
+     * Makes {@link #nextStatement()} return {@link #BARRIER} for every {@code -- luna:barrier} comment line
+     * that stands between two statements, instead of dropping it like any other comment.
+     *
+     * @param report True to report barrier markers.
+     */
+    public void reportBarriers(boolean report) {
+        this.reportBarriers = report;
+    }
+
+    /**
+     * @return True if the last statement returned was a {@code COPY ... FROM stdin} whose data has not been read.
+     */
+    public boolean isCopyFromStdin() {
+        return copyPending;
+    }
+
+    /**
+     * Returns the inline data of the last {@code COPY ... FROM stdin} statement, ending before the {@code \.} line.
+     * The data is streamed from the file and never held in memory as a whole.
+     *
+     * @return A reader over the COPY data.
+     */
+    public Reader copyData() {
+        if (copyData == null) {
+            copyData = new CopyDataReader();
+        }
+        return copyData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get();
+    }
+
+    private int peek() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get(chars.position());
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (chars.position() == 0) {
+            if (window == null || !window.hasRemaining()) {
+                if (window != null) {
+                    windowStart += window.limit();
+                }
+                if (windowStart >= size) {
+                    if (!decoderFlushed) {
+                        decoder.decode(ByteBuffer.allocate(0), chars, true);
+                        decoder.flush(chars);
+                        decoderFlushed = true;
+                    }
+                    break;
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+            }
+
+            boolean lastWindow = windowStart + window.limit() >= size;
+            decoder.decode(window, chars, lastWindow);
+            if (chars.position() == 0 && window.hasRemaining() && !lastWindow) {
+                // A multi-byte character straddles the window boundary: remap starting at that character.
+                windowStart += window.position();
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {
+            // skip
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private void skipBlockComment() throws IOException {
+        int depth = 1;
+        int c;
+        while (depth > 0 && (c = read()) >= 0) {
+            if (c == '*' && peek() == '/') {
+                read();
+                depth--;
+            } else if (c == '/' && peek() == '*') {
+                read();
+                depth++;
+            }
+        }
+    }
+
+    private void readQuoted(StringBuilder sql, char quote, boolean backslashEscapes) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            sql.append((char) c);
+            if (backslashEscapes && c == '\\') {
+                int escaped = read();
+                if (escaped >= 0) {sql.append((char) escaped);}
+            } else if (c == quote) {
+                if (peek() == quote) {
+                    sql.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readDollarQuoted(StringBuilder sql) throws IOException {
+        String tag = readTagBody(sql);
+        if (tag == null) {
+            return; // a positional parameter such as $1, or a lone dollar sign
+        }
+
+        int c;
+        while ((c = read()) >= 0) {
+            sql.append((char) c);
+            if (c == '$' && readClosingTag(sql, tag)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * After a '$' inside a dollar-quoted body, reads the following identifier and consumes the final '$' only
+     * when the identifier is the opening tag, so a '$' that does not close the body can still start the real
+     * closing tag.
+     */
+    private boolean readClosingTag(StringBuilder sql, String tag) throws IOException {
+        int c;
+        int matched = 0;
+        while (matched < tag.length() && (c = peek()) >= 0 && c == tag.charAt(matched)) {
+            sql.append((char) read());
+            matched++;
+        }
+        if (matched == tag.length() && peek() == '$') {
+            sql.append((char) read());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the identifier after a '$' and, when it is followed by another '$', consumes that and returns the tag.
+     */
+    private String readTagBody(StringBuilder sql) throws IOException {
+        StringBuilder tag = new StringBuilder();
+        int c = peek();
+        if (c >= 0 && (Character.isLetter(c) || c == '_')) {
+            while ((c = peek()) >= 0 && (Character.isLetterOrDigit(c) || c == '_')) {
+                tag.append((char) read());
+            }
+        }
+        sql.append(tag);
+        if (peek() == '$') {
+            sql.append((char) read());
+            return tag.toString();
+        }
+        return null;
+    }
+
+    private static boolean isEscapeStringPrefix(StringBuilder sql) {
+        int length = sql.length();
+        if (length == 0) {
+            return false;
+        }
+        char last = sql.charAt(length - 1);
+        return (last == 'E' || last == 'e') && (length == 1 || !isIdentifierChar(sql.charAt(length - 2)));
+    }
+
+    private static boolean endsWithIdentifierChar(StringBuilder sql) {
+        return sql.length() > 0 && isIdentifierChar(sql.charAt(sql.length() - 1));
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Streams COPY data lines until the end-of-data marker.
+     */
+    private final class CopyDataReader extends Reader {
+        private final StringBuilder line = new StringBuilder();
+        private int linePosition = 0;
+        private boolean finished = false;
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (linePosition >= line.length() && !nextLine()) {
+                return -1;
+            }
+            int count = Math.min(length, line.length() - linePosition);
+            line.getChars(linePosition, linePosition + count, buffer, offset);
+            linePosition += count;
+            return count;
+        }
+
+        private boolean nextLine() throws IOException {
+            line.setLength(0);
+            linePosition = 0;
+            int c;
+            while ((c = SqlScriptReader.this.read()) >= 0) {
+                line.append((char) c);
+                if (c == '\n') {
+                    break;
+                }
+            }
+            String content = line.toString().replace("\r", "").replace("\n", "");
+            if (line.length() == 0 || content.equals("\\.")) {
+                finished = true;
+                copyPending = false;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.cli.sql.postgresql;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamingTableRenderer {
+
+    /** How rows are printed: a table for people, or one line per row for other programs. */
+    public enum Format {TABLE, CSV, TSV, JSON}
+
+    private static Format format = Format.TABLE;
+    private static PrintStream output;
+    private static int sampleSize = 100;
+    private static int fetchSize = 1000;
+    private static int maxColumnWidth = 40;
+    private static boolean wrap = false;
+
+    private final String[] headers;
+    private final List<String[]> sample = new ArrayList<>();
+    private int[] columnWidths;
+    private String separator;
+    private long rowCount = 0;
+
+    /**
+     * Creates a renderer for a table with the given column headers.
+     * <p>
+     * The first rows (the sample) are buffered so that column widths can be computed from real data; every row
+     * after the sample is printed as soon as it is added and is not kept in memory. Cells wider than the
+     * computed width are truncated, or wrapped onto continuation lines when wrapping is enabled.
+     * </p>
+     *
+     * @param headers The column headers.
+     */
+    public StreamingTableRenderer(String[] headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Changes how streamed tables are rendered.
+     *
+     * @param sampleRows     The number of leading rows used to compute column widths.
+     * @param fetchRows      The number of rows fetched from the server-side cursor per round trip.
+     * @param maxWidth       The widest a column may become; longer cells are truncated or wrapped.
+     * @param wrapOverflow   True to wrap long cells onto extra lines instead of truncating them.
+     */
+    public static void configure(int sampleRows, int fetchRows, int maxWidth, boolean wrapOverflow) {
+        if (sampleRows < 1 || fetchRows < 1 || maxWidth < 4) {
+            throw new IllegalArgumentException("sample and fetch must be positive, width must be at least 4.");
+        }
+        sampleSize = sampleRows;
+        fetchSize = fetchRows;
+        maxColumnWidth = maxWidth;
+        wrap = wrapOverflow;
+    }
+
+    public static int getSampleSize() {
+        return sampleSize;
+    }
+
+    public static int getFetchSize() {
+        return fetchSize;
+    }
+
+    public static int getMaxColumnWidth() {
+        return maxColumnWidth;
+    }
+
+    public static boolean isWrap() {
+        return wrap;
+    }
+
+    /**
+     * Changes the output format of every result set printed from now on.
+     * <ul>
+     *     <li>{@code TABLE} - the boxed table, widths computed from the sample.</li>
+     *     <li>{@code CSV} - a header line, then RFC 4180 rows; NULL is an empty field.</li>
+     *     <li>{@code TSV} - a header line, then rows escaped like {@code COPY ... TO STDOUT}; NULL is {@code \N}.</li>
+     *     <li>{@code JSON} - one object per row and line (JSON Lines), values as strings or null.</li>
+     * </ul>
+     * The machine-readable formats print every row as soon as it is added, never truncate a cell, and print no
+     * row count or "no data" message.
+     *
+     * @param outputFormat The format.
+     */
+    public static void setFormat(Format outputFormat) {
+        format = outputFormat;
+    }
+
+    public static Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Sends the rows to the given stream instead of {@code System.out}, so that other programs reading them do
+     * not get the messages of the commands mixed in.
+     *
+     * @param rows The stream, or null for {@code System.out}.
+     */
+    public static void setOutput(PrintStream rows) {
+        output = rows;
+    }
+
+    /**
+     * Reads a format name such as {@code csv}, in any case.
+     *
+     * @param name The name.
+     * @return The format.
+     * @throws IllegalArgumentException If there is no such format.
+     */
+    public static Format parseFormat(String name) {
+        for (Format candidate : Format.values()) {
+            if (candidate.name().equalsIgnoreCase(name)) {return candidate;}
+        }
+        throw new IllegalArgumentException("format must be table, csv, tsv or json.");
+    }
+
+    /**
+     * Adds a row. Rows are buffered until the sample is complete and printed immediately afterwards.
+     *
+     * @param row The cell values; null cells are printed as {@code NULL}.
+     */
+    public void addRow(String[] row) {
+        if (format != Format.TABLE) {
+            if (rowCount++ == 0 && format != Format.JSON) {target().print(formatLine(headers));}
+            target().print(formatLine(row));
+            return;
+        }
+        String[] cells = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+            cells[i] = row[i] == null ? "NULL" : flatten(row[i]);
+        }
+        rowCount++;
+
+        if (columnWidths == null) {
+            sample.add(cells);
+            if (sample.size() >= sampleSize) {
+                flushSample();
+            }
+        } else {
+            printRow(cells);
+        }
+    }
+
+    /**
+     * Prints whatever is still buffered and closes the table.
+     *
+     * @return The number of rows rendered.
+     */
+    public long finish() {
+        if (format != Format.TABLE) {
+            if (rowCount == 0 && format != Format.JSON) {target().print(formatLine(headers));}
+            return rowCount;
+        }
+        if (rowCount == 0) {
+            target().println("No data found in the table.");
+            return 0;
+        }
+        if (columnWidths == null) {
+            flushSample();
+        }
+        target().println(separator);
+        target().println("(" + rowCount + (rowCount == 1 ? " row)" : " rows)"));
+        return rowCount;
+    }
+
+    private void flushSample() {
+        columnWidths = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            columnWidths[i] = Math.min(maxColumnWidth, Math.max(1, headers[i].length()));
+        }
+        for (String[] row : sample) {
+            for (int i = 0; i < row.length; i++) {
+                columnWidths[i] = Math.min(maxColumnWidth, Math.max(columnWidths[i], row[i].length()));
+            }
+        }
+
+        StringBuilder line = new StringBuilder("+");
+        for (int width : columnWidths) {
+            line.append("-".repeat(width + 2)).append("+");
+        }
+        separator = line.toString();
+
+        target().println(separator);
+        printRow(headers);
+        target().println(separator);
+        for (String[] row : sample) {
+            printRow(row);
+        }
+        sample.clear();
+    }
+
+    private void printRow(String[] cells) {
+        StringBuilder out = new StringBuilder();
+        int lines = 1;
+        if (wrap) {
+            for (int i = 0; i < cells.length; i++) {
+                lines = Math.max(lines, (cells[i].length() + columnWidths[i] - 1) / Math.max(1, columnWidths[i]));
+            }
+        }
+
+        for (int line = 0; line < lines; line++) {
+            out.append("|");
+            for (int i = 0; i < cells.length; i++) {
+                out.append(' ').append(pad(segment(cells[i], columnWidths[i], line), columnWidths[i])).append(" |");
+            }
+            out.append(System.lineSeparator());
+        }
+        target().print(out);
+    }
+
+    private static PrintStream target() {
+        return output != null ? output : System.out;
+    }
+
+    private String formatLine(String[] cells) {
+        StringBuilder out = new StringBuilder();
+        switch (format) {
+            case CSV:
+                for (int i = 0; i < cells.length; i++) {
+                    if (i > 0) {out.append(',');}
+                    if (cells[i] != null) {appendCsv(out, cells[i]);}
+                }
+                break;
+            case TSV:
+                for (int i = 0; i < cells.length; i++) {
+                    if (i > 0) {out.append('\t');}
+                    appendTsv(out, cells[i]);
+                }
+                break;
+            default:
+                out.append('{');
+                for (int i = 0; i < cells.length; i++) {
+                    if (i > 0) {out.append(',');}
+                    appendJson(out, headers[i]);
+                    out.append(':');
+                    if (cells[i] == null) {out.append("null");} else {appendJson(out, cells[i]);}
+                }
+                out.append('}');
+        }
+        return out.append('\n').toString();
+    }
+
+    private static void appendCsv(StringBuilder out, String value) {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendTsv(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static void appendJson(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {out.append(String.format("\\u%04x", (int) c));} else {out.append(c);}
+            }
+        }
+        out.append('"');
+    }
+
+    private static String segment(String cell, int width, int line) {
+        if (wrap) {
+            int start = line * width;
+            return start >= cell.length() ? "" : cell.substring(start, Math.min(cell.length(), start + width));
+        }
+        if (line > 0) {
+            return "";
+        }
+        if (cell.length() <= width) {
+            return cell;
+        }
+        // A column sampled narrower than "..." is cut without the marker.
+        return width < 4 ? cell.substring(0, width) : cell.substring(0, width - 3) + "...";
+    }
+
+    private static String pad(String text, int width) {
+        return text.length() >= width ? text : text + " ".repeat(width - text.length());
+    }
+
+    private static String flatten(String value) {
+        return value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf('\t') < 0
+                ? value
+                : value.replace("\r\n", " ").replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    }
+}
@@ -0,0 +1,48 @@
+package org.cli.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams over a blocking socket channel that one thread can read while another writes. The streams of
+ * {@link java.nio.channels.Channels} do not allow that: they lock the channel for reads and writes alike.
+ */
+public class ChannelStreams {
+
+    public static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (length == 0) {return 0;}
+                return channel.read(ByteBuffer.wrap(buffer, offset, length));
+            }
+        };
+    }
+
+    public static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int value) throws IOException {
+                write(new byte[]{(byte) value}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                ByteBuffer remaining = ByteBuffer.wrap(buffer, offset, length);
+                while (remaining.hasRemaining()) {
+                    if (channel.write(remaining) < 0) {throw new EOFException();}
+                }
+            }
+        };
+    }
+}
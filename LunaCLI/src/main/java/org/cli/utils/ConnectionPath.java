@@ -2,4 +2,4 @@ package org.cli.utils;
 
 import java.sql.Connection;
 
-public class ConnectionPath { public static final String FILE_PATH = "connections.json";}
+public class ConnectionPath { public static String FILE_PATH = "connections.json";}
@@ -0,0 +1,15 @@
+package org.cli.utils;
+
+import java.nio.file.Path;
+
+public class DaemonSettings {
+    /** Where the daemon listens and the client connects, unless a command gives another path. */
+    public static String socketPath = setting("luna.daemon.socket", "LUNA_DAEMON_SOCKET",
+            Path.of(System.getProperty("java.io.tmpdir"), "luna-" + System.getProperty("user.name") + ".sock").toString());
+
+    private static String setting(String property, String environment, String fallback) {
+        String value = System.getProperty(property);
+        if (value == null || value.isBlank()) {value = System.getenv(environment);}
+        return value == null || value.isBlank() ? fallback : value.trim();
+    }
+}
@@ -0,0 +1,6 @@
+package org.cli.utils;
+
+public class HistoryPath {
+    public static String filePath = "history.jsonl";
+    public static long maxFileBytes = 5L * 1024 * 1024;
+}
@@ -0,0 +1,5 @@
+package org.cli.utils;
+
+public class JobPath {
+    public static String filePath = "jobs.json";
+}
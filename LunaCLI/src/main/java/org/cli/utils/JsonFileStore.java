@@ -0,0 +1,129 @@
+package org.cli.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.cli.exceptions.CustomMessages.INVALID_MESSAGE;
+
+/**
+ * <h1>A JSON list file kept in memory</h1>
+ * <p>
+ * The file is parsed once and served from memory; it is read again only when its modification time or size
+ * changes, for example after it was edited by hand or by another luna process. Writes go to a temporary file in
+ * the same directory that is then renamed over the original, so a crash never leaves a half-written file.
+ * </p>
+ * <p>
+ * The owner is told about every new list through {@code onLoad}, so it can rebuild its indexes.
+ * </p>
+ *
+ * @param <T> The type of the entries.
+ */
+public class JsonFileStore<T> {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Supplier<String> path;
+    private final TypeReference<List<T>> type;
+    private final Consumer<List<T>> onLoad;
+
+    private List<T> items = Collections.emptyList();
+    private String loadedPath;
+    private long loadedModified = -1;
+    private long loadedSize = -1;
+
+    /**
+     * @param path   The file, read on every access so tests and settings can point it elsewhere.
+     * @param type   The list type for Jackson.
+     * @param onLoad Called with the entries whenever they are loaded or written.
+     */
+    public JsonFileStore(Supplier<String> path, TypeReference<List<T>> type, Consumer<List<T>> onLoad) {
+        this.path = path;
+        this.type = type;
+        this.onLoad = onLoad;
+    }
+
+    /**
+     * Reads the file again if it changed since it was last loaded or written.
+     */
+    public synchronized void refresh() {
+        String current = path.get();
+        Path file = Path.of(current);
+        long modified = -1;
+        long size = -1;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            modified = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
+        } catch (NoSuchFileException ignored) {
+            // No file yet: an empty list.
+        } catch (IOException e) {
+            System.out.println(INVALID_MESSAGE + "Could not read " + current + ": " + e.getMessage());
+            return;
+        }
+        if (current.equals(loadedPath) && modified == loadedModified && size == loadedSize) {
+            return;
+        }
+
+        List<T> loaded = new ArrayList<>();
+        if (modified >= 0) {
+            try {
+                loaded = objectMapper.readValue(file.toFile(), type);
+            } catch (IOException e) {
+                System.out.println(INVALID_MESSAGE + "Could not parse " + current + ": " + e.getMessage());
+            }
+        }
+        publish(current, loaded, modified, size);
+    }
+
+    /**
+     * @return The entries, in file order. The list cannot be modified; use {@link #write(List)}.
+     */
+    public synchronized List<T> items() {
+        refresh();
+        return items;
+    }
+
+    /**
+     * Replaces the file with the given entries.
+     *
+     * @param entries The entries to store.
+     * @throws IOException If the file cannot be written; the previous file and entries are kept.
+     */
+    public synchronized void write(List<T> entries) throws IOException {
+        String current = path.get();
+        Path file = Path.of(current).toAbsolutePath();
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), entries);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        publish(current, new ArrayList<>(entries), attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    private void publish(String current, List<T> loaded, long modified, long size) {
+        items = Collections.unmodifiableList(loaded);
+        loadedPath = current;
+        loadedModified = modified;
+        loadedSize = size;
+        onLoad.accept(items);
+    }
+}
@@ -0,0 +1,15 @@
+package org.cli.utils;
+
+public class KeepaliveSettings {
+    /** How often the idle session connection is validated in the background. */
+    public static int intervalSeconds = 30;
+    /** A command typed after this much silence validates the session connection first. */
+    public static long validateAfterIdleMillis = 5000;
+    public static int validationTimeoutSeconds = 2;
+    /** Reconnect attempts made while a command waits, before it runs on the broken connection anyway. */
+    public static int foregroundAttempts = 4;
+    public static long backoffBaseMillis = 200;
+    public static long backoffMaxMillis = 10_000;
+    /** How often a read-only statement that failed on a broken connection is retried on a new one. */
+    public static int readRetries = 2;
+}
@@ -0,0 +1,12 @@
+package org.cli.utils;
+
+public class MetricsConfig {
+    public static String host = setting("luna.metrics.host", "LUNA_METRICS_HOST", "0.0.0.0");
+    public static int port = Integer.parseInt(setting("luna.metrics.port", "LUNA_METRICS_PORT", "9091"));
+
+    private static String setting(String property, String environment, String fallback) {
+        String value = System.getProperty(property);
+        if (value == null || value.isBlank()) {value = System.getenv(environment);}
+        return value == null || value.isBlank() ? fallback : value.trim();
+    }
+}
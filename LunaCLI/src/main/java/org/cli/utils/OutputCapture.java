@@ -0,0 +1,129 @@
+package org.cli.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+public class OutputCapture {
+
+    private static final ThreadLocal<OutputStream[]> targets = new ThreadLocal<>();
+    private static final Object lock = new Object();
+    private static int users = 0;
+    private static PrintStream[] console;
+    private static PrintStream[] routing;
+
+    /**
+     * Sends the console output of threads that are inside {@link #redirect(OutputStream, OutputStream, Runnable)}
+     * to their own streams.
+     */
+    private static final class RoutingOutputStream extends OutputStream {
+        private final PrintStream console;
+        private final int index;
+
+        RoutingOutputStream(PrintStream console, int index) {
+            this.console = console;
+            this.index = index;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream[] redirected = targets.get();
+            if (redirected != null) {
+                redirected[index].write(b);
+            } else {
+                console.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            OutputStream[] redirected = targets.get();
+            if (redirected != null) {
+                redirected[index].write(bytes, offset, length);
+            } else {
+                console.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            OutputStream[] redirected = targets.get();
+            if (redirected != null) {
+                redirected[index].flush();
+            } else {
+                console.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs a task and returns everything it printed on the calling thread.
+     *
+     * @param task The task to run.
+     * @return The captured console output.
+     */
+    public static String capture(Runnable task) {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        redirect(captured, captured, task);
+        return captured.toString();
+    }
+
+    /**
+     * Runs a task with what it prints on the calling thread sent to the given streams.
+     * <p>
+     * Commands print straight to {@code System.out} and {@code System.err}, so when several of them run at the
+     * same time their lines would interleave, and swapping the global streams for one of them would steal the
+     * output of the others. While at least one thread is redirected, both streams route every write by thread:
+     * redirected threads write to their own streams, all other threads still write to the console. Once the last
+     * one finishes, the console streams are put back.
+     * </p>
+     *
+     * @param out  Receives what the task prints to {@code System.out}.
+     * @param err  Receives what the task prints to {@code System.err}.
+     * @param task The task to run.
+     */
+    public static void redirect(OutputStream out, OutputStream err, Runnable task) {
+        install();
+        OutputStream[] previous = targets.get();
+        targets.set(new OutputStream[]{out, err});
+        try {
+            task.run();
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            if (previous == null) {
+                targets.remove();
+            } else {
+                targets.set(previous);
+            }
+            uninstall();
+        }
+    }
+
+    private static void install() {
+        synchronized (lock) {
+            if (users++ > 0) {return;}
+            console = new PrintStream[]{System.out, System.err};
+            // Standard output is not flushed on every line, so a redirected thread can batch its writes.
+            routing = new PrintStream[]{
+                    new PrintStream(new RoutingOutputStream(console[0], 0), false),
+                    new PrintStream(new RoutingOutputStream(console[1], 1), true)};
+            System.setOut(routing[0]);
+            System.setErr(routing[1]);
+        }
+    }
+
+    private static void uninstall() {
+        synchronized (lock) {
+            if (--users > 0) {return;}
+            routing[0].flush();
+            routing[1].flush();
+            // Someone else may have replaced the streams in the meantime; theirs are kept.
+            if (System.out == routing[0]) {System.setOut(console[0]);}
+            if (System.err == routing[1]) {System.setErr(console[1]);}
+            console = null;
+            routing = null;
+        }
+    }
+}
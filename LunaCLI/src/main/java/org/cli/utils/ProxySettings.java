@@ -0,0 +1,12 @@
+package org.cli.utils;
+
+public class ProxySettings {
+    public static int port = 6432;
+    public static int poolSize = 4;
+    /** Clients beyond this number are turned away at login. */
+    public static int maxClients = 100;
+    /** How long a client waits for a free server connection before it is disconnected. */
+    public static int queueTimeoutSeconds = 30;
+    /** A server connection holding more proxy-prepared statements than this is closed when it is given back. */
+    public static int maxPreparedStatements = 1000;
+}
@@ -0,0 +1,11 @@
+package org.cli.utils;
+
+public class ReplicaSettings {
+    /** Replicas further behind the primary than this are skipped, unless the profile sets its own maxLag. */
+    public static int maxLagSeconds = 10;
+    /** How long a measured replication lag is trusted before it is measured again. */
+    public static long lagCacheMillis = 1000;
+    /** How long a replica that could not be reached is left out before it is tried again. */
+    public static long retryAfterMillis = 5000;
+    public static int connectTimeoutSeconds = 3;
+}
@@ -1,5 +1,5 @@
 package org.cli.utils;
 
 public class SnippetPath {
-    public static final String FILE_PATH = "snippets.json";
+    public static String FILE_PATH = "snippets.json";
 }
@@ -0,0 +1,78 @@
+package QueriesTest;
+
+import org.cli.sql.postgresql.SqlBatch;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.sql.postgresql.QueriesPostgresql.executeSqlFile;
+import static org.cli.utils.TestConfig.*;
+
+public class ExecuteSqlFileBatchFunctionTest {
+
+    static final String TEST_TABLE = "test_batch_table";
+    static final Path SQL_FILE = Path.of("test_batch.sql");
+
+    @BeforeEach
+    public void init() throws SQLException {
+        connection = DriverManager.getConnection(TEST_URL, TEST_USERNAME, TEST_PASSWORD);
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException, IOException {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + TEST_TABLE);
+        }
+        connection.close();
+        Files.deleteIfExists(SQL_FILE);
+    }
+
+    @Test
+    public void splitInsertMergesOnlyPlainInserts() {
+        String[] insert = SqlBatch.splitInsert("INSERT INTO users (name, age)  VALUES ('a', 1);");
+        Assertions.assertNotNull(insert);
+        Assertions.assertEquals("INSERT INTO users (name, age)", insert[0]);
+        Assertions.assertEquals("('a', 1)", insert[1]);
+
+        Assertions.assertNull(SqlBatch.splitInsert("INSERT INTO users VALUES (1) ON CONFLICT (id) DO NOTHING;"));
+        Assertions.assertNull(SqlBatch.splitInsert("INSERT INTO users SELECT * FROM other;"));
+        Assertions.assertFalse(SqlBatch.isBatchable("INSERT INTO users VALUES (1) RETURNING id;"));
+        Assertions.assertFalse(SqlBatch.isBatchable("CREATE TABLE x (id int);"));
+        Assertions.assertTrue(SqlBatch.isBatchable("delete from users where id = 1;"));
+    }
+
+    @Test
+    public void executeSqlFileInBatchesKeepsStatementOrder() throws SQLException, IOException {
+        StringBuilder script = new StringBuilder("CREATE TABLE " + TEST_TABLE + " (id INT PRIMARY KEY, name VARCHAR(100));\n");
+        for (int i = 0; i < 250; i++) {
+            script.append("INSERT INTO ").append(TEST_TABLE).append(" (id, name) VALUES (").append(i).append(", 'n").append(i).append("');\n");
+        }
+        script.append("UPDATE ").append(TEST_TABLE).append(" SET name = 'updated' WHERE id < 10;\n");
+        script.append("DELETE FROM ").append(TEST_TABLE).append(" WHERE id >= 200;\n");
+        Files.writeString(SQL_FILE, script);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        executeSqlFile(SQL_FILE.toString(), 100);
+
+        Assertions.assertTrue(outputStream.toString().contains("Batched 252 statements (247 inserts rewritten) in 3 round trips"),
+                "Unexpected summary: " + outputStream);
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*), count(*) FILTER (WHERE name = 'updated') FROM " + TEST_TABLE)) {
+            rs.next();
+            Assertions.assertEquals(200, rs.getInt(1));
+            Assertions.assertEquals(10, rs.getInt(2));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package QueriesTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.sql.postgresql.ParallelScriptPostgresql;
+import org.cli.sql.postgresql.SqlDependencyGraph;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.utils.TestConfig.*;
+
+public class ExecuteSqlFileParallelFunctionTest {
+
+    static final Path SQL_FILE = Path.of("test_parallel.sql");
+
+    @BeforeEach
+    public void init() {
+        if (connection != null) {
+            ConnectToPostgresql.closeConnection();
+        }
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException, IOException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS test_parallel_a, test_parallel_b, test_parallel_c");
+        }
+        ConnectToPostgresql.closeConnection();
+        Files.deleteIfExists(SQL_FILE);
+    }
+
+    @Test
+    public void dependenciesFollowTheTablesEachStatementTouches() {
+        SqlDependencyGraph.Access insertSelect = SqlDependencyGraph.analyze("INSERT INTO public.a (id) SELECT id FROM b JOIN \"C\" USING (id)");
+        Assertions.assertEquals(Set.of("a"), insertSelect.getWrites());
+        Assertions.assertEquals(Set.of("b", "C"), insertSelect.getReads());
+        Assertions.assertEquals(Set.of("a"), SqlDependencyGraph.analyze("CREATE UNIQUE INDEX IF NOT EXISTS i ON ONLY a USING btree (id)").getReads());
+        Assertions.assertEquals(Set.of("a", "b"), SqlDependencyGraph.analyze("TRUNCATE TABLE a, b").getWrites());
+        Assertions.assertTrue(SqlDependencyGraph.analyze("SET work_mem = '1GB'").isBarrier());
+        Assertions.assertTrue(SqlDependencyGraph.analyze("CREATE FUNCTION f() RETURNS int AS $$ SELECT 1 $$ LANGUAGE sql").isBarrier());
+        Assertions.assertTrue(SqlDependencyGraph.analyze("SELECT 'from x'").isBarrier());
+
+        SqlDependencyGraph graph = new SqlDependencyGraph();
+        Assertions.assertEquals(Set.of(), graph.add(1, SqlDependencyGraph.analyze("INSERT INTO a SELECT * FROM src")));
+        Assertions.assertEquals(Set.of(1), graph.add(2, SqlDependencyGraph.analyze("CREATE INDEX a1 ON a (x)")));
+        Assertions.assertEquals(Set.of(1), graph.add(3, SqlDependencyGraph.analyze("CREATE INDEX a2 ON a (y)")));
+        Assertions.assertEquals(Set.of(), graph.add(4, SqlDependencyGraph.analyze("ANALYZE b")));
+        Assertions.assertEquals(Set.of(1, 2, 3), graph.add(5, SqlDependencyGraph.analyze("ANALYZE a")));
+    }
+
+    @Test
+    public void executeSqlFileInParallelSkipsDependentsOfFailures() throws SQLException, IOException {
+        Files.writeString(SQL_FILE, """
+                CREATE TABLE test_parallel_a (id INT);
+                CREATE TABLE test_parallel_b (id INT);
+                -- luna:barrier
+                INSERT INTO test_parallel_a SELECT g FROM generate_series(1, 1000) g;
+                INSERT INTO test_parallel_b SELECT g FROM generate_series(1, 500) g;
+                INSERT INTO test_parallel_c SELECT 1;
+                CREATE INDEX test_parallel_a_id ON test_parallel_a (id);
+                SELECT count(*) FROM test_parallel_c;
+                ANALYZE test_parallel_b;
+                """);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        ParallelScriptPostgresql.executeSqlFile(SQL_FILE.toString(), 3);
+
+        String output = outputStream.toString();
+        Assertions.assertTrue(output.contains("Ran 8 statements on 3 connections"), "Unexpected summary: " + output);
+        Assertions.assertTrue(output.contains("6 succeeded, 1 failed, 1 skipped"), "Unexpected summary: " + output);
+        Assertions.assertTrue(output.contains("#7 skipped"), "Unexpected output: " + output);
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT (SELECT count(*) FROM test_parallel_a), (SELECT count(*) FROM test_parallel_b), "
+                     + "(SELECT count(*) FROM pg_indexes WHERE indexname = 'test_parallel_a_id')")) {
+            rs.next();
+            Assertions.assertEquals(1000, rs.getInt(1));
+            Assertions.assertEquals(500, rs.getInt(2));
+            Assertions.assertEquals(1, rs.getInt(3));
+        }
+    }
+}
@@ -6,13 +6,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
 import static org.cli.sql.postgresql.QueriesPostgresql.exportToCSV;
+import static org.cli.sql.postgresql.QueriesPostgresql.exportToCsvWithCopy;
 import static org.cli.utils.Colors.GREEN;
 import static org.cli.utils.Colors.RESET;
 import static org.cli.utils.TestConfig.*;
@@ -61,4 +65,30 @@ public class ExportToCsvFunctionTest {
         Assertions.assertTrue(exception.getMessage().contains(expectedMessage),
                 "Expected message: " + expectedMessage + " but got: " + exception.getMessage());
     }
+
+    @Test
+    public void testExportToCsvWithCopyEscapesValues() throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        exportToCsvWithCopy("SELECT 'a,b' AS first, 'say \"hi\"' AS second;", filePath);
+
+        Assertions.assertTrue(
+                outputStream.toString().contains(GREEN + "Data successfully exported to " + filePath + RESET)
+        );
+        Assertions.assertEquals("first,second\n\"a,b\",\"say \"\"hi\"\"\"\n", Files.readString(Path.of(filePath)));
+    }
+
+    @Test
+    public void testExportToCsvWithCopyAndInvalidCommand() {
+
+        RuntimeException exception = Assertions.assertThrows(
+                RuntimeException.class,() -> {exportToCsvWithCopy(invalid_command,filePath);}
+        );
+
+        String expectedMessage = "ERROR: syntax error at or near \"SEELEEECT\"";
+        Assertions.assertTrue(exception.getMessage().contains(expectedMessage),
+                "Expected message: " + expectedMessage + " but got: " + exception.getMessage());
+    }
 }
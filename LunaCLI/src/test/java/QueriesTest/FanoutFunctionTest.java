@@ -0,0 +1,77 @@
+package QueriesTest;
+
+import org.cli.entities.SaveEntity;
+import org.cli.sql.postgresql.FanoutQueryPostgresql;
+import org.cli.sql.postgresql.FanoutQueryPostgresql.TargetResult;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.List;
+
+import static org.cli.utils.TestConfig.*;
+
+public class FanoutFunctionTest {
+
+    private PrintStream out;
+    private ByteArrayOutputStream outputStream;
+
+    @BeforeEach
+    public void init() {
+        out = System.out;
+        outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        System.setOut(out);
+    }
+
+    @Test
+    public void rowsOfAllTargetsAreMergedWithTheirSource() {
+        List<TargetResult> results = FanoutQueryPostgresql.fanout(List.of(
+                target("Person1", TEST_DATABASE), target("Person2", "postgres")), "SELECT current_database() AS db", 2, 10);
+
+        String output = outputStream.toString();
+        Assertions.assertEquals(TargetResult.Status.OK, results.get(0).getStatus());
+        Assertions.assertEquals(TargetResult.Status.OK, results.get(1).getStatus());
+        Assertions.assertEquals(1, results.get(0).getRows());
+        Assertions.assertTrue(output.contains("source"), "Missing source column: " + output);
+        Assertions.assertTrue(output.matches("(?s).*Person1\\s*\\|\\s*" + TEST_DATABASE + ".*"), "Missing Person1 row: " + output);
+        Assertions.assertTrue(output.matches("(?s).*Person2\\s*\\|\\s*postgres.*"), "Missing Person2 row: " + output);
+    }
+
+    @Test
+    public void aFailingOrSlowTargetDoesNotStopTheOthers() {
+        long start = System.nanoTime();
+        List<TargetResult> results = FanoutQueryPostgresql.fanout(List.of(
+                target("Person1", TEST_DATABASE), target("Person2", "no_such_database_luna")),
+                "SELECT 1 AS one, pg_sleep(CASE WHEN current_database() = '" + TEST_DATABASE + "' THEN 5 ELSE 0 END)", 2, 1);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertEquals(TargetResult.Status.TIMEOUT, results.get(0).getStatus());
+        Assertions.assertEquals(TargetResult.Status.FAILED, results.get(1).getStatus());
+        Assertions.assertTrue(millis < 4000, "Timeout was not enforced, took " + millis + " ms");
+
+        results = FanoutQueryPostgresql.fanout(List.of(
+                target("Person1", TEST_DATABASE), target("Person2", "no_such_database_luna")), "SELECT 1 AS one", 2, 10);
+        Assertions.assertEquals(TargetResult.Status.OK, results.get(0).getStatus());
+        Assertions.assertEquals(TargetResult.Status.FAILED, results.get(1).getStatus());
+    }
+
+    @Test
+    public void aProfileWithoutUsernameFailsWithoutHanging() {
+        List<TargetResult> results = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> FanoutQueryPostgresql.fanout(List.of(
+                target("Person1", TEST_DATABASE), new SaveEntity("Person2", null, TEST_PASSWORD, TEST_DATABASE)), "SELECT 1 AS one", 2, 10));
+
+        Assertions.assertEquals(TargetResult.Status.OK, results.get(0).getStatus());
+        Assertions.assertEquals(TargetResult.Status.FAILED, results.get(1).getStatus());
+        Assertions.assertTrue(results.get(1).getMessage().contains("username"));
+    }
+
+    private static SaveEntity target(String id, String database) {
+        return new SaveEntity(id, TEST_USERNAME, TEST_PASSWORD, database);
+    }
+}
@@ -0,0 +1,111 @@
+package QueriesTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.sql.postgresql.MultipleQueriesPostgresql;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.sql.postgresql.ProcessCommandQueriesPostgresql.handleMultipleQueries;
+import static org.cli.utils.TestConfig.*;
+
+public class MultipleQueriesFunctionTest {
+
+    @BeforeEach
+    public void init() {
+        if (connection != null) {
+            ConnectToPostgresql.closeConnection();
+        }
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @Test
+    public void extractQueriesBalancesParenthesesAndIgnoresQuotes() {
+        List<String> queries = MultipleQueriesPostgresql.extractQueries(
+                "luna multiple parallel:2 (SELECT count(*) FROM users) ( SELECT ')' AS \"(\" ) () (luna info)");
+
+        Assertions.assertEquals(List.of("SELECT count(*) FROM users", "SELECT ')' AS \"(\"", "luna info"), queries);
+    }
+
+    @Test
+    public void parallelQueriesPrintInSubmissionOrderAndOverlap() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        long start = System.nanoTime();
+        handleMultipleQueries(("luna multiple parallel:4 (SELECT 'first' AS q, pg_sleep(0.6)) (SELECT 'second' AS q, pg_sleep(0.2)) "
+                + "(SELECT 'third' AS q, pg_sleep(0.6)) (SELECT 'fourth' AS q, pg_sleep(0.6))").split(" "));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        String output = outputStream.toString();
+        Assertions.assertTrue(millis < 1500, "Queries did not overlap, took " + millis + " ms");
+        int first = output.indexOf("| first");
+        int second = output.indexOf("| second");
+        int third = output.indexOf("| third");
+        int fourth = output.indexOf("| fourth");
+        Assertions.assertTrue(first >= 0 && first < second && second < third && third < fourth, "Unexpected order: " + output);
+        Assertions.assertTrue(output.contains("Query 4 finished in"), "Missing latency: " + output);
+        Assertions.assertTrue(output.contains("Ran 4 queries on 4 connections"), "Missing summary: " + output);
+    }
+
+    @Test
+    public void pipelinedQueriesShareTheSessionAndWalkEveryResult() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        handleMultipleQueries(("luna multiple mode:pipeline (CREATE TEMP TABLE test_pipeline AS SELECT g AS id FROM generate_series(1, 5) g) "
+                + "(UPDATE test_pipeline SET id = id * 10 WHERE id > 3) (SELECT sum(id) AS total FROM test_pipeline)").split(" "));
+
+        String output = outputStream.toString();
+        Assertions.assertTrue(output.contains("5 rows affected."), "Missing CREATE result: " + output);
+        Assertions.assertTrue(output.contains("2 rows affected."), "Missing UPDATE result: " + output);
+        Assertions.assertTrue(output.contains("| 96    |"), "Missing SELECT result: " + output);
+        Assertions.assertTrue(output.contains("Ran 3 statements in one round trip"), "Missing summary: " + output);
+    }
+
+    @Test
+    public void failedPipelineKeepsNoChangesAndRejectsLunaCommands() throws SQLException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        handleMultipleQueries("luna multiple mode:pipeline (CREATE TEMP TABLE test_pipeline (id int)) (SELECT 1/0)".split(" "));
+        handleMultipleQueries("luna multiple mode:pipeline (SELECT 1) (luna info)".split(" "));
+
+        String output = outputStream.toString();
+        Assertions.assertTrue(output.contains("Pipeline failed, no statement of the group took effect: ERROR: division by zero"), output);
+        Assertions.assertTrue(output.contains("Pipeline mode only accepts plain SQL, not: luna info"), output);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT to_regclass('pg_temp.test_pipeline') IS NULL")) {
+            rs.next();
+            Assertions.assertTrue(rs.getBoolean(1), "The failed group left its temporary table behind");
+        }
+    }
+
+    @Test
+    public void failedPipelineWithItsOwnCommitDoesNotClaimNothingTookEffect() throws SQLException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream));
+
+        handleMultipleQueries(("luna multiple mode:pipeline (BEGIN) (CREATE TEMP TABLE test_pipeline (id int)) (COMMIT) (SELECT 1/0)").split(" "));
+
+        String output = outputStream.toString();
+        Assertions.assertFalse(output.contains("no statement of the group took effect"), output);
+        Assertions.assertTrue(output.contains("statements before the failing one may have taken effect"), output);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT to_regclass('pg_temp.test_pipeline') IS NOT NULL")) {
+            rs.next();
+            Assertions.assertTrue(rs.getBoolean(1), "The committed table should exist");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package QueriesTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.sql.postgresql.ParallelExportPostgresql;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.cli.utils.TestConfig.*;
+
+public class ParallelExportFunctionTest {
+
+    private static final String TEST_TABLE = "test_parallel_export";
+    private static final String TEST_FILE = "test_parallel_export.csv";
+
+    private final PrintStream originalOut = System.out;
+    private final int minSize = ConnectionPoolPostgresql.getDefaultMinSize();
+    private final int maxSize = ConnectionPoolPostgresql.getDefaultMaxSize();
+
+    @BeforeEach
+    public void init() throws SQLException {
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + TEST_TABLE + " (id bigint PRIMARY KEY)");
+        }
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException, IOException {
+        System.setOut(originalOut);
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + TEST_TABLE);
+        }
+        ConnectToPostgresql.closeConnection();
+        ConnectionPoolPostgresql.configure(minSize, maxSize, ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds(),
+                ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds());
+        Files.deleteIfExists(Path.of(TEST_FILE));
+    }
+
+    @Test
+    public void wideKeyRangesExportEveryRowOnce() throws SQLException, IOException {
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("INSERT INTO " + TEST_TABLE + " VALUES (0), (1000000000000000000), (2000000000000000000), (3000000000000000000), (4611686018427387904)");
+        }
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+        ParallelExportPostgresql.exportTable(TEST_TABLE, "id", 4, TEST_FILE, true);
+
+        List<String> lines = Files.readAllLines(Path.of(TEST_FILE));
+        Assertions.assertEquals(List.of("id", "0", "1000000000000000000", "2000000000000000000", "3000000000000000000", "4611686018427387904"), lines);
+    }
+
+    @Test
+    public void aSmallPoolExportsOnTheSessionConnectionWithoutWaiting() throws SQLException, IOException {
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("INSERT INTO " + TEST_TABLE + " VALUES (3), (1), (2)");
+        }
+        ConnectToPostgresql.closeConnection();
+        ConnectionPoolPostgresql.configure(1, 2, ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds(),
+                ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds());
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+
+        long start = System.nanoTime();
+        ParallelExportPostgresql.exportTable(TEST_TABLE, "id", 4, TEST_FILE, true);
+
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "The export waited for a lease.");
+        Assertions.assertTrue(output.toString().contains("session connection"), output.toString());
+        Assertions.assertEquals(List.of("id", "1", "2", "3"), Files.readAllLines(Path.of(TEST_FILE)));
+    }
+}
@@ -0,0 +1,80 @@
+package QueriesTest;
+
+import org.cli.sql.postgresql.SqlScriptReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SqlScriptReaderFunctionTest {
+
+    static final Path SQL_FILE = Path.of("test_script.sql");
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(SQL_FILE);
+    }
+
+    private List<String> statements(String script) throws IOException {
+        Files.writeString(SQL_FILE, script);
+        List<String> statements = new ArrayList<>();
+        try (SqlScriptReader reader = new SqlScriptReader(SQL_FILE)) {
+            String sql;
+            while ((sql = reader.nextStatement()) != null) {
+                statements.add(sql);
+            }
+        }
+        return statements;
+    }
+
+    @Test
+    public void splitsStatementsSharingALineAndIgnoresSemicolonsInStrings() throws IOException {
+        List<String> statements = statements("SELECT 'a;b'; SELECT \"odd;name\" FROM t;\nSELECT E'it\\'s;' ; SELECT 'x''y;z'");
+
+        Assertions.assertEquals(List.of("SELECT 'a;b'", "SELECT \"odd;name\" FROM t", "SELECT E'it\\'s;'", "SELECT 'x''y;z'"), statements);
+    }
+
+    @Test
+    public void keepsDollarQuotedBodiesAndDropsComments() throws IOException {
+        String function = "CREATE FUNCTION f() RETURNS int AS $body$\nBEGIN\n  RAISE NOTICE 'a;b'; -- not a comment here\n"
+                + "  RETURN $$x;$$::text = $a$y$a$;\nEND;\n$body$ LANGUAGE plpgsql";
+        List<String> statements = statements("-- header; comment\n/* block /* nested; */ still; */\n" + function + ";\nSELECT $1;\n\\connect other\nSELECT 2;");
+
+        Assertions.assertEquals(3, statements.size(), statements.toString());
+        Assertions.assertEquals(function, statements.get(0));
+        Assertions.assertEquals("SELECT $1", statements.get(1));
+        Assertions.assertEquals("SELECT 2", statements.get(2));
+    }
+
+    @Test
+    public void streamsCopyDataAndSkipsItWhenUnread() throws IOException {
+        String script = "COPY public.t (a, b) FROM stdin;\n1\tone;\n2\ttwo\n\\.\nSELECT 1;\nCOPY t FROM stdin;\n3\tthree\n\\.\nSELECT 2;\n";
+        Files.writeString(SQL_FILE, script);
+
+        try (SqlScriptReader reader = new SqlScriptReader(SQL_FILE)) {
+            Assertions.assertEquals("COPY public.t (a, b) FROM stdin", reader.nextStatement());
+            Assertions.assertTrue(reader.isCopyFromStdin());
+            String data = new BufferedReader(reader.copyData()).lines().collect(Collectors.joining("\n"));
+            Assertions.assertEquals("1\tone;\n2\ttwo", data);
+
+            Assertions.assertEquals("SELECT 1", reader.nextStatement());
+            Assertions.assertEquals("COPY t FROM stdin", reader.nextStatement());
+            Assertions.assertEquals("SELECT 2", reader.nextStatement());
+            Assertions.assertNull(reader.nextStatement());
+        }
+    }
+
+    @Test
+    public void decodesMultiByteCharacters() throws IOException {
+        List<String> statements = statements("INSERT INTO t VALUES ('çğüşöı 日本');");
+
+        Assertions.assertEquals(List.of("INSERT INTO t VALUES ('çğüşöı 日本')"), statements);
+    }
+}
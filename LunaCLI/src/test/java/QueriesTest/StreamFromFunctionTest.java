@@ -0,0 +1,137 @@
+package QueriesTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.manager.CommandPackage;
+import org.cli.sql.postgresql.ExecutePostgresql;
+import org.cli.sql.postgresql.StreamingTableRenderer;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.cli.utils.TestConfig.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamFromFunctionTest {
+
+    private static final String TEST_TABLE = "test_stream_table";
+
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    private final PrintStream originalOut = System.out;
+
+    @BeforeEach
+    public void init() throws SQLException {
+        ConnectToPostgresql.connection = DriverManager.getConnection(TEST_URL, TEST_USERNAME, TEST_PASSWORD);
+
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + TEST_TABLE + " (id SERIAL PRIMARY KEY, name VARCHAR(100))");
+        }
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException {
+        if (ConnectToPostgresql.connection != null) {
+            try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + TEST_TABLE);
+            }
+            ConnectToPostgresql.connection.close();
+        }
+        StreamingTableRenderer.configure(100, 1000, 40, false);
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.TABLE);
+        System.setOut(originalOut);
+    }
+
+    @Test
+    public void testStreamFromReturnsDataAndRestoresAutoCommit() throws SQLException {
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("INSERT INTO " + TEST_TABLE + " (name) SELECT 'name' || g FROM generate_series(1, 50) g");
+        }
+        StreamingTableRenderer.configure(5, 10, 40, false);
+        System.setOut(new PrintStream(outContent));
+
+        ExecutePostgresql.command("stream-from " + TEST_TABLE);
+
+        String output = outContent.toString();
+        assertTrue(output.contains("| name1 |"), "Sampled rows should be printed.");
+        assertTrue(output.contains("| na... |"), "Rows after the sample should be cut to the sampled width.");
+        assertTrue(output.contains("(50 rows)"), "Row count should be printed.");
+        assertTrue(ConnectToPostgresql.connection.getAutoCommit(), "Auto-commit should be restored.");
+    }
+
+    @Test
+    public void testStreamFromTruncatesWideCells() throws SQLException {
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("INSERT INTO " + TEST_TABLE + " (name) VALUES ('" + "a".repeat(60) + "')");
+        }
+        StreamingTableRenderer.configure(5, 10, 10, false);
+        System.setOut(new PrintStream(outContent));
+
+        ExecutePostgresql.streamFrom(TEST_TABLE, "");
+
+        String output = outContent.toString();
+        assertTrue(output.contains("aaaaaaa..."), "Wide cells should be truncated.");
+        assertFalse(output.contains("a".repeat(11)), "No cell should exceed the column width.");
+    }
+
+    @Test
+    public void testStreamSettingsLeftOutKeepTheirValue() throws SQLException {
+        StreamingTableRenderer.configure(5, 10, 30, true);
+        System.setOut(new PrintStream(outContent));
+
+        CommandPackage.command("luna stream width:20");
+
+        assertEquals(5, StreamingTableRenderer.getSampleSize());
+        assertEquals(10, StreamingTableRenderer.getFetchSize());
+        assertEquals(20, StreamingTableRenderer.getMaxColumnWidth());
+        assertTrue(StreamingTableRenderer.isWrap());
+    }
+
+    @Test
+    public void testNarrowColumnsCutLaterCellsWithoutFailing() {
+        StreamingTableRenderer.configure(2, 10, 40, false);
+        System.setOut(new PrintStream(outContent));
+
+        StreamingTableRenderer renderer = new StreamingTableRenderer(new String[]{"n"});
+        renderer.addRow(new String[]{"1"});
+        renderer.addRow(new String[]{"2"});
+        renderer.addRow(new String[]{"10"});
+        renderer.finish();
+
+        String output = outContent.toString();
+        assertTrue(output.contains("| 1 |\n| 2 |\n| 1 |"), "A cell wider than a column of 1 should be cut.");
+        assertTrue(output.contains("(3 rows)"), "Row count should be printed.");
+    }
+
+    @Test
+    public void testStreamFromInMachineReadableFormats() throws SQLException {
+        try (Statement stmt = ConnectToPostgresql.connection.createStatement()) {
+            stmt.execute("INSERT INTO " + TEST_TABLE + " (name) VALUES ('a,\"b' || E'\\t' || 'c'), (NULL)");
+        }
+        System.setOut(new PrintStream(outContent));
+
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.CSV);
+        ExecutePostgresql.streamFrom(TEST_TABLE, "");
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.TSV);
+        ExecutePostgresql.streamFrom(TEST_TABLE, "");
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.JSON);
+        ExecutePostgresql.streamFrom(TEST_TABLE, "");
+
+        assertEquals("id,name\n1,\"a,\"\"b\tc\"\n2,\n"
+                + "id\tname\n1\ta,\"b\\tc\n2\t\\N\n"
+                + "{\"id\":\"1\",\"name\":\"a,\\\"b\\tc\"}\n{\"id\":\"2\",\"name\":null}\n", outContent.toString());
+    }
+
+    @Test
+    public void testStreamFromWithNoData() {
+        System.setOut(new PrintStream(outContent));
+
+        ExecutePostgresql.streamFrom(TEST_TABLE, "");
+
+        assertTrue(outContent.toString().contains("No data found in the table."), "No data message should be printed.");
+    }
+}
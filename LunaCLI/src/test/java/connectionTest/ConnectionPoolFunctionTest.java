@@ -0,0 +1,122 @@
+package connectionTest;
+
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.cli.utils.TestConfig.*;
+
+public class ConnectionPoolFunctionTest {
+
+    private static final String URL = "jdbc:postgresql://localhost:5432/" + TEST_DATABASE;
+
+    private final int minSize = ConnectionPoolPostgresql.getDefaultMinSize();
+    private final int maxSize = ConnectionPoolPostgresql.getDefaultMaxSize();
+    private final long idleTimeout = ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds();
+    private final long borrowTimeout = ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds();
+    private ConnectionPoolPostgresql pool;
+
+    @BeforeEach
+    public void init() {
+        ConnectionPoolPostgresql.configure(1, 2, 1, 1);
+        pool = new ConnectionPoolPostgresql(URL, TEST_USERNAME, TEST_PASSWORD);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        pool.shutdown();
+        ConnectionPoolPostgresql.configure(minSize, maxSize, idleTimeout, borrowTimeout);
+    }
+
+    @Test
+    public void borrowingBeyondTheMaximumTimesOut() throws SQLException {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        try {
+            Assertions.assertEquals(2, pool.getActiveConnections());
+
+            long start = System.nanoTime();
+            SQLException e = Assertions.assertThrows(SQLException.class, pool::borrow);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Assertions.assertTrue(e.getMessage().contains("Timed out"), e.getMessage());
+            Assertions.assertTrue(millis >= 900 && millis < 5000, "Waited " + millis + " ms");
+            Assertions.assertEquals(1, pool.getTimeoutCount());
+            Assertions.assertEquals(2, pool.getTotalConnections());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void closingALeaseReturnsItsConnection() throws SQLException {
+        Connection lease = pool.borrow();
+        int pid = pid(lease);
+        lease.setAutoCommit(false);
+        lease.close();
+
+        Assertions.assertTrue(lease.isClosed());
+        Assertions.assertThrows(SQLException.class, lease::createStatement);
+        Assertions.assertEquals(1, pool.getIdleConnections());
+        try (Connection again = pool.borrow()) {
+            Assertions.assertEquals(pid, pid(again));
+            Assertions.assertTrue(again.getAutoCommit(), "The pool should restore auto-commit.");
+        }
+        Assertions.assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void discardedConnectionsAreDestroyedAndTheMinimumIsRestored() throws SQLException {
+        Connection lease = pool.borrow();
+        int pid = pid(lease);
+        pool.discard(lease);
+
+        Assertions.assertEquals(0, pool.getTotalConnections());
+        Assertions.assertEquals(1, pool.getDestroyedCount());
+        try (Connection replacement = pool.borrow()) {
+            Assertions.assertNotEquals(pid, pid(replacement));
+        }
+
+        // The evictor tops the pool up once a connection below the minimum is gone.
+        ConnectionPoolPostgresql.configure(2, 2, 1, 1);
+        ConnectionPoolPostgresql twoMinimum = new ConnectionPoolPostgresql(URL, TEST_USERNAME, TEST_PASSWORD);
+        try {
+            twoMinimum.borrow().close();
+            twoMinimum.evictIdle();
+            Assertions.assertEquals(2, twoMinimum.getTotalConnections());
+            Assertions.assertEquals(2, twoMinimum.getIdleConnections());
+        } finally {
+            twoMinimum.shutdown();
+        }
+    }
+
+    @Test
+    public void idleConnectionsAboveTheMinimumExpire() throws Exception {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        first.close();
+        second.close();
+        Assertions.assertEquals(2, pool.getIdleConnections());
+
+        Thread.sleep(1200);
+        pool.evictIdle();
+
+        Assertions.assertEquals(1, pool.getTotalConnections());
+        Assertions.assertEquals(1, pool.getIdleConnections());
+        Assertions.assertEquals(1, pool.getDestroyedCount());
+    }
+
+    private static int pid(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_backend_pid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
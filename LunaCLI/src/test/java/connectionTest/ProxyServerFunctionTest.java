@@ -0,0 +1,137 @@
+package connectionTest;
+
+import org.cli.entities.SaveEntity;
+import org.cli.proxy.ProxyServer;
+import org.cli.utils.ProxySettings;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.cli.utils.TestConfig.*;
+
+public class ProxyServerFunctionTest {
+    private static final int PROXY_PORT = 16432;
+    private static final String PROXY_URL = "jdbc:postgresql://localhost:" + PROXY_PORT + "/" + TEST_DATABASE;
+
+    private int queueTimeoutSeconds;
+
+    @BeforeEach
+    public void setUp() {
+        queueTimeoutSeconds = ProxySettings.queueTimeoutSeconds;
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException {
+        ProxySettings.queueTimeoutSeconds = queueTimeoutSeconds;
+        ProxyServer.stop();
+        try (Connection direct = DriverManager.getConnection(TEST_URL, TEST_USERNAME, TEST_PASSWORD);
+             Statement statement = direct.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS proxy_test");
+        }
+    }
+
+    @Test
+    public void clientsShareAFewServerConnections() throws Exception {
+        start(2);
+        List<Connection> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {clients.add(DriverManager.getConnection(PROXY_URL, TEST_USERNAME, TEST_PASSWORD));}
+            // Past the driver's prepareThreshold the statement is named, and clients switch server connections.
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < clients.size(); i++) {
+                    try (PreparedStatement statement = clients.get(i).prepareStatement("SELECT ?::int * 2")) {
+                        statement.setInt(1, round + i);
+                        try (ResultSet rs = statement.executeQuery()) {
+                            rs.next();
+                            Assertions.assertEquals((round + i) * 2, rs.getInt(1));
+                        }
+                    }
+                }
+            }
+            Assertions.assertEquals(6, ProxyServer.current().getClientCount());
+            Assertions.assertTrue(serverConnections() <= 2);
+        } finally {
+            for (Connection client : clients) {client.close();}
+        }
+    }
+
+    @Test
+    public void aTransactionKeepsItsServerConnectionUntilCommit() throws Exception {
+        start(1);
+        try (Connection writer = DriverManager.getConnection(PROXY_URL, TEST_USERNAME, TEST_PASSWORD);
+             Connection reader = DriverManager.getConnection(PROXY_URL, TEST_USERNAME, TEST_PASSWORD)) {
+            try (Statement statement = writer.createStatement()) {
+                statement.execute("CREATE TABLE proxy_test (id int)");
+            }
+            writer.setAutoCommit(false);
+            try (Statement statement = writer.createStatement()) {
+                statement.execute("INSERT INTO proxy_test VALUES (1)");
+            }
+
+            CompletableFuture<Integer> count = CompletableFuture.supplyAsync(() -> {
+                try (Statement statement = reader.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT count(*) FROM proxy_test")) {
+                    rs.next();
+                    return rs.getInt(1);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(300);
+            Assertions.assertFalse(count.isDone());
+
+            writer.commit();
+            Assertions.assertEquals(1, count.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void aClientWaitingTooLongIsDisconnected() throws Exception {
+        ProxySettings.queueTimeoutSeconds = 1;
+        start(1);
+        try (Connection holder = DriverManager.getConnection(PROXY_URL, TEST_USERNAME, TEST_PASSWORD);
+             Connection waiter = DriverManager.getConnection(PROXY_URL, TEST_USERNAME, TEST_PASSWORD)) {
+            holder.setAutoCommit(false);
+            try (Statement statement = holder.createStatement()) {
+                statement.execute("SELECT 1");
+            }
+            SQLException e = Assertions.assertThrows(SQLException.class, () -> {
+                try (Statement statement = waiter.createStatement()) {
+                    statement.execute("SELECT 1");
+                }
+            });
+            Assertions.assertTrue(e.getMessage().contains("query_wait_timeout"));
+            holder.rollback();
+        }
+    }
+
+    @Test
+    public void onlyTheProfilePasswordIsAccepted() throws Exception {
+        start(1);
+        SQLException e = Assertions.assertThrows(SQLException.class,
+                () -> DriverManager.getConnection(PROXY_URL, TEST_USERNAME, "wrong").close());
+        Assertions.assertEquals("28P01", e.getSQLState());
+    }
+
+    private static void start(int poolSize) throws Exception {
+        ProxyServer.start(new SaveEntity("Proxy1", TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE), PROXY_PORT, null, poolSize);
+    }
+
+    private static int serverConnections() throws SQLException {
+        try (Connection direct = DriverManager.getConnection(TEST_URL, TEST_USERNAME, TEST_PASSWORD);
+             Statement statement = direct.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM pg_stat_activity WHERE application_name = 'luna-proxy'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package connectionTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.conn.postgresql.ReplicaRouter;
+import org.cli.entities.SaveEntity;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.cli.utils.TestConfig.*;
+
+public class ReplicaRouterFunctionTest {
+
+    @AfterEach
+    public void cleanUp() throws SQLException {
+        if (ConnectToPostgresql.isConnected()) {
+            try (Statement statement = ConnectToPostgresql.connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS replica_router_test");
+            }
+        }
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @Test
+    public void onlyReadOnlyStatementsQualify() {
+        Assertions.assertTrue(ReplicaRouter.isReadOnly("select-from users id = 1"));
+        Assertions.assertTrue(ReplicaRouter.isReadOnly("  SELECT count(*)\nFROM users"));
+        Assertions.assertTrue(ReplicaRouter.isReadOnly("WITH t AS (SELECT 1) SELECT * FROM t"));
+        Assertions.assertFalse(ReplicaRouter.isReadOnly("WITH t AS (DELETE FROM users RETURNING *) SELECT * FROM t"));
+        Assertions.assertFalse(ReplicaRouter.isReadOnly("SELECT * INTO copy FROM users"));
+        Assertions.assertFalse(ReplicaRouter.isReadOnly("SELECT * FROM users FOR UPDATE"));
+        Assertions.assertFalse(ReplicaRouter.isReadOnly("EXPLAIN ANALYZE DELETE FROM users"));
+        Assertions.assertFalse(ReplicaRouter.isReadOnly("UPDATE users SET name = 'a'"));
+    }
+
+    @Test
+    public void readsGoToTheReplicaOutsideTransactions() throws SQLException {
+        // The primary doubles as its own replica: not in recovery, so no lag, but reached on a read-only connection.
+        connect(List.of("localhost:5432"));
+        int sessionPid = pid(ConnectToPostgresql.connection);
+        List<Integer> pids = new ArrayList<>();
+        List<String> readOnly = new ArrayList<>();
+
+        ReplicaRouter.runReadOnly(() -> {
+            pids.add(pid(ConnectToPostgresql.currentConnection()));
+            readOnly.add(show(ConnectToPostgresql.currentConnection(), "transaction_read_only"));
+        });
+        ConnectToPostgresql.connection.setAutoCommit(false);
+        ReplicaRouter.runReadOnly(() -> pids.add(pid(ConnectToPostgresql.currentConnection())));
+        ConnectToPostgresql.connection.rollback();
+        ConnectToPostgresql.connection.setAutoCommit(true);
+
+        Assertions.assertNotEquals(sessionPid, pids.get(0));
+        Assertions.assertEquals("on", readOnly.get(0));
+        Assertions.assertEquals(sessionPid, pids.get(1));
+        Assertions.assertSame(ConnectToPostgresql.connection, ConnectToPostgresql.currentConnection());
+    }
+
+    @Test
+    public void unreachableReplicasAndRefusedWritesFallBackToThePrimary() throws SQLException {
+        connect(List.of("localhost:1"));
+        int sessionPid = pid(ConnectToPostgresql.connection);
+        List<Integer> pids = new ArrayList<>();
+
+        ReplicaRouter.runReadOnly(() -> pids.add(pid(ConnectToPostgresql.currentConnection())));
+        Assertions.assertEquals(List.of(sessionPid), pids);
+
+        ConnectToPostgresql.closeConnection();
+        connect(List.of("localhost:5432"));
+        try (Statement statement = ConnectToPostgresql.connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS replica_router_test (id int)");
+        }
+        ReplicaRouter.runReadOnly(() -> {
+            try (Statement statement = ConnectToPostgresql.currentConnection().createStatement()) {
+                statement.execute("INSERT INTO replica_router_test VALUES (1)");
+            }
+        });
+        try (Statement statement = ConnectToPostgresql.connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM replica_router_test")) {
+            rs.next();
+            Assertions.assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void aPoolWithoutPasswordFailsLikeTheDriverDoes() {
+        // Replica profiles often have no password; the server or .pgpass decides, not a NullPointerException.
+        ConnectionPoolPostgresql pool = new ConnectionPoolPostgresql("jdbc:postgresql://localhost:1/" + TEST_DATABASE, TEST_USERNAME, null);
+        try {
+            Assertions.assertThrows(SQLException.class, pool::borrow);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void connect(List<String> replicas) {
+        SaveEntity profile = new SaveEntity("Person1", TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        profile.setReplicas(replicas);
+        ConnectToPostgresql.connectToProfile(profile);
+        Assertions.assertTrue(ReplicaRouter.isConfigured());
+    }
+
+    private static int pid(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_backend_pid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String show(Connection connection, String setting) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SHOW " + setting)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
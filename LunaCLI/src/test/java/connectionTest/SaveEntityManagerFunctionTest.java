@@ -0,0 +1,114 @@
+package connectionTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ConnectionPoolPostgresql;
+import org.cli.conn.postgresql.SaveEntityManagerPostgresql;
+import org.cli.entities.SaveEntity;
+import org.cli.utils.ConnectionPath;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+import static org.cli.utils.TestConfig.*;
+
+public class SaveEntityManagerFunctionTest {
+
+    private static final String TEST_FILE = "test_connections.json";
+
+    private String filePath;
+
+    @BeforeEach
+    public void init() throws IOException {
+        filePath = ConnectionPath.FILE_PATH;
+        ConnectionPath.FILE_PATH = TEST_FILE;
+        Files.deleteIfExists(Path.of(TEST_FILE));
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        ConnectToPostgresql.closeConnection();
+        Files.deleteIfExists(Path.of(TEST_FILE));
+        ConnectionPath.FILE_PATH = filePath;
+    }
+
+    @Test
+    public void savedProfilesAreCopiedAndFoundById() {
+        SaveEntity input = new SaveEntity(null, TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        SaveEntityManagerPostgresql.savePerson(input);
+        String first = input.getId();
+        input.setDatabase("postgres");
+        SaveEntityManagerPostgresql.savePerson(input);
+
+        Assertions.assertNotEquals(first, input.getId());
+        Assertions.assertEquals(TEST_DATABASE, SaveEntityManagerPostgresql.getPerson(first).getDatabase());
+        Assertions.assertEquals("postgres", SaveEntityManagerPostgresql.getPerson(input.getId()).getDatabase());
+        Assertions.assertNull(SaveEntityManagerPostgresql.getPerson("Person0"));
+        Assertions.assertEquals(2, SaveEntityManagerPostgresql.loadConnections().size());
+    }
+
+    @Test
+    public void switchingBackToAProfileReusesItsPool() throws SQLException {
+        SaveEntity input = new SaveEntity(null, TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        SaveEntityManagerPostgresql.savePerson(input);
+        String managify = input.getId();
+        input.setDatabase("postgres");
+        SaveEntityManagerPostgresql.savePerson(input);
+        String postgres = input.getId();
+
+        SaveEntityManagerPostgresql.cloneUser(managify);
+        ConnectionPoolPostgresql first = ConnectToPostgresql.pool;
+        ConnectToPostgresql.connection.close();
+        SaveEntityManagerPostgresql.cloneUser(postgres);
+        Assertions.assertNotSame(first, ConnectToPostgresql.pool);
+        ConnectToPostgresql.connection.close();
+        SaveEntityManagerPostgresql.cloneUser(managify);
+
+        Assertions.assertSame(first, ConnectToPostgresql.pool);
+        Assertions.assertEquals(1, first.getCreatedCount());
+        Assertions.assertEquals(TEST_DATABASE, ConnectToPostgresql.connection.getCatalog());
+    }
+
+    @Test
+    public void changedPoolSettingsOrPasswordReplaceTheCachedPool() throws SQLException {
+        SaveEntity input = new SaveEntity(null, TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        SaveEntityManagerPostgresql.savePerson(input);
+        String id = input.getId();
+        int maxSize = ConnectionPoolPostgresql.getDefaultMaxSize();
+
+        SaveEntityManagerPostgresql.cloneUser(id);
+        ConnectionPoolPostgresql first = ConnectToPostgresql.pool;
+        ConnectToPostgresql.connection.close();
+        ConnectionPoolPostgresql.configure(ConnectionPoolPostgresql.getDefaultMinSize(), maxSize + 1,
+                ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds(), ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds());
+        try {
+            SaveEntityManagerPostgresql.cloneUser(id);
+        } finally {
+            ConnectionPoolPostgresql.configure(ConnectionPoolPostgresql.getDefaultMinSize(), maxSize,
+                    ConnectionPoolPostgresql.getDefaultIdleTimeoutSeconds(), ConnectionPoolPostgresql.getDefaultBorrowTimeoutSeconds());
+        }
+        Assertions.assertNotSame(first, ConnectToPostgresql.pool);
+        Assertions.assertTrue(first.isClosed());
+        Assertions.assertEquals(maxSize + 1, ConnectToPostgresql.pool.getMaxSize());
+
+        ConnectionPoolPostgresql second = ConnectToPostgresql.pool;
+        ConnectToPostgresql.connection.close();
+        SaveEntity wrongPassword = new SaveEntity(null, TEST_USERNAME, "wrong_password", TEST_DATABASE);
+        SaveEntityManagerPostgresql.savePerson(wrongPassword);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(output));
+        try {
+            SaveEntityManagerPostgresql.cloneUser(wrongPassword.getId());
+        } finally {
+            System.setOut(console);
+        }
+        Assertions.assertTrue(second.isClosed(), "A pool with another password should not be reused.");
+        Assertions.assertTrue(output.toString().contains("Connection Error"), output.toString());
+        Assertions.assertFalse(output.toString().contains("Successfully connected"), output.toString());
+    }
+}
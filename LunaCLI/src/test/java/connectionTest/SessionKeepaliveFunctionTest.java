@@ -0,0 +1,101 @@
+package connectionTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.ReplicaRouter;
+import org.cli.conn.postgresql.SessionKeepalive;
+import org.cli.entities.Info;
+import org.cli.utils.KeepaliveSettings;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.cli.utils.TestConfig.*;
+
+public class SessionKeepaliveFunctionTest {
+
+    private long validateAfterIdleMillis;
+    private long backoffBaseMillis;
+
+    @BeforeEach
+    public void setUp() {
+        validateAfterIdleMillis = KeepaliveSettings.validateAfterIdleMillis;
+        backoffBaseMillis = KeepaliveSettings.backoffBaseMillis;
+        KeepaliveSettings.validateAfterIdleMillis = 0;
+        KeepaliveSettings.backoffBaseMillis = 10;
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        KeepaliveSettings.validateAfterIdleMillis = validateAfterIdleMillis;
+        KeepaliveSettings.backoffBaseMillis = backoffBaseMillis;
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @Test
+    public void aTerminatedSessionIsReplacedBeforeTheNextCommand() throws SQLException {
+        int pid = pid(ConnectToPostgresql.connection);
+        long reconnects = SessionKeepalive.getReconnects();
+        terminate(pid);
+
+        SessionKeepalive.beforeCommand("luna select-from users");
+        SessionKeepalive.afterCommand();
+
+        Assertions.assertEquals(reconnects + 1, SessionKeepalive.getReconnects());
+        Assertions.assertNotEquals(pid, pid(ConnectToPostgresql.connection));
+    }
+
+    @Test
+    public void aReadOnlyStatementIsRetriedOnANewConnection() throws SQLException {
+        int pid = pid(ConnectToPostgresql.connection);
+        terminate(pid);
+        List<Integer> pids = new ArrayList<>();
+
+        ReplicaRouter.runReadOnly(() -> pids.add(pid(ConnectToPostgresql.currentConnection())));
+
+        Assertions.assertEquals(1, pids.size());
+        Assertions.assertNotEquals(pid, pids.get(0));
+    }
+
+    @Test
+    public void aSessionLostInATransactionWaitsForRollback() throws SQLException {
+        SessionKeepalive.beforeCommand("luna begin-transaction");
+        ConnectToPostgresql.connection.setAutoCommit(false);
+        SessionKeepalive.afterCommand();
+        int pid = pid(ConnectToPostgresql.connection);
+        long reconnects = SessionKeepalive.getReconnects();
+        terminate(pid);
+
+        SessionKeepalive.beforeCommand("luna select-from users");
+        SessionKeepalive.afterCommand();
+        Assertions.assertEquals(reconnects, SessionKeepalive.getReconnects());
+        Assertions.assertThrows(SQLException.class, () -> ReplicaRouter.runReadOnly(() -> pid(ConnectToPostgresql.currentConnection())));
+
+        SessionKeepalive.beforeCommand("luna rollback");
+        SessionKeepalive.afterCommand();
+        Assertions.assertEquals(reconnects + 1, SessionKeepalive.getReconnects());
+        Assertions.assertFalse(ConnectToPostgresql.connection.getAutoCommit());
+        Assertions.assertNotEquals(pid, pid(ConnectToPostgresql.connection));
+    }
+
+    private static void terminate(int pid) throws SQLException {
+        try (Connection admin = DriverManager.getConnection(Info.getBaseUrlForPostgresql() + TEST_DATABASE, TEST_USERNAME, TEST_PASSWORD);
+             Statement statement = admin.createStatement()) {
+            statement.execute("SELECT pg_terminate_backend(" + pid + ")");
+        }
+    }
+
+    private static int pid(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_backend_pid()")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package connectionTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.conn.postgresql.SnippetManagerPostgresql;
+import org.cli.conn.postgresql.SnippetStatementCache;
+import org.cli.entities.SnippetEntity;
+import org.cli.manager.CommandOutcome;
+import org.cli.utils.SnippetPath;
+import org.junit.jupiter.api.*;
+import org.postgresql.PGStatement;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.cli.utils.TestConfig.*;
+
+public class SnippetManagerFunctionTest {
+
+    private static final String TEST_FILE = "test_snippets.json";
+
+    private String filePath;
+
+    @BeforeEach
+    public void init() throws IOException {
+        filePath = SnippetPath.FILE_PATH;
+        SnippetPath.FILE_PATH = TEST_FILE;
+        Files.deleteIfExists(Path.of(TEST_FILE));
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(Path.of(TEST_FILE));
+        SnippetPath.FILE_PATH = filePath;
+    }
+
+    @Test
+    public void snippetsAreFoundByIdAndNameAndIdsAreNotReused() throws IOException {
+        SnippetManagerPostgresql.saveSnippet("users", "select-from users");
+        SnippetManagerPostgresql.saveSnippet("stocks", "select-from stocks");
+        int users = SnippetManagerPostgresql.getSnippetByName("users").getId();
+        int stocks = SnippetManagerPostgresql.getSnippetByName("stocks").getId();
+
+        Assertions.assertEquals(users + 1, stocks);
+        Assertions.assertEquals("select-from stocks", SnippetManagerPostgresql.getSnippet(String.valueOf(stocks)).getValue());
+
+        // Remove the last snippet by hand; the store notices the change and the id stays taken.
+        writeExternally("[ { \"key\" : \"users\", \"value\" : \"select-from users\", \"id\" : " + users + " } ]");
+        Assertions.assertNull(SnippetManagerPostgresql.getSnippet(String.valueOf(stocks)));
+        SnippetManagerPostgresql.saveSnippet("orders", "select-from orders");
+
+        Assertions.assertEquals(stocks + 1, SnippetManagerPostgresql.getSnippetByName("orders").getId());
+        Assertions.assertEquals(2, SnippetManagerPostgresql.loadConnections().size());
+        try (Stream<Path> files = Files.list(Path.of("."))) {
+            Assertions.assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void parameterizedSnippetsReuseTheirPreparedStatement() throws SQLException {
+        SnippetStatementCache.ParsedSql parsed = SnippetStatementCache.parse("SELECT :id::int, ':id' WHERE :name = :id");
+        Assertions.assertEquals("SELECT ?::int, ':id' WHERE ? = ?", parsed.getSql());
+        Assertions.assertEquals(List.of("id", "name", "id"), parsed.getNames());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SnippetStatementCache.validate(List.of("id:blob")));
+
+        SnippetManagerPostgresql.saveSnippet("square", "SELECT :n * :n AS square", List.of("n:int"));
+        SnippetEntity snippet = SnippetManagerPostgresql.getSnippetByName("square");
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        try {
+            long misses = SnippetStatementCache.getMisses();
+            long hits = SnippetStatementCache.getHits();
+            PreparedStatement first = null;
+            for (int i = 1; i <= 6; i++) {
+                PreparedStatement statement = SnippetStatementCache.prepare(ConnectToPostgresql.connection, snippet, Map.of("n", String.valueOf(i)));
+                if (first == null) {first = statement;}
+                Assertions.assertSame(first, statement);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    Assertions.assertEquals(i * i, rs.getInt(1));
+                }
+            }
+
+            Assertions.assertEquals(misses + 1, SnippetStatementCache.getMisses());
+            Assertions.assertEquals(hits + 5, SnippetStatementCache.getHits());
+            Assertions.assertTrue(first.unwrap(PGStatement.class).isUseServerPrepare());
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> SnippetStatementCache.prepare(ConnectToPostgresql.connection, snippet, Map.of()));
+        } finally {
+            SnippetStatementCache.evict(ConnectToPostgresql.connection);
+            ConnectToPostgresql.closeConnection();
+        }
+    }
+
+    @Test
+    public void invalidArgumentsFailTheCommand() throws SQLException {
+        SnippetManagerPostgresql.saveSnippet("triple", "SELECT :n * 3 AS triple", List.of("n:int"));
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        CommandOutcome outcome = CommandOutcome.begin();
+        try {
+            SnippetManagerPostgresql.executeSnippetByName("triple", Map.of("n", "abc"));
+        } finally {
+            CommandOutcome.end();
+            ConnectToPostgresql.closeConnection();
+        }
+
+        Assertions.assertTrue(outcome.isFailed());
+    }
+
+    @Test
+    public void cachedStatementsAreDroppedWithTheirConnection() throws SQLException {
+        SnippetManagerPostgresql.saveSnippet("double", "SELECT :n * 2 AS double", List.of("n:int"));
+        SnippetEntity snippet = SnippetManagerPostgresql.getSnippetByName("double");
+        int cached = SnippetStatementCache.getCachedConnections();
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        try {
+            SnippetStatementCache.prepare(ConnectToPostgresql.connection, snippet, Map.of("n", "1")).executeQuery().close();
+            Assertions.assertEquals(cached + 1, SnippetStatementCache.getCachedConnections());
+        } finally {
+            ConnectToPostgresql.closeConnection();
+        }
+
+        Assertions.assertEquals(cached, SnippetStatementCache.getCachedConnections());
+    }
+
+    private static void writeExternally(String json) throws IOException {
+        Path file = Path.of(TEST_FILE);
+        FileTime before = Files.getLastModifiedTime(file);
+        Files.writeString(file, json);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(before.toMillis() + 1000));
+    }
+}
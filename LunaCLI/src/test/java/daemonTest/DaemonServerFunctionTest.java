@@ -0,0 +1,79 @@
+package daemonTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.daemon.DaemonClient;
+import org.cli.daemon.DaemonServer;
+import org.cli.manager.CommandHistory;
+import org.cli.utils.HistoryPath;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.cli.utils.TestConfig.*;
+
+public class DaemonServerFunctionTest {
+    private static final Path SOCKET = Path.of(System.getProperty("java.io.tmpdir"), "luna-daemon-test.sock");
+
+    private String filePath;
+    private Path history;
+
+    @BeforeEach
+    public void init() throws IOException {
+        history = Files.createTempFile("luna-daemon-history", ".jsonl");
+        filePath = HistoryPath.filePath;
+        HistoryPath.filePath = history.toString();
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        DaemonServer.stop();
+        ConnectToPostgresql.closeConnection();
+        CommandHistory.flush();
+        HistoryPath.filePath = filePath;
+        Files.deleteIfExists(history);
+    }
+
+    @Test
+    public void commandsShareTheDaemonSessionAndReportTheirStatus() throws Exception {
+        PrintStream console = System.out;
+        serve();
+        Assertions.assertEquals(0, send("luna connect postgresql username:" + TEST_USERNAME + " password:" + TEST_PASSWORD
+                + " database:" + TEST_DATABASE, new ByteArrayOutputStream()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assertions.assertEquals(0, send("luna select-from pg_namespace", out));
+        Assertions.assertTrue(out.toString(StandardCharsets.UTF_8).contains("pg_catalog"));
+
+        Assertions.assertEquals(1, send("luna select-from no_such_table_for_daemon", new ByteArrayOutputStream()));
+        Assertions.assertSame(console, System.out, "The daemon should not leave its client streams in place.");
+    }
+
+    @Test
+    public void aStaleSocketIsReplacedButALiveOneIsNot() throws Exception {
+        Files.deleteIfExists(SOCKET);
+        Files.createFile(SOCKET);
+        serve();
+        Assertions.assertThrows(IOException.class, () -> DaemonServer.start(SOCKET));
+        Assertions.assertEquals(0, send("", new ByteArrayOutputStream()));
+
+        DaemonServer.stop();
+        Assertions.assertFalse(Files.exists(SOCKET));
+        Assertions.assertThrows(IOException.class, () -> send("luna info", new ByteArrayOutputStream()));
+    }
+
+    private static void serve() throws IOException {
+        DaemonServer.start(SOCKET);
+        Thread thread = new Thread(DaemonServer::serve);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static int send(String command, ByteArrayOutputStream out) throws IOException {
+        return DaemonClient.send(SOCKET, command, out, new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,86 @@
+package managerTest;
+
+import org.cli.Start;
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.sql.postgresql.StreamingTableRenderer;
+import org.cli.utils.HistoryPath;
+import org.junit.jupiter.api.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.cli.utils.TestConfig.*;
+
+public class BatchStartFunctionTest {
+
+    private static final String TEST_FILE = "test_batch_history.jsonl";
+    private static final String CONNECT = "luna connect postgresql username:" + TEST_USERNAME + " password:" + TEST_PASSWORD + " database:" + TEST_DATABASE;
+
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    private String filePath;
+
+    @BeforeEach
+    public void init() {
+        filePath = HistoryPath.filePath;
+        HistoryPath.filePath = TEST_FILE;
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.TABLE);
+        ConnectToPostgresql.closeConnection();
+        HistoryPath.filePath = filePath;
+        Files.deleteIfExists(Path.of(TEST_FILE));
+    }
+
+    @Test
+    public void machineReadableOutputHoldsOnlyTheRows() throws IOException {
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.CSV);
+
+        int status = run(false, CONNECT, "# a comment", "luna select-from pg_namespace nspname = 'pg_catalog'");
+
+        Assertions.assertEquals(0, status);
+        String[] lines = outContent.toString().split("\n");
+        Assertions.assertEquals(2, lines.length, "The connect message should not be in the output.");
+        Assertions.assertTrue(lines[0].startsWith("oid,nspname"));
+        Assertions.assertTrue(lines[1].contains(",pg_catalog,"));
+    }
+
+    @Test
+    public void aFailingCommandSetsTheStatus() throws IOException {
+        StreamingTableRenderer.setFormat(StreamingTableRenderer.Format.JSON);
+
+        Assertions.assertEquals(1, run(false, CONNECT, "luna select-from no_such_table_for_batch", "luna select-from pg_namespace nspname = 'public'"));
+        Assertions.assertTrue(outContent.toString().contains("\"nspname\":\"public\""), "Later commands should still run.");
+
+        outContent.reset();
+        Assertions.assertEquals(1, run(true, "luna select-from no_such_table_for_batch", "luna select-from pg_namespace nspname = 'public'"));
+        Assertions.assertEquals("", outContent.toString(), "Nothing should run after the failure.");
+    }
+
+    @Test
+    public void usageAndValidationErrorsSetTheStatus() throws IOException {
+        String[] failing = {
+                "luna run filepath:/nonexistent.sql",
+                "luna snippetg id:no_such_snippet_for_batch",
+                "luna history replay",
+                "luna stream width:2",
+                "luna fanout tag:no_such_tag_for_batch select 1",
+                "luna no-such-command"
+        };
+        for (String command : failing) {
+            Assertions.assertEquals(1, run(false, command), command);
+        }
+        Assertions.assertEquals(0, run(false, "luna history"));
+    }
+
+    private int run(boolean stopOnError, String... commands) throws IOException {
+        BufferedReader input = new BufferedReader(new StringReader(String.join("\n", commands)));
+        return Start.batchStart(input, new PrintStream(outContent), stopOnError);
+    }
+}
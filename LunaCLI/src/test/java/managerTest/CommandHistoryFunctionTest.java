@@ -0,0 +1,84 @@
+package managerTest;
+
+import org.cli.entities.HistoryEntry;
+import org.cli.manager.CommandHistory;
+import org.cli.utils.HistoryPath;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class CommandHistoryFunctionTest {
+
+    private static final String TEST_FILE = "test_history.jsonl";
+
+    private String filePath;
+    private long maxFileBytes;
+
+    @BeforeEach
+    public void init() throws IOException {
+        filePath = HistoryPath.filePath;
+        maxFileBytes = HistoryPath.maxFileBytes;
+        CommandHistory.flush();
+        HistoryPath.filePath = TEST_FILE;
+        deleteFiles();
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        CommandHistory.flush();
+        deleteFiles();
+        HistoryPath.filePath = filePath;
+        HistoryPath.maxFileBytes = maxFileBytes;
+        CommandHistory.load();
+    }
+
+    @Test
+    public void historyKeepsOnlyTheLatestEntries() {
+        CommandHistory.load(3);
+        for (int i = 1; i <= 5; i++) {
+            CommandHistory.addCommand("SELECT " + i, i, 1, HistoryEntry.Status.OK);
+        }
+
+        List<HistoryEntry> entries = CommandHistory.getEntries();
+        Assertions.assertEquals(3, CommandHistory.getHistorySize());
+        Assertions.assertEquals(List.of("SELECT 3", "SELECT 4", "SELECT 5"), entries.stream().map(HistoryEntry::getCommand).toList());
+        Assertions.assertNull(CommandHistory.getEntry(2));
+        Assertions.assertEquals("SELECT 5", CommandHistory.getEntry(5).getCommand());
+    }
+
+    @Test
+    public void historyIsReloadedWithItsIdsAndOutcome() {
+        CommandHistory.load(10);
+        CommandHistory.addCommand("SELECT 1", 12, 1, HistoryEntry.Status.OK);
+        CommandHistory.addCommand("SELECT * FROM missing", 3, 0, HistoryEntry.Status.FAILED);
+        CommandHistory.flush();
+
+        Assertions.assertEquals(2, CommandHistory.load(10));
+        HistoryEntry failed = CommandHistory.getEntry(2);
+        Assertions.assertEquals("SELECT * FROM missing", failed.getCommand());
+        Assertions.assertEquals(HistoryEntry.Status.FAILED, failed.getStatus());
+        Assertions.assertEquals(3, CommandHistory.addCommand("SELECT 2", 0, 0, HistoryEntry.Status.OK).getId());
+    }
+
+    @Test
+    public void historyFileIsRotatedWhenItGrowsTooLarge() {
+        HistoryPath.maxFileBytes = 200;
+        CommandHistory.load(100);
+        for (int i = 1; i <= 10; i++) {
+            CommandHistory.addCommand("SELECT " + i, 1, 1, HistoryEntry.Status.OK);
+            CommandHistory.flush();
+        }
+
+        Assertions.assertTrue(Files.exists(Path.of(TEST_FILE + ".1")));
+        Assertions.assertTrue(CommandHistory.load(100) < 10);
+        Assertions.assertEquals("SELECT 10", CommandHistory.getEntry(10).getCommand());
+    }
+
+    private static void deleteFiles() throws IOException {
+        Files.deleteIfExists(Path.of(TEST_FILE));
+        Files.deleteIfExists(Path.of(TEST_FILE + ".1"));
+    }
+}
@@ -0,0 +1,53 @@
+package managerTest;
+
+import org.cli.entities.HistoryEntry;
+import org.cli.manager.HistoryIndex;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+public class HistoryIndexFunctionTest {
+
+    @BeforeEach
+    public void init() {
+        HistoryIndex.clear();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        HistoryIndex.clear();
+    }
+
+    @Test
+    public void literalsAreReplacedByPlaceholders() {
+        String fingerprint = HistoryIndex.fingerprint("luna SELECT * FROM users WHERE id = 5 AND name='O''Brien'");
+
+        Assertions.assertEquals("luna select * from users where id = ? and name = ?", fingerprint);
+        Assertions.assertEquals(fingerprint, HistoryIndex.fingerprint("luna select *  from users where id=7 and name = 'x'"));
+        Assertions.assertEquals("luna select * from t2 where id in (?, ...)", HistoryIndex.fingerprint("luna select * from t2 where id IN (1, 2,3)"));
+        Assertions.assertEquals("luna clone user:?", HistoryIndex.fingerprint("luna clone user:12"));
+    }
+
+    @Test
+    public void repeatedQueriesAreAggregatedAndRanked() {
+        for (int i = 1; i <= 20; i++) {
+            HistoryIndex.record(new HistoryEntry(i, i, "luna select * from orders where id = " + i, i * 10L, 1, HistoryEntry.Status.OK));
+        }
+        HistoryIndex.record(new HistoryEntry(21, 21, "luna select-from big_table", 3000, 1000, HistoryEntry.Status.FAILED));
+        HistoryIndex.record(new HistoryEntry(22, 22, "luna history top", 1, 0, HistoryEntry.Status.OK));
+
+        List<HistoryIndex.Stats> top = HistoryIndex.top("calls", 10);
+        Assertions.assertEquals(2, top.size());
+        HistoryIndex.Stats orders = top.get(0);
+        Assertions.assertEquals(20, orders.getCalls());
+        Assertions.assertEquals(2100, orders.getTotalMs());
+        Assertions.assertEquals(105.0, orders.getMeanMs());
+        Assertions.assertEquals(190, orders.getP95Ms());
+        Assertions.assertEquals(20, orders.getLastId());
+        Assertions.assertEquals(List.of(20L, 19L, 18L, 17L, 16L), orders.getRecentIds());
+
+        Assertions.assertEquals("luna select-from big_table", HistoryIndex.top("total", 1).get(0).getFingerprint());
+        Assertions.assertEquals(1, HistoryIndex.top("p95", 1).get(0).getFailures());
+        Assertions.assertEquals(1, HistoryIndex.search("ORDERS WHERE id=3").size());
+    }
+}
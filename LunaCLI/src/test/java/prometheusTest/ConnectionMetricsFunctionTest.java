@@ -0,0 +1,56 @@
+package prometheusTest;
+
+import io.prometheus.client.CollectorRegistry;
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.utils.TestConfig.*;
+
+public class ConnectionMetricsFunctionTest {
+
+    @BeforeEach
+    public void init() {
+        if (connection != null) {
+            ConnectToPostgresql.closeConnection();
+        }
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @Test
+    public void borrowsAndStatementReuseAreCounted() throws SQLException {
+        double borrows = sample("luna_pool_borrow_wait_seconds_count");
+        double prepared = sample("luna_jdbc_statements_total", "prepared");
+        double reused = sample("luna_jdbc_statements_total", "reused");
+
+        try (Connection leased = ConnectToPostgresql.pool.borrow()) {
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatement statement = leased.prepareStatement("SELECT ?::int + 1")) {
+                    statement.setInt(1, i);
+                    statement.executeQuery().close();
+                }
+            }
+        }
+
+        Assertions.assertEquals(borrows + 1, sample("luna_pool_borrow_wait_seconds_count"));
+        Assertions.assertEquals(prepared + 1, sample("luna_jdbc_statements_total", "prepared"));
+        Assertions.assertEquals(reused + 2, sample("luna_jdbc_statements_total", "reused"));
+        Assertions.assertTrue(sample("luna_pool_connection_create_seconds_count") >= 1);
+    }
+
+    private static double sample(String name, String... type) {
+        Double value = type.length == 0
+                ? CollectorRegistry.defaultRegistry.getSampleValue(name)
+                : CollectorRegistry.defaultRegistry.getSampleValue(name, new String[]{"type"}, type);
+        return value == null ? 0 : value;
+    }
+}
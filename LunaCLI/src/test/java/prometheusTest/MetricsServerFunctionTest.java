@@ -0,0 +1,40 @@
+package prometheusTest;
+
+import org.cli.prometheus.MetricsServer;
+import org.cli.utils.MetricsConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+public class MetricsServerFunctionTest {
+
+    @Test
+    public void scrapeServesCliAndJvmMetricsOnTheConfiguredAddress() throws IOException {
+        MetricsConfig.host = "127.0.0.1";
+        try (ServerSocket taken = new ServerSocket(0, 50, InetAddress.getByName(MetricsConfig.host))) {
+            MetricsConfig.port = taken.getLocalPort();
+            Assertions.assertThrows(IOException.class, MetricsServer::start);
+        }
+        try (ServerSocket socket = new ServerSocket(0)) {
+            MetricsConfig.port = socket.getLocalPort();
+        }
+        MetricsServer.start();
+
+        String body;
+        try (InputStream in = new URL(MetricsServer.getUrl()).openStream()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        Assertions.assertTrue(body.contains("total_requests"));
+        Assertions.assertTrue(body.contains("system_memory_usage_mb"));
+        Assertions.assertTrue(body.contains("jvm_gc_collection_seconds"));
+        Assertions.assertTrue(body.contains("jvm_threads_current"));
+        Assertions.assertTrue(body.contains("jvm_buffer_pool_used_bytes"));
+    }
+}
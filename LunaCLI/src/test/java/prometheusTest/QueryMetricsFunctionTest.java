@@ -0,0 +1,70 @@
+package prometheusTest;
+
+import io.prometheus.client.CollectorRegistry;
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.prometheus.QueryMetrics;
+import org.cli.sql.postgresql.ExecutePostgresql;
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.utils.TestConfig.*;
+
+public class QueryMetricsFunctionTest {
+
+    @BeforeEach
+    public void init() throws SQLException {
+        if (connection != null) {
+            ConnectToPostgresql.closeConnection();
+        }
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS test_metrics (id int)");
+            stmt.execute("INSERT INTO test_metrics SELECT generate_series(1, 5)");
+        }
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS test_metrics");
+        }
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @Test
+    public void commandsAreTimedOnceWithTheirRows() {
+        double count = sample("luna_command_duration_seconds_count", "command", "select-from");
+        double rows = sample("luna_rows_returned_total", "command", "select-from");
+
+        ExecutePostgresql.command("select-from test_metrics");
+
+        Assertions.assertEquals(count + 1, sample("luna_command_duration_seconds_count", "command", "select-from"));
+        Assertions.assertEquals(rows + 5, sample("luna_rows_returned_total", "command", "select-from"));
+    }
+
+    @Test
+    public void errorsAreCountedBySqlState() {
+        double errors = sample("luna_command_errors_total", "command", "sql", "sqlstate", "42P01");
+        double timed = sample("luna_command_duration_seconds_count", "command", "sql");
+
+        Assertions.assertThrows(SQLException.class, () -> ExecutePostgresql.executeCommandOrSql("SELECT * FROM missing_metrics_table"));
+
+        Assertions.assertEquals(errors + 1, sample("luna_command_errors_total", "command", "sql", "sqlstate", "42P01"));
+        Assertions.assertEquals(timed + 1, sample("luna_command_duration_seconds_count", "command", "sql"));
+        Assertions.assertEquals("sql", QueryMetrics.commandType("SELECT 1", false));
+    }
+
+    private static double sample(String name, String... labels) {
+        String[] names = new String[labels.length / 2];
+        String[] values = new String[labels.length / 2];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = labels[2 * i];
+            values[i] = labels[2 * i + 1];
+        }
+        Double value = CollectorRegistry.defaultRegistry.getSampleValue(name, names, values);
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,171 @@
+package schedulerTest;
+
+import org.cli.conn.postgresql.ConnectToPostgresql;
+import org.cli.entities.JobEntity;
+import org.cli.entities.JobRunEntity;
+import org.cli.manager.CommandOutcome;
+import org.cli.scheduler.CronExpression;
+import org.cli.scheduler.JobScheduler;
+import org.cli.utils.JobPath;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.cli.conn.postgresql.ConnectToPostgresql.connection;
+import static org.cli.utils.TestConfig.*;
+
+public class JobSchedulerFunctionTest {
+
+    static final Path JOB_FILE = Path.of("test_jobs.json");
+
+    @BeforeAll
+    public static void useTestStore() throws IOException {
+        Files.deleteIfExists(JOB_FILE);
+        JobPath.filePath = JOB_FILE.toString();
+    }
+
+    @BeforeEach
+    public void init() throws SQLException {
+        if (connection != null) {
+            ConnectToPostgresql.closeConnection();
+        }
+        ConnectToPostgresql.connectToDatabase(TEST_USERNAME, TEST_PASSWORD, TEST_DATABASE);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS test_jobs (id int)");
+        }
+    }
+
+    @AfterEach
+    public void cleanUp() throws SQLException {
+        JobScheduler.getJobs().forEach(job -> JobScheduler.cancel(job.getId()));
+        JobScheduler.configure(2, 100);
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS test_jobs");
+        }
+        ConnectToPostgresql.closeConnection();
+    }
+
+    @AfterAll
+    public static void removeTestStore() throws IOException {
+        Files.deleteIfExists(JOB_FILE);
+        JobPath.filePath = "jobs.json";
+    }
+
+    @Test
+    public void cronExpressionFindsTheNextMatchingMinute() {
+        ZonedDateTime from = ZonedDateTime.of(2025, 3, 14, 10, 7, 30, 0, ZoneId.of("UTC"));
+
+        Assertions.assertEquals(from.withMinute(15).withSecond(0), CronExpression.parse("*/15 * * * *").next(from));
+        Assertions.assertEquals(ZonedDateTime.of(2025, 3, 15, 3, 0, 0, 0, ZoneId.of("UTC")), CronExpression.parse("0 3 * * *").next(from));
+        Assertions.assertEquals(ZonedDateTime.of(2025, 3, 17, 9, 30, 0, 0, ZoneId.of("UTC")), CronExpression.parse("30 9 * * MON-FRI").next(from.withHour(18)));
+        Assertions.assertEquals(ZonedDateTime.of(2025, 4, 1, 0, 0, 0, 0, ZoneId.of("UTC")), CronExpression.parse("@monthly").next(from));
+        // Both day fields restricted: the 1st of the month or any Sunday.
+        Assertions.assertEquals(ZonedDateTime.of(2025, 3, 16, 0, 0, 0, 0, ZoneId.of("UTC")), CronExpression.parse("0 0 1 * 7").next(from));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 3 * *"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("61 * * * *"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 0 30 FEB *"));
+    }
+
+    @Test
+    public void rateJobRunsRepeatedlyAndIsPersisted() throws Exception {
+        JobEntity job = JobScheduler.scheduleAtFixedRate("INSERT INTO test_jobs VALUES (1)", 200, TimeUnit.MILLISECONDS, JobEntity.Overlap.SKIP);
+        Thread.sleep(1100);
+        Assertions.assertTrue(JobScheduler.pause(job.getId()));
+        Thread.sleep(200);
+
+        long runs = job.getRunCount();
+        Assertions.assertTrue(runs >= 3, "Expected at least 3 runs, got " + runs);
+        Assertions.assertEquals(0, job.getFailureCount());
+        Assertions.assertEquals(JobRunEntity.Status.OK, job.getHistory().get(0).getStatus());
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT count(*) FROM test_jobs")) {
+            rs.next();
+            Assertions.assertEquals(runs, rs.getLong(1));
+        }
+
+        String stored = Files.readString(JOB_FILE);
+        Assertions.assertTrue(stored.contains("INSERT INTO test_jobs VALUES (1)"));
+        Assertions.assertTrue(stored.contains("PAUSED"));
+    }
+
+    @Test
+    public void failuresAndOverlapsAreRecordedInTheHistory() throws Exception {
+        JobEntity failing = JobScheduler.scheduleOnce("INSERT INTO missing_table VALUES (1)", 0, TimeUnit.MILLISECONDS);
+        JobEntity slow = JobScheduler.scheduleAtFixedRate("SELECT pg_sleep(0.5)", 100, TimeUnit.MILLISECONDS, JobEntity.Overlap.SKIP);
+        Thread.sleep(700);
+        JobScheduler.cancel(slow.getId());
+
+        Assertions.assertEquals(JobEntity.Status.DONE, failing.getStatus());
+        Assertions.assertEquals(1, failing.getFailureCount());
+        Assertions.assertEquals(JobRunEntity.Status.FAILED, failing.getHistory().get(0).getStatus());
+        Assertions.assertTrue(failing.getHistory().get(0).getMessage().contains("missing_table"));
+
+        Assertions.assertTrue(slow.getHistory().stream().anyMatch(run -> run.getStatus() == JobRunEntity.Status.SKIPPED));
+        Assertions.assertEquals(JobEntity.Status.CANCELLED, slow.getStatus());
+    }
+
+    @Test
+    public void moreWorkersThanPoolConnectionsIsOnlyAWarning() {
+        CommandOutcome outcome = CommandOutcome.begin();
+        try {
+            JobScheduler.configure(ConnectToPostgresql.pool.getMaxSize(), 100);
+        } finally {
+            CommandOutcome.end();
+        }
+
+        Assertions.assertFalse(outcome.isFailed());
+        Assertions.assertEquals(ConnectToPostgresql.pool.getMaxSize(), JobScheduler.getWorkerCount());
+    }
+
+    @Test
+    public void failedCommandsAreRecordedWithoutTouchingTheConsole() throws Exception {
+        PrintStream console = System.out;
+        JobEntity job = JobScheduler.scheduleOnce("luna snippetg id:no_such_snippet_for_jobs", 0, TimeUnit.MILLISECONDS);
+        Thread.sleep(300);
+
+        Assertions.assertSame(console, System.out, "The console stream should be restored after the run.");
+        Assertions.assertEquals(JobRunEntity.Status.FAILED, job.getHistory().get(0).getStatus());
+        Assertions.assertTrue(job.getHistory().get(0).getMessage().contains("no_such_snippet_for_jobs"));
+    }
+
+    @Test
+    public void jobsRunInTheirOwnTransactionOutsideTheSession() throws Exception {
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO test_jobs VALUES (1)");
+        }
+        JobEntity job = JobScheduler.scheduleOnce("INSERT INTO test_jobs VALUES (2)", 0, TimeUnit.MILLISECONDS);
+        Thread.sleep(500);
+        connection.rollback();
+        connection.setAutoCommit(true);
+
+        Assertions.assertEquals(JobEntity.Status.DONE, job.getStatus());
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT array_agg(id) FROM test_jobs")) {
+            rs.next();
+            Assertions.assertEquals("{2}", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void runsBeyondTheQueueCapacityAreSkipped() throws Exception {
+        JobScheduler.configure(1, 0);
+        JobEntity first = JobScheduler.scheduleOnce("SELECT pg_sleep(0.5)", 0, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+        JobEntity second = JobScheduler.scheduleOnce("SELECT 1", 0, TimeUnit.MILLISECONDS);
+        Thread.sleep(700);
+
+        Assertions.assertEquals(JobRunEntity.Status.OK, first.getHistory().get(0).getStatus());
+        Assertions.assertEquals(JobRunEntity.Status.SKIPPED, second.getHistory().get(0).getStatus());
+        Assertions.assertTrue(second.getHistory().get(0).getMessage().contains("queue is full"));
+    }
+}